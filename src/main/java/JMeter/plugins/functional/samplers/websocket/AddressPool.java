@@ -0,0 +1,171 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Addresses connections are spread over, either local bind addresses or target host:port pairs.
+ * <p>
+ * One local address can open about 64k connections to one target, so large tests spread connections over several
+ * local addresses (e.g. loopback aliases 127.0.0.2, 127.0.0.3, ...) and several targets. Addresses are picked in
+ * turn by all threads (round robin) or by a consistent hash of the connection id, so a connection id keeps its
+ * address and adding an address moves only a share of the connections. Pools are shared by all threads of the test.
+ */
+public class AddressPool {
+
+    public static final String ROUND_ROBIN = "Round robin";
+    public static final String HASH = "Hash by connection id";
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    //Points of every address on the hash ring; more points spread the ids more evenly
+    private static final int VIRTUAL_NODES = 160;
+
+    private static final Map<String, AddressPool> pools = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final String[] addresses;
+    private final boolean hash;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLongArray selected;
+    private long[] ring;
+    private int[] ringAddresses;
+
+    AddressPool(String name, String[] addresses, boolean hash) {
+        this.name = name;
+        this.addresses = addresses;
+        this.hash = hash;
+        this.selected = new AtomicLongArray(addresses.length);
+        if (hash) {
+            buildRing();
+        }
+    }
+
+    /**
+     * @param name      pool name in the summary
+     * @param addresses comma or whitespace separated addresses
+     * @param selection {@link #ROUND_ROBIN} or {@link #HASH}
+     * @return pool shared by all threads with the same addresses and selection, null if there are no addresses
+     */
+    public static AddressPool get(String name, String addresses, String selection) {
+        if (StringUtils.isBlank(addresses)) {
+            return null;
+        }
+        String key = name + "|" + selection + "|" + addresses;
+        AddressPool pool = pools.get(key);
+        if (pool == null) {
+            String[] parsed = addresses.trim().split("[,\\s]+");
+            pool = new AddressPool(name, parsed, HASH.equals(selection));
+            AddressPool existing = pools.putIfAbsent(key, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    public String select(String connectionId) {
+        int index;
+        if (hash) {
+            long point = hash(connectionId != null ? connectionId : "");
+            int position = Arrays.binarySearch(ring, point);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            index = ringAddresses[position == ring.length ? 0 : position];
+        } else {
+            index = (next.getAndIncrement() & Integer.MAX_VALUE) % addresses.length;
+        }
+        selected.incrementAndGet(index);
+        return addresses[index];
+    }
+
+    private void buildRing() {
+        int size = addresses.length * VIRTUAL_NODES;
+        long[][] points = new long[size][];
+        for (int i = 0; i < addresses.length; i++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                points[i * VIRTUAL_NODES + node] = new long[]{hash(addresses[i] + "#" + node), i};
+            }
+        }
+        Arrays.sort(points, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        ring = new long[size];
+        ringAddresses = new int[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = points[i][0];
+            ringAddresses[i] = (int) points[i][1];
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a with a final mix so that similar ids land far apart on the ring
+     */
+    private static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param target host or host:port; IPv6 hosts in brackets
+     * @return uri with the host and, if given, the port of the target
+     */
+    public static URI withTarget(URI uri, String target) throws URISyntaxException {
+        String host = target;
+        int port = uri.getPort();
+        int colon = target.lastIndexOf(':');
+        if (colon > target.lastIndexOf(']')) {
+            host = target.substring(0, colon);
+            port = Integer.parseInt(target.substring(colon + 1));
+        }
+        StringBuilder text = new StringBuilder(uri.getScheme()).append("://").append(host);
+        if (port != -1) {
+            text.append(':').append(port);
+        }
+        if (uri.getRawPath() != null) {
+            text.append(uri.getRawPath());
+        }
+        if (uri.getRawQuery() != null) {
+            text.append('?').append(uri.getRawQuery());
+        }
+        return new URI(text.toString());
+    }
+
+    public static void reset() {
+        pools.clear();
+    }
+
+    public static void logSummary() {
+        for (AddressPool pool : pools.values()) {
+            List<String> counts = new ArrayList<>(pool.addresses.length);
+            for (int i = 0; i < pool.addresses.length; i++) {
+                counts.add(pool.addresses[i] + "=" + pool.selected.get(i));
+            }
+            log.info(pool.name + " connections: " + StringUtils.join(counts, ", "));
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jmeter.config.Argument;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rules replying to received messages on the I/O thread that delivered them, without waiting for the next sample.
+ * <p>
+ * A rule pairs a {@link MessageCondition} with a reply payload and the first rule whose condition holds replies.
+ * Replies are payload templates rendered as STOMP frames in which #{in:command}, #{in:header.name} and #{in:$.path}
+ * are replaced by the values of the received message, escaped for the JSON string of the SockJS frame. Variables and
+ * functions of the replies are evaluated when the sample starts, on the thread that owns the connection; the I/O
+ * threads only render the generators and the copied values. Reply latency is measured from the match until the
+ * reply is written.
+ */
+public class AutoResponder {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String IN_PREFIX = "#{in:";
+
+    private static final LongAdder totalReplies = new LongAdder();
+    private static final LongAdder totalFailures = new LongAdder();
+    private static final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    /**
+     * Condition and reply
+     */
+    private static class Rule {
+        MessageCondition condition;
+        PayloadTemplate reply;
+        //Values of the received message copied into the reply
+        String[] placeholders;
+        String[] headers;
+        JsonPathScanner[] paths;
+    }
+
+    private final String source;
+    private final Rule[] rules;
+    private final StringBuilder buffer = new StringBuilder();
+    private final LongAdder replies = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    //Replies of the rules with variables and functions evaluated
+    private volatile PayloadTemplate[] resolvedReplies;
+
+    private AutoResponder(String source, List<Rule> rules) {
+        this.source = source;
+        this.rules = rules.toArray(new Rule[rules.size()]);
+    }
+
+    /**
+     * @return text the rules are compiled from, conditions evaluated and replies raw
+     */
+    public static String getSource(Arguments definitions) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < definitions.getArgumentCount(); i++) {
+            Argument definition = definitions.getArgument(i);
+            source.append(new CompoundVariable(definition.getName()).execute()).append('\u0000')
+                    .append(PayloadTemplate.getSource(definition.getProperty(Argument.VALUE))).append('\u0000');
+        }
+        return source.toString();
+    }
+
+    /**
+     * @param definitions conditions as names and replies as values
+     * @return responder or null if there are no rules
+     * @throws IllegalArgumentException if a condition or a copied value can't be parsed
+     */
+    public static AutoResponder compile(Arguments definitions) {
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < definitions.getArgumentCount(); i++) {
+            Argument definition = definitions.getArgument(i);
+            String condition = new CompoundVariable(definition.getName()).execute();
+            if (condition.trim().isEmpty()) {
+                continue;
+            }
+
+            Rule rule = new Rule();
+            rule.condition = MessageCondition.compile(condition);
+            String reply = PayloadTemplate.getSource(definition.getProperty(Argument.VALUE));
+            //#{in:...} isn't a generator of the template and is kept as it is for the reply
+            rule.reply = PayloadTemplate.compile(reply);
+            parsePlaceholders(rule, reply);
+            rules.add(rule);
+        }
+        return rules.isEmpty() ? null : new AutoResponder(getSource(definitions), rules);
+    }
+
+    private static void parsePlaceholders(Rule rule, String reply) {
+        List<String> placeholders = new ArrayList<>();
+        int start = reply.indexOf(IN_PREFIX);
+        while (start >= 0) {
+            int end = reply.indexOf('}', start);
+            if (end < 0) {
+                break;
+            }
+            String placeholder = reply.substring(start, end + 1);
+            if (!placeholders.contains(placeholder)) {
+                placeholders.add(placeholder);
+            }
+            start = reply.indexOf(IN_PREFIX, end);
+        }
+
+        int count = placeholders.size();
+        rule.placeholders = placeholders.toArray(new String[count]);
+        rule.headers = new String[count];
+        rule.paths = new JsonPathScanner[count];
+        for (int i = 0; i < count; i++) {
+            String target = rule.placeholders[i].substring(IN_PREFIX.length(), rule.placeholders[i].length() - 1).trim();
+            if (target.startsWith("header.") && target.length() > "header.".length()) {
+                rule.headers[i] = target.substring("header.".length());
+            } else if (target.startsWith("$")) {
+                rule.paths[i] = JsonPathScanner.compile(target);
+            } else if (!target.equals("command")) {
+                throw new IllegalArgumentException("Unknown value " + rule.placeholders[i]
+                        + " in reply; use #{in:command}, #{in:header.name} or #{in:$.path}");
+            }
+        }
+    }
+
+    /**
+     * @return true if the responder was compiled from the definitions
+     */
+    public boolean isCompiledFrom(Arguments definitions) {
+        return source.equals(getSource(definitions));
+    }
+
+    /**
+     * Evaluates the variables and functions of the replies; JMeter variables and functions are not thread-safe, so
+     * they are evaluated here rather than on the I/O threads
+     *
+     * @param variables variables of the calling thread, the thread that owns the connection
+     */
+    public void resolveReplies(JMeterVariables variables) {
+        PayloadTemplate[] resolved = new PayloadTemplate[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            resolved[i] = rules[i].reply.resolve(variables);
+        }
+        resolvedReplies = resolved;
+    }
+
+    /**
+     * Events of a connection are delivered one at a time, so the buffer is never used concurrently
+     *
+     * @return reply of the first rule the message satisfies, null if no rule matches
+     */
+    public String reply(CharSequence message) {
+        PayloadTemplate[] resolved = resolvedReplies;
+        if (resolved == null) {
+            return null;
+        }
+        //Parsed once for the conditions of all rules and the values of the reply
+        StompFrame frame = StompFrame.parse(message);
+        for (int r = 0; r < rules.length; r++) {
+            Rule rule = rules[r];
+            if (!rule.condition.test(message, frame)) {
+                continue;
+            }
+
+            String reply = resolved[r].renderStompFrame(buffer, null);
+            if (reply.isEmpty() || rule.placeholders.length == 0) {
+                return reply.isEmpty() ? null : reply;
+            }
+
+            StringBuilder text = new StringBuilder(reply);
+            for (int i = 0; i < rule.placeholders.length; i++) {
+                String value;
+                if (rule.headers[i] != null) {
+                    value = frame != null ? frame.getHeader(rule.headers[i]) : null;
+                } else if (rule.paths[i] != null) {
+                    value = frame != null ? frame.findInBody(rule.paths[i]) : rule.paths[i].find(message);
+                } else {
+                    value = frame != null ? frame.getCommand() : null;
+                }
+                replace(text, rule.placeholders[i], value != null ? escape(value) : "");
+            }
+            return text.toString();
+        }
+        return null;
+    }
+
+    private static void replace(StringBuilder text, String placeholder, String value) {
+        int start = text.indexOf(placeholder);
+        while (start >= 0) {
+            text.replace(start, start + placeholder.length(), value);
+            start = text.indexOf(placeholder, start + value.length());
+        }
+    }
+
+    /**
+     * @return the value as the content of a JSON string; replies are always rendered as escaped SockJS frames
+     */
+    static String escape(String value) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= ' ') {
+                if (escaped != null) {
+                    escaped.append(c);
+                }
+                continue;
+            }
+            if (escaped == null) {
+                escaped = new StringBuilder(value.length() + 16);
+                escaped.append(value, 0, i);
+            }
+            escaped.append('\\');
+            if (c == '\n') {
+                escaped.append('n');
+            } else if (c == '\r') {
+                escaped.append('r');
+            } else if (c == '\t') {
+                escaped.append('t');
+            } else if (c < ' ') {
+                escaped.append(String.format("u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    public void onReplied(long latencyNanos) {
+        replies.increment();
+        totalReplies.increment();
+        latency.record(latencyNanos);
+        totalLatency.record(latencyNanos);
+    }
+
+    public void onFailed(Throwable cause) {
+        failures.increment();
+        totalFailures.increment();
+        log.debug("Auto reply failed: " + cause.getMessage());
+    }
+
+    public long getSampleReplies() {
+        return replies.sum();
+    }
+
+    public long getSampleFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return latencies of the replies since the last sample
+     */
+    public LatencyHistogram getSampleLatency() {
+        return latency;
+    }
+
+    public void resetSample() {
+        replies.reset();
+        failures.reset();
+        latency.reset();
+    }
+
+    public static long getTotalReplies() {
+        return totalReplies.sum();
+    }
+
+    public static long getTotalFailures() {
+        return totalFailures.sum();
+    }
+
+    public static LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    public static void resetTotals() {
+        totalReplies.reset();
+        totalFailures.reset();
+        totalLatency.reset();
+    }
+
+    public static void logSummary() {
+        if (totalReplies.sum() > 0 || totalFailures.sum() > 0) {
+            log.info("Auto reply summary: " + totalReplies.sum() + " replies, " + totalFailures.sum()
+                    + " failed, latency " + totalLatency.summary());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jmeter.protocol.http.control.Cookie;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.FunctionProperty;
+import org.apache.jmeter.testelement.property.JMeterProperty;
+import org.apache.jmeter.testelement.property.MultiProperty;
+import org.apache.jmeter.testelement.property.NullProperty;
+import org.apache.jmeter.testelement.property.PropertyIterator;
+import org.apache.jmeter.testelement.property.TestElementProperty;
+import org.eclipse.jetty.util.HttpCookieStore;
+
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * URI and cookies of the connections opened by one sampler thread.
+ * <p>
+ * When none of the connection properties contains a JMeter variable or function the URI is built once and reused
+ * by every sample of the thread. Cookies are rebuilt only when the content of the cookie manager changes.
+ */
+public class ConnectionDescriptor {
+
+    public static final String COOKIES_PROPERTY = "CookieManager.cookies";
+
+    //Properties the connection URI is built from
+    private static final String[] URI_PROPERTIES = {
+            "serverAddress", "serverPort", "protocol", "contextPath", "contentEncoding", "queryStringParameters"
+    };
+
+    private final URI uri;
+    private final boolean isStatic;
+    private List<HttpCookie> cookies = Collections.emptyList();
+    //Name, value, domain and path of every cookie manager cookie the cookies were built from
+    private String[] cookiesContent = new String[0];
+    private HttpCookieStore cookieStore;
+
+    public ConnectionDescriptor(URI uri, boolean isStatic) {
+        this.uri = uri;
+        this.isStatic = isStatic;
+    }
+
+    /**
+     * @return true if none of the properties the URI is built from contains a variable or function
+     */
+    public static boolean isStatic(TestElement element) {
+        for (String name : URI_PROPERTIES) {
+            if (containsFunction(element.getProperty(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsFunction(JMeterProperty property) {
+        if (property instanceof FunctionProperty) {
+            return true;
+        }
+        if (property instanceof MultiProperty) {
+            PropertyIterator iterator = ((MultiProperty) property).iterator();
+            while (iterator.hasNext()) {
+                if (containsFunction(iterator.next())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rebuilds the cookies if the cookie manager content differs from the one they were built from
+     *
+     * @param property cookie manager cookies merged into the sampler
+     * @return true if the cookies were rebuilt
+     */
+    public boolean updateCookies(JMeterProperty property) {
+        List<Cookie> jmeterCookies = getJMeterCookies(property);
+        if (cookieStore != null && isUnchanged(jmeterCookies)) {
+            return false;
+        }
+
+        List<HttpCookie> httpCookies = new ArrayList<>(jmeterCookies.size());
+        String[] content = new String[jmeterCookies.size() * 4];
+        HttpCookieStore store = new HttpCookieStore();
+        int i = 0;
+        for (Cookie jmeterCookie : jmeterCookies) {
+            content[i++] = jmeterCookie.getName();
+            content[i++] = jmeterCookie.getValue();
+            content[i++] = jmeterCookie.getDomain();
+            content[i++] = jmeterCookie.getPath();
+
+            HttpCookie httpCookie = new HttpCookie(jmeterCookie.getName(), jmeterCookie.getValue());
+            httpCookie.setDomain(jmeterCookie.getDomain());
+            httpCookie.setPath(jmeterCookie.getPath());
+            httpCookies.add(httpCookie);
+            store.add(uri, httpCookie);
+        }
+
+        cookies = httpCookies;
+        cookieStore = store;
+        cookiesContent = content;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Cookie> getJMeterCookies(JMeterProperty property) {
+        if (property == null || property instanceof NullProperty) {
+            return Collections.emptyList();
+        }
+
+        Object value = property.getObjectValue();
+        if (!(value instanceof List)) {
+            return Collections.emptyList();
+        }
+
+        List<Cookie> result = new ArrayList<>();
+        for (TestElementProperty elementProperty : (List<TestElementProperty>) value) {
+            result.add((Cookie) elementProperty.getObjectValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the cookies have the same names, values, domains and paths in the same order as the ones the
+     * current cookies were built from
+     */
+    private boolean isUnchanged(List<Cookie> jmeterCookies) {
+        if (jmeterCookies.size() * 4 != cookiesContent.length) {
+            return false;
+        }
+        int i = 0;
+        for (Cookie cookie : jmeterCookies) {
+            if (!Objects.equals(cookie.getName(), cookiesContent[i++])
+                    || !Objects.equals(cookie.getValue(), cookiesContent[i++])
+                    || !Objects.equals(cookie.getDomain(), cookiesContent[i++])
+                    || !Objects.equals(cookie.getPath(), cookiesContent[i++])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public boolean isStatic() {
+        return isStatic;
+    }
+
+    public List<HttpCookie> getCookies() {
+        return cookies;
+    }
+
+    public HttpCookieStore getCookieStore() {
+        return cookieStore;
+    }
+}
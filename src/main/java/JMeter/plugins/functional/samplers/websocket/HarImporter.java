@@ -0,0 +1,287 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts WebSocket messages recorded by a browser in a HAR file ("_webSocketMessages" of the entries) into the
+ * {@link TrafficCapture} format, so they can be replayed by the sampler.
+ * <p>
+ * The HAR is parsed as a stream; only message objects are materialized. Every WebSocket entry becomes one
+ * connection of the capture. Binary messages are skipped.
+ * <pre>
+ * java -cp ... JMeter.plugins.functional.samplers.websocket.HarImporter recording.har capture.bin
+ * </pre>
+ */
+public class HarImporter implements Closeable {
+
+    private static final String MESSAGES_KEY = "_webSocketMessages";
+    private static final int TEXT_OPCODE = 1;
+
+    private final Reader reader;
+    private final TrafficCapture capture;
+    private int current = -2;
+    private int connections = 0;
+    private long imported = 0;
+    private long skipped = 0;
+
+    public HarImporter(File har, TrafficCapture capture) throws IOException {
+        this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(har), StandardCharsets.UTF_8), 65536);
+        this.capture = capture;
+    }
+
+    public void run() throws IOException {
+        read();
+        traverse();
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * Walks any JSON value looking for message arrays
+     */
+    private void traverse() throws IOException {
+        skipWhitespace();
+        if (current == '{') {
+            read();
+            skipWhitespace();
+            while (current != '}') {
+                String key = readString();
+                expect(':');
+                if (MESSAGES_KEY.equals(key)) {
+                    importMessages();
+                } else {
+                    traverse();
+                }
+                skipWhitespace();
+                if (current == ',') {
+                    read();
+                    skipWhitespace();
+                }
+            }
+            read();
+        } else if (current == '[') {
+            read();
+            skipWhitespace();
+            while (current != ']') {
+                traverse();
+                skipWhitespace();
+                if (current == ',') {
+                    read();
+                }
+                skipWhitespace();
+            }
+            read();
+        } else {
+            readValue();
+        }
+    }
+
+    private void importMessages() throws IOException {
+        byte[] connectionId = ("har-" + connections++).getBytes(StandardCharsets.UTF_8);
+
+        skipWhitespace();
+        if (current != '[') {
+            readValue();
+            return;
+        }
+        read();
+        skipWhitespace();
+        while (current != ']') {
+            Object value = readValue();
+            if (value instanceof Map) {
+                importMessage(connectionId, (Map<?, ?>) value);
+            }
+            skipWhitespace();
+            if (current == ',') {
+                read();
+            }
+            skipWhitespace();
+        }
+        read();
+    }
+
+    private void importMessage(byte[] connectionId, Map<?, ?> message) {
+        Object type = message.get("type");
+        Object time = message.get("time");
+        Object opcode = message.get("opcode");
+        Object data = message.get("data");
+        if (!(time instanceof Double) || !(data instanceof String)
+                || (opcode instanceof Double && ((Double) opcode).intValue() != TEXT_OPCODE)) {
+            skipped++;
+            return;
+        }
+
+        byte direction = "send".equals(type) ? TrafficCapture.SENT : TrafficCapture.RECEIVED;
+        long timestamp = Math.round((Double) time * 1000000000d);
+        capture.write(direction, connectionId, (String) data, timestamp, false);
+        imported++;
+    }
+
+    /**
+     * @return String, Double, Boolean, Map or null; arrays are skipped
+     */
+    private Object readValue() throws IOException {
+        skipWhitespace();
+        switch (current) {
+            case '"':
+                return readString();
+            case '{':
+                Map<String, Object> object = new HashMap<>();
+                read();
+                skipWhitespace();
+                while (current != '}') {
+                    String key = readString();
+                    expect(':');
+                    object.put(key, readValue());
+                    skipWhitespace();
+                    if (current == ',') {
+                        read();
+                        skipWhitespace();
+                    }
+                }
+                read();
+                return object;
+            case '[':
+                read();
+                skipWhitespace();
+                while (current != ']') {
+                    readValue();
+                    skipWhitespace();
+                    if (current == ',') {
+                        read();
+                    }
+                    skipWhitespace();
+                }
+                read();
+                return null;
+            case -1:
+                throw new IOException("Unexpected end of HAR file");
+            default:
+                StringBuilder literal = new StringBuilder();
+                while (current != -1 && current != ',' && current != '}' && current != ']' && !Character.isWhitespace(current)) {
+                    literal.append((char) current);
+                    read();
+                }
+                String text = literal.toString();
+                if ("true".equals(text) || "false".equals(text)) {
+                    return Boolean.valueOf(text);
+                }
+                if ("null".equals(text)) {
+                    return null;
+                }
+                try {
+                    return Double.valueOf(text);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid JSON value " + text);
+                }
+        }
+    }
+
+    private String readString() throws IOException {
+        skipWhitespace();
+        if (current != '"') {
+            throw new IOException("Expected string in HAR file");
+        }
+        StringBuilder text = new StringBuilder();
+        read();
+        while (current != '"') {
+            if (current == -1) {
+                throw new IOException("Unexpected end of HAR file");
+            }
+            if (current == '\\') {
+                read();
+                switch (current) {
+                    case 'n':
+                        text.append('\n');
+                        break;
+                    case 'r':
+                        text.append('\r');
+                        break;
+                    case 't':
+                        text.append('\t');
+                        break;
+                    case 'b':
+                        text.append('\b');
+                        break;
+                    case 'f':
+                        text.append('\f');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < hex.length; i++) {
+                            hex[i] = (char) read();
+                        }
+                        text.append((char) Integer.parseInt(new String(hex), 16));
+                        break;
+                    default:
+                        text.append((char) current);
+                }
+            } else {
+                text.append((char) current);
+            }
+            read();
+        }
+        read();
+        return text.toString();
+    }
+
+    private void expect(char expected) throws IOException {
+        skipWhitespace();
+        if (current != expected) {
+            throw new IOException("Expected '" + expected + "' in HAR file");
+        }
+        read();
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (current != -1 && Character.isWhitespace(current)) {
+            read();
+        }
+    }
+
+    private int read() throws IOException {
+        current = reader.read();
+        return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: HarImporter <har file> <capture file>");
+            System.exit(1);
+        }
+
+        TrafficCapture capture = TrafficCapture.open(new File(args[1]));
+        try (HarImporter importer = new HarImporter(new File(args[0]), capture)) {
+            importer.run();
+            System.out.println("Imported " + importer.getImported() + " messages of " + importer.getConnections()
+                    + " connections, skipped " + importer.getSkipped() + " binary or invalid messages");
+        } finally {
+            capture.close();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,278 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sheds retained response text when the heap fills up, so a burst of large messages doesn't end in full GCs.
+ * <p>
+ * The heap pools are watched through collection usage threshold notifications, which report the heap still in use
+ * after a GC. Three levels split the range from the threshold to a full heap: level 1 cuts response backlogs to a
+ * quarter, level 2 keeps one message per backlog and stops logging message texts, level 3 keeps no backlog and no
+ * response data and message. Levels step down one at a time once usage after GC falls below the level again. Every
+ * change is logged with the heap usage and everything shed is counted, so results taken under pressure are known.
+ */
+public class HeapGuard {
+
+    public static final int MAX_LEVEL = 3;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    //Usage below the threshold of a level by this share of the heap steps down
+    private static final double HYSTERESIS = 0.05;
+    private static final long CHECK_INTERVAL = 1000;
+
+    private static final LongAdder shedMessages = new LongAdder();
+    private static final LongAdder shedChars = new LongAdder();
+    private static final LongAdder droppedCaptures = new LongAdder();
+    private static final long[] levelNanos = new long[MAX_LEVEL + 1];
+
+    private static volatile int level;
+    private static long levelSince;
+    private static double[] thresholds;
+    private static final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private static Runnable shedTask;
+    private static ScheduledFuture<?> checkTask;
+
+    private static final NotificationListener listener = new NotificationListener() {
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                update();
+            }
+        }
+    };
+
+    /**
+     * Starts watching the heap pools; a guard of a previous test is stopped first
+     *
+     * @param percent heap usage after GC at which shedding starts
+     * @param onShed  run on the executor when the level rises, sheds what the sockets already hold
+     */
+    public static synchronized void start(int percent, Runnable onShed) {
+        stop();
+        double start = Math.min(99, Math.max(1, percent)) / 100.0;
+        thresholds = new double[MAX_LEVEL + 1];
+        for (int i = 1; i <= MAX_LEVEL; i++) {
+            thresholds[i] = start + (1 - start) * (i - 1) / MAX_LEVEL;
+        }
+        shedTask = onShed;
+        level = 0;
+        levelSince = System.nanoTime();
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && !isYoung(pool)) {
+                pools.add(pool);
+            }
+        }
+        if (pools.isEmpty()) {
+            log.warn("Heap guard isn't available, no heap pool reports its usage after GC");
+            return;
+        }
+        setThresholds();
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+
+        //Notifications only report rising usage, falling usage is polled
+        checkTask = WebSocketSampler.getScheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                update();
+            }
+        }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        log.info("Heap guard sheds responses from " + percent + "% heap usage after GC");
+    }
+
+    /**
+     * @return true if a guard was started and not stopped yet
+     */
+    public static synchronized boolean isStarted() {
+        return shedTask != null;
+    }
+
+    public static synchronized void stop() {
+        if (checkTask != null) {
+            checkTask.cancel(false);
+            checkTask = null;
+        }
+        if (!pools.isEmpty()) {
+            try {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                log.debug("Heap guard wasn't listening");
+            }
+            for (MemoryPoolMXBean pool : pools) {
+                pool.setCollectionUsageThreshold(0);
+            }
+            pools.clear();
+        }
+        long now = System.nanoTime();
+        levelNanos[level] += now - levelSince;
+        levelSince = now;
+        level = 0;
+        shedTask = null;
+    }
+
+    /**
+     * Survivor spaces are full after a GC by design, only the old generation (or a single heap) tells what is retained
+     */
+    private static boolean isYoung(MemoryPoolMXBean pool) {
+        String name = pool.getName();
+        return name.contains("Eden") || name.contains("Survivor") || name.contains("Young");
+    }
+
+    private static long getMax(MemoryPoolMXBean pool) {
+        long max = pool.getUsage().getMax();
+        return max > 0 ? max : Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * Notifies when usage after GC crosses the next level
+     */
+    private static void setThresholds() {
+        int next = Math.min(level + 1, MAX_LEVEL);
+        for (MemoryPoolMXBean pool : pools) {
+            pool.setCollectionUsageThreshold((long) (getMax(pool) * thresholds[next]));
+        }
+    }
+
+    /**
+     * Moves to the highest level the usage after GC exceeds, or one level down if it fell below the current one
+     */
+    private static synchronized void update() {
+        if (pools.isEmpty()) {
+            return;
+        }
+        double usage = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage collectionUsage = pool.getCollectionUsage();
+            if (collectionUsage != null) {
+                usage = Math.max(usage, (double) collectionUsage.getUsed() / getMax(pool));
+            }
+        }
+
+        int target = 0;
+        while (target < MAX_LEVEL && usage >= thresholds[target + 1]) {
+            target++;
+        }
+        if (target > level) {
+            setLevel(target, usage);
+            Runnable task = shedTask;
+            if (task != null) {
+                WebSocketSampler.getExecutor().execute(task);
+            }
+        } else if (level > 0 && usage < thresholds[level] - HYSTERESIS) {
+            setLevel(level - 1, usage);
+        } else {
+            return;
+        }
+        setThresholds();
+    }
+
+    /**
+     * @param usage heap usage after GC that caused the change, for the log
+     */
+    static synchronized void setLevel(int newLevel, double usage) {
+        if (newLevel == level) {
+            return;
+        }
+        long now = System.nanoTime();
+        levelNanos[level] += now - levelSince;
+        levelSince = now;
+        log.warn("Heap guard level " + level + " -> " + newLevel + " at " + Math.round(usage * 100)
+                + "% heap usage after GC; " + shedMessages.sum() + " messages and " + shedChars.sum()
+                + " characters shed so far");
+        level = newLevel;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return messages a response backlog of the configured size may keep at the current level
+     */
+    public static int getBacklogLimit(int backlogSize) {
+        switch (level) {
+            case 0:
+                return backlogSize;
+            case 1:
+                return Math.max(1, backlogSize / 4);
+            case 2:
+                return Math.min(1, backlogSize);
+            default:
+                return 0;
+        }
+    }
+
+    public static boolean isMessageLogging() {
+        return level < 2;
+    }
+
+    public static boolean isCaptureDropped() {
+        return level >= MAX_LEVEL;
+    }
+
+    /**
+     * Counts a message or log dropped because of the heap pressure
+     */
+    public static void onShed(long messages, long chars) {
+        shedMessages.add(messages);
+        shedChars.add(chars);
+    }
+
+    public static void onCaptureDropped() {
+        droppedCaptures.increment();
+    }
+
+    public static long getShedMessages() {
+        return shedMessages.sum();
+    }
+
+    public static long getShedChars() {
+        return shedChars.sum();
+    }
+
+    public static long getDroppedCaptures() {
+        return droppedCaptures.sum();
+    }
+
+    public static synchronized void resetTotals() {
+        shedMessages.reset();
+        shedChars.reset();
+        droppedCaptures.reset();
+        for (int i = 0; i <= MAX_LEVEL; i++) {
+            levelNanos[i] = 0;
+        }
+        levelSince = System.nanoTime();
+    }
+
+    public static synchronized void logSummary() {
+        levelNanos[level] += System.nanoTime() - levelSince;
+        levelSince = System.nanoTime();
+        if (levelNanos[1] + levelNanos[2] + levelNanos[3] == 0) {
+            return;
+        }
+        StringBuilder times = new StringBuilder();
+        for (int i = 1; i <= MAX_LEVEL; i++) {
+            times.append(i > 1 ? ", " : "").append("level ").append(i).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMillis(levelNanos[i])).append(" ms");
+        }
+        log.warn("Heap guard summary: " + times + "; " + shedMessages.sum() + " messages and " + shedChars.sum()
+                + " characters shed, " + droppedCaptures.sum() + " samples without response data");
+    }
+}
@@ -0,0 +1,370 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.HttpCookie;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Transport on the java.net.http WebSocket client of the JDK.
+ * <p>
+ * The client decodes text itself, so messages are handed to the listener as characters. It has no input buffer or
+ * idle timeout settings and can't bind to a local address before Java 19; the max message size is enforced here by
+ * closing the connection with 1009.
+ * <p>
+ * This is the only class that needs Java 11; it is compiled separately and loaded by name from
+ * {@link WebSocketImplementation#JDK}, so the rest of the plugin still runs on Java 8.
+ */
+public class JdkTransport implements WebSocketTransport {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int ABNORMAL_CLOSURE = 1006;
+    private static final int TOO_BIG = 1009;
+
+    private static final AtomicBoolean bindWarned = new AtomicBoolean();
+
+    private final TransportOptions options;
+    private final Set<Adapter> adapters = ConcurrentHashMap.newKeySet();
+    private HttpClient client;
+
+    public JdkTransport(TransportOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public void start() throws Exception {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(options.getConnectTimeout()));
+        if (options.getExecutor() != null) {
+            builder.executor(options.getExecutor());
+        }
+        if (options.isTrustAll()) {
+            builder.sslContext(createTrustAllContext());
+        }
+        if (options.getCookieStore() != null) {
+            builder.cookieHandler(new CookieManager(options.getCookieStore(), CookiePolicy.ACCEPT_ALL));
+        }
+        if (options.getBindAddress() != null && bindWarned.compareAndSet(false, true)) {
+            log.warn("JDK transport ignores the local address " + options.getBindAddress().getHostAddress());
+        }
+        client = builder.build();
+    }
+
+    private static SSLContext createTrustAllContext() throws GeneralSecurityException {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new X509ExtendedTrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+            }
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+            }
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        return sslContext;
+    }
+
+    @Override
+    public Future<?> connect(final URI uri, List<HttpCookie> cookies, Listener listener) throws IOException {
+        if (client == null) {
+            throw new IOException("Transport isn't started");
+        }
+        WebSocket.Builder builder = client.newWebSocketBuilder()
+                .connectTimeout(Duration.ofMillis(options.getConnectTimeout()));
+        if (cookies != null && !cookies.isEmpty()) {
+            StringBuilder cookieHeader = new StringBuilder();
+            for (HttpCookie cookie : cookies) {
+                if (cookieHeader.length() > 0) {
+                    cookieHeader.append("; ");
+                }
+                cookieHeader.append(cookie.getName()).append('=').append(cookie.getValue());
+            }
+            builder.header("Cookie", cookieHeader.toString());
+        }
+
+        final Adapter adapter = new Adapter(listener);
+        adapters.add(adapter);
+        return builder.buildAsync(uri, adapter).whenComplete(new BiConsumer<WebSocket, Throwable>() {
+            @Override
+            public void accept(WebSocket webSocket, Throwable failure) {
+                if (failure != null) {
+                    log.debug("Cannot connect to " + uri + ": " + failure);
+                    adapters.remove(adapter);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void stop() throws Exception {
+        //The JDK client has no lifecycle; connections it still holds are aborted
+        for (Adapter adapter : adapters) {
+            adapter.abort();
+        }
+        adapters.clear();
+    }
+
+    /**
+     * @return future of the next send, started once the previous one completed whether it failed or not
+     */
+    private static CompletableFuture<WebSocket> afterCompletion(CompletableFuture<?> previous,
+                                                                Function<Object, CompletableFuture<WebSocket>> next) {
+        return previous.handle(new BiFunction<Object, Throwable, Object>() {
+            @Override
+            public Object apply(Object result, Throwable failure) {
+                return null;
+            }
+        }).thenCompose(next);
+    }
+
+    /**
+     * Translates the JDK events of a connection to the listener
+     */
+    private class Adapter implements WebSocket.Listener {
+        private final Listener listener;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile WebSocket webSocket;
+        private volatile int closeStatus = ABNORMAL_CLOSURE;
+        private volatile String closeReason = "Disconnected";
+        private volatile CompletableFuture<?> closeSent = CompletableFuture.completedFuture(null);
+        //Messages are requested one at a time; while reads are suspended the next request is withheld
+        private volatile boolean suspended;
+        private final AtomicBoolean requestWithheld = new AtomicBoolean();
+        private long messageBytes;
+
+        Adapter(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            this.webSocket = webSocket;
+            listener.onOpen(new JdkConnection(webSocket, this));
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            messageBytes += MessageAssembler.utf8Length(data);
+            if (messageBytes > options.getMaxMessageSize()) {
+                messageBytes = 0;
+                close(TOO_BIG, "Text message size exceeds " + options.getMaxMessageSize());
+                return null;
+            }
+            if (last) {
+                messageBytes = 0;
+            }
+            listener.onText(data, last);
+            requestNext();
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onPong(WebSocket webSocket, ByteBuffer message) {
+            listener.onPong(message);
+            requestNext();
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            notifyClose(statusCode, reason);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            log.debug("Connection failed: " + error);
+            notifyClose(ABNORMAL_CLOSURE, String.valueOf(error.getMessage()));
+        }
+
+        private void requestNext() {
+            if (!suspended) {
+                webSocket.request(1);
+                return;
+            }
+            requestWithheld.set(true);
+            //Reads may have been resumed before the request was withheld
+            if (!suspended && requestWithheld.compareAndSet(true, false)) {
+                webSocket.request(1);
+            }
+        }
+
+        void suspendReads() {
+            suspended = true;
+        }
+
+        void resumeReads() {
+            suspended = false;
+            if (requestWithheld.compareAndSet(true, false)) {
+                webSocket.request(1);
+            }
+        }
+
+        void close(int statusCode, String reason) {
+            closeStatus = statusCode;
+            closeReason = reason;
+            closeSent = webSocket.sendClose(statusCode, reason);
+        }
+
+        void close(final int statusCode, final String reason, CompletableFuture<?> pendingSends) {
+            closeStatus = statusCode;
+            closeReason = reason;
+            closeSent = afterCompletion(pendingSends, new Function<Object, CompletableFuture<WebSocket>>() {
+                @Override
+                public CompletableFuture<WebSocket> apply(Object ignored) {
+                    return webSocket.sendClose(statusCode, reason);
+                }
+            });
+        }
+
+        void abort() {
+            if (webSocket != null) {
+                try {
+                    //Let the close frame go out before the connection is dropped
+                    closeSent.get(options.getConnectTimeout(), TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    log.debug("Close frame not sent: " + e);
+                }
+                webSocket.abort();
+                notifyClose(closeStatus, closeReason);
+            }
+        }
+
+        private void notifyClose(int statusCode, String reason) {
+            adapters.remove(this);
+            if (webSocket != null && closed.compareAndSet(false, true)) {
+                listener.onClose(statusCode, reason);
+            }
+        }
+    }
+
+    /**
+     * Open JDK WebSocket; sends are chained since the client allows one pending send at a time
+     */
+    private static class JdkConnection implements Connection {
+        private final WebSocket webSocket;
+        private final Adapter adapter;
+        private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+
+        JdkConnection(WebSocket webSocket, Adapter adapter) {
+            this.webSocket = webSocket;
+            this.adapter = adapter;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !webSocket.isOutputClosed() && !webSocket.isInputClosed();
+        }
+
+        private synchronized CompletableFuture<?> send(final String message) {
+            CompletableFuture<?> send = afterCompletion(lastSend, new Function<Object, CompletableFuture<WebSocket>>() {
+                @Override
+                public CompletableFuture<WebSocket> apply(Object ignored) {
+                    return webSocket.sendText(message, true);
+                }
+            });
+            lastSend = send;
+            return send;
+        }
+
+        @Override
+        public void sendText(String message) throws IOException {
+            try {
+                send(message).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sending the message", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Cannot send the message", e.getCause());
+            }
+        }
+
+        @Override
+        public void sendText(String message, final SendCallback callback) {
+            send(message).whenComplete(new BiConsumer<Object, Throwable>() {
+                @Override
+                public void accept(Object result, Throwable failure) {
+                    if (failure == null) {
+                        callback.onSuccess();
+                    } else {
+                        callback.onFailure(failure);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void sendPing(ByteBuffer payload) throws IOException {
+            if (webSocket.isOutputClosed()) {
+                throw new IOException("Connection is closed");
+            }
+            //Pings don't queue behind text sends; a ping sent while the previous one is pending fails and is skipped
+            webSocket.sendPing(payload);
+        }
+
+        @Override
+        public void suspendReads() {
+            adapter.suspendReads();
+        }
+
+        @Override
+        public void resumeReads() {
+            adapter.resumeReads();
+        }
+
+        @Override
+        public synchronized void close(int statusCode, String reason) {
+            adapter.close(statusCode, reason, lastSend);
+        }
+    }
+}
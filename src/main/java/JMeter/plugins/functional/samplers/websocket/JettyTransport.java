@@ -0,0 +1,166 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.SuspendToken;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketFrame;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Transport on the Jetty 9.1 WebSocket client
+ */
+public class JettyTransport implements WebSocketTransport {
+
+    private final WebSocketClient client;
+
+    public JettyTransport(TransportOptions options) {
+        SslContextFactory sslContexFactory = new SslContextFactory();
+        sslContexFactory.setTrustAll(options.isTrustAll());
+        client = new WebSocketClient(sslContexFactory, options.getExecutor());
+
+        int maxMessageSize = options.getMaxMessageSize();
+        client.getPolicy().setMaxTextMessageSize(maxMessageSize);
+
+        int inputBufferSize = options.getInputBufferSize();
+        if (inputBufferSize > 0) {
+            client.getPolicy().setInputBufferSize(inputBufferSize);
+            client.setMaxTextMessageBufferSize(Math.min(inputBufferSize, maxMessageSize));
+        }
+
+        if (options.getIdleTimeout() >= 0) {
+            client.setMaxIdleTimeout(options.getIdleTimeout());
+        }
+        client.setCookieStore(options.getCookieStore());
+        if (options.getBindAddress() != null) {
+            client.setBindAdddress(new InetSocketAddress(options.getBindAddress(), 0));
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        client.start();
+    }
+
+    @Override
+    public Future<?> connect(URI uri, List<HttpCookie> cookies, Listener listener) throws IOException {
+        ClientUpgradeRequest request = new ClientUpgradeRequest();
+        if (cookies != null && !cookies.isEmpty()) {
+            request.setCookies(cookies);
+        }
+        return client.connect(new Adapter(listener), uri, request);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        client.stop();
+    }
+
+    /**
+     * Translates the Jetty events of a connection to the listener
+     */
+    @WebSocket
+    public static class Adapter {
+        private final Listener listener;
+        private boolean receivingText = false;
+
+        Adapter(Listener listener) {
+            this.listener = listener;
+        }
+
+        @OnWebSocketConnect
+        public void onConnect(Session session) {
+            listener.onOpen(new JettyConnection(session));
+        }
+
+        @OnWebSocketFrame
+        public void onFrame(Frame frame) {
+            if (frame.getType() == Frame.Type.TEXT || (frame.getType() == Frame.Type.CONTINUATION && receivingText)) {
+                receivingText = !frame.isFin();
+                listener.onTextFrame(frame.getPayload(), frame.isFin());
+            } else if (frame.getType() == Frame.Type.PONG) {
+                listener.onPong(frame.getPayload());
+            }
+        }
+
+        @OnWebSocketClose
+        public void onClose(int statusCode, String reason) {
+            listener.onClose(statusCode, reason);
+        }
+    }
+
+    /**
+     * Open Jetty session
+     */
+    private static class JettyConnection implements Connection {
+        private final Session session;
+        private SuspendToken suspendToken;
+
+        JettyConnection(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return session.isOpen();
+        }
+
+        @Override
+        public void sendText(String message) throws IOException {
+            session.getRemote().sendString(message);
+        }
+
+        @Override
+        public void sendText(String message, final SendCallback callback) {
+            session.getRemote().sendString(message, new WriteCallback() {
+                @Override
+                public void writeFailed(Throwable x) {
+                    callback.onFailure(x);
+                }
+
+                @Override
+                public void writeSuccess() {
+                    callback.onSuccess();
+                }
+            });
+        }
+
+        @Override
+        public void sendPing(ByteBuffer payload) throws IOException {
+            session.getRemote().sendPing(payload);
+        }
+
+        @Override
+        public synchronized void suspendReads() {
+            if (suspendToken == null) {
+                suspendToken = session.suspend();
+            }
+        }
+
+        @Override
+        public synchronized void resumeReads() {
+            if (suspendToken != null) {
+                suspendToken.resume();
+                suspendToken = null;
+            }
+        }
+
+        @Override
+        public void close(int statusCode, String reason) {
+            session.close(statusCode, reason);
+        }
+    }
+}
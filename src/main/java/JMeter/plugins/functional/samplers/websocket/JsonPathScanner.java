@@ -0,0 +1,403 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the value of a simple JSON path like $.order.items[0].price without parsing the document.
+ * <p>
+ * The scanner descends only into the members on the path and skips everything else character by character. It
+ * stops as soon as the value is found or can't exist anymore, so the rest of the document is never read. A document
+ * embedded in a JSON string, like the body of a STOMP frame in a SockJS message, is scanned in place.
+ */
+public class JsonPathScanner {
+
+    private final String path;
+    //Member name (String) or array index (Integer) of every step
+    private final Object[] steps;
+
+    private JsonPathScanner(String path, Object[] steps) {
+        this.path = path;
+        this.steps = steps;
+    }
+
+    /**
+     * @param path dot separated member names with optional array indexes, starting with $ or not
+     */
+    public static JsonPathScanner compile(String path) {
+        String text = path.trim();
+        int i = text.startsWith("$") ? 1 : 0;
+        List<Object> steps = new ArrayList<>();
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                i++;
+            } else if (c == '[') {
+                int end = text.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed index in JSON path " + path);
+                }
+                String index = text.substring(i + 1, end).trim();
+                if (index.length() > 1 && (index.charAt(0) == '\'' || index.charAt(0) == '"')) {
+                    steps.add(index.substring(1, index.length() - 1));
+                } else {
+                    try {
+                        steps.add(Integer.valueOf(index));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid index " + index + " in JSON path " + path);
+                    }
+                }
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < text.length() && text.charAt(end) != '.' && text.charAt(end) != '[') {
+                    end++;
+                }
+                steps.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        return new JsonPathScanner(path, steps.toArray());
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the value at the path, unescaped for strings and raw JSON for other values, or null if there is none
+     */
+    public String find(CharSequence json) {
+        return find(json, 0, json.length(), false);
+    }
+
+    /**
+     * Finds the value in a range of the text without copying the range
+     *
+     * @param escaped true if the range is the content of a JSON string, like the body of a STOMP frame in a SockJS
+     *                message; its escapes are resolved character by character while scanning
+     */
+    public String find(CharSequence text, int start, int end, boolean escaped) {
+        Cursor cursor = new Cursor(text, start, end, escaped);
+        for (Object step : steps) {
+            cursor.skipWhitespace();
+            if (step instanceof String ? !cursor.enterMember((String) step) : !cursor.enterElement((Integer) step)) {
+                return null;
+            }
+        }
+        cursor.skipWhitespace();
+        return cursor.readValue();
+    }
+
+    /**
+     * Position in the document. Inside an enclosing JSON string the cursor moves over whole escape sequences of
+     * that string, so the document is read as if it had been unescaped first.
+     */
+    private static class Cursor {
+        private final CharSequence text;
+        private final int end;
+        private final boolean escaped;
+        private int pos;
+
+        Cursor(CharSequence text, int start, int end, boolean escaped) {
+            this.text = text;
+            this.pos = start;
+            this.end = Math.min(end, text.length());
+            this.escaped = escaped;
+        }
+
+        private boolean more() {
+            return pos < end;
+        }
+
+        /**
+         * @return the character at the position, with an escape of the enclosing string resolved
+         */
+        private char peek() {
+            char c = text.charAt(pos);
+            if (!escaped || c != '\\' || pos + 1 >= end) {
+                return c;
+            }
+            char next = text.charAt(pos + 1);
+            switch (next) {
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'u':
+                    int unicode = hex(pos + 2);
+                    return unicode >= 0 ? (char) unicode : next;
+                default:
+                    return next;
+            }
+        }
+
+        /**
+         * Moves after the character at the position
+         */
+        private void advance() {
+            if (!escaped || text.charAt(pos) != '\\' || pos + 1 >= end) {
+                pos++;
+            } else if (text.charAt(pos + 1) == 'u' && hex(pos + 2) >= 0) {
+                pos += 6;
+            } else {
+                pos += 2;
+            }
+        }
+
+        private char next() {
+            char c = peek();
+            advance();
+            return c;
+        }
+
+        /**
+         * @return value of the four hex digits at the index, -1 if there are none
+         */
+        private int hex(int index) {
+            if (index + 4 > end) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = index; i < index + 4; i++) {
+                int digit = Character.digit(text.charAt(i), 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = value * 16 + digit;
+            }
+            return value;
+        }
+
+        /**
+         * Moves to the value of the member of the object at the position
+         */
+        boolean enterMember(String name) {
+            if (!consume('{')) {
+                return false;
+            }
+            while (true) {
+                skipWhitespace();
+                if (!more() || peek() != '"') {
+                    return false;
+                }
+                boolean found = readStringEquals(name);
+                skipWhitespace();
+                if (!consume(':')) {
+                    return false;
+                }
+                skipWhitespace();
+                if (found) {
+                    return true;
+                }
+                if (!skipValue()) {
+                    return false;
+                }
+                skipWhitespace();
+                if (!consume(',')) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Moves to the element of the array at the position
+         */
+        boolean enterElement(int index) {
+            if (!consume('[')) {
+                return false;
+            }
+            for (int i = 0; i < index; i++) {
+                skipWhitespace();
+                if (!skipValue()) {
+                    return false;
+                }
+                skipWhitespace();
+                if (!consume(',')) {
+                    return false;
+                }
+            }
+            skipWhitespace();
+            return more() && peek() != ']';
+        }
+
+        String readValue() {
+            if (!more()) {
+                return null;
+            }
+            if (peek() == '"') {
+                StringBuilder value = new StringBuilder();
+                return readString(value) ? value.toString() : null;
+            }
+            int start = pos;
+            if (!skipValue()) {
+                return null;
+            }
+            return slice(start, pos);
+        }
+
+        /**
+         * @return the characters between the positions, unescaped inside an enclosing string
+         */
+        private String slice(int start, int stop) {
+            if (!escaped) {
+                return text.subSequence(start, stop).toString();
+            }
+            int saved = pos;
+            StringBuilder value = new StringBuilder(stop - start);
+            pos = start;
+            while (pos < stop) {
+                value.append(next());
+            }
+            pos = saved;
+            return value.toString();
+        }
+
+        /**
+         * Compares the string at the position with the name and moves after it
+         */
+        private boolean readStringEquals(String name) {
+            advance();
+            int matched = 0;
+            boolean equal = true;
+            while (more()) {
+                char c = next();
+                if (c == '"') {
+                    return equal && matched == name.length();
+                }
+                if (c == '\\') {
+                    c = unescape();
+                }
+                if (equal && (matched >= name.length() || name.charAt(matched) != c)) {
+                    equal = false;
+                }
+                matched++;
+            }
+            return false;
+        }
+
+        private boolean readString(StringBuilder value) {
+            advance();
+            while (more()) {
+                char c = next();
+                if (c == '"') {
+                    return true;
+                }
+                value.append(c == '\\' ? unescape() : c);
+            }
+            return false;
+        }
+
+        /**
+         * Resolves the escape sequence of the document after a backslash
+         */
+        private char unescape() {
+            if (!more()) {
+                return '\\';
+            }
+            char c = next();
+            switch (c) {
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'u':
+                    int saved = pos;
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = more() ? Character.digit(next(), 16) : -1;
+                        if (digit < 0) {
+                            pos = saved;
+                            return c;
+                        }
+                        value = value * 16 + digit;
+                    }
+                    return (char) value;
+                default:
+                    return c;
+            }
+        }
+
+        /**
+         * Moves after the value at the position
+         */
+        private boolean skipValue() {
+            if (!more()) {
+                return false;
+            }
+            char c = peek();
+            if (c == '"') {
+                return skipString();
+            }
+            if (c == '{' || c == '[') {
+                int depth = 0;
+                while (more()) {
+                    c = peek();
+                    if (c == '"') {
+                        if (!skipString()) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    advance();
+                    if (depth == 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            int start = pos;
+            //A STOMP frame terminator ends a value at the top of the body
+            while (more() && ",}] \t\r\n\u0000".indexOf(peek()) < 0) {
+                advance();
+            }
+            return pos > start;
+        }
+
+        private boolean skipString() {
+            advance();
+            while (more()) {
+                char c = next();
+                if (c == '\\') {
+                    if (more()) {
+                        advance();
+                    }
+                } else if (c == '"') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean consume(char expected) {
+            if (more() && peek() == expected) {
+                advance();
+                return true;
+            }
+            return false;
+        }
+
+        void skipWhitespace() {
+            while (more() && Character.isWhitespace(peek())) {
+                advance();
+            }
+        }
+    }
+}
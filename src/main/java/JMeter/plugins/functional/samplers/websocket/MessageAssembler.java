@@ -0,0 +1,283 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Decodes text frames of one connection chunk by chunk.
+ * <p>
+ * Messages up to the streaming threshold are assembled and handed over whole. Larger messages are never
+ * materialized: patterns are matched incrementally on every chunk, with an overlap of {@link #MATCH_OVERLAP}
+ * characters between chunks, and only a bounded prefix of the message is kept.
+ * <p>
+ * Decoding of a frame finishes before the frame is handed back, so the decoder and its chunk buffer are shared by
+ * the connections of an I/O thread. The message buffer is allocated on the first frame and released when the message
+ * is complete; an idle connection holds no buffers.
+ */
+public class MessageAssembler {
+
+    public static final int DEFAULT_STREAMING_THRESHOLD = 1024 * 1024; //characters
+    public static final int DEFAULT_STREAMING_PREFIX = 4096; //characters
+
+    //Matches spanning more characters across a chunk boundary are not found
+    public static final int MATCH_OVERLAP = 1024;
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int INITIAL_MESSAGE_CAPACITY = 1024;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static final ThreadLocal<Decoder> decoders = new ThreadLocal<Decoder>() {
+        @Override
+        protected Decoder initialValue() {
+            return new Decoder();
+        }
+    };
+
+    /**
+     * UTF-8 decoder of an I/O thread; it keeps no state between frames, bytes of an incomplete character are carried
+     * by the assembler
+     */
+    private static class Decoder {
+        final CharsetDecoder charset = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharBuffer chunk = CharBuffer.allocate(CHUNK_SIZE);
+    }
+
+    /**
+     * Result of a message that exceeded the streaming threshold
+     */
+    public static class StreamedMessage {
+        public final String prefix;
+        public final long length;
+        public final long bytes;
+        public final boolean[] matched;
+
+        StreamedMessage(String prefix, long length, long bytes, boolean[] matched) {
+            this.prefix = prefix;
+            this.length = length;
+            this.bytes = bytes;
+            this.matched = matched;
+        }
+    }
+
+    /**
+     * Receiver of assembled and streamed messages
+     */
+    public interface Listener {
+        void onMessage(String message, long bytes);
+
+        /**
+         * @return patterns to match incrementally; a null pattern is reported as matched
+         */
+        Pattern[] getStreamingPatterns();
+
+        void onStreamedMessage(StreamedMessage message);
+    }
+
+    private final Listener listener;
+    //Bytes of a character split between frames, ready to read
+    private ByteBuffer carry;
+    private int threshold = DEFAULT_STREAMING_THRESHOLD;
+    private int prefixLimit = DEFAULT_STREAMING_PREFIX;
+
+    private boolean receiving = false;
+    private StringBuilder message;
+    private long bytes;
+
+    //State of a streamed message
+    private boolean streaming = false;
+    private long length;
+    private StringBuilder window;
+    private Pattern[] patterns;
+    private boolean[] matched;
+
+    public MessageAssembler(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setLimits(int threshold, int prefixLimit) {
+        this.threshold = Math.max(0, threshold);
+        this.prefixLimit = Math.max(0, prefixLimit);
+    }
+
+    public boolean isReceiving() {
+        return receiving;
+    }
+
+    /**
+     * @return true if buffers of a message are held
+     */
+    boolean hasBuffers() {
+        return message != null || carry != null || window != null;
+    }
+
+    /**
+     * @param payload text or continuation frame payload, may be null for an empty frame
+     * @param fin     true for the last frame of the message
+     */
+    public void onTextFrame(ByteBuffer payload, boolean fin) {
+        if (!receiving) {
+            receiving = true;
+            bytes = 0;
+        }
+
+        Decoder decoder = decoders.get();
+        decoder.charset.reset();
+        if (payload != null && payload.hasRemaining()) {
+            ByteBuffer in = payload.slice();
+            bytes += in.remaining();
+            if (carry != null) {
+                //Prepend the incomplete character left from the previous frame
+                ByteBuffer joined = ByteBuffer.allocate(carry.remaining() + in.remaining());
+                joined.put(carry).put(in).flip();
+                carry = null;
+                in = joined;
+            }
+            decode(decoder, in, false);
+            if (in.hasRemaining()) {
+                carry = ByteBuffer.allocate(in.remaining());
+                carry.put(in).flip();
+            }
+        }
+
+        if (fin) {
+            decode(decoder, carry != null ? carry : EMPTY, true);
+            carry = null;
+            complete();
+        }
+    }
+
+    /**
+     * @param text part of a message already decoded by the client stack
+     * @param last true for the last part of the message
+     */
+    public void onText(CharSequence text, boolean last) {
+        if (!receiving) {
+            receiving = true;
+            bytes = 0;
+        }
+
+        int length = text.length();
+        bytes += utf8Length(text);
+        for (int start = 0; start < length; start += CHUNK_SIZE) {
+            CharSequence part = length <= CHUNK_SIZE ? text : text.subSequence(start, Math.min(length, start + CHUNK_SIZE));
+            append(part);
+        }
+
+        if (last) {
+            complete();
+        }
+    }
+
+    /**
+     * @return size of the text encoded as UTF-8
+     */
+    static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void decode(Decoder decoder, ByteBuffer in, boolean endOfInput) {
+        CharBuffer chunk = decoder.chunk;
+        while (decoder.charset.decode(in, chunk, endOfInput).isOverflow()) {
+            consume(chunk);
+        }
+        if (endOfInput) {
+            while (decoder.charset.flush(chunk).isOverflow()) {
+                consume(chunk);
+            }
+        }
+        consume(chunk);
+    }
+
+    private void consume(CharBuffer chunk) {
+        chunk.flip();
+        if (chunk.hasRemaining()) {
+            append(chunk);
+        }
+        chunk.clear();
+    }
+
+    private void append(CharSequence text) {
+        if (!streaming && (message == null ? 0 : message.length()) + text.length() > threshold) {
+            startStreaming();
+        }
+        if (streaming) {
+            stream(text);
+        } else {
+            if (message == null) {
+                message = new StringBuilder(Math.max(INITIAL_MESSAGE_CAPACITY, text.length()));
+            }
+            message.append(text);
+        }
+    }
+
+    private void startStreaming() {
+        streaming = true;
+        length = 0;
+        patterns = listener.getStreamingPatterns();
+        matched = new boolean[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            matched[i] = patterns[i] == null;
+        }
+        window = new StringBuilder(MATCH_OVERLAP + CHUNK_SIZE);
+
+        //Characters assembled so far become the first chunk
+        String assembled = message == null ? "" : message.toString();
+        message = new StringBuilder(prefixLimit);
+        stream(CharBuffer.wrap(assembled));
+    }
+
+    private void stream(CharSequence text) {
+        length += text.length();
+        if (message.length() < prefixLimit) {
+            message.append(text, 0, Math.min(text.length(), prefixLimit - message.length()));
+        }
+
+        int keep = Math.min(window.length(), MATCH_OVERLAP);
+        window.delete(0, window.length() - keep);
+        window.append(text);
+        for (int i = 0; i < patterns.length; i++) {
+            if (!matched[i] && patterns[i].matcher(window).find()) {
+                matched[i] = true;
+            }
+        }
+    }
+
+    private void complete() {
+        receiving = false;
+        if (streaming) {
+            StreamedMessage streamed = new StreamedMessage(message.toString(), length, bytes, matched);
+            streaming = false;
+            window = null;
+            patterns = null;
+            matched = null;
+            message = null;
+            listener.onStreamedMessage(streamed);
+            return;
+        }
+
+        String text = message == null ? "" : message.toString();
+        message = null;
+        listener.onMessage(text, bytes);
+    }
+}
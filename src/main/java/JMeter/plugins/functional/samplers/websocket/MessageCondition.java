@@ -0,0 +1,149 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Match condition on the structure of a message instead of its raw text.
+ * <p>
+ * Clauses are joined by &amp;&amp; and all of them must hold. A clause targets the STOMP command (command), a
+ * header (header.name) or a JSON path in the body ($.path), followed by =value, !=value, ~regex or nothing to only
+ * require the target to exist. Messages that aren't STOMP frames are matched as a JSON body. Clauses are evaluated
+ * in order and evaluation stops at the first one that fails.
+ */
+public class MessageCondition {
+
+    private static final int COMMAND = 0;
+    private static final int HEADER = 1;
+    private static final int JSON = 2;
+
+    private static final int EXISTS = 0;
+    private static final int EQUALS = 1;
+    private static final int NOT_EQUALS = 2;
+    private static final int MATCHES = 3;
+
+    /**
+     * One target and operator
+     */
+    private static class Clause {
+        int target;
+        String name;
+        JsonPathScanner path;
+        int operator;
+        String value;
+        Pattern pattern;
+    }
+
+    private final String source;
+    private final Clause[] clauses;
+
+    private MessageCondition(String source, List<Clause> clauses) {
+        this.source = source;
+        this.clauses = clauses.toArray(new Clause[clauses.size()]);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a clause can't be parsed
+     */
+    public static MessageCondition compile(String text) {
+        List<Clause> clauses = new ArrayList<>();
+        for (String part : text.split("&&")) {
+            String clauseText = part.trim();
+            if (clauseText.isEmpty()) {
+                continue;
+            }
+            clauses.add(parseClause(clauseText));
+        }
+        if (clauses.isEmpty()) {
+            throw new IllegalArgumentException("Empty condition");
+        }
+        return new MessageCondition(text, clauses);
+    }
+
+    private static Clause parseClause(String text) {
+        Clause clause = new Clause();
+        int i = 0;
+        while (i < text.length() && "=!~".indexOf(text.charAt(i)) < 0) {
+            i++;
+        }
+        String target = text.substring(0, i).trim();
+        if (i == text.length()) {
+            clause.operator = EXISTS;
+        } else if (text.startsWith("!=", i)) {
+            clause.operator = NOT_EQUALS;
+            clause.value = text.substring(i + 2).trim();
+        } else if (text.charAt(i) == '=') {
+            clause.operator = EQUALS;
+            clause.value = text.substring(i + 1).trim();
+        } else if (text.charAt(i) == '~') {
+            clause.operator = MATCHES;
+            clause.value = text.substring(i + 1).trim();
+            clause.pattern = Pattern.compile(clause.value);
+        } else {
+            throw new IllegalArgumentException("Invalid operator in condition " + text);
+        }
+
+        if (target.equals("command")) {
+            clause.target = COMMAND;
+        } else if (target.startsWith("header.") && target.length() > "header.".length()) {
+            clause.target = HEADER;
+            clause.name = target.substring("header.".length());
+        } else if (target.startsWith("$")) {
+            clause.target = JSON;
+            clause.path = JsonPathScanner.compile(target);
+        } else {
+            throw new IllegalArgumentException("Unknown target " + target + " in condition " + text
+                    + "; use command, header.name or $.path");
+        }
+        return clause;
+    }
+
+    /**
+     * @return true if the message satisfies all clauses
+     */
+    public boolean test(CharSequence message) {
+        return test(message, StompFrame.parse(message));
+    }
+
+    /**
+     * @param frame the message parsed once by the caller for all conditions, null if it isn't a STOMP frame
+     * @return true if the message satisfies all clauses
+     */
+    public boolean test(CharSequence message, StompFrame frame) {
+        for (Clause clause : clauses) {
+            String actual;
+            if (clause.target == COMMAND) {
+                actual = frame != null ? frame.getCommand() : null;
+            } else if (clause.target == HEADER) {
+                actual = frame != null ? frame.getHeader(clause.name) : null;
+            } else {
+                //JSON paths are found in place, the body is neither copied nor unescaped
+                actual = frame != null ? frame.findInBody(clause.path) : clause.path.find(message);
+            }
+
+            if (!holds(clause, actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean holds(Clause clause, String actual) {
+        switch (clause.operator) {
+            case EQUALS:
+                return clause.value.equals(actual);
+            case NOT_EQUALS:
+                return actual != null && !clause.value.equals(actual);
+            case MATCHES:
+                return actual != null && clause.pattern.matcher(actual).find();
+            default:
+                return actual != null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,128 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps a bounded selection of the messages received during a sample, attached to it as sub-results.
+ * <p>
+ * Either every message, every n-th message or a uniform random sample (reservoir sampling) is kept, never more
+ * than the limit, so high-rate subscriptions don't produce a result per message.
+ */
+public class MessageRecorder {
+
+    public static final String MODE_OFF = "Off";
+    public static final String MODE_ALL = "All";
+    public static final String MODE_EVERY_N = "1 in N";
+    public static final String MODE_RESERVOIR = "Reservoir";
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * A kept message
+     */
+    public static class Message {
+        private final int number;
+        private final long arrival;
+        private final long bytes;
+        private final String text;
+
+        Message(int number, long arrival, long bytes, String text) {
+            this.number = number;
+            this.arrival = arrival;
+            this.bytes = bytes;
+            this.text = text;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * @return epoch milliseconds the message was received
+         */
+        public long getArrival() {
+            return arrival;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private boolean recording = false;
+    private String mode = MODE_OFF;
+    private int rate = 1;
+    private int limit = DEFAULT_LIMIT;
+    private long seen;
+    private List<Message> kept = new ArrayList<>();
+
+    /**
+     * Starts keeping the messages of a new sample
+     */
+    public synchronized void begin(String mode, int rate, int limit) {
+        this.mode = mode;
+        this.rate = Math.max(1, rate);
+        this.limit = Math.max(0, limit);
+        recording = !MODE_OFF.equals(mode) && this.limit > 0;
+        seen = 0;
+        kept = new ArrayList<>(Math.min(this.limit, DEFAULT_LIMIT));
+    }
+
+    public synchronized boolean isRecording() {
+        return recording;
+    }
+
+    public synchronized void record(int number, long bytes, String text) {
+        if (!recording) {
+            return;
+        }
+        long index = seen++;
+        if (MODE_RESERVOIR.equals(mode)) {
+            if (kept.size() < limit) {
+                kept.add(new Message(number, System.currentTimeMillis(), bytes, text));
+            } else {
+                long slot = ThreadLocalRandom.current().nextLong(index + 1);
+                if (slot < limit) {
+                    kept.set((int) slot, new Message(number, System.currentTimeMillis(), bytes, text));
+                }
+            }
+        } else if (kept.size() < limit && (MODE_ALL.equals(mode) || index % rate == 0)) {
+            kept.add(new Message(number, System.currentTimeMillis(), bytes, text));
+        }
+    }
+
+    /**
+     * Stops recording
+     *
+     * @return kept messages in the order they were received
+     */
+    public synchronized List<Message> finish() {
+        recording = false;
+        List<Message> messages = kept;
+        kept = new ArrayList<>();
+        if (MODE_RESERVOIR.equals(mode)) {
+            Collections.sort(messages, new Comparator<Message>() {
+                @Override
+                public int compare(Message a, Message b) {
+                    return Integer.compare(a.number, b.number);
+                }
+            });
+        }
+        return messages;
+    }
+
+    /**
+     * @return messages received since recording began, kept or not
+     */
+    public synchronized long getSeen() {
+        return seen;
+    }
+}
@@ -0,0 +1,365 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies a message against several regular expressions in one pass.
+ * <p>
+ * A literal every match of a pattern must contain is extracted from each pattern. All literals are searched at once
+ * with an Aho-Corasick automaton; a pattern whose literal doesn't occur is rejected without running its regular
+ * expression, and a pattern that is only a literal is accepted without it. Patterns without a usable literal are
+ * always matched by the regular expression.
+ */
+public class MultiPatternMatcher {
+
+    private static final int MAX_LITERALS = 32;
+    private static final int ASCII = 128;
+
+    private final Pattern[] patterns;
+    //Index of the literal of the pattern, -1 if the pattern has none
+    private final int[] literalOf;
+    //True if a pattern matches exactly when its literal occurs
+    private final boolean[] exact;
+    private final int allLiterals;
+
+    //Automaton over the characters of the literals
+    private final int[] asciiIndex = new int[ASCII];
+    private final char[] alphabet;
+    private final int[] transitions;
+    private final int[] outputs;
+
+    public MultiPatternMatcher(Pattern... patterns) {
+        this.patterns = patterns.clone();
+        literalOf = new int[patterns.length];
+        exact = new boolean[patterns.length];
+
+        List<String> literals = new ArrayList<>();
+        for (int i = 0; i < patterns.length; i++) {
+            String literal = patterns[i] != null && literals.size() < MAX_LITERALS ? getRequiredLiteral(patterns[i]) : null;
+            if (literal == null) {
+                literalOf[i] = -1;
+                continue;
+            }
+            int index = literals.indexOf(literal);
+            if (index < 0) {
+                index = literals.size();
+                literals.add(literal);
+            }
+            literalOf[i] = index;
+            exact[i] = isLiteral(patterns[i]);
+        }
+        allLiterals = literals.isEmpty() ? 0 : (int) ((1L << literals.size()) - 1);
+
+        StringBuilder characters = new StringBuilder();
+        for (String literal : literals) {
+            characters.append(literal);
+        }
+        char[] chars = characters.toString().toCharArray();
+        Arrays.sort(chars);
+        int distinct = 0;
+        for (int i = 0; i < chars.length; i++) {
+            if (i == 0 || chars[i] != chars[i - 1]) {
+                chars[distinct++] = chars[i];
+            }
+        }
+        alphabet = Arrays.copyOf(chars, distinct);
+        Arrays.fill(asciiIndex, -1);
+        for (int i = 0; i < alphabet.length; i++) {
+            if (alphabet[i] < ASCII) {
+                asciiIndex[alphabet[i]] = i;
+            }
+        }
+
+        int states = 1;
+        for (String literal : literals) {
+            states += literal.length();
+        }
+        int[] delta = new int[states * Math.max(1, alphabet.length)];
+        int[] output = new int[states];
+        Arrays.fill(delta, -1);
+        int used = 1;
+        for (int l = 0; l < literals.size(); l++) {
+            int state = 0;
+            for (char c : literals.get(l).toCharArray()) {
+                int slot = state * alphabet.length + indexOf(c);
+                if (delta[slot] < 0) {
+                    delta[slot] = used++;
+                }
+                state = delta[slot];
+            }
+            output[state] |= 1 << l;
+        }
+
+        //Breadth-first pass turns the trie into a deterministic automaton following the failure links
+        int[] failure = new int[used];
+        int[] queue = new int[used];
+        int head = 0;
+        int tail = 0;
+        for (int a = 0; a < alphabet.length; a++) {
+            if (delta[a] < 0) {
+                delta[a] = 0;
+            } else {
+                failure[delta[a]] = 0;
+                queue[tail++] = delta[a];
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            output[state] |= output[failure[state]];
+            for (int a = 0; a < alphabet.length; a++) {
+                int slot = state * alphabet.length + a;
+                int fallback = delta[failure[state] * alphabet.length + a];
+                if (delta[slot] < 0) {
+                    delta[slot] = fallback;
+                } else {
+                    failure[delta[slot]] = fallback;
+                    queue[tail++] = delta[slot];
+                }
+            }
+        }
+        transitions = delta;
+        outputs = output;
+    }
+
+    /**
+     * @return index of the first pattern that matches the text, -1 if none does; null patterns never match
+     */
+    public int firstMatch(CharSequence text) {
+        return firstMatch(text, 0);
+    }
+
+    /**
+     * @param from index of the first pattern to try
+     */
+    public int firstMatch(CharSequence text, int from) {
+        int found = allLiterals != 0 ? findLiterals(text) : 0;
+        for (int i = from; i < patterns.length; i++) {
+            if (patterns[i] == null) {
+                continue;
+            }
+            int literal = literalOf[i];
+            if (literal >= 0 && (found & (1 << literal)) == 0) {
+                continue;
+            }
+            if ((literal >= 0 && exact[i]) || patterns[i].matcher(text).find()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return bit set of the literals occurring in the text
+     */
+    private int findLiterals(CharSequence text) {
+        int found = 0;
+        int state = 0;
+        int width = alphabet.length;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            int a = indexOf(text.charAt(i));
+            if (a < 0) {
+                state = 0;
+                continue;
+            }
+            state = transitions[state * width + a];
+            if (outputs[state] != 0) {
+                found |= outputs[state];
+                if (found == allLiterals) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    private int indexOf(char c) {
+        if (c < ASCII) {
+            return asciiIndex[c];
+        }
+        int index = Arrays.binarySearch(alphabet, c);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return true if the pattern matches its text literally
+     */
+    private static boolean isLiteral(Pattern pattern) {
+        if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            return true;
+        }
+        if (pattern.flags() != 0) {
+            return false;
+        }
+        String regex = pattern.pattern();
+        for (int i = 0; i < regex.length(); i++) {
+            if (isMeta(regex.charAt(i))) {
+                return false;
+            }
+        }
+        return !regex.isEmpty();
+    }
+
+    /**
+     * Finds the longest run of literal characters outside groups, alternations and quantifiers, which every match
+     * contains
+     *
+     * @return the literal or null if the pattern has none that is safe to use
+     */
+    static String getRequiredLiteral(Pattern pattern) {
+        String regex = pattern.pattern();
+        if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            return regex.isEmpty() ? null : regex;
+        }
+        if (pattern.flags() != 0 || hasTopLevelAlternation(regex)) {
+            return null;
+        }
+
+        String longest = null;
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '(' && i + 1 < regex.length() && regex.charAt(i + 1) == '?' && i + 2 < regex.length()
+                    && Character.isLetter(regex.charAt(i + 2))) {
+                //Inline flags may change how the characters are matched
+                return null;
+            }
+
+            int next = i + 1;
+            char literal = 0;
+            boolean isLiteral = false;
+            if (c == '\\' && i + 1 < regex.length()) {
+                char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    return null;
+                }
+                next = skipEscape(regex, i);
+                isLiteral = !Character.isLetterOrDigit(escaped);
+                literal = escaped;
+            } else if (c == '[') {
+                next = skipClass(regex, i);
+                if (next < 0) {
+                    return null;
+                }
+            } else if (c == '{') {
+                //Bounds of the quantifier of the previous character
+                int close = regex.indexOf('}', i);
+                next = close < 0 ? regex.length() : close + 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (!isMeta(c)) {
+                isLiteral = true;
+                literal = c;
+            }
+
+            char quantifier = next < regex.length() ? regex.charAt(next) : 0;
+            boolean optional = quantifier == '?' || quantifier == '*' || quantifier == '{';
+            if (isLiteral && depth == 0 && !optional) {
+                run.append(literal);
+            }
+            if (!isLiteral || depth > 0 || optional || quantifier == '+') {
+                longest = longer(longest, run);
+                run.setLength(0);
+            }
+            i = next;
+        }
+        longest = longer(longest, run);
+        return longest;
+    }
+
+    /**
+     * @return index after the escape sequence starting at the backslash, including the arguments of the x, u, p, P, N,
+     * k and c escapes and the digits of an octal escape or of a back reference
+     */
+    private static int skipEscape(String regex, int start) {
+        int length = regex.length();
+        int i = start + 2;
+        char escaped = regex.charAt(start + 1);
+        switch (escaped) {
+            case 'x':
+            case 'p':
+            case 'P':
+            case 'N':
+                if (i < length && regex.charAt(i) == '{') {
+                    int close = regex.indexOf('}', i);
+                    return close < 0 ? length : close + 1;
+                }
+                return Math.min(length, i + (escaped == 'x' ? 2 : 1));
+            case 'u':
+                return Math.min(length, i + 4);
+            case 'c':
+                return Math.min(length, i + 1);
+            case 'k':
+                if (i < length && regex.charAt(i) == '<') {
+                    int close = regex.indexOf('>', i);
+                    return close < 0 ? length : close + 1;
+                }
+                return i;
+            default:
+                if (Character.isDigit(escaped)) {
+                    while (i < length && Character.isDigit(regex.charAt(i))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        if (run.length() > 0 && (longest == null || run.length() > longest.length())) {
+            return run.toString();
+        }
+        return longest;
+    }
+
+    static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                int end = skipClass(regex, i);
+                if (end < 0) {
+                    return true;
+                }
+                i = end - 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return index after the character class starting at the index, -1 if it isn't closed
+     */
+    private static int skipClass(String regex, int start) {
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && i > start + 1 && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isMeta(char c) {
+        return "\\[](){}.*+?^$|".indexOf(c) >= 0;
+    }
+}
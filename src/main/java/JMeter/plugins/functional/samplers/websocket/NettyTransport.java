@@ -0,0 +1,384 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport on Netty 4.1 for very high connection counts.
+ * <p>
+ * All Netty transports share one event loop group of websocket.netty.threads threads (the number of processors by
+ * default), on native epoll when it's available and NIO otherwise. Reads use pooled direct buffers and frames are
+ * handed to the listener without copying, so a connection costs its channel and pipeline but no thread.
+ */
+public class NettyTransport implements WebSocketTransport {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String THREADS_PROPERTY = "websocket.netty.threads";
+
+    private static final int ABNORMAL_CLOSURE = 1006;
+    private static final int NO_STATUS = 1005;
+    private static final int GOING_AWAY = 1001;
+
+    //Event loops shared by all started transports, shut down when the last one stops
+    private static final Object groupLock = new Object();
+    private static EventLoopGroup group;
+    private static int groupUsers;
+
+    private final TransportOptions options;
+    private SslContext sslContext;
+    private ChannelGroup channels;
+    private boolean started = false;
+
+    public NettyTransport(TransportOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public void start() throws Exception {
+        channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        acquireGroup();
+        started = true;
+    }
+
+    @Override
+    public Future<?> connect(final URI uri, List<HttpCookie> cookies, final Listener listener) throws IOException {
+        if (!started) {
+            throw new IOException("Transport isn't started");
+        }
+        final boolean secure = "wss".equalsIgnoreCase(uri.getScheme());
+        final String host = uri.getHost();
+        final int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        final SslContext sslContext = secure ? getSslContext() : null;
+
+        if (cookies == null && options.getCookieStore() != null) {
+            cookies = options.getCookieStore().get(uri);
+        }
+        HttpHeaders headers = new DefaultHttpHeaders();
+        if (cookies != null && !cookies.isEmpty()) {
+            StringBuilder cookieHeader = new StringBuilder();
+            for (HttpCookie cookie : cookies) {
+                if (cookieHeader.length() > 0) {
+                    cookieHeader.append("; ");
+                }
+                cookieHeader.append(cookie.getName()).append('=').append(cookie.getValue());
+            }
+            headers.set(HttpHeaderNames.COOKIE, cookieHeader.toString());
+        }
+
+        WebSocketClientHandshaker handshaker = WebSocketClientHandshakerFactory.newHandshaker(
+                uri, WebSocketVersion.V13, null, true, headers, options.getMaxMessageSize());
+        //The promise exists before the channel is registered, so the caller and the connect listener always have it
+        final Handler handler = new Handler(uri, handshaker, listener, new DefaultPromise<Void>(group.next()));
+
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, options.getConnectTimeout())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        ChannelPipeline pipeline = channel.pipeline();
+                        if (sslContext != null) {
+                            pipeline.addLast(sslContext.newHandler(channel.alloc(), host, port));
+                        }
+                        pipeline.addLast(new HttpClientCodec(), new HttpObjectAggregator(8192));
+                        if (options.getIdleTimeout() > 0) {
+                            pipeline.addLast(new IdleStateHandler(0, 0, options.getIdleTimeout(), TimeUnit.MILLISECONDS));
+                        }
+                        pipeline.addLast(handler);
+                    }
+                });
+        if (options.getBindAddress() != null) {
+            bootstrap.localAddress(new InetSocketAddress(options.getBindAddress(), 0));
+        }
+        if (options.getInputBufferSize() > 0) {
+            bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(options.getInputBufferSize()));
+        }
+
+        ChannelFuture connectFuture = bootstrap.connect(host, port);
+        channels.add(connectFuture.channel());
+        connectFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    log.debug("Cannot connect to " + uri + ": " + future.cause());
+                    handler.handshakeFuture.tryFailure(future.cause());
+                }
+            }
+        });
+        return handler.handshakeFuture;
+    }
+
+    private synchronized SslContext getSslContext() throws IOException {
+        if (sslContext == null) {
+            SslContextBuilder sslContextBuilder = SslContextBuilder.forClient();
+            if (options.isTrustAll()) {
+                sslContextBuilder.trustManager(InsecureTrustManagerFactory.INSTANCE);
+            }
+            sslContext = sslContextBuilder.build();
+        }
+        return sslContext;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (!started) {
+            return;
+        }
+        started = false;
+        channels.close().awaitUninterruptibly(options.getConnectTimeout());
+        releaseGroup();
+    }
+
+    private static void acquireGroup() {
+        synchronized (groupLock) {
+            if (group == null) {
+                int threads = JMeterUtils.getPropDefault(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+                DefaultThreadFactory threadFactory = new DefaultThreadFactory("WebSocketSampler-netty", true);
+                group = Epoll.isAvailable() ? new EpollEventLoopGroup(threads, threadFactory)
+                        : new NioEventLoopGroup(threads, threadFactory);
+                log.info("Netty transport on " + threads + (Epoll.isAvailable() ? " epoll" : " NIO") + " event loops");
+            }
+            groupUsers++;
+        }
+    }
+
+    private static void releaseGroup() {
+        synchronized (groupLock) {
+            if (--groupUsers == 0) {
+                group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+                group = null;
+            }
+        }
+    }
+
+    /**
+     * Completes the opening handshake and translates the frames of a connection to the listener; runs on the event
+     * loop of the channel only
+     */
+    private class Handler extends SimpleChannelInboundHandler<Object> {
+        private final URI uri;
+        private final WebSocketClientHandshaker handshaker;
+        private final Listener listener;
+        private final Promise<Void> handshakeFuture;
+        private boolean opened = false;
+        private boolean receivingText = false;
+        private int closeStatus = ABNORMAL_CLOSURE;
+        private String closeReason = "Disconnected";
+
+        Handler(URI uri, WebSocketClientHandshaker handshaker, Listener listener, Promise<Void> handshakeFuture) {
+            this.uri = uri;
+            this.handshaker = handshaker;
+            this.listener = listener;
+            this.handshakeFuture = handshakeFuture;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            handshaker.handshake(ctx.channel());
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            handshakeFuture.tryFailure(new IOException("Connection closed during the handshake"));
+            if (opened) {
+                opened = false;
+                listener.onClose(closeStatus, closeReason);
+            }
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+            Channel channel = ctx.channel();
+            if (!handshaker.isHandshakeComplete()) {
+                FullHttpResponse response = (FullHttpResponse) msg;
+                handshaker.finishHandshake(channel, response);
+                if (options.getCookieStore() != null) {
+                    for (String setCookie : response.headers().getAll(HttpHeaderNames.SET_COOKIE)) {
+                        for (HttpCookie cookie : HttpCookie.parse(setCookie)) {
+                            options.getCookieStore().add(uri, cookie);
+                        }
+                    }
+                }
+                opened = true;
+                handshakeFuture.trySuccess(null);
+                listener.onOpen(new NettyConnection(channel, this));
+                return;
+            }
+
+            WebSocketFrame frame = (WebSocketFrame) msg;
+            if (frame instanceof TextWebSocketFrame || (frame instanceof ContinuationWebSocketFrame && receivingText)) {
+                receivingText = !frame.isFinalFragment();
+                listener.onTextFrame(frame.content().nioBuffer(), frame.isFinalFragment());
+            } else if (frame instanceof PingWebSocketFrame) {
+                channel.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
+            } else if (frame instanceof PongWebSocketFrame) {
+                listener.onPong(frame.content().nioBuffer());
+            } else if (frame instanceof CloseWebSocketFrame) {
+                CloseWebSocketFrame close = (CloseWebSocketFrame) frame;
+                closeStatus = close.statusCode() != -1 ? close.statusCode() : NO_STATUS;
+                closeReason = close.reasonText();
+                channel.writeAndFlush(close.retainedDuplicate()).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+            if (event instanceof IdleStateEvent) {
+                closeLocally(ctx.channel(), GOING_AWAY, "Idle Timeout");
+            } else {
+                super.userEventTriggered(ctx, event);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.debug("Connection to " + uri + " failed: " + cause);
+            handshakeFuture.tryFailure(cause);
+            closeStatus = ABNORMAL_CLOSURE;
+            closeReason = String.valueOf(cause.getMessage());
+            ctx.close();
+        }
+
+        void closeLocally(Channel channel, int statusCode, String reason) {
+            closeStatus = statusCode;
+            closeReason = reason;
+            channel.writeAndFlush(new CloseWebSocketFrame(statusCode, reason)).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * Open Netty channel
+     */
+    private static class NettyConnection implements Connection {
+        private final Channel channel;
+        private final Handler handler;
+
+        NettyConnection(Channel channel, Handler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isActive();
+        }
+
+        @Override
+        public void sendText(String message) throws IOException {
+            ChannelFuture future = channel.writeAndFlush(new TextWebSocketFrame(message));
+            //Waiting on the event loop of the channel would block the write itself
+            if (channel.eventLoop().inEventLoop()) {
+                return;
+            }
+            future.awaitUninterruptibly();
+            if (!future.isSuccess()) {
+                throw new IOException("Cannot send the message", future.cause());
+            }
+        }
+
+        @Override
+        public void sendText(String message, final SendCallback callback) {
+            channel.writeAndFlush(new TextWebSocketFrame(message)).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    if (future.isSuccess()) {
+                        callback.onSuccess();
+                    } else {
+                        callback.onFailure(future.cause());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void sendPing(ByteBuffer payload) throws IOException {
+            if (!channel.isActive()) {
+                throw new IOException("Connection is closed");
+            }
+            channel.writeAndFlush(new PingWebSocketFrame(Unpooled.wrappedBuffer(payload)));
+        }
+
+        @Override
+        public void suspendReads() {
+            channel.config().setAutoRead(false);
+        }
+
+        @Override
+        public void resumeReads() {
+            channel.config().setAutoRead(true);
+        }
+
+        @Override
+        public void close(final int statusCode, final String reason) {
+            if (channel.eventLoop().inEventLoop()) {
+                handler.closeLocally(channel, statusCode, reason);
+            } else {
+                channel.eventLoop().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handler.closeLocally(channel, statusCode, reason);
+                    }
+                });
+            }
+        }
+    }
+}
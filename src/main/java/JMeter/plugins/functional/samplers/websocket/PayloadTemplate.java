@@ -0,0 +1,291 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.testelement.property.FunctionProperty;
+import org.apache.jmeter.testelement.property.JMeterProperty;
+import org.apache.jmeter.threads.JMeterVariables;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Payload compiled once into literal, variable and function segments and rendered into a reusable buffer.
+ * <p>
+ * Plain variable references (${name}) are looked up directly, other JMeter functions (including ${__name} without
+ * arguments) are parsed once and executed on every render. Like in JMeter, a payload with a reference unescapes \$,
+ * \, and \\ so that an escaped \${name} stays literal text. Built-in generators don't allocate: #{seq} (test-wide
+ * sequence number), #{timestamp} (epoch milliseconds), #{nanotime} and #{randomId} (16 random hex digits).
+ */
+public class PayloadTemplate {
+
+    public static final String STOMP_PREFIX = "[\"";
+    public static final String STOMP_SUFFIX = "\\n\\n\\u0000\"]";
+    private static final String STOMP_END = "\\u0000\"]";
+
+    private static final int LITERAL = 0;
+    private static final int VARIABLE = 1;
+    private static final int FUNCTION = 2;
+    private static final int SEQUENCE = 3;
+    private static final int TIMESTAMP = 4;
+    private static final int NANOTIME = 5;
+    private static final int RANDOM_ID = 6;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private final String source;
+    private final int[] kinds;
+    private final String[] texts;
+    private final CompoundVariable[] functions;
+
+    private PayloadTemplate(String source, List<Integer> kinds, List<String> texts, List<CompoundVariable> functions) {
+        this.source = source;
+        this.kinds = new int[kinds.size()];
+        for (int i = 0; i < this.kinds.length; i++) {
+            this.kinds[i] = kinds.get(i);
+        }
+        this.texts = texts.toArray(new String[texts.size()]);
+        this.functions = functions.toArray(new CompoundVariable[functions.size()]);
+    }
+
+    /**
+     * @return raw text of the property, with variables and functions not evaluated
+     */
+    public static String getSource(JMeterProperty property) {
+        if (property instanceof FunctionProperty) {
+            return ((CompoundVariable) property.getObjectValue()).getRawParameters();
+        }
+        return property.getStringValue();
+    }
+
+    public static PayloadTemplate compile(String source) {
+        List<Integer> kinds = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        List<CompoundVariable> functions = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        //JMeter only parses values with a reference, others keep their backslashes
+        boolean escapes = source.contains("${");
+
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (escapes && c == '\\' && i + 1 < source.length() && isEscapable(source.charAt(i + 1))) {
+                literal.append(source.charAt(i + 1));
+                i += 2;
+                continue;
+            }
+            int end = (c == '$' || c == '#') && i + 1 < source.length() && source.charAt(i + 1) == '{'
+                    ? findClosingBrace(source, i + 2) : -1;
+            if (end < 0) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+
+            String name = source.substring(i + 2, end);
+            int kind = c == '$' ? (isVariableName(name) ? VARIABLE : FUNCTION) : getGenerator(name);
+            if (kind == LITERAL) {
+                //Unknown generator, kept as it is
+                literal.append(source, i, end + 1);
+            } else {
+                if (literal.length() > 0) {
+                    add(kinds, texts, functions, LITERAL, literal.toString(), null);
+                    literal.setLength(0);
+                }
+                add(kinds, texts, functions, kind, name,
+                        kind == FUNCTION ? new CompoundVariable(source.substring(i, end + 1)) : null);
+            }
+            i = end + 1;
+        }
+        if (literal.length() > 0) {
+            add(kinds, texts, functions, LITERAL, literal.toString(), null);
+        }
+        return new PayloadTemplate(source, kinds, texts, functions);
+    }
+
+    private static void add(List<Integer> kinds, List<String> texts, List<CompoundVariable> functions,
+                            int kind, String text, CompoundVariable function) {
+        kinds.add(kind);
+        texts.add(text);
+        functions.add(function);
+    }
+
+    private static int findClosingBrace(String source, int from) {
+        int depth = 0;
+        for (int i = from; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same characters as the JMeter function parser unescapes
+     */
+    private static boolean isEscapable(char c) {
+        return c == '$' || c == ',' || c == '\\';
+    }
+
+    /**
+     * @return true for a variable reference, false for a function call; functions without arguments like
+     * ${__threadNum} are told apart by the prefix all JMeter functions share
+     */
+    private static boolean isVariableName(String name) {
+        if (name.isEmpty() || name.startsWith("__")) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '(' || c == ')' || c == '$' || c == '{' || c == ',' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getGenerator(String name) {
+        switch (name) {
+            case "seq":
+                return SEQUENCE;
+            case "timestamp":
+                return TIMESTAMP;
+            case "nanotime":
+                return NANOTIME;
+            case "randomId":
+                return RANDOM_ID;
+            default:
+                return LITERAL;
+        }
+    }
+
+    /**
+     * @return true if the template was compiled from the text
+     */
+    public boolean isCompiledFrom(String text) {
+        return source.equals(text);
+    }
+
+    /**
+     * @return name of the first variable of the template that isn't defined in the variables, null if there is none
+     */
+    public String getUndefinedVariable(JMeterVariables variables) {
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] == VARIABLE && (variables == null || variables.get(texts[i]) == null)) {
+                return texts[i];
+            }
+        }
+        return null;
+    }
+
+    public static void resetSequence() {
+        sequence.set(0);
+    }
+
+    /**
+     * Appends the rendered payload to the buffer
+     */
+    public void render(StringBuilder buffer, JMeterVariables variables) {
+        for (int i = 0; i < kinds.length; i++) {
+            renderSegment(buffer, i, variables);
+        }
+    }
+
+    /**
+     * Evaluates the variables and functions now, on the calling thread, with its JMeter context
+     *
+     * @return template of the same payload with only the generators left, safe to render on any thread
+     */
+    public PayloadTemplate resolve(JMeterVariables variables) {
+        List<Integer> resolvedKinds = new ArrayList<>();
+        List<String> resolvedTexts = new ArrayList<>();
+        List<CompoundVariable> resolvedFunctions = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] == LITERAL || kinds[i] == VARIABLE || kinds[i] == FUNCTION) {
+                renderSegment(literal, i, variables);
+                continue;
+            }
+            if (literal.length() > 0) {
+                add(resolvedKinds, resolvedTexts, resolvedFunctions, LITERAL, literal.toString(), null);
+                literal.setLength(0);
+            }
+            add(resolvedKinds, resolvedTexts, resolvedFunctions, kinds[i], texts[i], null);
+        }
+        if (literal.length() > 0) {
+            add(resolvedKinds, resolvedTexts, resolvedFunctions, LITERAL, literal.toString(), null);
+        }
+        return new PayloadTemplate(source, resolvedKinds, resolvedTexts, resolvedFunctions);
+    }
+
+    private void renderSegment(StringBuilder buffer, int i, JMeterVariables variables) {
+        switch (kinds[i]) {
+            case LITERAL:
+                buffer.append(texts[i]);
+                break;
+            case VARIABLE:
+                String value = variables != null ? variables.get(texts[i]) : null;
+                if (value != null) {
+                    buffer.append(value);
+                } else {
+                    //Same as JMeter, undefined variables are left as they are
+                    buffer.append("${").append(texts[i]).append('}');
+                }
+                break;
+            case FUNCTION:
+                buffer.append(functions[i].execute());
+                break;
+            case SEQUENCE:
+                buffer.append(sequence.incrementAndGet());
+                break;
+            case TIMESTAMP:
+                buffer.append(System.currentTimeMillis());
+                break;
+            case NANOTIME:
+                buffer.append(System.nanoTime());
+                break;
+            case RANDOM_ID:
+                long random = ThreadLocalRandom.current().nextLong();
+                for (int shift = 60; shift >= 0; shift -= 4) {
+                    buffer.append(HEX[(int) (random >>> shift) & 0xF]);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Renders the payload as a STOMP frame like [" ....\\n\\n\\u0000"] unless it is already one
+     *
+     * @param buffer reusable buffer, its content is replaced
+     * @return frame or empty string if the payload is blank
+     */
+    public String renderStompFrame(StringBuilder buffer, JMeterVariables variables) {
+        buffer.setLength(0);
+        buffer.append(STOMP_PREFIX);
+        render(buffer, variables);
+
+        boolean blank = true;
+        for (int i = STOMP_PREFIX.length(); i < buffer.length() && blank; i++) {
+            blank = Character.isWhitespace(buffer.charAt(i));
+        }
+        if (blank) {
+            return "";
+        }
+
+        int end = buffer.length() - STOMP_END.length();
+        if (end >= STOMP_PREFIX.length() && buffer.indexOf(STOMP_END, end) == end) {
+            return buffer.substring(STOMP_PREFIX.length());
+        }
+        buffer.append(STOMP_SUFFIX);
+        return buffer.toString();
+    }
+}
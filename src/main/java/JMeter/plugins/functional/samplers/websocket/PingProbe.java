@@ -0,0 +1,115 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the round trip time of WebSocket ping frames on an open connection.
+ * <p>
+ * Pings carry the System.nanoTime() of their sending as an 8-byte payload, which the server echoes in the pong, so
+ * no state is kept per ping. Pongs are answered by the WebSocket layer of the server, which separates network and
+ * transport latency from the processing time of the broker. Round trips are recorded per connection and per test.
+ */
+public class PingProbe {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int PAYLOAD_SIZE = 8;
+
+    private static final LatencyHistogram totalRtt = new LatencyHistogram();
+    private static final LongAdder totalSent = new LongAdder();
+
+    private final LatencyHistogram rtt = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private ScheduledFuture<?> task;
+
+    /**
+     * Starts pinging the connection every interval, replacing the pings of a previous connection
+     */
+    public synchronized void start(final WebSocketTransport.Connection connection, long intervalMillis) {
+        stop();
+        task = WebSocketSampler.getScheduler().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                //Blocking transports may wait for the write, keep the scheduler free
+                WebSocketSampler.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ping(connection);
+                    }
+                });
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private void ping(WebSocketTransport.Connection connection) {
+        if (!connection.isOpen()) {
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_SIZE);
+        payload.putLong(0, System.nanoTime());
+        try {
+            connection.sendPing(payload);
+            sent.increment();
+            totalSent.increment();
+        } catch (IOException e) {
+            log.debug("Cannot send ping: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the round trip of a pong; pongs without a timestamp of this probe are ignored
+     */
+    public void onPong(ByteBuffer payload) {
+        long now = System.nanoTime();
+        if (payload == null || payload.remaining() != PAYLOAD_SIZE) {
+            return;
+        }
+        long roundTrip = now - payload.getLong(payload.position());
+        rtt.record(roundTrip);
+        totalRtt.record(roundTrip);
+    }
+
+    /**
+     * @return round trips of this connection since the last reset
+     */
+    public LatencyHistogram getRtt() {
+        return rtt;
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public static LatencyHistogram getTotalRtt() {
+        return totalRtt;
+    }
+
+    public static void resetTotals() {
+        totalRtt.reset();
+        totalSent.reset();
+    }
+
+    public static void logSummary() {
+        if (totalSent.sum() > 0) {
+            log.info("Ping summary: " + totalSent.sum() + " pings sent, round trips " + totalRtt.summary());
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consumes the received messages of a connection at a fixed rate to simulate a slow consumer.
+ * <p>
+ * Messages are buffered as they arrive and handed to the consumer by a token bucket at the configured messages or
+ * bytes per second. When the buffer exceeds its limit, reads of the connection are suspended, so the backlog builds
+ * up in the socket buffers and at the broker, and resumed once half of the buffer is consumed. No thread sleeps:
+ * consumption is scheduled for the time the next message is allowed.
+ */
+public class ReadThrottle {
+
+    public static final String MESSAGES = "messages/s";
+    public static final String BYTES = "bytes/s";
+    public static final int DEFAULT_BUFFER = 65536;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final LongAdder totalBuffered = new LongAdder();
+    private static final LongAdder totalSuspensions = new LongAdder();
+    private static final LongAdder totalSuspendedNanos = new LongAdder();
+    private static final LongAdder totalEvictions = new LongAdder();
+
+    /**
+     * Receiver of the messages at the throttled rate
+     */
+    public interface Consumer {
+        void consumeMessage(String msg, long bytes);
+
+        void consumeStreamedMessage(MessageAssembler.StreamedMessage msg);
+    }
+
+    /**
+     * Buffered message
+     */
+    private static class Entry {
+        final String text;
+        final MessageAssembler.StreamedMessage streamed;
+        final long bytes;
+
+        Entry(String text, MessageAssembler.StreamedMessage streamed, long bytes) {
+            this.text = text;
+            this.streamed = streamed;
+            this.bytes = bytes;
+        }
+    }
+
+    private final Consumer consumer;
+    private final Deque<Entry> buffer = new ArrayDeque<>();
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private double rate;
+    private boolean bytes;
+    private long bufferLimit;
+    //Full bucket until the first configure caps it
+    private double tokens = Double.MAX_VALUE;
+    private long lastRefill = System.nanoTime();
+    private long buffered;
+    private boolean draining;
+    private WebSocketTransport.Connection connection;
+    private boolean suspended;
+    private long suspendedSince;
+    private long sampleMaxBuffered;
+    private long sampleSuspensions;
+    private long sampleSuspendedNanos;
+    private long sampleEvictions;
+
+    public ReadThrottle(Consumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * @param rate        messages or bytes per second, 0 or less to consume without limit
+     * @param unit        {@link #MESSAGES} or {@link #BYTES}
+     * @param bufferLimit buffered bytes above which reads are suspended
+     */
+    public synchronized void configure(double rate, String unit, long bufferLimit) {
+        this.rate = rate;
+        this.bytes = BYTES.equals(unit);
+        this.bufferLimit = Math.max(1, bufferLimit);
+        tokens = Math.min(tokens, getCapacity());
+    }
+
+    /**
+     * One tenth of a second of the rate may be consumed at once, but at least one message
+     */
+    private double getCapacity() {
+        return Math.max(1, rate / 10);
+    }
+
+    /**
+     * Sets the connection reads are suspended on, a new connection after a reconnect is suspended as well
+     */
+    public synchronized void setConnection(WebSocketTransport.Connection connection) {
+        this.connection = connection;
+        if (suspended) {
+            connection.suspendReads();
+        }
+    }
+
+    public void offer(String msg, long bytes) {
+        offer(new Entry(msg, null, bytes));
+    }
+
+    public void offer(MessageAssembler.StreamedMessage msg) {
+        offer(new Entry(null, msg, msg.bytes));
+    }
+
+    private void offer(Entry entry) {
+        synchronized (this) {
+            buffer.add(entry);
+            buffered += entry.bytes;
+            totalBuffered.add(entry.bytes);
+            sampleMaxBuffered = Math.max(sampleMaxBuffered, buffered);
+            if (!suspended && buffered >= bufferLimit && connection != null) {
+                suspended = true;
+                suspendedSince = System.nanoTime();
+                sampleSuspensions++;
+                totalSuspensions.increment();
+                connection.suspendReads();
+            }
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        WebSocketSampler.getExecutor().execute(drainTask);
+    }
+
+    /**
+     * Hands buffered messages to the consumer while tokens are available, then schedules itself for the next one.
+     * Only one drain runs at a time, so messages are consumed in order.
+     */
+    private void drain() {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                entry = buffer.peek();
+                if (entry == null) {
+                    draining = false;
+                    return;
+                }
+
+                if (rate > 0) {
+                    long now = System.nanoTime();
+                    tokens = Math.min(getCapacity(), tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+                    lastRefill = now;
+                    if (tokens <= 0) {
+                        //Larger messages than the bucket leave a debt which delays the next one
+                        long delay = (long) Math.ceil(-tokens * TimeUnit.SECONDS.toNanos(1) / rate) + 1;
+                        WebSocketSampler.getScheduler().schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                WebSocketSampler.getExecutor().execute(drainTask);
+                            }
+                        }, delay, TimeUnit.NANOSECONDS);
+                        return;
+                    }
+                    tokens -= bytes ? entry.bytes : 1;
+                }
+
+                buffer.poll();
+                buffered -= entry.bytes;
+                totalBuffered.add(-entry.bytes);
+                if (suspended && buffered <= bufferLimit / 2) {
+                    resume();
+                }
+            }
+
+            try {
+                if (entry.streamed != null) {
+                    consumer.consumeStreamedMessage(entry.streamed);
+                } else {
+                    consumer.consumeMessage(entry.text, entry.bytes);
+                }
+            } catch (RuntimeException e) {
+                log.error("Cannot consume message: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void resume() {
+        suspended = false;
+        long suspendedNanos = System.nanoTime() - suspendedSince;
+        sampleSuspendedNanos += suspendedNanos;
+        totalSuspendedNanos.add(suspendedNanos);
+        if (connection != null) {
+            connection.resumeReads();
+        }
+    }
+
+    /**
+     * Counts a close by the server while the consumer lags behind as an eviction of the slow consumer
+     */
+    public synchronized void onClosedByServer() {
+        if (suspended || buffered > 0) {
+            sampleEvictions++;
+            totalEvictions.increment();
+        }
+    }
+
+    public synchronized long getBuffered() {
+        return buffered;
+    }
+
+    public synchronized long getSampleMaxBuffered() {
+        return sampleMaxBuffered;
+    }
+
+    public synchronized long getSampleSuspensions() {
+        return sampleSuspensions;
+    }
+
+    /**
+     * @return milliseconds reads were suspended since the last sample, including a suspension in progress
+     */
+    public synchronized long getSampleSuspendedMillis() {
+        long nanos = sampleSuspendedNanos + (suspended ? System.nanoTime() - suspendedSince : 0);
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public synchronized long getSampleEvictions() {
+        return sampleEvictions;
+    }
+
+    public synchronized void resetSample() {
+        sampleMaxBuffered = buffered;
+        sampleSuspensions = 0;
+        sampleSuspendedNanos = 0;
+        sampleEvictions = 0;
+        if (suspended) {
+            //The part of the suspension in progress until now was reported
+            long now = System.nanoTime();
+            totalSuspendedNanos.add(now - suspendedSince);
+            suspendedSince = now;
+        }
+    }
+
+    public static long getTotalBuffered() {
+        return totalBuffered.sum();
+    }
+
+    public static long getTotalSuspensions() {
+        return totalSuspensions.sum();
+    }
+
+    public static long getTotalSuspendedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalSuspendedNanos.sum());
+    }
+
+    public static long getTotalEvictions() {
+        return totalEvictions.sum();
+    }
+
+    public static void resetTotals() {
+        totalBuffered.reset();
+        totalSuspensions.reset();
+        totalSuspendedNanos.reset();
+        totalEvictions.reset();
+    }
+
+    public static void logSummary() {
+        if (totalSuspensions.sum() > 0 || totalEvictions.sum() > 0) {
+            log.info("Slow consumer summary: reads suspended " + totalSuspensions.sum() + " times for "
+                    + getTotalSuspendedMillis() + " ms, " + totalEvictions.sum() + " connections closed by the server"
+                    + " while lagging, " + totalBuffered.sum() + " bytes still buffered");
+        }
+    }
+}
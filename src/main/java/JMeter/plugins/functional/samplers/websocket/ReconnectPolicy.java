@@ -0,0 +1,107 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exponential backoff with full jitter used to reconnect streaming connections closed by the server.
+ * <p>
+ * The delay before attempt n is a random value between zero and min(maxDelay, initialDelay * 2^n), which spreads
+ * reconnecting clients over time instead of letting them hit a restarted broker at once.
+ */
+public class ReconnectPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+    public static final int DEFAULT_INITIAL_DELAY = 500; //ms
+    public static final int DEFAULT_MAX_DELAY = 30000; //ms
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final AtomicLong totalReconnects = new AtomicLong();
+    private static final AtomicLong totalFailures = new AtomicLong();
+    private static final AtomicLong totalReconnectTime = new AtomicLong();
+    private static final AtomicLong maxReconnectTime = new AtomicLong();
+
+    private final int maxAttempts;
+    private final long initialDelay;
+    private final long maxDelay;
+
+    public ReconnectPolicy(int maxAttempts, long initialDelay, long maxDelay) {
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = Math.max(1, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+    }
+
+    /**
+     * @param attempt zero based attempt number
+     * @return false if the policy allows no more attempts
+     */
+    public boolean canRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * @param attempt zero based attempt number
+     * @return delay in milliseconds before the attempt
+     */
+    public long getDelay(int attempt) {
+        long cap = initialDelay;
+        for (int i = 0; i < attempt && cap < maxDelay; i++) {
+            cap <<= 1;
+        }
+        return ThreadLocalRandom.current().nextLong(Math.min(cap, maxDelay) + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public static void recordReconnect(long reconnectTime) {
+        totalReconnects.incrementAndGet();
+        totalReconnectTime.addAndGet(reconnectTime);
+
+        long max = maxReconnectTime.get();
+        while (reconnectTime > max && !maxReconnectTime.compareAndSet(max, reconnectTime)) {
+            max = maxReconnectTime.get();
+        }
+    }
+
+    public static void recordFailure() {
+        totalFailures.incrementAndGet();
+    }
+
+    public static long getTotalReconnects() {
+        return totalReconnects.get();
+    }
+
+    public static long getTotalFailures() {
+        return totalFailures.get();
+    }
+
+    public static long getTotalReconnectTime() {
+        return totalReconnectTime.get();
+    }
+
+    public static long getMaxReconnectTime() {
+        return maxReconnectTime.get();
+    }
+
+    public static void resetTotals() {
+        totalReconnects.set(0);
+        totalFailures.set(0);
+        totalReconnectTime.set(0);
+        maxReconnectTime.set(0);
+    }
+
+    public static void logSummary() {
+        long reconnects = totalReconnects.get();
+        if (reconnects > 0 || totalFailures.get() > 0) {
+            long average = reconnects > 0 ? totalReconnectTime.get() / reconnects : 0;
+            log.info("Reconnect summary: " + reconnects + " reconnects, " + totalFailures.get() + " abandoned, average time "
+                    + average + " ms, max time " + maxReconnectTime.get() + " ms");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Decides how much of the received messages and the execution log a sample keeps as response data and message.
+ * <p>
+ * Every sample of a long test otherwise carries the whole response backlog and log, which JMeter keeps in memory
+ * and writes to the results file. Texts are only built once it is known that they are kept: errors-only and none
+ * don't build them for successful samples at all, capped mode stops copying at the limit. Backlogs keep received
+ * messages as {@link Message} references and format them only for a captured sample.
+ */
+public class ResponseCapture {
+
+    public static final String FULL = "Full";
+    public static final String ERRORS_ONLY = "Errors only";
+    public static final String CAPPED = "Capped";
+    public static final String NONE = "None";
+
+    public static final int DEFAULT_LIMIT = 4096;
+
+    /**
+     * Received message kept in a response backlog, referenced as received until a sample captures it
+     */
+    public static class Message {
+        private final int number;
+        private final String text;
+        private final long omitted;
+
+        /**
+         * @param number  number of the message, 0 or less for an error
+         * @param omitted characters of a streamed message which aren't part of the kept prefix
+         */
+        public Message(int number, String text, long omitted) {
+            this.number = number;
+            this.text = text;
+            this.omitted = omitted;
+        }
+
+        /**
+         * @return characters of the kept text
+         */
+        public int length() {
+            return text.length();
+        }
+
+        public String format() {
+            return (number > 0 ? "[Message " + number + "]\n" : "[Error]\n") + text
+                    + (omitted > 0 ? "\n[... " + omitted + " more characters]\n\n" : "\n\n");
+        }
+    }
+
+    private final String mode;
+    private final int limit;
+
+    /**
+     * @param limit characters kept of the response data and of the response message in capped mode
+     */
+    public ResponseCapture(String mode, int limit) {
+        this.mode = mode;
+        this.limit = Math.max(0, limit);
+    }
+
+    /**
+     * @return true if a sample with this outcome keeps its response data and message
+     */
+    public boolean isCaptured(boolean successful) {
+        if (NONE.equals(mode)) {
+            return false;
+        }
+        return !successful || !ERRORS_ONLY.equals(mode);
+    }
+
+    /**
+     * @return the messages formatted and joined as the policy requires
+     */
+    public String joinMessages(Collection<Message> messages) {
+        List<String> texts = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            texts.add(message.format());
+        }
+        return join(texts);
+    }
+
+    public String join(CharSequence... parts) {
+        return join(Arrays.asList(parts));
+    }
+
+    /**
+     * @return the parts joined, cut at the limit with a note of the characters left out in capped mode
+     */
+    public String join(Iterable<? extends CharSequence> parts) {
+        boolean capped = CAPPED.equals(mode);
+        StringBuilder text = new StringBuilder();
+        long omitted = 0;
+        for (CharSequence part : parts) {
+            int room = capped ? limit - text.length() : part.length();
+            if (room >= part.length()) {
+                text.append(part);
+            } else {
+                text.append(part, 0, Math.max(0, room));
+                omitted += part.length() - Math.max(0, room);
+            }
+        }
+        if (omitted > 0) {
+            text.append("\n[... ").append(omitted).append(" more characters]\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of asynchronous sends of one connection that are written but not yet acknowledged by the
+ * transport.
+ * <p>
+ * A sender blocks only when the window is full, i.e. when the peer doesn't drain the TCP connection fast enough. The
+ * time spent blocked, the deepest write queue and the failed writes are counted per sample, which separates network
+ * back-pressure from broker latency.
+ */
+public class SendWindow {
+
+    private final int size;
+    private final Semaphore permits;
+    private final AtomicInteger depth = new AtomicInteger();
+
+    //Counters of the current sample
+    private final AtomicInteger sampleMaxDepth = new AtomicInteger();
+    private final AtomicLong sampleBlockedNanos = new AtomicLong();
+    private final AtomicLong sampleSent = new AtomicLong();
+    private final AtomicLong sampleFailed = new AtomicLong();
+    private volatile String lastFailure;
+
+    public SendWindow(int size) {
+        this.size = size;
+        this.permits = new Semaphore(size);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Takes a slot of the window, waiting while it is full
+     *
+     * @return false if no slot was released in time
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!permits.tryAcquire()) {
+            long start = System.nanoTime();
+            boolean acquired = permits.tryAcquire(timeout, unit);
+            long blocked = System.nanoTime() - start;
+            sampleBlockedNanos.addAndGet(blocked);
+            WebSocketMetrics.getInstance().sendBlocked(blocked);
+            if (!acquired) {
+                return false;
+            }
+        }
+
+        int queued = depth.incrementAndGet();
+        int max;
+        while (queued > (max = sampleMaxDepth.get()) && !sampleMaxDepth.compareAndSet(max, queued)) {
+            //Retry until the maximum is updated or exceeded by another sender
+        }
+        return true;
+    }
+
+    /**
+     * Frees the slot of a send that completed or failed
+     */
+    public void release(Throwable failure) {
+        depth.decrementAndGet();
+        if (failure != null) {
+            sampleFailed.incrementAndGet();
+            lastFailure = failure.getMessage();
+        } else {
+            sampleSent.incrementAndGet();
+        }
+        permits.release();
+    }
+
+    /**
+     * @return sends written but not yet completed
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public int getSampleMaxDepth() {
+        return sampleMaxDepth.get();
+    }
+
+    public long getSampleBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(sampleBlockedNanos.get());
+    }
+
+    public long getSampleSent() {
+        return sampleSent.get();
+    }
+
+    public long getSampleFailed() {
+        return sampleFailed.get();
+    }
+
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Starts counting a new sample; sends still in flight remain in the queue depth
+     */
+    public void resetSample() {
+        sampleMaxDepth.set(depth.get());
+        sampleBlockedNanos.set(0);
+        sampleSent.set(0);
+        sampleFailed.set(0);
+        lastFailure = null;
+    }
+}
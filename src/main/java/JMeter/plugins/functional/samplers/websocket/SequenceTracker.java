@@ -0,0 +1,253 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Detects lost, duplicated and reordered messages of a single connection.
+ * <p>
+ * A sequence number is extracted from every received message (first group of the sequence pattern) and tracked
+ * per destination. Each destination keeps only the highest sequence seen so far and a circular bitmap of the
+ * sequences received within the window below it, so message bodies are never retained.
+ * <p>
+ * Gaps are counted as lost as soon as they are observed; a late message that arrives within the window turns a
+ * lost message into an out of order one. Messages older than the window or the first sequence of the destination are
+ * counted as out of order only. A gap filled in a later sample is taken off the totals, the sample which counted
+ * it keeps its report.
+ */
+public class SequenceTracker {
+
+    public static final int DEFAULT_WINDOW = 1024;
+
+    //Matches STOMP "destination" header both in raw frames and in SockJS escaped frames
+    public static final String DEFAULT_DESTINATION_PATTERN = "destination:(.*?)(?:\\\\n|\\n)";
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final AtomicLong totalTracked = new AtomicLong();
+    private static final AtomicLong totalLost = new AtomicLong();
+    private static final AtomicLong totalDuplicates = new AtomicLong();
+    private static final AtomicLong totalOutOfOrder = new AtomicLong();
+
+    private final Pattern sequenceExpression;
+    private final Pattern destinationExpression;
+    private final int windowWords;
+    private final Map<String, DestinationState> destinations = new HashMap<>();
+
+    private long tracked;
+    private long lost;
+    //Incremented per sample, destinations take their sample floor lazily
+    private long sampleGeneration;
+    private long duplicates;
+    private long outOfOrder;
+
+    //Counters at the beginning of the current sample
+    private long sampleTracked;
+    private long sampleLost;
+    private long sampleDuplicates;
+    private long sampleOutOfOrder;
+
+    public SequenceTracker(Pattern sequenceExpression, Pattern destinationExpression, int window) {
+        this.sequenceExpression = sequenceExpression;
+        this.destinationExpression = destinationExpression;
+        this.windowWords = Math.max(1, (window + 63) / 64);
+    }
+
+    /**
+     * Extracts the sequence number and the destination from the message and records it.
+     *
+     * @param msg received message
+     * @return false if the message doesn't carry a sequence number
+     */
+    public boolean track(String msg) {
+        Matcher sequenceMatcher = sequenceExpression.matcher(msg);
+        if (!sequenceMatcher.find() || sequenceMatcher.groupCount() < 1) {
+            return false;
+        }
+
+        long sequence;
+        try {
+            sequence = Long.parseLong(sequenceMatcher.group(1).trim());
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        if (sequence < 0) {
+            return false;
+        }
+
+        String destination = "";
+        if (destinationExpression != null) {
+            Matcher destinationMatcher = destinationExpression.matcher(msg);
+            if (destinationMatcher.find() && destinationMatcher.groupCount() >= 1) {
+                destination = destinationMatcher.group(1);
+            }
+        }
+
+        DestinationState state = destinations.get(destination);
+        if (state == null) {
+            state = new DestinationState(windowWords);
+            destinations.put(destination, state);
+        }
+        track(state, sequence);
+        return true;
+    }
+
+    private void track(DestinationState state, long sequence) {
+        tracked++;
+        totalTracked.incrementAndGet();
+
+        if (state.highest < 0) {
+            state.first = sequence;
+            state.highest = sequence;
+            state.set(sequence);
+            return;
+        }
+        if (state.generation != sampleGeneration) {
+            state.generation = sampleGeneration;
+            state.sampleFloor = state.highest;
+        }
+
+        if (sequence > state.highest) {
+            long gap = sequence - state.highest - 1;
+            state.advance(sequence);
+            if (gap > 0) {
+                lost += gap;
+                totalLost.addAndGet(gap);
+            }
+        } else if (state.highest - sequence >= state.windowBits()) {
+            //Too old to tell whether it was already received
+            outOfOrder++;
+            totalOutOfOrder.incrementAndGet();
+        } else if (state.isSet(sequence)) {
+            duplicates++;
+            totalDuplicates.incrementAndGet();
+        } else {
+            state.set(sequence);
+            outOfOrder++;
+            totalOutOfOrder.incrementAndGet();
+            //Only sequences above the first one were counted as gaps
+            if (sequence > state.first) {
+                totalLost.decrementAndGet();
+                if (sequence > state.sampleFloor) {
+                    lost--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remembers current counters so the next report contains only the current sample
+     */
+    public void beginSample() {
+        sampleGeneration++;
+        sampleTracked = tracked;
+        sampleLost = lost;
+        sampleDuplicates = duplicates;
+        sampleOutOfOrder = outOfOrder;
+    }
+
+    public long getSampleTracked() {
+        return tracked - sampleTracked;
+    }
+
+    public long getSampleLost() {
+        return lost - sampleLost;
+    }
+
+    public long getSampleDuplicates() {
+        return duplicates - sampleDuplicates;
+    }
+
+    public long getSampleOutOfOrder() {
+        return outOfOrder - sampleOutOfOrder;
+    }
+
+    public int getDestinationCount() {
+        return destinations.size();
+    }
+
+    public static void resetTotals() {
+        totalTracked.set(0);
+        totalLost.set(0);
+        totalDuplicates.set(0);
+        totalOutOfOrder.set(0);
+    }
+
+    public static long getTotalTracked() {
+        return totalTracked.get();
+    }
+
+    public static long getTotalLost() {
+        return totalLost.get();
+    }
+
+    public static long getTotalDuplicates() {
+        return totalDuplicates.get();
+    }
+
+    public static long getTotalOutOfOrder() {
+        return totalOutOfOrder.get();
+    }
+
+    public static void logSummary() {
+        if (totalTracked.get() > 0) {
+            log.info("Message sequence summary: tracked " + totalTracked.get() + ", lost " + totalLost.get()
+                    + ", duplicates " + totalDuplicates.get() + ", out of order " + totalOutOfOrder.get());
+        }
+    }
+
+    /**
+     * Highest sequence of a destination and the circular bitmap of sequences received below it
+     */
+    private static class DestinationState {
+        private long first;
+        private long highest = -1;
+        //Highest sequence when the current sample began, gaps above it were counted in this sample
+        private long sampleFloor = -1;
+        private long generation = -1;
+        private final long[] window;
+
+        private DestinationState(int words) {
+            window = new long[words];
+        }
+
+        private int windowBits() {
+            return window.length * 64;
+        }
+
+        private boolean isSet(long sequence) {
+            int bit = (int) (sequence % windowBits());
+            return (window[bit >>> 6] & (1L << bit)) != 0;
+        }
+
+        private void set(long sequence) {
+            int bit = (int) (sequence % windowBits());
+            window[bit >>> 6] |= 1L << bit;
+        }
+
+        private void clear(long sequence) {
+            int bit = (int) (sequence % windowBits());
+            window[bit >>> 6] &= ~(1L << bit);
+        }
+
+        private void advance(long sequence) {
+            if (sequence - highest >= windowBits()) {
+                Arrays.fill(window, 0L);
+            } else {
+                //Slots of the new sequences were used by sequences which are leaving the window
+                for (long s = highest + 1; s <= sequence; s++) {
+                    clear(s);
+                }
+            }
+            highest = sequence;
+            set(sequence);
+        }
+    }
+}
@@ -5,41 +5,54 @@
 package JMeter.plugins.functional.samplers.websocket;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.threads.JMeterContextService;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
-import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.StatusCode;
-import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
-import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
-import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
-import org.eclipse.jetty.websocket.api.annotations.WebSocket;
-import org.eclipse.jetty.websocket.client.WebSocketClient;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
  * @author Maciej Zaleski
  */
-@WebSocket(maxTextMessageSize = 256 * 1024 * 1024)
-public class ServiceSocket {
+public class ServiceSocket implements MessageAssembler.Listener, WebSocketTransport.Listener, ReadThrottle.Consumer {
 
     protected WebSocketSampler parent;
-    protected WebSocketClient client;
+    protected WebSocketTransport transport;
     private static final Logger log = LoggingManager.getLoggerForClass();
-    protected Deque<String> responeBacklog = new LinkedList<>();
+    protected Deque<ResponseCapture.Message> responeBacklog = new ArrayDeque<>();
+    protected int responseBacklogSize = WebSocketSampler.DEFAULT_RESPONSE_BACKLOG;
+    //False if the capture policy never keeps the response data of the sample
+    protected boolean keepBacklog = true;
+    protected int sampleMessageCount;
+    //False if the capture policy keeps no log of successful samples, no execution log is built then
+    protected boolean executionLogging = true;
+    //False if message texts are only in the backlog
+    protected boolean messageLogging = true;
+    protected boolean sharedClient = false;
     protected Integer error = 0;
     protected StringBuffer logMessage = new StringBuffer();
     protected CountDownLatch openLatch = new CountDownLatch(1);
     protected CountDownLatch closeLatch = new CountDownLatch(1);
     protected CountDownLatch connectedLatch = new CountDownLatch(1);
     protected CountDownLatch subscribeLatch;
-    protected Session session = null;
+    protected WebSocketTransport.Connection connection = null;
     protected String connectPattern;
     protected String subscribePattern;
     protected String disconnectPattern;
@@ -47,56 +60,449 @@ public class ServiceSocket {
     protected Pattern connectedExpression;
     protected Pattern subscribeExpression;
     protected Pattern disconnectExpression;
-    protected boolean connected = false;
+    //Connect, subscribe and disconnect expressions classified in one pass
+    protected MultiPatternMatcher patternMatcher;
+    //Structured connect, subscribe and disconnect conditions, null if not set
+    protected MessageCondition[] conditions = new MessageCondition[3];
+    protected volatile boolean connected = false;
+    //True between onOpen and onClose, so closes of connections which never opened aren't counted as closed
+    private boolean countedOpen = false;
     private String sessionId;
+    private byte[] captureId = new byte[0];
+    protected final MessageAssembler messageAssembler = new MessageAssembler(this);
+    protected final SubscriptionTable subscriptions = new SubscriptionTable();
+    protected final MessageRecorder messageRecorder = new MessageRecorder();
+    //Threads sharing the session and the subscriptions and receipts they own
+    protected final Map<String, SessionExchange> exchanges = new ConcurrentHashMap<>();
+    protected final Map<String, SessionExchange> subscriptionOwners = new ConcurrentHashMap<>();
+    protected final Map<String, SessionExchange> receiptOwners = new ConcurrentHashMap<>();
+    protected volatile boolean sessionEstablished = false;
+    private final Object sendLock = new Object();
+    //Null if messages are sent blocking
+    protected volatile SendWindow sendWindow;
+    protected int sendTimeout;
+    protected String sequencePattern;
+    protected SequenceTracker sequenceTracker;
+    protected URI uri;
+    //Cookies sent explicitly on the upgrade request, null if the transport carries a cookie store
+    protected List<HttpCookie> cookies;
+    protected String connectPayload;
+    protected String subscribePayload;
+    protected ReconnectPolicy reconnectPolicy;
+    protected volatile boolean reconnecting = false;
+    protected volatile boolean closedByClient = false;
+    protected volatile CountDownLatch reconnectLatch = new CountDownLatch(0);
+    protected int reconnectAttempt;
+    //Identifies the attempt in flight, only its owner schedules the next one
+    protected int reconnectGeneration;
+    protected long reconnectStartTime;
+    protected volatile long lastReconnectTime = -1;
+    protected int connectionTimeout = WebSocketSampler.DEFAULT_CONNECTION_TIMEOUT;
+    protected int responseTimeout = WebSocketSampler.DEFAULT_RESPONSE_TIMEOUT;
+    //Null if the connection isn't pinged
+    protected volatile PingProbe pingProbe;
+    protected int pingInterval;
+    //Null if received messages aren't answered by rules
+    protected volatile AutoResponder autoResponder;
+    //Null if messages are consumed as fast as they arrive
+    protected volatile ReadThrottle readThrottle;
 
-    public ServiceSocket(WebSocketSampler parent, WebSocketClient client) {
-        initialize(parent, client, false);
+    public ServiceSocket(WebSocketSampler parent, WebSocketTransport transport) {
+        initialize(parent, transport, false);
     }
 
-    @OnWebSocketMessage
-    public void onMessage(String msg) {
+    @Override
+    public void onTextFrame(ByteBuffer payload, boolean fin) {
+        messageAssembler.onTextFrame(payload, fin);
+    }
+
+    @Override
+    public void onText(CharSequence text, boolean last) {
+        messageAssembler.onText(text, last);
+    }
+
+    @Override
+    public void onPong(ByteBuffer payload) {
+        PingProbe probe = pingProbe;
+        if (probe != null) {
+            probe.onPong(payload);
+        }
+    }
+
+    @Override
+    public Pattern[] getStreamingPatterns() {
+        return new Pattern[]{connectedExpression, subscribeExpression, disconnectExpression};
+    }
+
+    @Override
+    public void onStreamedMessage(MessageAssembler.StreamedMessage msg) {
+        ReadThrottle throttle = readThrottle;
+        if (throttle != null) {
+            throttle.offer(msg);
+        } else {
+            consumeStreamedMessage(msg);
+        }
+    }
+
+    @Override
+    public void onMessage(String msg, long bytes) {
+        ReadThrottle throttle = readThrottle;
+        if (throttle != null) {
+            throttle.offer(msg, bytes);
+        } else {
+            consumeMessage(msg, bytes);
+        }
+    }
+
+    @Override
+    public void consumeStreamedMessage(MessageAssembler.StreamedMessage msg) {
+        autoRespond(msg.prefix);
+        WebSocketMetrics.getInstance().messageReceived(msg.bytes);
+        TrafficCapture capture = TrafficCapture.getCurrent();
+        if (capture != null) {
+            capture.write(TrafficCapture.RECEIVED, captureId, msg.prefix, true);
+        }
+
+        synchronized (parent) {
+            //Message texts aren't logged under heap pressure
+            boolean logging = messageLogging && HeapGuard.isMessageLogging();
+            if (logging) {
+                log("Received streamed message {" + sessionId + "} of " + msg.length + " characters: " + msg.prefix);
+            }
+
+            if (executionLogging) {
+                logMessage.append(" - Received message #").append(messageCounter).append(" (").append(msg.bytes).append(" bytes, streamed)");
+                if (logging) {
+                    logMessage.append(msg.prefix);
+                }
+            }
+            if (keepBacklog && responseBacklogSize > 0) {
+                addResponseMessage(new ResponseCapture.Message(messageCounter, msg.prefix, msg.length - msg.prefix.length()));
+            }
+            sampleMessageCount++;
+            messageRecorder.record(messageCounter, msg.bytes, msg.prefix);
+            messageCounter++;
+
+            if (sequenceTracker != null) {
+                sequenceTracker.track(msg.prefix);
+            }
+
+            if (!routeToExchange(msg.prefix, msg.length - msg.prefix.length()) && !routeToSubscription(msg.prefix)) {
+                handlePatterns(msg.prefix, msg.matched);
+            }
+        }
+    }
+
+    @Override
+    public void consumeMessage(String msg, long bytes) {
+        //Replies go out before the message is logged and routed
+        autoRespond(msg);
+        WebSocketMetrics.getInstance().messageReceived(bytes);
+        TrafficCapture capture = TrafficCapture.getCurrent();
+        if (capture != null) {
+            capture.write(TrafficCapture.RECEIVED, captureId, msg);
+        }
+
+        synchronized (parent) {
+            boolean logging = messageLogging && HeapGuard.isMessageLogging();
+            if (logging) {
+                log("Received message {" + sessionId + "}: " + msg);
+            }
+
+            if (executionLogging) {
+                logMessage.append(" - Received message #").append(messageCounter).append(" (").append(bytes).append(" bytes)");
+                if (logging) {
+                    logMessage.append(msg);
+                }
+            }
+            if (keepBacklog && responseBacklogSize > 0) {
+                addResponseMessage(new ResponseCapture.Message(messageCounter, msg, 0));
+            }
+            sampleMessageCount++;
+            messageRecorder.record(messageCounter, bytes, msg);
+            messageCounter++;
+
+            if (sequenceTracker != null) {
+                sequenceTracker.track(msg);
+            }
+
+            if (!routeToExchange(msg, 0) && !routeToSubscription(msg)) {
+                handlePatterns(msg, null);
+            }
+        }
+    }
+
+    /**
+     * Sends the reply of the first auto reply rule the message matches, without waiting for the write
+     */
+    private void autoRespond(String msg) {
+        final AutoResponder responder = autoResponder;
+        WebSocketTransport.Connection current = connection;
+        if (responder == null || current == null) {
+            return;
+        }
+
+        final long matchedAt = System.nanoTime();
+        final String reply = responder.reply(msg);
+        if (reply == null) {
+            return;
+        }
+
+        //Asynchronous sends never wait on the I/O thread, so they don't take the send lock of blocking sends
+        final WebSocketMetrics metrics = WebSocketMetrics.getInstance();
+        metrics.sendStarted();
+        try {
+            current.sendText(reply, new WebSocketTransport.SendCallback() {
+                @Override
+                public void onSuccess() {
+                    responder.onReplied(System.nanoTime() - matchedAt);
+                    metrics.sendCompleted(reply.length());
+                    captureSent(reply);
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    responder.onFailed(cause);
+                    metrics.sendFailed();
+                }
+            });
+        } catch (RuntimeException e) {
+            responder.onFailed(e);
+            metrics.sendFailed();
+        }
+    }
+
+    /**
+     * Routes responses of a shared session to the thread that subscribed or requested the receipt
+     *
+     * @param msg     the message, or the kept prefix of a streamed message
+     * @param omitted characters of a streamed message which aren't part of the prefix
+     * @return true if the message belongs to one of the threads sharing the session
+     */
+    private boolean routeToExchange(String msg, long omitted) {
+        if (exchanges.isEmpty()) {
+            return false;
+        }
+
+        SessionExchange exchange = null;
+        if (StompFrame.isCommand(msg, "MESSAGE")) {
+            String subscription = StompFrame.getHeader(msg, SubscriptionTable.SUBSCRIPTION_HEADER);
+            exchange = subscription != null ? subscriptionOwners.get(subscription) : null;
+            if (exchange != null) {
+                exchange.onMessage(msg, messageCounter - 1, omitted);
+            }
+        } else if (StompFrame.isCommand(msg, "RECEIPT") || StompFrame.isCommand(msg, "ERROR")) {
+            String receipt = StompFrame.getHeader(msg, SessionExchange.RECEIPT_ID_HEADER);
+            exchange = receipt != null ? receiptOwners.remove(receipt) : null;
+            if (exchange != null && StompFrame.isCommand(msg, "RECEIPT")) {
+                exchange.onReceipt(receipt);
+            } else if (exchange != null) {
+                exchange.onError(msg);
+            }
+        }
+
+        if (exchange == null) {
+            return false;
+        }
+        if (executionLogging) {
+            logMessage.append("; routed to ").append(exchange.getOwner()).append("\n");
+        }
+        return true;
+    }
+
+    /**
+     * @return exchange of the thread on this shared session, created on first use
+     */
+    public SessionExchange getExchange(String owner, int backlogSize) {
+        SessionExchange exchange = exchanges.get(owner);
+        if (exchange == null) {
+            exchange = new SessionExchange(owner, backlogSize);
+            SessionExchange existing = exchanges.putIfAbsent(owner, exchange);
+            if (existing != null) {
+                exchange = existing;
+            }
+        }
+        return exchange;
+    }
+
+    /**
+     * @return false if another thread of the shared session already owns the subscription id
+     */
+    public boolean registerSubscription(String id, SessionExchange exchange) {
+        SessionExchange owner = subscriptionOwners.putIfAbsent(id, exchange);
+        return owner == null || owner == exchange;
+    }
+
+    public void registerReceipt(String receipt, SessionExchange exchange) {
+        receiptOwners.put(receipt, exchange);
+    }
+
+    public boolean isSessionEstablished() {
+        return sessionEstablished;
+    }
+
+    public void setSessionEstablished(boolean sessionEstablished) {
+        this.sessionEstablished = sessionEstablished;
+    }
+
+    /**
+     * @return log of the shared session since the previous call
+     */
+    public String drainLogMessage() {
+        synchronized (parent) {
+            String message = logMessage.toString();
+            logMessage = new StringBuffer();
+            return message;
+        }
+    }
+
+    /**
+     * Drops the log of the shared session since the previous call without copying it
+     */
+    public void discardLogMessage() {
         synchronized (parent) {
-            log("Received message {" + sessionId + "}: " + msg);
-
-            String length = " (" + msg.length() + " bytes)";
-            logMessage.append(" - Received message #").append(messageCounter).append(length);
-            logMessage.append(msg);
-            addResponseMessage("[Message " + (messageCounter++) + "]\n" + msg + "\n\n");
-
-            if (connectedExpression == null || connectedExpression.matcher(msg).find()) {
-                logMessage.append("; matched connected pattern").append("\n");
-                connectedLatch.countDown();
-            } else if (subscribeExpression == null || subscribeExpression.matcher(msg).find()) {
-                logMessage.append("; matched subscribe pattern").append("\n");
-                subscribeLatch.countDown();
-            } else if (!disconnectPattern.isEmpty() && disconnectExpression.matcher(msg).find()) {
-                logMessage.append("; matched connection close pattern").append("\n");
-                closeLatch.countDown();
-                close(StatusCode.NORMAL, "JMeter closed session.");
+            logMessage = new StringBuffer();
+        }
+    }
+
+    /**
+     * @return true if the message is a MESSAGE frame of one of the subscriptions
+     */
+    private boolean routeToSubscription(String msg) {
+        if (subscriptions.isEmpty()) {
+            return false;
+        }
+        SubscriptionTable.Subscription subscription = subscriptions.route(msg);
+        if (subscription == null) {
+            return false;
+        }
+        if (executionLogging) {
+            logMessage.append("; routed to subscription ").append(subscription.getId()).append("\n");
+        }
+        return true;
+    }
+
+    /**
+     * @param msg     the message, or the kept prefix of a streamed message which conditions are evaluated on
+     * @param matched patterns matched while the message was streamed, or null to match the message itself
+     */
+    private void handlePatterns(String msg, boolean[] matched) {
+        int kind = classify(msg, matched);
+        if (kind == 0) {
+            log("; matched connected pattern\n");
+            connectedLatch.countDown();
+        } else if (kind == 1) {
+            log("; matched subscribe pattern\n");
+            subscribeLatch.countDown();
+        } else if (kind == 2) {
+            log("; matched connection close pattern\n");
+            closeLatch.countDown();
+            close(WebSocketTransport.NORMAL_CLOSURE, "JMeter closed session.");
+        } else {
+            log("; didn't match any pattern\n");
+        }
+    }
+
+    /**
+     * A message matches the connect, subscribe or disconnect kind if it matches both its pattern and its condition.
+     * Connect and subscribe without pattern and condition match every message, disconnect matches none.
+     *
+     * @return 0 connect, 1 subscribe, 2 disconnect or -1 if none matches
+     */
+    private int classify(String msg, boolean[] matched) {
+        Pattern[] expressions = {connectedExpression, subscribeExpression, disconnectExpression};
+        int match = -2;
+        //Parsed at most once for all conditions
+        StompFrame frame = null;
+        boolean parsed = false;
+        for (int kind = 0; kind < expressions.length; kind++) {
+            MessageCondition condition = conditions[kind];
+            if (expressions[kind] == null && condition == null) {
+                if (kind < 2) {
+                    return kind;
+                }
+                continue;
+            }
+
+            boolean patternMatched;
+            if (expressions[kind] == null) {
+                patternMatched = true;
+            } else if (matched != null) {
+                patternMatched = matched[kind];
             } else {
-                logMessage.append("; didn't match any pattern").append("\n");
+                //One pass finds the next matching pattern; it is repeated only if a condition rejected it
+                if (match == -2 || (match >= 0 && match < kind)) {
+                    match = patternMatcher.firstMatch(msg, kind);
+                }
+                patternMatched = match == kind;
+            }
+            if (patternMatched && condition == null) {
+                return kind;
+            }
+            if (patternMatched) {
+                if (!parsed) {
+                    frame = StompFrame.parse(msg);
+                    parsed = true;
+                }
+                if (condition.test(msg, frame)) {
+                    return kind;
+                }
             }
         }
+        return -1;
     }
 
-    @OnWebSocketConnect
-    public void onOpen(Session session) {
-        logMessage.append(" - WebSocket conection has been opened").append("\n");
-        log.debug("Connect " + session.isOpen());
-        this.session = session;
-        connected = true;
+    @Override
+    public void onOpen(WebSocketTransport.Connection connection) {
+        log(" - WebSocket conection has been opened\n");
+        log.debug("Connect " + connection.isOpen());
+        this.connection = connection;
+        synchronized (this) {
+            connected = true;
+            countedOpen = true;
+        }
+        WebSocketMetrics.getInstance().connectionOpened();
+        WebSocketMetrics.getInstance().targetOpened(uri.getAuthority());
+        PingProbe probe = pingProbe;
+        if (probe != null) {
+            probe.start(connection, pingInterval);
+        }
+        ReadThrottle throttle = readThrottle;
+        if (throttle != null) {
+            throttle.setConnection(connection);
+        }
         openLatch.countDown();
     }
 
-    @OnWebSocketClose
+    @Override
     public void onClose(int statusCode, String reason) {
+        boolean wasOpen;
+        synchronized (this) {
+            wasOpen = countedOpen;
+            countedOpen = false;
+        }
+        if (wasOpen) {
+            WebSocketMetrics.getInstance().connectionClosed(statusCode != WebSocketTransport.NORMAL_CLOSURE);
+            WebSocketMetrics.getInstance().targetClosed(uri.getAuthority());
+        } else if (statusCode != WebSocketTransport.NORMAL_CLOSURE) {
+            WebSocketMetrics.getInstance().connectionFailed();
+        }
+        PingProbe probe = pingProbe;
+        if (probe != null) {
+            probe.stop();
+        }
+        ReadThrottle throttle = readThrottle;
+        if (throttle != null && !closedByClient) {
+            throttle.onClosedByServer();
+        }
         if (statusCode != 1000) {
             log.error("Disconnect " + statusCode + ": " + reason);
-            logMessage.append(" - WebSocket conection closed unexpectedly by the server: [").append(statusCode).append("] ").append(reason).append("\n");
+            if (executionLogging) {
+                logMessage.append(" - WebSocket conection closed unexpectedly by the server: [").append(statusCode).append("] ").append(reason).append("\n");
+            }
             error = statusCode;
         } else {
-            logMessage.append(" - WebSocket conection has been successfully closed by the server").append("\n");
+            log(" - WebSocket conection has been successfully closed by the server\n");
             log.debug("Disconnect " + statusCode + ": " + reason);
         }
 
@@ -104,7 +510,194 @@ public class ServiceSocket {
         openLatch.countDown();
         closeLatch.countDown();
         connectedLatch.countDown();
-        connected = false;
+
+        synchronized (this) {
+            connected = false;
+            //A close during a reconnect is handled by the attempt in flight
+            if (statusCode != WebSocketTransport.NORMAL_CLOSURE && reconnectPolicy != null && !closedByClient
+                    && !reconnecting) {
+                reconnecting = true;
+                reconnectAttempt = 0;
+                reconnectStartTime = System.currentTimeMillis();
+                reconnectLatch = new CountDownLatch(1);
+                scheduleReconnect();
+            }
+        }
+    }
+
+    /**
+     * Schedules the next reconnect attempt, or gives up when the policy allows no more attempts. Called with the lock
+     * held, by the close which starts reconnecting or by the attempt in flight when it failed.
+     */
+    protected void scheduleReconnect() {
+        if (!reconnectPolicy.canRetry(reconnectAttempt)) {
+            log.warn("Giving up reconnecting {" + sessionId + "} after " + reconnectAttempt + " attempts");
+            if (executionLogging) {
+                logMessage.append(" - Reconnect abandoned after ").append(reconnectAttempt).append(" attempts\n");
+            }
+            ReconnectPolicy.recordFailure();
+            finishReconnect();
+            return;
+        }
+
+        final int generation = ++reconnectGeneration;
+        long delay = reconnectPolicy.getDelay(reconnectAttempt++);
+        log.debug("Reconnecting {" + sessionId + "} in " + delay + " ms, attempt " + reconnectAttempt);
+        WebSocketSampler.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                WebSocketSampler.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        reconnect(generation);
+                    }
+                });
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void finishReconnect() {
+        reconnecting = false;
+        reconnectLatch.countDown();
+    }
+
+    /**
+     * Opens the connection again and replays the stored CONNECT and SUBSCRIBE payloads
+     *
+     * @param generation attempt this run owns; a stale attempt neither finishes nor continues the reconnect
+     */
+    protected void reconnect(int generation) {
+        int timeout = connectionTimeout;
+        boolean sessionConnected = true;
+        try {
+            openLatch = new CountDownLatch(1);
+            connectedLatch = new CountDownLatch(1);
+            closeLatch = new CountDownLatch(1);
+
+            Future<?> future = transport.connect(uri, cookies, this);
+            future.get(timeout, TimeUnit.MILLISECONDS);
+            openLatch.await(timeout, TimeUnit.MILLISECONDS);
+
+            if (StringUtils.isNotBlank(connectPayload)) {
+                sendMessage(connectPayload);
+                //A session without the CONNECT reply isn't usable, the attempt failed
+                sessionConnected = connectedLatch.await(responseTimeout, TimeUnit.MILLISECONDS);
+                if (!sessionConnected) {
+                    log.debug("Reconnect attempt of {" + sessionId + "} got no CONNECT reply within " + responseTimeout + " ms");
+                }
+            }
+            if (StringUtils.isNotBlank(subscribePayload)) {
+                sendMessage(subscribePayload);
+            }
+            for (String payload : subscriptions.getPayloads()) {
+                sendMessage(payload);
+            }
+            subscriptions.resubscribed();
+            for (SessionExchange exchange : exchanges.values()) {
+                for (String payload : exchange.getSubscriptionTable().getPayloads()) {
+                    sendMessage(payload);
+                }
+                exchange.getSubscriptionTable().resubscribed();
+            }
+        } catch (Exception e) {
+            sessionConnected = false;
+            log.debug("Reconnect attempt of {" + sessionId + "} failed: " + e.getMessage());
+        }
+
+        WebSocketTransport.Connection failed = null;
+        synchronized (this) {
+            if (generation != reconnectGeneration || !reconnecting) {
+                return;
+            }
+            //A close of the new connection clears connected under the lock, so it is either seen here or starts
+            //a new reconnect after this one finished
+            if (connected && sessionConnected && !closedByClient) {
+                long reconnectTime = System.currentTimeMillis() - reconnectStartTime;
+                log.debug("Reconnected {" + sessionId + "} in " + reconnectTime + " ms");
+                ReconnectPolicy.recordReconnect(reconnectTime);
+                lastReconnectTime = reconnectTime;
+                finishReconnect();
+                return;
+            }
+            if (closedByClient) {
+                finishReconnect();
+                return;
+            }
+            if (connection != null && connection.isOpen()) {
+                failed = connection;
+            }
+        }
+
+        //Closed before the next attempt, so its close doesn't hit the connection of the next one
+        if (failed != null) {
+            failed.close(WebSocketTransport.NORMAL_CLOSURE, "JMeter reconnect failed.");
+        }
+        synchronized (this) {
+            if (generation == reconnectGeneration && reconnecting) {
+                if (closedByClient) {
+                    finishReconnect();
+                } else {
+                    scheduleReconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a pending reconnect
+     *
+     * @return true if the connection is open afterwards
+     */
+    public boolean awaitReconnect(int duration, TimeUnit unit) throws InterruptedException {
+        if (executionLogging) {
+            logMessage.append(" - Waiting for reconnect for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        }
+        reconnectLatch.await(duration, unit);
+        return connected;
+    }
+
+    public boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /**
+     * @return duration of the reconnect completed since the previous call, or -1 if there was none
+     */
+    public long takeReconnectTime() {
+        long reconnectTime = lastReconnectTime;
+        lastReconnectTime = -1;
+        return reconnectTime;
+    }
+
+    /**
+     * Stores payloads replayed after a reconnect
+     */
+    public void setReplayPayloads(String connectPayload, String subscribePayload) {
+        if (StringUtils.isNotBlank(connectPayload)) {
+            this.connectPayload = connectPayload;
+        }
+        if (StringUtils.isNotBlank(subscribePayload)) {
+            this.subscribePayload = subscribePayload;
+        }
+    }
+
+    public SubscriptionTable getSubscriptionTable() {
+        return subscriptions;
+    }
+
+    public void setSharedClient(boolean sharedClient) {
+        this.sharedClient = sharedClient;
+    }
+
+    public void setUri(URI uri) {
+        this.uri = uri;
+    }
+
+    /**
+     * @param cookies cookies of the first handshake, sent again by reconnects
+     */
+    public void setCookies(List<HttpCookie> cookies) {
+        this.cookies = cookies != null ? new ArrayList<>(cookies) : null;
     }
 
     /**
@@ -115,95 +708,215 @@ public class ServiceSocket {
             StringBuilder responseMessage = new StringBuilder();
 
             //Iterate through response messages saved in the responeBacklog cache
-            for (String responeBacklog : responeBacklog) {
-                responseMessage.append(responeBacklog);
+            for (ResponseCapture.Message responeBacklog : responeBacklog) {
+                responseMessage.append(responeBacklog.format());
             }
 
             return responseMessage.toString();
         }
     }
 
+    /**
+     * @return response message cut as the capture policy requires
+     */
+    public String getResponseMessage(ResponseCapture capture) {
+        synchronized (parent) {
+            return capture.joinMessages(responeBacklog);
+        }
+    }
+
+    public boolean hasResponseMessages() {
+        synchronized (parent) {
+            return keepBacklog ? !responeBacklog.isEmpty() : sampleMessageCount > 0;
+        }
+    }
+
     public boolean awaitClose(int duration, TimeUnit unit) throws InterruptedException {
-        logMessage.append(" - Waiting for messages for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        if (executionLogging) {
+            logMessage.append(" - Waiting for messages for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        }
         boolean res = this.closeLatch.await(duration, unit);
 
         if (!parent.isStreamingConnection()) {
-            close(StatusCode.NORMAL, "JMeter closed session.");
+            close(WebSocketTransport.NORMAL_CLOSURE, "JMeter closed session.");
         } else {
-            logMessage.append(" - Leaving streaming connection open").append("\n");
+            log(" - Leaving streaming connection open\n");
         }
 
         return res;
     }
 
     public boolean awaitConnected(int duration, TimeUnit unit) throws InterruptedException {
-        logMessage.append(" - Waiting for messages for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        if (executionLogging) {
+            logMessage.append(" - Waiting for messages for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        }
         boolean res = this.connectedLatch.await(duration, unit);
 
         if (!parent.isStreamingConnection()) {
-            close(StatusCode.NORMAL, "JMeter closed session.");
+            close(WebSocketTransport.NORMAL_CLOSURE, "JMeter closed session.");
         } else {
-            logMessage.append(" - Leaving streaming connection open").append("\n");
+            log(" - Leaving streaming connection open\n");
         }
 
         return res;
     }
 
     public boolean awaitSubscribe(int duration, TimeUnit unit) throws InterruptedException {
-        logMessage.append(" - Waiting for messages for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        if (executionLogging) {
+            logMessage.append(" - Waiting for messages for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        }
         boolean res = this.subscribeLatch.await(duration, unit);
 
         if (!parent.isStreamingConnection()) {
-            close(StatusCode.NORMAL, "JMeter closed session.");
+            close(WebSocketTransport.NORMAL_CLOSURE, "JMeter closed session.");
         } else {
-            logMessage.append(" - Leaving streaming connection open").append("\n");
+            log(" - Leaving streaming connection open\n");
         }
 
         return res;
     }
 
     public boolean awaitOpen(int duration, TimeUnit unit) throws InterruptedException {
-        logMessage.append(" - Waiting for the server connection for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        if (executionLogging) {
+            logMessage.append(" - Waiting for the server connection for ").append(duration).append(" ").append(unit.toString()).append("\n");
+        }
         boolean res = this.openLatch.await(duration, unit);
 
         if (connected) {
-            logMessage.append(" - Connection established").append("\n");
+            log(" - Connection established\n");
         } else {
-            logMessage.append(" - Cannot connect to the remote server").append("\n");
+            log(" - Cannot connect to the remote server\n");
         }
 
         return res;
     }
 
+    /**
+     * Switches between blocking sends and asynchronous sends bounded by a window of in-flight messages
+     *
+     * @param size    in-flight messages, 0 or less to send blocking
+     * @param timeout milliseconds a send waits for a free slot of a full window
+     */
+    public void setSendWindow(int size, int timeout) {
+        sendTimeout = timeout;
+        SendWindow window = sendWindow;
+        if (size <= 0) {
+            sendWindow = null;
+        } else if (window == null || window.getSize() != size) {
+            //Sends in flight release the slots of the window they were taken from
+            sendWindow = new SendWindow(size);
+        }
+    }
+
+    public SendWindow getSendWindow() {
+        return sendWindow;
+    }
+
     public void sendMessage(String message) throws IOException {
-        log("\n** send message ** session id {" + sessionId + "} : " + message);
-        if (session != null && session.getRemote() != null) {
-            session.getRemote().sendString(message);
+        if (executionLogging) {
+            log("\n** send message ** session id {" + sessionId + "} : " + message);
+        }
+        SendWindow window = sendWindow;
+        if (connection != null && window != null) {
+            sendMessageAsync(message, window);
+        } else if (connection != null) {
+            WebSocketMetrics metrics = WebSocketMetrics.getInstance();
+            metrics.sendStarted();
+            try {
+                //Threads sharing the session must not write concurrently
+                synchronized (sendLock) {
+                    connection.sendText(message);
+                }
+            } catch (IOException | RuntimeException e) {
+                metrics.sendFailed();
+                throw e;
+            }
+            metrics.sendCompleted(message.length());
+            captureSent(message);
         } else {
             log("\nCant send message, session is not available!\n");
         }
     }
 
+    /**
+     * Queues the message without waiting for it to be written, unless the send window is full
+     */
+    private void sendMessageAsync(final String message, final SendWindow window) throws IOException {
+        try {
+            if (!window.acquire(sendTimeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Send window of " + window.getSize() + " messages stayed full for "
+                        + sendTimeout + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the send window");
+        }
+
+        final WebSocketMetrics metrics = WebSocketMetrics.getInstance();
+        metrics.sendStarted();
+        try {
+            synchronized (sendLock) {
+                connection.sendText(message, new WebSocketTransport.SendCallback() {
+                    @Override
+                    public void onFailure(Throwable x) {
+                        window.release(x);
+                        metrics.sendFailed();
+                        log.debug("Send on {" + sessionId + "} failed: " + x.getMessage());
+                    }
+
+                    @Override
+                    public void onSuccess() {
+                        window.release(null);
+                        metrics.sendCompleted(message.length());
+                        captureSent(message);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            window.release(e);
+            metrics.sendFailed();
+            throw e;
+        }
+    }
+
+    private void captureSent(String message) {
+        TrafficCapture capture = TrafficCapture.getCurrent();
+        if (capture != null) {
+            capture.write(TrafficCapture.SENT, captureId, message);
+        }
+    }
+
     public void close() {
-        close(StatusCode.NORMAL, "JMeter closed session.");
+        close(WebSocketTransport.NORMAL_CLOSURE, "JMeter closed session.");
     }
 
     public void close(int statusCode, String statusText) {
+        closedByClient = true;
+        PingProbe probe = pingProbe;
+        if (probe != null) {
+            probe.stop();
+        }
+
         //Closing WebSocket session
-        if (session != null) {
-            session.close(statusCode, statusText);
-            logMessage.append(" - WebSocket session closed by the client").append("\n");
+        if (connection != null) {
+            connection.close(statusCode, statusText);
+            log(" - WebSocket session closed by the client\n");
         } else {
-            logMessage.append(" - WebSocket session wasn't started (...that's odd)").append("\n");
+            log(" - WebSocket session wasn't started (...that's odd)\n");
         }
 
 
+        //Shared client serves other connections and is stopped at the end of the test
+        if (sharedClient) {
+            return;
+        }
+
         //Stoping WebSocket client; thanks m0ro
         try {
-            client.stop();
-            logMessage.append(" - WebSocket client closed by the client").append("\n");
+            transport.stop();
+            log(" - WebSocket client closed by the client\n");
         } catch (Exception e) {
-            logMessage.append(" - WebSocket client wasn't started (...that's odd)").append("\n");
+            log(" - WebSocket client wasn't started (...that's odd)\n");
         }
     }
 
@@ -218,43 +931,232 @@ public class ServiceSocket {
      * @return the logMessage
      */
     public String getLogMessage() {
-        log("\n\n[Variables]\n");
+        //Built only for captured samples, so it is there even if the execution flow wasn't logged
+        logMessage.append("\n\n[Variables]\n");
         logMessage.append(" - Message count: ").append(messageCounter - 1).append("\n");
 
         return logMessage.toString();
     }
 
     public void log(String message) {
-        logMessage.append(message);
+        if (executionLogging) {
+            logMessage.append(message);
+        }
+    }
+
+    /**
+     * @return false if the capture policy keeps no log of successful samples; callers then don't build log texts
+     */
+    public boolean isExecutionLogging() {
+        return executionLogging;
     }
 
     protected void initializePatterns() {
         try {
-            logMessage.append(" - Using connect message pattern \"").append(connectPattern).append("\"\n");
+            if (executionLogging) {
+                logMessage.append(" - Using connect message pattern \"").append(connectPattern).append("\"\n");
+            }
             connectedExpression = StringUtils.isNotEmpty(connectPattern) ? Pattern.compile(connectPattern) : null;
         } catch (Exception ex) {
-            logMessage.append(" - Invalid connect message regular expression pattern: ").append(ex.getLocalizedMessage()).append("\n");
+            if (executionLogging) {
+                logMessage.append(" - Invalid connect message regular expression pattern: ").append(ex.getLocalizedMessage()).append("\n");
+            }
             log.error("Invalid connect message regular expression pattern: " + ex.getLocalizedMessage());
             connectedExpression = null;
         }
         try {
-            logMessage.append(" - Using response message pattern \"").append(subscribePattern).append("\"\n");
+            if (executionLogging) {
+                logMessage.append(" - Using response message pattern \"").append(subscribePattern).append("\"\n");
+            }
             subscribeExpression = StringUtils.isNotEmpty(subscribePattern) ? Pattern.compile(subscribePattern) : null;
         } catch (Exception ex) {
-            logMessage.append(" - Invalid response message regular expression pattern: ").append(ex.getLocalizedMessage()).append("\n");
+            if (executionLogging) {
+                logMessage.append(" - Invalid response message regular expression pattern: ").append(ex.getLocalizedMessage()).append("\n");
+            }
             log.error("Invalid response message regular expression pattern: " + ex.getLocalizedMessage());
             subscribeExpression = null;
         }
 
         try {
-            logMessage.append(" - Using disconnect pattern \"").append(disconnectPattern).append("\"\n");
+            if (executionLogging) {
+                logMessage.append(" - Using disconnect pattern \"").append(disconnectPattern).append("\"\n");
+            }
             disconnectExpression = StringUtils.isNotEmpty(disconnectPattern) ? Pattern.compile(disconnectPattern) : null;
         } catch (Exception ex) {
-            logMessage.append(" - Invalid disconnect regular expression pattern: ").append(ex.getLocalizedMessage()).append("\n");
+            if (executionLogging) {
+                logMessage.append(" - Invalid disconnect regular expression pattern: ").append(ex.getLocalizedMessage()).append("\n");
+            }
             log.error("Invalid disconnect regular regular expression pattern: " + ex.getLocalizedMessage());
             disconnectExpression = null;
         }
 
+        patternMatcher = new MultiPatternMatcher(connectedExpression, subscribeExpression, disconnectExpression);
+
+        String[] conditionTexts = {parent.getConnectCondition(), parent.getSubscribeCondition(), parent.getCloseConnectionCondition()};
+        String[] conditionNames = {"connect", "response", "disconnect"};
+        for (int i = 0; i < conditionTexts.length; i++) {
+            String text = StringUtils.isNotBlank(conditionTexts[i]) ? new CompoundVariable(conditionTexts[i]).execute() : null;
+            try {
+                conditions[i] = StringUtils.isNotBlank(text) ? MessageCondition.compile(text) : null;
+                if (conditions[i] != null && executionLogging) {
+                    logMessage.append(" - Using ").append(conditionNames[i]).append(" condition \"").append(text).append("\"\n");
+                }
+            } catch (Exception ex) {
+                if (executionLogging) {
+                    logMessage.append(" - Invalid ").append(conditionNames[i]).append(" condition: ").append(ex.getLocalizedMessage()).append("\n");
+                }
+                log.error("Invalid " + conditionNames[i] + " condition: " + ex.getLocalizedMessage());
+                conditions[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Creates the sequence tracker on the first use and whenever the sequence pattern changes; the tracker of a
+     * reused connection keeps its state so gaps between samples are detected as well
+     */
+    protected void initializeSequenceTracker() {
+        String pattern = new CompoundVariable(parent.getSequencePattern()).execute();
+
+        synchronized (parent) {
+            if (StringUtils.isEmpty(pattern)) {
+                sequenceTracker = null;
+            } else if (sequenceTracker == null || !pattern.equals(sequencePattern)) {
+                try {
+                    String destinationPattern = new CompoundVariable(parent.getSequenceDestinationPattern()).execute();
+                    if (StringUtils.isEmpty(destinationPattern)) {
+                        destinationPattern = SequenceTracker.DEFAULT_DESTINATION_PATTERN;
+                    }
+
+                    int window;
+                    try {
+                        window = Integer.parseInt(parent.getSequenceWindow());
+                    } catch (NumberFormatException ex) {
+                        window = SequenceTracker.DEFAULT_WINDOW;
+                    }
+
+                    sequenceTracker = new SequenceTracker(Pattern.compile(pattern), Pattern.compile(destinationPattern), window);
+                    if (executionLogging) {
+                        logMessage.append(" - Tracking message sequence using pattern \"").append(pattern).append("\"\n");
+                    }
+                } catch (Exception ex) {
+                    if (executionLogging) {
+                        logMessage.append(" - Invalid sequence regular expression pattern: ").append(ex.getLocalizedMessage()).append("\n");
+                    }
+                    log.error("Invalid sequence regular expression pattern: " + ex.getLocalizedMessage());
+                    sequenceTracker = null;
+                }
+            }
+            sequencePattern = pattern;
+
+            if (sequenceTracker != null) {
+                sequenceTracker.beginSample();
+            }
+        }
+    }
+
+    public MessageRecorder getMessageRecorder() {
+        return messageRecorder;
+    }
+
+    public SequenceTracker getSequenceTracker() {
+        return sequenceTracker;
+    }
+
+    /**
+     * @return probe pinging the connection, null if the connection isn't pinged
+     */
+    public PingProbe getPingProbe() {
+        return pingProbe;
+    }
+
+    public AutoResponder getAutoResponder() {
+        return autoResponder;
+    }
+
+    /**
+     * Compiles the auto reply rules on the first use and whenever they change; the variables and functions of the
+     * replies are evaluated for every sample on the thread that owns the connection
+     */
+    protected void initializeAutoResponder() {
+        Arguments definitions = parent.getAutoReplies();
+        if (definitions == null || definitions.getArgumentCount() == 0) {
+            autoResponder = null;
+            return;
+        }
+
+        AutoResponder responder = autoResponder;
+        if (responder == null || !responder.isCompiledFrom(definitions)) {
+            try {
+                responder = AutoResponder.compile(definitions);
+                if (responder != null && executionLogging) {
+                    logMessage.append(" - Answering received messages with ").append(definitions.getArgumentCount())
+                            .append(" auto reply rules\n");
+                }
+            } catch (IllegalArgumentException ex) {
+                if (executionLogging) {
+                    logMessage.append(" - Invalid auto reply rule: ").append(ex.getLocalizedMessage()).append("\n");
+                }
+                log.error("Invalid auto reply rule: " + ex.getLocalizedMessage());
+                responder = null;
+            }
+        }
+        if (responder != null) {
+            responder.resolveReplies(JMeterContextService.getContext().getVariables());
+        }
+        autoResponder = responder;
+    }
+
+    public ReadThrottle getReadThrottle() {
+        return readThrottle;
+    }
+
+    /**
+     * Throttles the consumption of received messages when a read rate is set; a throttle that is switched off is
+     * kept until its buffered messages are consumed
+     */
+    protected void initializeReadThrottle() {
+        int rate = parent.getReadRateValue();
+        ReadThrottle throttle = readThrottle;
+        if (rate <= 0 && (throttle == null || throttle.getBuffered() == 0)) {
+            readThrottle = null;
+            return;
+        }
+
+        if (throttle == null) {
+            throttle = new ReadThrottle(this);
+            if (connection != null) {
+                throttle.setConnection(connection);
+            }
+            if (executionLogging) {
+                logMessage.append(" - Consuming received messages at ").append(rate).append(' ')
+                        .append(parent.getReadRateUnit()).append("\n");
+            }
+        }
+        throttle.configure(rate, parent.getReadRateUnit(), parent.getReadBufferValue());
+        readThrottle = throttle;
+    }
+
+    /**
+     * Pings streaming connections when a ping interval is set; the probe of a reused connection keeps running
+     */
+    protected void initializePingProbe() {
+        pingInterval = parent.isStreamingConnection() ? parent.getPingIntervalValue() : 0;
+        PingProbe probe = pingProbe;
+        if (pingInterval <= 0) {
+            if (probe != null) {
+                probe.stop();
+            }
+            pingProbe = null;
+            return;
+        }
+        if (probe == null) {
+            probe = new PingProbe();
+            pingProbe = probe;
+        }
+        if (connected && connection != null && !probe.isRunning()) {
+            probe.start(connection, pingInterval);
+        }
     }
 
     /**
@@ -264,24 +1166,39 @@ public class ServiceSocket {
         return connected;
     }
 
-    public void initialize(WebSocketSampler parent, WebSocketClient client, boolean isReuse) {
+    public void initialize(WebSocketSampler parent, WebSocketTransport transport, boolean isReuse) {
         this.parent = parent;
-        if (client != null) {
-            this.client = client;
+        if (transport != null) {
+            this.transport = transport;
         }
 
-        responeBacklog = new LinkedList<>();
+        responseBacklogSize = parent.getResponseBacklogValue();
+        //Message texts are kept only as far as the capture policy may put them into the sample
+        ResponseCapture capture = parent.getResponseCaptureValue();
+        keepBacklog = capture.isCaptured(false);
+        sampleMessageCount = 0;
+        executionLogging = capture.isCaptured(true);
+        messageLogging = executionLogging && !parent.isLeanConnection();
+        messageAssembler.setLimits(parent.getStreamingThresholdValue(), parent.getStreamingPrefixValue());
+        responeBacklog = new ArrayDeque<>(Math.max(1, Math.min(responseBacklogSize, WebSocketSampler.DEFAULT_RESPONSE_BACKLOG)));
         //Evaluate response matching patterns in case thay contain JMeter variables (i.e. ${var})
         connectPattern = new CompoundVariable(parent.getConnectPattern()).execute();
         subscribePattern = new CompoundVariable(parent.getSubscribePattern()).execute();
         disconnectPattern = new CompoundVariable(parent.getCloseConncectionPattern()).execute();
         subscribeLatch = new CountDownLatch(Integer.parseInt(parent.getResponsesCount()));
         initializePatterns();
+        initializeSequenceTracker();
+        reconnectPolicy = parent.isStreamingConnection() && parent.isReconnect() ? parent.getReconnectPolicy() : null;
+        connectionTimeout = parent.getConnectionTimeoutValue();
+        responseTimeout = parent.getResponseTimeoutValue();
+        initializePingProbe();
+        initializeAutoResponder();
+        initializeReadThrottle();
 
         if (isReuse) {
             logMessage = new StringBuffer();
-            logMessage.append("\n\n[Execution Flow]\n");
-            logMessage.append(" - Reusing exising connection\n");
+            log("\n\n[Execution Flow]\n");
+            log(" - Reusing exising connection\n");
             error = 0;
         } else {
             log("\n\n[Execution Flow]\n");
@@ -289,17 +1206,46 @@ public class ServiceSocket {
         }
     }
 
-    private void addResponseMessage(String message) {
-        int messageBacklog = 25;
+    private void addResponseMessage(ResponseCapture.Message message) {
+        int limit = HeapGuard.getBacklogLimit(responseBacklogSize);
+        while (!responeBacklog.isEmpty() && responeBacklog.size() >= limit) {
+            ResponseCapture.Message dropped = responeBacklog.poll();
+            if (limit < responseBacklogSize) {
+                HeapGuard.onShed(1, dropped.length());
+            }
+        }
+        if (limit > 0) {
+            responeBacklog.add(message);
+        } else {
+            HeapGuard.onShed(1, message.length());
+        }
+    }
 
-        while (responeBacklog.size() >= messageBacklog) {
-            responeBacklog.poll();
+    /**
+     * Drops the backlogs and log this connection and the threads sharing it may no longer keep at the current heap
+     * guard level
+     */
+    public void shed() {
+        synchronized (parent) {
+            int limit = HeapGuard.getBacklogLimit(responseBacklogSize);
+            while (responeBacklog.size() > limit) {
+                HeapGuard.onShed(1, responeBacklog.poll().length());
+            }
+            for (SessionExchange exchange : exchanges.values()) {
+                exchange.shed();
+            }
+            if (!HeapGuard.isMessageLogging() && logMessage.length() > 0) {
+                HeapGuard.onShed(0, logMessage.length());
+                logMessage = new StringBuffer(" - Log dropped under heap pressure\n");
+            }
         }
-        responeBacklog.add(message);
     }
 
     public void setSessionId(final String sessionId) {
         this.sessionId = sessionId;
-        logMessage.append(" Session id : ").append(sessionId).append("\n");
+        this.captureId = sessionId == null ? new byte[0] : sessionId.getBytes(StandardCharsets.UTF_8);
+        if (executionLogging) {
+            logMessage.append(" Session id : ").append(sessionId).append("\n");
+        }
     }
 }
@@ -0,0 +1,166 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State of one JMeter thread on a session shared with other threads.
+ * <p>
+ * The session routes to the exchange the MESSAGE frames of the subscriptions the thread registered and the
+ * RECEIPT and ERROR frames answering the receipts it requested, so every thread sees only its own responses.
+ * The backlog of responses follows the same heap guard level and capture policy as the backlog of a connection.
+ */
+public class SessionExchange {
+
+    public static final String RECEIPT_HEADER = "receipt";
+    public static final String RECEIPT_ID_HEADER = "receipt-id";
+
+    private final String owner;
+    private final SubscriptionTable subscriptions = new SubscriptionTable();
+    private final Deque<ResponseCapture.Message> backlog = new ArrayDeque<>();
+    private final StringBuilder log = new StringBuilder();
+    private int backlogSize;
+    //False if the capture policy never keeps the response data of the sample
+    private boolean keepBacklog = true;
+    //False if the capture policy keeps no log of successful samples
+    private boolean logging = true;
+    private long receiptSequence = 0;
+    private CountDownLatch receiptLatch = new CountDownLatch(0);
+    private String error;
+
+    public SessionExchange(String owner, int backlogSize) {
+        this.owner = owner;
+        this.backlogSize = backlogSize;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public SubscriptionTable getSubscriptionTable() {
+        return subscriptions;
+    }
+
+    /**
+     * @param capture capture policy of the sample, the backlog isn't kept if no outcome captures it and the log
+     *                isn't built if successful samples don't capture it
+     */
+    public synchronized void beginSample(int backlogSize, ResponseCapture capture) {
+        this.backlogSize = backlogSize;
+        this.keepBacklog = capture.isCaptured(false);
+        this.logging = capture.isCaptured(true);
+        backlog.clear();
+        log.setLength(0);
+        error = null;
+        receiptLatch = new CountDownLatch(0);
+    }
+
+    /**
+     * @return id of a new receipt the sample waits for
+     */
+    public synchronized String nextReceipt() {
+        receiptLatch = new CountDownLatch(1);
+        return owner + "-" + (++receiptSequence);
+    }
+
+    public boolean awaitReceipt(int duration, TimeUnit unit) throws InterruptedException {
+        CountDownLatch latch;
+        synchronized (this) {
+            latch = receiptLatch;
+        }
+        return latch.await(duration, unit);
+    }
+
+    public synchronized void onMessage(String message, int number) {
+        onMessage(message, number, 0);
+    }
+
+    /**
+     * @param omitted characters of a streamed message which aren't part of the kept prefix
+     */
+    public synchronized void onMessage(String message, int number, long omitted) {
+        subscriptions.route(message);
+        if (logging) {
+            log.append(" - Received message #").append(number).append(" (").append(message.length() + omitted)
+                    .append(" characters").append(omitted > 0 ? ", streamed" : "").append(")\n");
+        }
+        if (isBacklogKept(message)) {
+            addResponseMessage(new ResponseCapture.Message(number, message, omitted));
+        }
+    }
+
+    public synchronized void onReceipt(String receiptId) {
+        if (logging) {
+            log.append(" - Received receipt ").append(receiptId).append("\n");
+        }
+        receiptLatch.countDown();
+    }
+
+    public synchronized void onError(String message) {
+        if (logging) {
+            log.append(" - Received error: ").append(message).append("\n");
+        }
+        error = message;
+        if (isBacklogKept(message)) {
+            addResponseMessage(new ResponseCapture.Message(0, message, 0));
+        }
+        receiptLatch.countDown();
+    }
+
+    /**
+     * @return false, counting the message as shed if the heap guard is the reason, if the backlog keeps no message
+     */
+    private boolean isBacklogKept(String message) {
+        if (!keepBacklog || backlogSize <= 0) {
+            return false;
+        }
+        if (HeapGuard.getBacklogLimit(backlogSize) == 0) {
+            HeapGuard.onShed(1, message.length());
+            return false;
+        }
+        return true;
+    }
+
+    private void addResponseMessage(ResponseCapture.Message message) {
+        int limit = HeapGuard.getBacklogLimit(backlogSize);
+        while (!backlog.isEmpty() && backlog.size() >= limit) {
+            ResponseCapture.Message dropped = backlog.poll();
+            if (limit < backlogSize) {
+                HeapGuard.onShed(1, dropped.length());
+            }
+        }
+        backlog.add(message);
+    }
+
+    /**
+     * Drops the backlog the exchange may no longer keep at the current heap guard level
+     */
+    public synchronized void shed() {
+        int limit = HeapGuard.getBacklogLimit(backlogSize);
+        while (backlog.size() > limit) {
+            HeapGuard.onShed(1, backlog.poll().length());
+        }
+    }
+
+    public synchronized String getResponseMessage() {
+        StringBuilder responseMessage = new StringBuilder();
+        for (ResponseCapture.Message message : backlog) {
+            responseMessage.append(message.format());
+        }
+        return responseMessage.toString();
+    }
+
+    public synchronized String getResponseMessage(ResponseCapture capture) {
+        return capture.joinMessages(backlog);
+    }
+
+    public synchronized String getLog() {
+        return log.toString();
+    }
+
+    public synchronized String getError() {
+        return error;
+    }
+}
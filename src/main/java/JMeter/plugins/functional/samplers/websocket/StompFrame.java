@@ -0,0 +1,295 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command and headers of a STOMP frame, parsed from a raw frame or from a SockJS message (a["..."]) in which new
+ * lines are escaped.
+ * <p>
+ * Only the first frame of a SockJS message is parsed. The body is not copied unless requested.
+ */
+public class StompFrame {
+
+    private final CharSequence source;
+    private final boolean escaped;
+    private final String command;
+    private final Map<String, String> headers;
+    private final int bodyStart;
+
+    private StompFrame(CharSequence source, boolean escaped, String command, Map<String, String> headers, int bodyStart) {
+        this.source = source;
+        this.escaped = escaped;
+        this.command = command;
+        this.headers = headers;
+        this.bodyStart = bodyStart;
+    }
+
+    /**
+     * @return parsed frame or null if the text is not a STOMP frame
+     */
+    public static StompFrame parse(CharSequence text) {
+        return parse(text, null);
+    }
+
+    /**
+     * @return value of the header or null if the text is not a STOMP frame or has no such header
+     */
+    public static String getHeader(CharSequence text, String name) {
+        StompFrame frame = parse(text, name);
+        return frame != null ? frame.getHeader(name) : null;
+    }
+
+    /**
+     * @return true if the text is a STOMP frame of the command, checked without parsing the headers
+     */
+    public static boolean isCommand(CharSequence text, String command) {
+        int start = skipPrefix(text);
+        if (start < 0) {
+            return false;
+        }
+        boolean escaped = start > 0 && text.charAt(start - 1) == '"';
+        start = skipHeartBeats(text, start, escaped);
+        int end = start + command.length();
+        if (end > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < command.length(); i++) {
+            if (text.charAt(start + i) != command.charAt(i)) {
+                return false;
+            }
+        }
+        return newLineLength(text, end, escaped) > 0;
+    }
+
+    /**
+     * @return the frame with the header added after the command line, or the text unchanged if it is not a frame
+     */
+    public static String addHeader(String text, String name, String value) {
+        int i = skipPrefix(text);
+        if (i < 0) {
+            return text;
+        }
+        boolean escaped = i > 0 && text.charAt(i - 1) == '"';
+        i = skipHeartBeats(text, i, escaped);
+
+        int commandStart = i;
+        while (i < text.length() && text.charAt(i) >= 'A' && text.charAt(i) <= 'Z') {
+            i++;
+        }
+        int newLine = newLineLength(text, i, escaped);
+        if (i == commandStart || newLine == 0) {
+            return text;
+        }
+        int insert = i + newLine;
+        return text.substring(0, insert) + name + ":" + value + text.substring(i, insert) + text.substring(insert);
+    }
+
+    /**
+     * @param onlyHeader if not null, the only header kept
+     */
+    private static StompFrame parse(CharSequence text, String onlyHeader) {
+        int i = skipPrefix(text);
+        if (i < 0) {
+            return null;
+        }
+        boolean escaped = i > 0 && text.charAt(i - 1) == '"';
+        i = skipHeartBeats(text, i, escaped);
+
+        int commandStart = i;
+        while (i < text.length() && text.charAt(i) >= 'A' && text.charAt(i) <= 'Z') {
+            i++;
+        }
+        int newLine = newLineLength(text, i, escaped);
+        if (i == commandStart || newLine == 0) {
+            return null;
+        }
+        String command = text.subSequence(commandStart, i).toString();
+        i += newLine;
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        while (i < text.length()) {
+            newLine = newLineLength(text, i, escaped);
+            if (newLine > 0) {
+                //Empty line ends the headers
+                i += newLine;
+                break;
+            }
+
+            int lineStart = i;
+            int colon = -1;
+            while (i < text.length() && (newLine = newLineLength(text, i, escaped)) == 0) {
+                if (colon < 0 && text.charAt(i) == ':') {
+                    colon = i;
+                }
+                //An escaped backslash is followed by a plain character, not by the escape of a new line
+                i += escaped && text.charAt(i) == '\\' && i + 1 < text.length() ? 2 : 1;
+            }
+            if (colon > 0) {
+                String name = unescape(text, lineStart, colon, escaped);
+                //Repeated headers: the first value is used
+                if ((onlyHeader == null || onlyHeader.equals(name)) && !headers.containsKey(name)) {
+                    headers.put(name, unescape(text, colon + 1, i, escaped));
+                    if (onlyHeader != null) {
+                        return new StompFrame(text, escaped, command, headers, -1);
+                    }
+                }
+            }
+            i += newLine;
+        }
+        return new StompFrame(text, escaped, command, headers, onlyHeader == null ? i : -1);
+    }
+
+    /**
+     * @return index after the SockJS or sampler payload prefix, or -1 if the text can't be a frame
+     */
+    private static int skipPrefix(CharSequence text) {
+        int i = 0;
+        if (text.length() > 1 && text.charAt(0) == 'a' && text.charAt(1) == '[') {
+            i = 2;
+        } else if (text.length() > 0 && text.charAt(0) == '[') {
+            i = 1;
+        }
+        if (i > 0) {
+            if (i >= text.length() || text.charAt(i) != '"') {
+                return -1;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipHeartBeats(CharSequence text, int i, boolean escaped) {
+        int newLine;
+        while ((newLine = newLineLength(text, i, escaped)) > 0) {
+            i += newLine;
+        }
+        return i;
+    }
+
+    /**
+     * @return length of the new line at the index, 0 if there is none
+     */
+    private static int newLineLength(CharSequence text, int i, boolean escaped) {
+        int length = text.length();
+        if (i >= length) {
+            return 0;
+        }
+        if (escaped) {
+            if (text.charAt(i) == '\\' && i + 1 < length) {
+                char next = text.charAt(i + 1);
+                if (next == 'n') {
+                    return 2;
+                }
+                if (next == 'r' && i + 3 < length && text.charAt(i + 2) == '\\' && text.charAt(i + 3) == 'n') {
+                    return 4;
+                }
+            }
+            return 0;
+        }
+        if (text.charAt(i) == '\n') {
+            return 1;
+        }
+        if (text.charAt(i) == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Resolves JSON escapes of a SockJS message or STOMP header escapes of a raw frame
+     */
+    private static String unescape(CharSequence text, int start, int end, boolean escaped) {
+        StringBuilder value = null;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                if (value == null) {
+                    value = new StringBuilder(end - start);
+                    value.append(text, start, i);
+                }
+                char next = text.charAt(++i);
+                if (escaped && next == 'u' && i + 4 < end && isHex(text, i + 1, i + 5)) {
+                    value.append((char) Integer.parseInt(text.subSequence(i + 1, i + 5).toString(), 16));
+                    i += 4;
+                } else if (escaped) {
+                    value.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next == 't' ? '\t' : next);
+                } else {
+                    value.append(next == 'c' ? ':' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+                }
+            } else if (value != null) {
+                value.append(c);
+            }
+        }
+        return value != null ? value.toString() : text.subSequence(start, end).toString();
+    }
+
+    private static boolean isHex(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.digit(text.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Finds a JSON value in the body in place, without copying the body or resolving the escapes of a SockJS message
+     * first
+     *
+     * @return value at the path or null if the body has none
+     */
+    public String findInBody(JsonPathScanner path) {
+        if (bodyStart < 0) {
+            throw new IllegalStateException("Frame was parsed for a single header");
+        }
+        int end = source.length();
+        if (escaped) {
+            //The JSON string of the SockJS message ends at its last quote, found from the end
+            int quote = end - 1;
+            while (quote > bodyStart && source.charAt(quote) != '"') {
+                quote--;
+            }
+            end = quote > bodyStart ? quote : end;
+        }
+        return path.find(source, bodyStart, end, escaped);
+    }
+
+    /**
+     * @return body up to the frame terminator, with JSON escapes of a SockJS message resolved
+     */
+    public String getBody() {
+        if (bodyStart < 0) {
+            throw new IllegalStateException("Frame was parsed for a single header");
+        }
+        int end = source.length();
+        if (escaped) {
+            String text = source.toString();
+            int terminator = text.indexOf("\\u0000", bodyStart);
+            if (terminator < 0) {
+                terminator = text.lastIndexOf('"');
+            }
+            end = terminator >= bodyStart ? terminator : end;
+            return unescape(source, bodyStart, end, true);
+        }
+        for (int i = bodyStart; i < end; i++) {
+            if (source.charAt(i) == '\0') {
+                end = i;
+                break;
+            }
+        }
+        return source.subSequence(bodyStart, end).toString();
+    }
+}
@@ -0,0 +1,234 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOMP subscriptions of one connection keyed by subscription id.
+ * <p>
+ * MESSAGE frames are routed by their subscription header with a single map lookup. Every subscription counts its
+ * messages, the latency of its first message after SUBSCRIBE was sent and the time its expected number of
+ * messages was reached in the current sample.
+ */
+public class SubscriptionTable {
+
+    public static final String ID_HEADER = "id";
+    public static final String DESTINATION_HEADER = "destination";
+    public static final String SUBSCRIPTION_HEADER = "subscription";
+
+    /**
+     * State of one subscription
+     */
+    public static class Subscription {
+        private final String id;
+        private final String destination;
+        private final String payload;
+        private int expected;
+        private long subscribedAt;
+        private long firstMessageLatency = -1;
+        private long received;
+        private int sampleReceived;
+        private long sampleFulfilledAt = -1;
+
+        Subscription(String id, String destination, String payload, int expected) {
+            this.id = id;
+            this.destination = destination;
+            this.payload = payload;
+            this.expected = expected;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        public int getSampleReceived() {
+            return sampleReceived;
+        }
+
+        /**
+         * @return milliseconds from SUBSCRIBE to the first message, -1 if no message was received yet
+         */
+        public long getFirstMessageLatency() {
+            return firstMessageLatency;
+        }
+    }
+
+    private final Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+    private final Map<String, Long> unknown = new HashMap<>();
+    private CountDownLatch sampleLatch = new CountDownLatch(0);
+    private long sampleStart;
+
+    /**
+     * @return subscription id of the SUBSCRIBE payload or null if it has none
+     */
+    public static String getId(String payload) {
+        StompFrame frame = StompFrame.parse(payload);
+        return frame != null && "SUBSCRIBE".equals(frame.getCommand()) ? frame.getHeader(ID_HEADER) : null;
+    }
+
+    public synchronized boolean isSubscribed(String id) {
+        return subscriptions.containsKey(id);
+    }
+
+    public synchronized boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    /**
+     * Registers a subscription whose SUBSCRIBE frame is being sent
+     */
+    public synchronized Subscription add(String id, String payload, int expected) {
+        StompFrame frame = StompFrame.parse(payload);
+        Subscription subscription = new Subscription(id, frame != null ? frame.getHeader(DESTINATION_HEADER) : null,
+                payload, expected);
+        subscription.subscribedAt = System.currentTimeMillis();
+        subscriptions.put(id, subscription);
+
+        int outstanding = Math.max(0, expected);
+        if (outstanding > 0) {
+            //Expectations of a subscription added during the sample join the current sample
+            sampleLatch = new CountDownLatch((int) sampleLatch.getCount() + outstanding);
+        }
+        return subscription;
+    }
+
+    public synchronized void setExpected(String id, int expected) {
+        Subscription subscription = subscriptions.get(id);
+        if (subscription != null) {
+            subscription.expected = expected;
+        }
+    }
+
+    /**
+     * Starts counting the messages of a new sample
+     */
+    public synchronized void beginSample() {
+        sampleStart = System.currentTimeMillis();
+        int outstanding = 0;
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.sampleReceived = 0;
+            subscription.sampleFulfilledAt = -1;
+            outstanding += Math.max(0, subscription.expected);
+        }
+        unknown.clear();
+        sampleLatch = new CountDownLatch(outstanding);
+    }
+
+    /**
+     * Routes a MESSAGE frame to its subscription
+     *
+     * @return the subscription or null if the message isn't a MESSAGE frame of a known subscription
+     */
+    public Subscription route(CharSequence message) {
+        if (!StompFrame.isCommand(message, "MESSAGE")) {
+            return null;
+        }
+        String id = StompFrame.getHeader(message, SUBSCRIPTION_HEADER);
+        if (id == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Subscription subscription = subscriptions.get(id);
+            if (subscription == null) {
+                Long count = unknown.get(id);
+                unknown.put(id, count == null ? 1 : count + 1);
+                return null;
+            }
+
+            subscription.received++;
+            subscription.sampleReceived++;
+            if (subscription.firstMessageLatency < 0) {
+                subscription.firstMessageLatency = now - subscription.subscribedAt;
+            }
+            if (subscription.sampleReceived <= subscription.expected) {
+                sampleLatch.countDown();
+                if (subscription.sampleReceived == subscription.expected) {
+                    subscription.sampleFulfilledAt = now - sampleStart;
+                }
+            }
+            return subscription;
+        }
+    }
+
+    /**
+     * Waits until every subscription received its expected number of messages in the current sample
+     */
+    public boolean await(int duration, TimeUnit unit) throws InterruptedException {
+        CountDownLatch latch;
+        synchronized (this) {
+            latch = sampleLatch;
+        }
+        return latch.await(duration, unit);
+    }
+
+    /**
+     * Restarts latency tracking of all subscriptions after they were sent again on a new connection
+     */
+    public synchronized void resubscribed() {
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.subscribedAt = now;
+            subscription.firstMessageLatency = -1;
+        }
+    }
+
+    /**
+     * @return SUBSCRIBE frames of all subscriptions, sent again after a reconnect
+     */
+    public synchronized List<String> getPayloads() {
+        List<String> payloads = new ArrayList<>(subscriptions.size());
+        for (Subscription subscription : subscriptions.values()) {
+            payloads.add(subscription.payload);
+        }
+        return payloads;
+    }
+
+    /**
+     * @return per subscription counters of the current sample
+     */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        for (Subscription subscription : subscriptions.values()) {
+            report.append(" - Subscription ").append(subscription.id);
+            if (subscription.destination != null) {
+                report.append(" (").append(subscription.destination).append(")");
+            }
+            report.append(": ").append(subscription.sampleReceived);
+            if (subscription.expected > 0) {
+                report.append("/").append(subscription.expected);
+            }
+            report.append(" messages, ").append(subscription.received).append(" in total");
+            if (subscription.firstMessageLatency >= 0) {
+                report.append(", first message ").append(subscription.firstMessageLatency).append(" ms after subscribe");
+            }
+            if (subscription.sampleFulfilledAt >= 0) {
+                report.append(", expectation met after ").append(subscription.sampleFulfilledAt).append(" ms");
+            }
+            report.append("\n");
+        }
+        for (Map.Entry<String, Long> entry : unknown.entrySet()) {
+            report.append(" - Unknown subscription ").append(entry.getKey()).append(": ").append(entry.getValue())
+                    .append(" messages\n");
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,341 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only, memory-mapped log of all frames sent and received during a test.
+ * <p>
+ * Writers reserve space with a single atomic add and copy the record into the mapped region directly, so frames
+ * of different connections are captured without locks and without system calls on the I/O threads. The record
+ * length is written last, which makes a record visible to readers only once it is complete. Regions are mapped
+ * ahead in the background; a record reserved in a region which isn't mapped yet is handed to the executor, which
+ * maps the region and writes it. Closing waits for writers that reserved space, so no reserved slot stays empty.
+ * <p>
+ * File layout: 8 bytes magic, 8 bytes end position (written on close), then 8 byte aligned records. A record is
+ * int length, long timestamp (epoch nanoseconds), byte direction, byte flags, short connection id length,
+ * int payload length, connection id and payload (both UTF-8). A negative length marks padding at the end of a
+ * region; a zero length marks the end of the log.
+ */
+public class TrafficCapture {
+
+    public static final byte[] MAGIC = "WSCAP001".getBytes(StandardCharsets.US_ASCII);
+    public static final int FILE_HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 1 + 2 + 4;
+    public static final int REGION_SIZE = 64 * 1024 * 1024;
+    public static final int MAX_REGIONS = 16 * 1024; //1 TB
+
+    public static final byte SENT = 0;
+    public static final byte RECEIVED = 1;
+    public static final byte FLAG_TRUNCATED = 1;
+
+    private static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static volatile TrafficCapture current;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final AtomicReferenceArray<MappedByteBuffer> regions = new AtomicReferenceArray<>(MAX_REGIONS);
+    private final AtomicLong position = new AtomicLong(FILE_HEADER_SIZE);
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    //Writers between their reservation and the publication of the record, including deferred ones
+    private final AtomicInteger writers = new AtomicInteger();
+    private final long baseEpochNanos;
+    private final long baseNanoTime;
+    private volatile boolean closed = false;
+    private volatile boolean failed = false;
+
+    private TrafficCapture(File file) throws IOException {
+        this.file = file;
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(0);
+        channel = randomAccessFile.getChannel();
+        baseEpochNanos = System.currentTimeMillis() * 1000000L;
+        baseNanoTime = System.nanoTime();
+
+        MappedByteBuffer first = region(0);
+        for (int i = 0; i < MAGIC.length; i++) {
+            first.put(i, MAGIC[i]);
+        }
+    }
+
+    /**
+     * Starts capturing frames of the test into the file; does nothing if a capture is already running
+     */
+    public static synchronized void start(String path) {
+        if (current != null) {
+            return;
+        }
+        try {
+            current = new TrafficCapture(new File(path));
+            log.info("Capturing WebSocket traffic to " + path);
+        } catch (IOException e) {
+            log.error("Cannot open traffic capture file " + path + ": " + e.getMessage());
+        }
+    }
+
+    public static synchronized void stop() {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    /**
+     * Opens a capture file independent of the test, used to convert other recordings into the capture format
+     */
+    public static TrafficCapture open(File file) throws IOException {
+        return new TrafficCapture(file);
+    }
+
+    /**
+     * @return running capture or null if traffic isn't captured
+     */
+    public static TrafficCapture getCurrent() {
+        return current;
+    }
+
+    public void write(byte direction, byte[] connectionId, String payload) {
+        write(direction, connectionId, payload, baseEpochNanos + (System.nanoTime() - baseNanoTime), false);
+    }
+
+    /**
+     * @param truncated true if the payload is only the prefix of a longer message
+     */
+    public void write(byte direction, byte[] connectionId, String payload, boolean truncated) {
+        write(direction, connectionId, payload, baseEpochNanos + (System.nanoTime() - baseNanoTime), truncated);
+    }
+
+    /**
+     * @param timestamp epoch nanoseconds
+     */
+    public void write(byte direction, byte[] connectionId, String payload, long timestamp, boolean truncated) {
+        //Counted before closed is checked, so a close either stops the writer or waits for it
+        writers.incrementAndGet();
+        try {
+            if (!closed) {
+                write(direction, connectionId, payload.getBytes(StandardCharsets.UTF_8), timestamp, truncated);
+            }
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    private void write(byte direction, byte[] connectionId, byte[] data, long timestamp, boolean truncated) {
+        if (failed) {
+            return;
+        }
+        int idLength = Math.min(connectionId.length, Short.MAX_VALUE);
+        int payloadLength = data.length;
+        byte flags = truncated ? FLAG_TRUNCATED : 0;
+
+        //Records never span regions; payloads larger than a region are truncated
+        int maxPayload = REGION_SIZE - RECORD_HEADER_SIZE - idLength - 8;
+        if (payloadLength > maxPayload) {
+            payloadLength = maxPayload;
+            flags |= FLAG_TRUNCATED;
+        }
+        int length = align(RECORD_HEADER_SIZE + idLength + payloadLength);
+
+        long limit = (long) MAX_REGIONS * REGION_SIZE;
+        long start;
+        while (true) {
+            start = position.getAndAdd(length);
+            if (start + length > limit) {
+                return;
+            }
+            long regionEnd = (start / REGION_SIZE + 1) * REGION_SIZE;
+            if (start + length <= regionEnd) {
+                break;
+            }
+            //The record would cross the region boundary; pad both parts of the reservation and reserve again
+            putPadding(start, (int) -(regionEnd - start));
+            putPadding(regionEnd, (int) -(start + length - regionEnd));
+        }
+
+        int index = (int) (start / REGION_SIZE);
+        if (start % REGION_SIZE > REGION_SIZE / 2) {
+            prepareRegion(index + 1);
+        }
+        putRecord(start, length, timestamp, direction, flags, connectionId, idLength, data, payloadLength);
+    }
+
+    private void putRecord(final long start, final int length, final long timestamp, final byte direction,
+                           final byte flags, final byte[] connectionId, final int idLength, final byte[] data,
+                           final int payloadLength) {
+        final int index = (int) (start / REGION_SIZE);
+        MappedByteBuffer mapped = regions.get(index);
+        if (mapped == null) {
+            defer(new Runnable() {
+                @Override
+                public void run() {
+                    MappedByteBuffer region = region(index);
+                    if (region != null) {
+                        putRecord(region, start, length, timestamp, direction, flags, connectionId, idLength, data,
+                                payloadLength);
+                    }
+                }
+            });
+            return;
+        }
+        putRecord(mapped, start, length, timestamp, direction, flags, connectionId, idLength, data, payloadLength);
+    }
+
+    private void putRecord(MappedByteBuffer region, long start, int length, long timestamp, byte direction,
+                           byte flags, byte[] connectionId, int idLength, byte[] data, int payloadLength) {
+        ByteBuffer buffer = region.duplicate();
+        int offset = (int) (start % REGION_SIZE);
+        buffer.position(offset + 4);
+        buffer.putLong(timestamp);
+        buffer.put(direction);
+        buffer.put(flags);
+        buffer.putShort((short) idLength);
+        buffer.putInt(payloadLength);
+        buffer.put(connectionId, 0, idLength);
+        buffer.put(data, 0, payloadLength);
+
+        //Publish the record
+        region.putInt(offset, length);
+        records.incrementAndGet();
+    }
+
+    /**
+     * Marks the reserved bytes from the position as padding
+     */
+    private void putPadding(final long at, final int padding) {
+        final int index = (int) (at / REGION_SIZE);
+        MappedByteBuffer mapped = regions.get(index);
+        if (mapped == null) {
+            defer(new Runnable() {
+                @Override
+                public void run() {
+                    MappedByteBuffer region = region(index);
+                    if (region != null) {
+                        region.putInt((int) (at % REGION_SIZE), padding);
+                    }
+                }
+            });
+            return;
+        }
+        mapped.putInt((int) (at % REGION_SIZE), padding);
+    }
+
+    /**
+     * Writes into a region which isn't mapped yet on the executor, I/O threads never wait for the file to grow
+     */
+    private void defer(final Runnable write) {
+        writers.incrementAndGet();
+        deferred.incrementAndGet();
+        WebSocketSampler.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write.run();
+                } finally {
+                    writers.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+    /**
+     * Maps the region on the first use; blocks while the file grows, so it is never called on I/O threads
+     *
+     * @return mapped region, or null if the capture is full or a region couldn't be mapped
+     */
+    private MappedByteBuffer region(int index) {
+        if (index >= MAX_REGIONS) {
+            return null;
+        }
+        MappedByteBuffer region = regions.get(index);
+        if (region == null) {
+            //Deferred writes map regions while the close waits for them, the channel is closed only afterwards
+            synchronized (regions) {
+                region = regions.get(index);
+                if (region == null && !failed) {
+                    try {
+                        region = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * REGION_SIZE, REGION_SIZE);
+                        regions.set(index, region);
+                    } catch (IOException e) {
+                        log.error("Cannot map traffic capture region " + index + ": " + e.getMessage());
+                        failed = true;
+                    }
+                }
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Maps the next region in the background so writers don't wait for the file to grow
+     */
+    private void prepareRegion(final int index) {
+        if (index < MAX_REGIONS && regions.get(index) == null && !closed) {
+            WebSocketSampler.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    region(index);
+                }
+            });
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        //Slots reserved before the close are published before the end is written
+        long deadline = System.nanoTime() + CLOSE_TIMEOUT;
+        while (writers.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        if (writers.get() > 0) {
+            log.warn("Closing traffic capture while " + writers.get() + " frames are still written, the capture"
+                    + " may end before them");
+        }
+
+        long end = Math.min(position.get(), (long) MAX_REGIONS * REGION_SIZE);
+        try {
+            MappedByteBuffer first = regions.get(0);
+            first.putLong(MAGIC.length, end);
+            for (int i = 0; i < MAX_REGIONS; i++) {
+                MappedByteBuffer region = regions.get(i);
+                if (region == null) {
+                    break;
+                }
+                region.force();
+            }
+            channel.close();
+            randomAccessFile.close();
+            log.info("Captured " + records.get() + " WebSocket frames (" + end + " bytes, " + deferred.get()
+                    + " writes deferred until their region was mapped) to " + file.getPath());
+        } catch (IOException e) {
+            log.error("Cannot close traffic capture file " + file.getPath() + ": " + e.getMessage());
+        }
+    }
+}
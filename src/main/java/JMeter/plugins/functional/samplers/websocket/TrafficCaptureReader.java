@@ -0,0 +1,273 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Sequential reader of a {@link TrafficCapture} log; records found by a scan can be read again by their position.
+ * <p>
+ * Regions of the file are mapped one at a time, so captures larger than the heap can be read. Also usable from the
+ * command line to filter and export a capture:
+ * <pre>
+ * java -cp ... JMeter.plugins.functional.samplers.websocket.TrafficCaptureReader capture.bin
+ *      [-connection id] [-direction sent|received] [-from epochMillis] [-to epochMillis] [-contains text]
+ *      [-format text|csv] [-output file]
+ * </pre>
+ */
+public class TrafficCaptureReader implements Closeable {
+
+    /**
+     * One captured frame
+     */
+    public static class Record {
+        private final long timestamp;
+        private final byte direction;
+        private final boolean truncated;
+        private final String connectionId;
+        private final String payload;
+
+        public Record(long timestamp, byte direction, boolean truncated, String connectionId, String payload) {
+            this.timestamp = timestamp;
+            this.direction = direction;
+            this.truncated = truncated;
+            this.connectionId = connectionId;
+            this.payload = payload;
+        }
+
+        /**
+         * @return capture time in epoch nanoseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public byte getDirection() {
+            return direction;
+        }
+
+        public boolean isSent() {
+            return direction == TrafficCapture.SENT;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public String getConnectionId() {
+            return connectionId;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long end;
+    private long position = TrafficCapture.FILE_HEADER_SIZE;
+    private MappedByteBuffer region;
+    private long regionIndex = -1;
+
+    public TrafficCaptureReader(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+
+        byte[] magic = new byte[TrafficCapture.MAGIC.length];
+        file.readFully(magic);
+        if (!Arrays.equals(magic, TrafficCapture.MAGIC)) {
+            close();
+            throw new IOException(path + " is not a WebSocket traffic capture");
+        }
+        //End position is written when the capture is closed, an interrupted capture is read until the first empty record
+        long closedEnd = file.readLong();
+        end = closedEnd > 0 ? Math.min(closedEnd, channel.size()) : channel.size();
+    }
+
+    /**
+     * @return next record or null at the end of the capture
+     */
+    public Record next() throws IOException {
+        while (position + 4 <= end) {
+            MappedByteBuffer buffer = regionAt(position);
+            int offset = (int) (position % TrafficCapture.REGION_SIZE);
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                return null;
+            }
+            if (length < 0) {
+                position += -length;
+                continue;
+            }
+
+            Record record = decode(buffer, offset);
+            position += length;
+            return record;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the record at a position reported by {@link #scan(RecordVisitor)}
+     */
+    public Record read(long recordPosition) throws IOException {
+        return decode(regionAt(recordPosition), (int) (recordPosition % TrafficCapture.REGION_SIZE));
+    }
+
+    private static Record decode(MappedByteBuffer region, int offset) {
+        ByteBuffer buffer = region.duplicate();
+        buffer.position(offset + 4);
+        long timestamp = buffer.getLong();
+        byte direction = buffer.get();
+        byte flags = buffer.get();
+        byte[] connectionId = new byte[buffer.getShort()];
+        byte[] payload = new byte[buffer.getInt()];
+        buffer.get(connectionId);
+        buffer.get(payload);
+        return new Record(timestamp, direction, (flags & TrafficCapture.FLAG_TRUNCATED) != 0,
+                new String(connectionId, StandardCharsets.UTF_8), new String(payload, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Receives the headers of the records found by {@link #scan(RecordVisitor)}
+     */
+    public interface RecordVisitor {
+        /**
+         * @param position position of the record, read it with {@link #read(long)}
+         */
+        void visit(long position, long timestamp, byte direction, String connectionId);
+    }
+
+    /**
+     * Scans the rest of the capture without decoding payloads
+     */
+    public void scan(RecordVisitor visitor) throws IOException {
+        while (position + 4 <= end) {
+            MappedByteBuffer buffer = regionAt(position);
+            int offset = (int) (position % TrafficCapture.REGION_SIZE);
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length > 0) {
+                byte[] connectionId = new byte[buffer.getShort(offset + 4 + 8 + 1 + 1)];
+                ByteBuffer idBuffer = buffer.duplicate();
+                idBuffer.position(offset + TrafficCapture.RECORD_HEADER_SIZE);
+                idBuffer.get(connectionId);
+                visitor.visit(position, buffer.getLong(offset + 4), buffer.get(offset + 4 + 8),
+                        new String(connectionId, StandardCharsets.UTF_8));
+                position += length;
+            } else {
+                position += -length;
+            }
+        }
+    }
+
+    private MappedByteBuffer regionAt(long position) throws IOException {
+        long index = position / TrafficCapture.REGION_SIZE;
+        if (index != regionIndex) {
+            long start = index * TrafficCapture.REGION_SIZE;
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(TrafficCapture.REGION_SIZE, end - start));
+            regionIndex = index;
+        }
+        return region;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+        file.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TrafficCaptureReader <capture file> [-connection id] [-direction sent|received]"
+                    + " [-from epochMillis] [-to epochMillis] [-contains text] [-format text|csv] [-output file]");
+            System.exit(1);
+        }
+
+        String connection = null;
+        String direction = null;
+        String contains = null;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        String format = "text";
+        String output = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-connection":
+                    connection = value;
+                    break;
+                case "-direction":
+                    direction = value;
+                    break;
+                case "-from":
+                    from = Long.parseLong(value) * 1000000L;
+                    break;
+                case "-to":
+                    to = Long.parseLong(value) * 1000000L;
+                    break;
+                case "-contains":
+                    contains = value;
+                    break;
+                case "-format":
+                    format = value;
+                    break;
+                case "-output":
+                    output = value;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        boolean csv = "csv".equalsIgnoreCase(format);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        PrintStream out = output != null ? new PrintStream(new File(output), "UTF-8") : System.out;
+        try (TrafficCaptureReader reader = new TrafficCaptureReader(new File(args[0]))) {
+            if (csv) {
+                out.println("timestamp,connection,direction,truncated,payload");
+            }
+            Record record;
+            while ((record = reader.next()) != null) {
+                String recordDirection = record.isSent() ? "sent" : "received";
+                if ((connection != null && !connection.equals(record.getConnectionId()))
+                        || (direction != null && !direction.equalsIgnoreCase(recordDirection))
+                        || record.getTimestamp() < from || record.getTimestamp() > to
+                        || (contains != null && !record.getPayload().contains(contains))) {
+                    continue;
+                }
+
+                if (csv) {
+                    out.println(record.getTimestamp() + "," + csvValue(record.getConnectionId()) + "," + recordDirection
+                            + "," + record.isTruncated() + "," + csvValue(record.getPayload()));
+                } else {
+                    out.println(dateFormat.format(new Date(record.getTimestamp() / 1000000L)) + " {"
+                            + record.getConnectionId() + "} " + recordDirection + (record.isTruncated() ? " (truncated)" : "")
+                            + ": " + record.getPayload());
+                }
+            }
+        } finally {
+            if (out != System.out) {
+                out.close();
+            }
+        }
+    }
+
+    private static String csvValue(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
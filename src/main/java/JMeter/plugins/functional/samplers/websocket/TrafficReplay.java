@@ -0,0 +1,210 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the frames sent in a {@link TrafficCapture} log over one of N connections.
+ * <p>
+ * The capture is indexed once per test and file: one pass records the positions of the sent frames per captured
+ * connection. Captured connections are assigned to the replay connections in the order of their first sent frame,
+ * one to one when there are as many replay connections as captured ones and round robin otherwise; every replay
+ * connection reads only the frames at its own positions. Frames are due at their original offset from the start of
+ * the capture divided by the speed factor, measured from the start of the test.
+ */
+public class TrafficReplay implements Closeable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final Map<String, CaptureIndex> indexes = new HashMap<>();
+    private static final Set<TrafficReplay> openReplays = ConcurrentHashMap.newKeySet();
+    private static volatile long startTime = System.nanoTime();
+
+    private final TrafficCaptureReader reader;
+    private final double speed;
+    private final long baseTimestamp;
+    private final long[] positions;
+    private int nextPosition;
+
+    /**
+     * Positions of the sent frames of one captured connection in the order of the capture
+     */
+    private static class Positions {
+        long[] values = new long[16];
+        int size;
+
+        void add(long position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+    }
+
+    /**
+     * Sent frames of a capture per captured connection, in the order of the first sent frame of the connection
+     */
+    private static class CaptureIndex implements TrafficCaptureReader.RecordVisitor {
+        final Map<String, Positions> connections = new LinkedHashMap<>();
+        long baseTimestamp = Long.MAX_VALUE;
+        long frames;
+
+        @Override
+        public void visit(long position, long timestamp, byte direction, String connectionId) {
+            baseTimestamp = Math.min(baseTimestamp, timestamp);
+            if (direction != TrafficCapture.SENT) {
+                return;
+            }
+            Positions positions = connections.get(connectionId);
+            if (positions == null) {
+                positions = new Positions();
+                connections.put(connectionId, positions);
+            }
+            positions.add(position);
+            frames++;
+        }
+
+        /**
+         * @return positions of the frames of the captured connections assigned to the replay connection, in order
+         */
+        long[] getPositions(int connection, int replayConnections) {
+            int size = 0;
+            int index = 0;
+            List<Positions> assigned = new ArrayList<>();
+            for (Positions positions : connections.values()) {
+                if (index++ % replayConnections == connection) {
+                    assigned.add(positions);
+                    size += positions.size;
+                }
+            }
+            long[] merged = new long[size];
+            int offset = 0;
+            for (Positions positions : assigned) {
+                System.arraycopy(positions.values, 0, merged, offset, positions.size);
+                offset += positions.size;
+            }
+            if (assigned.size() > 1) {
+                Arrays.sort(merged);
+            }
+            return merged;
+        }
+    }
+
+    private TrafficReplay(File file, int connection, int connections, double speed) throws IOException {
+        this.speed = speed;
+        CaptureIndex index = getIndex(file, Math.max(1, connections));
+        this.baseTimestamp = index.baseTimestamp;
+        this.positions = connection < 0 ? new long[0] : index.getPositions(connection, Math.max(1, connections));
+        this.reader = new TrafficCaptureReader(file);
+    }
+
+    /**
+     * @param connection  zero based replay connection, negative for a thread without a replay connection
+     * @param connections number of replay connections
+     * @param speed       timing scale, 2 replays twice as fast; zero or less sends without waiting
+     */
+    public static TrafficReplay open(File file, int connection, int connections, double speed) throws IOException {
+        TrafficReplay replay = new TrafficReplay(file, connection, connections, speed);
+        openReplays.add(replay);
+        return replay;
+    }
+
+    /**
+     * Starts the replay clock; called when the test starts
+     */
+    public static void reset() {
+        closeAll();
+        synchronized (indexes) {
+            indexes.clear();
+        }
+        startTime = System.nanoTime();
+    }
+
+    public static void closeAll() {
+        for (TrafficReplay replay : openReplays) {
+            try {
+                replay.close();
+            } catch (IOException e) {
+                log.warn("Cannot close replay file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return index of the capture, built by the first replay connection of the test opening the file
+     */
+    private static CaptureIndex getIndex(File file, int replayConnections) throws IOException {
+        String key = file.getAbsolutePath();
+        synchronized (indexes) {
+            CaptureIndex index = indexes.get(key);
+            if (index == null) {
+                index = new CaptureIndex();
+                try (TrafficCaptureReader scan = new TrafficCaptureReader(file)) {
+                    scan.scan(index);
+                }
+                indexes.put(key, index);
+                log.info("Replaying " + index.frames + " frames of " + index.connections.size()
+                        + " captured connections from " + key + " over " + replayConnections + " connections");
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return next frame of this connection or null when the replay is finished
+     */
+    public TrafficCaptureReader.Record next() throws IOException {
+        if (nextPosition >= positions.length) {
+            return null;
+        }
+        return reader.read(positions[nextPosition++]);
+    }
+
+    public boolean hasNext() {
+        return nextPosition < positions.length;
+    }
+
+    /**
+     * @return nanoseconds the frame is due after the test start
+     */
+    public long getDueTime(TrafficCaptureReader.Record record) {
+        if (speed <= 0) {
+            return 0;
+        }
+        return (long) ((record.getTimestamp() - baseTimestamp) / speed);
+    }
+
+    /**
+     * Sleeps until the frame is due
+     *
+     * @return lag in nanoseconds, positive if the frame is sent later than scheduled
+     */
+    public long awaitDue(TrafficCaptureReader.Record record) throws InterruptedException {
+        long due = startTime + getDueTime(record);
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return System.nanoTime() - due;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (openReplays.remove(this)) {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.net.CookieStore;
+import java.net.InetAddress;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Configuration of a transport taken from the sampler. Transports apply the options their client stack supports.
+ */
+public class TransportOptions {
+
+    private boolean trustAll;
+    private int maxMessageSize = WebSocketSampler.DEFAULT_MAX_MESSAGE_SIZE;
+    private int inputBufferSize;
+    private long idleTimeout = -1;
+    private int connectTimeout = WebSocketSampler.DEFAULT_CONNECTION_TIMEOUT;
+    private CookieStore cookieStore;
+    private ExecutorService executor;
+    private InetAddress bindAddress;
+
+    public boolean isTrustAll() {
+        return trustAll;
+    }
+
+    public void setTrustAll(boolean trustAll) {
+        this.trustAll = trustAll;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * @return size of the read buffer, 0 for the default of the transport
+     */
+    public int getInputBufferSize() {
+        return inputBufferSize;
+    }
+
+    public void setInputBufferSize(int inputBufferSize) {
+        this.inputBufferSize = inputBufferSize;
+    }
+
+    /**
+     * @return milliseconds after which an idle connection is closed, negative for the default of the transport
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @return store receiving the cookies of the upgrade responses, null if the transport is shared
+     */
+    public CookieStore getCookieStore() {
+        return cookieStore;
+    }
+
+    public void setCookieStore(CookieStore cookieStore) {
+        this.cookieStore = cookieStore;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return local address connections are opened from, null to let the system choose
+     */
+    public InetAddress getBindAddress() {
+        return bindAddress;
+    }
+
+    public void setBindAddress(InetAddress bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    /**
+     * @return key of the options a shared transport is reused for
+     */
+    public String getKey() {
+        return trustAll + "|" + maxMessageSize + "|" + inputBufferSize + "|" + idleTimeout + "|" + bindAddress;
+    }
+}
@@ -9,5 +9,67 @@ package JMeter.plugins.functional.samplers.websocket;
  * @author Maciej Zaleski
  */
 public enum WebSocketImplementation {
-    RFC6455
+    RFC6455("RFC6455 (v13)") {
+        @Override
+        public WebSocketTransport createTransport(TransportOptions options) {
+            return new JettyTransport(options);
+        }
+    },
+    NETTY("Netty") {
+        @Override
+        public WebSocketTransport createTransport(TransportOptions options) {
+            return new NettyTransport(options);
+        }
+    },
+    JDK("JDK HttpClient") {
+        @Override
+        public WebSocketTransport createTransport(TransportOptions options) {
+            //Compiled for Java 11 on its own and loaded by name, so the other transports still run on Java 8
+            try {
+                return (WebSocketTransport) Class.forName(JDK_TRANSPORT)
+                        .getConstructor(TransportOptions.class).newInstance(options);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                throw new IllegalStateException("The JDK HttpClient transport requires Java 11 or later, running on Java "
+                        + System.getProperty("java.version") + ": " + e, e);
+            }
+        }
+    };
+
+    private static final String JDK_TRANSPORT = "JMeter.plugins.functional.samplers.websocket.JdkTransport";
+
+    private final String displayName;
+
+    WebSocketImplementation(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public abstract WebSocketTransport createTransport(TransportOptions options);
+
+    /**
+     * @return implementation of the display or constant name, RFC6455 if the name is blank or unknown
+     */
+    public static WebSocketImplementation fromName(String name) {
+        for (WebSocketImplementation implementation : values()) {
+            if (implementation.displayName.equals(name) || implementation.name().equals(name)) {
+                return implementation;
+            }
+        }
+        return RFC6455;
+    }
+
+    /**
+     * @return display names shown in the sampler panel
+     */
+    public static String[] getDisplayNames() {
+        WebSocketImplementation[] implementations = values();
+        String[] names = new String[implementations.length];
+        for (int i = 0; i < implementations.length; i++) {
+            names[i] = implementations[i].displayName;
+        }
+        return names;
+    }
 }
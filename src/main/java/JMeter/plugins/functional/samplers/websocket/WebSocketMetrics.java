@@ -0,0 +1,434 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the WebSocket engine updated on the socket hot paths.
+ * <p>
+ * Counters are striped (LongAdder) so concurrent I/O threads don't contend on a single memory location. They are
+ * exposed as a JMX MBean while a test is running and optionally as a Prometheus text endpoint on the loopback
+ * interface.
+ */
+public class WebSocketMetrics implements WebSocketMetricsMBean {
+
+    public static final String OBJECT_NAME = "JMeter.plugins.functional.samplers.websocket:type=WebSocketMetrics";
+    public static final String METRICS_PATH = "/metrics";
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final WebSocketMetrics instance = new WebSocketMetrics();
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder connectionErrors = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder pendingSends = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder sendBlockedNanos = new LongAdder();
+    private final Map<String, LongAdder> targetConnections = new ConcurrentHashMap<>();
+
+    private ObjectName objectName;
+    private HttpServer httpServer;
+    //Sampler elements of the running test which started the metrics
+    private int starts;
+
+    private WebSocketMetrics() {
+    }
+
+    public static WebSocketMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Publishes the counters over JMX and, if the port is positive, over HTTP. Every sampler element of a test starts
+     * the metrics: the first one resets the counters, later ones only open the HTTP endpoint if none is open yet.
+     */
+    public synchronized void start(int httpPort) {
+        if (starts++ == 0) {
+            reset();
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(this, name);
+                    objectName = name;
+                }
+            } catch (Exception e) {
+                log.warn("Cannot register WebSocket metrics MBean: " + e.getMessage());
+            }
+        }
+
+        if (httpPort > 0 && httpServer == null) {
+            try {
+                httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+                httpServer.createContext(METRICS_PATH, new HttpHandler() {
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        byte[] body = toPrometheusText().getBytes(StandardCharsets.UTF_8);
+                        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                        exchange.sendResponseHeaders(200, body.length);
+                        try (OutputStream out = exchange.getResponseBody()) {
+                            out.write(body);
+                        }
+                    }
+                });
+                httpServer.start();
+                log.info("WebSocket metrics available at http://localhost:" + httpPort + METRICS_PATH);
+            } catch (IOException e) {
+                log.warn("Cannot start WebSocket metrics endpoint on port " + httpPort + ": " + e.getMessage());
+                httpServer = null;
+            }
+        }
+    }
+
+    /**
+     * Unpublishes the counters once the last sampler element which started them stopped
+     */
+    public synchronized void stop() {
+        if (starts == 0 || --starts > 0) {
+            return;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.warn("Cannot unregister WebSocket metrics MBean: " + e.getMessage());
+            }
+            objectName = null;
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+
+    public void reset() {
+        connectionsOpened.reset();
+        connectionsClosed.reset();
+        connectionErrors.reset();
+        messagesReceived.reset();
+        messagesSent.reset();
+        bytesReceived.reset();
+        bytesSent.reset();
+        pendingSends.reset();
+        sendFailures.reset();
+        sendBlockedNanos.reset();
+        targetConnections.clear();
+    }
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void connectionClosed(boolean error) {
+        connectionsClosed.increment();
+        if (error) {
+            connectionErrors.increment();
+        }
+    }
+
+    /**
+     * Counts a connection which closed without having been opened, e.g. a failed handshake
+     */
+    public void connectionFailed() {
+        connectionErrors.increment();
+    }
+
+    /**
+     * Counts an open connection to the target host:port
+     */
+    public void targetOpened(String target) {
+        targetConnections.computeIfAbsent(target, key -> new LongAdder()).increment();
+    }
+
+    public void targetClosed(String target) {
+        LongAdder connections = targetConnections.get(target);
+        if (connections != null) {
+            connections.decrement();
+        }
+    }
+
+    public void messageReceived(long bytes) {
+        messagesReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    public void sendStarted() {
+        pendingSends.increment();
+    }
+
+    public void sendCompleted(int bytes) {
+        pendingSends.decrement();
+        messagesSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    public void sendFailed() {
+        pendingSends.decrement();
+        sendFailures.increment();
+    }
+
+    /**
+     * Counts the time a sender waited for a full send window
+     */
+    public void sendBlocked(long nanos) {
+        sendBlockedNanos.add(nanos);
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format
+     */
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder(2048);
+        appendMetric(text, "websocket_open_connections", "gauge", getOpenConnections());
+        appendMetric(text, "websocket_streaming_connections", "gauge", getStreamingConnections());
+        appendMetric(text, "websocket_connections_opened_total", "counter", getConnectionsOpened());
+        appendMetric(text, "websocket_connections_closed_total", "counter", getConnectionsClosed());
+        appendMetric(text, "websocket_connection_errors_total", "counter", getConnectionErrors());
+        appendMetric(text, "websocket_messages_received_total", "counter", getMessagesReceived());
+        appendMetric(text, "websocket_messages_sent_total", "counter", getMessagesSent());
+        appendMetric(text, "websocket_received_bytes_total", "counter", getBytesReceived());
+        appendMetric(text, "websocket_sent_bytes_total", "counter", getBytesSent());
+        appendMetric(text, "websocket_pending_sends", "gauge", getPendingSends());
+        appendMetric(text, "websocket_send_failures_total", "counter", getSendFailures());
+        appendMetric(text, "websocket_send_blocked_milliseconds_total", "counter", getSendBlockedMillis());
+        appendMetric(text, "websocket_executor_threads", "gauge", getExecutorThreads());
+        appendMetric(text, "websocket_executor_active_threads", "gauge", getExecutorActiveThreads());
+        appendMetric(text, "websocket_sequence_lost_total", "counter", getSequenceLost());
+        appendMetric(text, "websocket_sequence_duplicates_total", "counter", getSequenceDuplicates());
+        appendMetric(text, "websocket_sequence_out_of_order_total", "counter", getSequenceOutOfOrder());
+        appendMetric(text, "websocket_reconnects_total", "counter", getReconnects());
+        appendMetric(text, "websocket_reconnect_failures_total", "counter", getReconnectFailures());
+        appendMetric(text, "websocket_pings_total", "counter", getPings());
+        appendMetric(text, "websocket_ping_rtt_p50_microseconds", "gauge", getPingRttP50());
+        appendMetric(text, "websocket_ping_rtt_p99_microseconds", "gauge", getPingRttP99());
+        appendMetric(text, "websocket_ping_rtt_max_microseconds", "gauge", getPingRttMax());
+        appendMetric(text, "websocket_auto_replies_total", "counter", getAutoReplies());
+        appendMetric(text, "websocket_auto_reply_failures_total", "counter", getAutoReplyFailures());
+        appendMetric(text, "websocket_auto_reply_latency_p99_microseconds", "gauge", getAutoReplyLatencyP99());
+        appendMetric(text, "websocket_read_buffered_bytes", "gauge", getReadBufferedBytes());
+        appendMetric(text, "websocket_read_suspensions_total", "counter", getReadSuspensions());
+        appendMetric(text, "websocket_read_suspended_milliseconds_total", "counter", getReadSuspendedMillis());
+        appendMetric(text, "websocket_slow_consumer_evictions_total", "counter", getSlowConsumerEvictions());
+        appendMetric(text, "websocket_heap_guard_level", "gauge", getHeapGuardLevel());
+        appendMetric(text, "websocket_heap_shed_messages_total", "counter", getHeapShedMessages());
+        appendMetric(text, "websocket_heap_shed_chars_total", "counter", getHeapShedChars());
+        appendMetric(text, "websocket_heap_dropped_captures_total", "counter", getHeapDroppedCaptures());
+        text.append("# TYPE websocket_target_connections gauge\n");
+        for (Map.Entry<String, LongAdder> entry : targetConnections.entrySet()) {
+            text.append("websocket_target_connections{target=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void appendMetric(StringBuilder text, String name, String type, long value) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    @Override
+    public long getOpenConnections() {
+        return connectionsOpened.sum() - connectionsClosed.sum();
+    }
+
+    @Override
+    public long getStreamingConnections() {
+        return WebSocketSampler.getStreamingConnectionCount();
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    @Override
+    public long getConnectionsClosed() {
+        return connectionsClosed.sum();
+    }
+
+    @Override
+    public long getConnectionErrors() {
+        return connectionErrors.sum();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getPendingSends() {
+        return pendingSends.sum();
+    }
+
+    @Override
+    public long getSendFailures() {
+        return sendFailures.sum();
+    }
+
+    @Override
+    public long getSendBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(sendBlockedNanos.sum());
+    }
+
+    @Override
+    public String getTargetConnections() {
+        List<String> counts = new ArrayList<>(targetConnections.size());
+        for (Map.Entry<String, LongAdder> entry : targetConnections.entrySet()) {
+            counts.add(entry.getKey() + "=" + entry.getValue().sum());
+        }
+        return String.join(", ", counts);
+    }
+
+    @Override
+    public int getExecutorThreads() {
+        ExecutorService executor = WebSocketSampler.getExecutor();
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getPoolSize() : 0;
+    }
+
+    @Override
+    public int getExecutorActiveThreads() {
+        ExecutorService executor = WebSocketSampler.getExecutor();
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getActiveCount() : 0;
+    }
+
+    @Override
+    public long getSequenceLost() {
+        return SequenceTracker.getTotalLost();
+    }
+
+    @Override
+    public long getSequenceDuplicates() {
+        return SequenceTracker.getTotalDuplicates();
+    }
+
+    @Override
+    public long getSequenceOutOfOrder() {
+        return SequenceTracker.getTotalOutOfOrder();
+    }
+
+    @Override
+    public long getReconnects() {
+        return ReconnectPolicy.getTotalReconnects();
+    }
+
+    @Override
+    public long getReconnectFailures() {
+        return ReconnectPolicy.getTotalFailures();
+    }
+
+    @Override
+    public long getPings() {
+        return PingProbe.getTotalRtt().getCount();
+    }
+
+    @Override
+    public long getPingRttP50() {
+        return PingProbe.getTotalRtt().getPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getPingRttP99() {
+        return PingProbe.getTotalRtt().getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getPingRttMax() {
+        return PingProbe.getTotalRtt().getMax() / 1000;
+    }
+
+    @Override
+    public long getAutoReplies() {
+        return AutoResponder.getTotalReplies();
+    }
+
+    @Override
+    public long getAutoReplyFailures() {
+        return AutoResponder.getTotalFailures();
+    }
+
+    @Override
+    public long getAutoReplyLatencyP99() {
+        return AutoResponder.getTotalLatency().getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getReadBufferedBytes() {
+        return ReadThrottle.getTotalBuffered();
+    }
+
+    @Override
+    public long getReadSuspensions() {
+        return ReadThrottle.getTotalSuspensions();
+    }
+
+    @Override
+    public long getReadSuspendedMillis() {
+        return ReadThrottle.getTotalSuspendedMillis();
+    }
+
+    @Override
+    public long getSlowConsumerEvictions() {
+        return ReadThrottle.getTotalEvictions();
+    }
+
+    @Override
+    public int getHeapGuardLevel() {
+        return HeapGuard.getLevel();
+    }
+
+    @Override
+    public long getHeapShedMessages() {
+        return HeapGuard.getShedMessages();
+    }
+
+    @Override
+    public long getHeapShedChars() {
+        return HeapGuard.getShedChars();
+    }
+
+    @Override
+    public long getHeapDroppedCaptures() {
+        return HeapGuard.getDroppedCaptures();
+    }
+}
@@ -0,0 +1,95 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+/**
+ * Live view of the WebSocket engine exposed over JMX
+ */
+public interface WebSocketMetricsMBean {
+
+    long getOpenConnections();
+
+    long getStreamingConnections();
+
+    long getConnectionsOpened();
+
+    long getConnectionsClosed();
+
+    long getConnectionErrors();
+
+    long getMessagesReceived();
+
+    long getMessagesSent();
+
+    long getBytesReceived();
+
+    long getBytesSent();
+
+    long getPendingSends();
+
+    long getSendFailures();
+
+    long getSendBlockedMillis();
+
+    /**
+     * @return open connections per target host:port
+     */
+    String getTargetConnections();
+
+    int getExecutorThreads();
+
+    int getExecutorActiveThreads();
+
+    long getSequenceLost();
+
+    long getSequenceDuplicates();
+
+    long getSequenceOutOfOrder();
+
+    long getReconnects();
+
+    long getReconnectFailures();
+
+    long getPings();
+
+    /**
+     * @return median ping round trip of the test in microseconds
+     */
+    long getPingRttP50();
+
+    long getPingRttP99();
+
+    long getPingRttMax();
+
+    long getAutoReplies();
+
+    long getAutoReplyFailures();
+
+    /**
+     * @return 99th percentile of the auto reply latency of the test in microseconds
+     */
+    long getAutoReplyLatencyP99();
+
+    /**
+     * @return bytes received but not yet consumed by throttled connections
+     */
+    long getReadBufferedBytes();
+
+    long getReadSuspensions();
+
+    long getReadSuspendedMillis();
+
+    /**
+     * @return throttled connections closed by the server while they lagged behind
+     */
+    long getSlowConsumerEvictions();
+
+    /**
+     * @return 0 while responses are kept, up to 3 while the heap guard sheds them
+     */
+    int getHeapGuardLevel();
+
+    long getHeapShedMessages();
+
+    long getHeapShedChars();
+
+    long getHeapDroppedCaptures();
+}
@@ -7,12 +7,12 @@ package JMeter.plugins.functional.samplers.websocket;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jmeter.config.Argument;
 import org.apache.jmeter.config.Arguments;
-import org.apache.jmeter.protocol.http.control.Cookie;
 import org.apache.jmeter.protocol.http.util.EncoderCache;
 import org.apache.jmeter.protocol.http.util.HTTPArgument;
 import org.apache.jmeter.protocol.http.util.HTTPConstants;
 import org.apache.jmeter.samplers.AbstractSampler;
 import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.Sampler;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.testelement.TestStateListener;
@@ -21,25 +21,33 @@ import org.apache.jmeter.testelement.property.PropertyIterator;
 import org.apache.jmeter.testelement.property.StringProperty;
 import org.apache.jmeter.testelement.property.TestElementProperty;
 import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.jorphan.util.JOrphanUtils;
 import org.apache.log.Logger;
-import org.eclipse.jetty.util.HttpCookieStore;
-import org.eclipse.jetty.util.ssl.SslContextFactory;
-import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
-import org.eclipse.jetty.websocket.client.WebSocketClient;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 import java.net.HttpCookie;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -48,6 +56,10 @@ import java.util.concurrent.TimeUnit;
 public class WebSocketSampler extends AbstractSampler implements TestStateListener {
     public static int DEFAULT_CONNECTION_TIMEOUT = 20000; //20 sec
     public static int DEFAULT_RESPONSE_TIMEOUT = 20000; //20 sec
+    public static int DEFAULT_MAX_MESSAGE_SIZE = 256 * 1024 * 1024; //256 MB
+    public static int DEFAULT_RESPONSE_BACKLOG = 25;
+    public static int LEAN_INPUT_BUFFER_SIZE = 4096;
+    public static int LEAN_RESPONSE_BACKLOG = 1;
 
     private static final Logger log = LoggingManager.getLoggerForClass();
 
@@ -56,92 +68,267 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
     private static final String WS_PREFIX = "ws://"; // $NON-NLS-1$
     private static final String WSS_PREFIX = "wss://"; // $NON-NLS-1$
     private static final String DEFAULT_PROTOCOL = "ws";
+    private static final String PREWARM_PREFIX = "prewarm-";
+    private static final int PREWARM_PARALLELISM = 64; //concurrent handshakes while pre-warming
+
+    //JMeter property enabling the footprint measurement at the end of the test, which forces two full GCs
+    public static final String MEASURE_FOOTPRINT_PROPERTY = "websocket.footprint.measure";
+
+    public static final String VAR_SEQUENCE_LOST = "websocket.sequence.lost";
+    public static final String VAR_SEQUENCE_DUPLICATES = "websocket.sequence.duplicates";
+    public static final String VAR_SEQUENCE_OUT_OF_ORDER = "websocket.sequence.outOfOrder";
+    public static final String VAR_RECONNECT_TIME = "websocket.reconnect.time";
+    public static final String VAR_REPLAY_LAG = "websocket.replay.lag";
+    public static final String VAR_SEND_QUEUE = "websocket.send.queue";
+    public static final String VAR_SEND_MAX_QUEUE = "websocket.send.maxQueue";
+    public static final String VAR_SEND_BLOCKED = "websocket.send.blocked";
+    public static final String VAR_SEND_FAILURES = "websocket.send.failures";
+    public static final String VAR_PING_COUNT = "websocket.ping.count";
+    public static final String VAR_PING_RTT_P50 = "websocket.ping.rtt.p50";
+    public static final String VAR_PING_RTT_P99 = "websocket.ping.rtt.p99";
+    public static final String VAR_PING_RTT_MAX = "websocket.ping.rtt.max";
+    public static final String VAR_AUTO_REPLIES = "websocket.autoReply.count";
+    public static final String VAR_AUTO_REPLY_FAILURES = "websocket.autoReply.failures";
+    public static final String VAR_AUTO_REPLY_LATENCY_P99 = "websocket.autoReply.latency.p99";
+    public static final String VAR_READ_BUFFERED = "websocket.read.buffered";
+    public static final String VAR_READ_MAX_BUFFERED = "websocket.read.maxBuffered";
+    public static final String VAR_READ_SUSPENDED = "websocket.read.suspended";
+    public static final String VAR_READ_EVICTIONS = "websocket.read.evictions";
+    public static final String VAR_HEAP_LEVEL = "websocket.heap.level";
 
     private static Map<String, ServiceSocket> connectionList;
 
+    //Transports shared by lean connections, keyed by implementation and transport options
+    private static Map<String, WebSocketTransport> sharedClients = new ConcurrentHashMap<>();
+
+    //Locks serializing the creation of shared sessions
+    private static Map<String, Object> sessionLocks = new ConcurrentHashMap<>();
+
+    //Keys in connectionList of sessions opened before the test and not yet claimed by a thread
+    private static Queue<String> prewarmedSessions = new ConcurrentLinkedQueue<>();
+
+    //Sampler elements of the running test; the first one to start and the last one to end set up and tear down
+    //the state shared by all of them
+    private static final Object testLock = new Object();
+    private static int startedElements;
+
     private static ExecutorService executor = Executors.newCachedThreadPool();
 
+    //Timers of streaming connections (reconnect backoff); tasks must be short and hand blocking work to the executor
+    private static ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "WebSocketSampler-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private StringBuilder messages = new StringBuilder();
 
+    //URI and cookies of this sampler thread; samplers are cloned per thread so they are never shared
+    private ConnectionDescriptor connectionDescriptor;
+    private Boolean staticConnection;
+
+    //Frames of the replay file sent by this sampler thread
+    private TrafficReplay replay;
+
+    //Payloads compiled once per thread and rendered into a reused buffer
+    private PayloadTemplate connectTemplate;
+    private PayloadTemplate subscribeTemplate;
+    private final StringBuilder payloadBuffer = new StringBuilder(256);
+    private final List<PayloadTemplate> subscriptionTemplates = new ArrayList<>();
+
     public WebSocketSampler() {
         super();
         setName("WebSocket sampler");
     }
 
     private ServiceSocket getConnectionSocket() throws Exception {
-        URI uri = getUri();
+        return getConnectionSocket(getConnectionId(), false);
+    }
+
+    /**
+     * @param shared true if other threads use the connection too; it is reused without being initialized again
+     */
+    private ServiceSocket getConnectionSocket(String connectionId, boolean shared) throws Exception {
+        ConnectionDescriptor descriptor = getConnectionDescriptor();
+        URI uri = descriptor.getUri();
         messages.append("\n\n[CONNECTION INFORMATION]");
         messages.append("\nURI ").append(uri);
-        String connectionId = getConnectionId();
         messages.append("\nconnection id ").append(connectionId);
 
+        if (isStreamingConnection() && !shared && !connectionList.containsKey(connectionId)) {
+            claimPrewarmedSession(connectionId);
+        }
         if (isStreamingConnection() && connectionList.containsKey(connectionId)) {
             log.debug("connection " + connectionId + "already in list");
             ServiceSocket socket = connectionList.get(connectionId);
-            socket.initialize(this, null, true);
-            return socket;
+            if (socket.isReconnecting()) {
+                messages.append("\nwaiting for reconnect");
+                socket.awaitReconnect(getConnectionTimeoutValue(), TimeUnit.MILLISECONDS);
+            }
+            if (socket.isConnected()) {
+                if (!shared) {
+                    socket.initialize(this, null, true);
+                }
+                return socket;
+            }
+
+            //The server closed the connection and it wasn't restored; replace it with a new one
+            messages.append("\nreplacing closed connection");
+            connectionList.remove(connectionId);
+            socket.close();
+        }
+        //Pre-warming runs before the threads, without a current sampler
+        Sampler currentSampler = JMeterContextService.getContext().getCurrentSampler();
+        descriptor.updateCookies((currentSampler != null ? currentSampler : this).getProperty(ConnectionDescriptor.COOKIES_PROPERTY));
+        for (HttpCookie httpCookie : descriptor.getCookies()) {
+            messages.append("\nAdding cookie ").append(httpCookie.getName());
         }
-        //Create WebSocket client
-        SslContextFactory sslContexFactory = new SslContextFactory();
-        sslContexFactory.setTrustAll(isIgnoreSslErrors());
-        WebSocketClient webSocketClient = new WebSocketClient(sslContexFactory, executor);
-        HttpCookieStore cookieStore = new HttpCookieStore();
-        for (HttpCookie httpCookie : getHttpCookies()) {
-            cookieStore.add(uri, httpCookie);
+
+        //Spread connections over local and target addresses
+        InetAddress bindAddress = null;
+        AddressPool localAddresses = AddressPool.get("Local address", getLocalAddresses(), getAddressSelection());
+        if (localAddresses != null) {
+            bindAddress = InetAddress.getByName(localAddresses.select(connectionId));
+            messages.append("\nlocal address ").append(bindAddress.getHostAddress());
+        }
+        AddressPool targetAddresses = AddressPool.get("Target", getTargetAddresses(), getAddressSelection());
+        if (targetAddresses != null) {
+            uri = AddressPool.withTarget(uri, targetAddresses.select(connectionId));
+            messages.append("\ntarget ").append(uri.getAuthority());
+        }
+
+        List<HttpCookie> cookies = null;
+        WebSocketTransport transport;
+        boolean sharedClient = isLeanConnection();
+        if (sharedClient) {
+            //Lean connections share a started transport; cookies travel with the upgrade request
+            transport = getSharedClient(bindAddress);
+            cookies = descriptor.getCookies();
+        } else {
+            //Create WebSocket transport
+            TransportOptions options = getTransportOptions(bindAddress);
+            options.setCookieStore(descriptor.getCookieStore());
+            transport = getWebSocketImplementation().createTransport(options);
+            if (targetAddresses != null) {
+                //Cookies of the store don't match the domain of the target
+                cookies = descriptor.getCookies();
+            }
         }
-        webSocketClient.setCookieStore(cookieStore);
 
-        ServiceSocket socket = new ServiceSocket(this, webSocketClient);
+        ServiceSocket socket = new ServiceSocket(this, transport);
         socket.setSessionId(connectionId);
+        socket.setUri(uri);
+        socket.setCookies(cookies);
+        socket.setSharedClient(sharedClient);
         if (isStreamingConnection()) {
             connectionList.put(connectionId, socket);
         }
 
         //Start WebSocket client thread and upgrage HTTP connection
-        webSocketClient.start();
-        ClientUpgradeRequest request = new ClientUpgradeRequest();
-        webSocketClient.connect(socket, uri, request);
-
-        //Get connection timeout or use the default value
-        int connectionTimeout;
-        try {
-            connectionTimeout = Integer.parseInt(getConnectionTimeout());
-        } catch (NumberFormatException ex) {
-            log.warn("Connection timeout is not a number; using the default connection timeout of " + DEFAULT_CONNECTION_TIMEOUT + "ms");
-            connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+        if (!sharedClient) {
+            transport.start();
         }
+        transport.connect(uri, cookies, socket);
 
-        socket.awaitOpen(connectionTimeout, TimeUnit.MILLISECONDS);
+        socket.awaitOpen(getConnectionTimeoutValue(), TimeUnit.MILLISECONDS);
 
         return socket;
     }
 
-    private ArrayList<HttpCookie> getHttpCookies() {
-        ArrayList<HttpCookie> result = new ArrayList<>();
+    /**
+     * @param bindAddress local address of the connections, null to let the system choose
+     * @return transport options with the connection footprint limits of this sampler
+     */
+    private TransportOptions getTransportOptions(InetAddress bindAddress) {
+        TransportOptions options = new TransportOptions();
+        options.setTrustAll(isIgnoreSslErrors());
+        options.setMaxMessageSize(parseInt(getMaxMessageSize(), DEFAULT_MAX_MESSAGE_SIZE, "Max message size"));
+        options.setInputBufferSize(getInputBufferSizeValue());
+        if (StringUtils.isNotBlank(getIdleTimeout())) {
+            options.setIdleTimeout(parseInt(getIdleTimeout(), 0, "Idle timeout"));
+        }
+        options.setConnectTimeout(getConnectionTimeoutValue());
+        options.setExecutor(executor);
+        options.setBindAddress(bindAddress);
+        return options;
+    }
+
+    public WebSocketImplementation getWebSocketImplementation() {
+        return WebSocketImplementation.fromName(getImplementation());
+    }
 
-        JMeterProperty property = JMeterContextService.getContext().getCurrentSampler().getProperty("CookieManager.cookies");
-        Object value = property.getObjectValue();
-        if (value instanceof List) {
-            for (TestElementProperty elementProperty : (List<TestElementProperty>) value) {
-                Cookie jmeterCookie = (Cookie) elementProperty.getObjectValue();
-                HttpCookie httpCookie = new HttpCookie(jmeterCookie.getName(), jmeterCookie.getValue());
-                httpCookie.setDomain(jmeterCookie.getDomain());
-                httpCookie.setPath(jmeterCookie.getPath());
-                result.add(httpCookie);
+    /**
+     * @return started transport shared by all lean connections with the same implementation and configuration
+     */
+    private WebSocketTransport getSharedClient(InetAddress bindAddress) throws Exception {
+        TransportOptions options = getTransportOptions(bindAddress);
+        WebSocketImplementation implementation = getWebSocketImplementation();
+        String key = implementation.name() + "|" + options.getKey();
+        synchronized (sharedClients) {
+            WebSocketTransport transport = sharedClients.get(key);
+            if (transport == null) {
+                transport = implementation.createTransport(options);
+                transport.start();
+                sharedClients.put(key, transport);
+            }
+            return transport;
+        }
+    }
 
-                messages.append("\nAdding cookie ").append(jmeterCookie.getName());
+    private static void stopSharedClients() {
+        synchronized (sharedClients) {
+            for (WebSocketTransport transport : sharedClients.values()) {
+                try {
+                    transport.stop();
+                } catch (Exception e) {
+                    log.warn("Cannot stop shared WebSocket client: " + e.getMessage());
+                }
             }
+            sharedClients.clear();
         }
-        return result;
+    }
+
+    /**
+     * @return heap used after a full collection
+     */
+    private static long getUsedHeapAfterGc() {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        memoryMXBean.gc();
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return descriptor built once per thread if the connection properties are static, or for every sample otherwise
+     */
+    private ConnectionDescriptor getConnectionDescriptor() throws URISyntaxException {
+        if (staticConnection == null) {
+            staticConnection = ConnectionDescriptor.isStatic(this);
+        }
+        if (connectionDescriptor == null || !staticConnection) {
+            connectionDescriptor = new ConnectionDescriptor(getUri(), staticConnection);
+        }
+        return connectionDescriptor;
     }
 
     @Override
     public SampleResult sample(Entry entry) {
         ServiceSocket socket = null;
+        messages.setLength(0);
         SampleResult sampleResult = new SampleResult();
         sampleResult.setSampleLabel(getName());
         sampleResult.setDataEncoding(getContentEncoding());
 
+        if (StringUtils.isNotBlank(getReplayFile())) {
+            return sampleReplay(sampleResult);
+        }
+        int sharedSessions = getSharedSessionsValue();
+        if (sharedSessions > 0) {
+            return sampleShared(sampleResult, sharedSessions);
+        }
+
         //This StringBuilder will track all exceptions related to the protocol processing
         StringBuilder errorList = new StringBuilder();
         errorList.append("\n\n[Problems]\n");
@@ -149,16 +336,13 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
         boolean isOK = false;
 
         //Set the message payload in the Sampler
-        String connectPayloadMessage = getStompPayload(getConnectPayload());
-        String subscribePayloadMessage = getStompPayload(getSubscribePayload());
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        connectTemplate = getPayloadTemplate(connectTemplate, getProperty("connectPayload"));
+        subscribeTemplate = getPayloadTemplate(subscribeTemplate, getProperty("subscribePayload"));
+        String connectPayloadMessage = connectTemplate.renderStompFrame(payloadBuffer, variables);
+        String subscribePayloadMessage = subscribeTemplate.renderStompFrame(payloadBuffer, variables);
 
-        int responseTimeout;
-        try {
-            responseTimeout = Integer.parseInt(getResponseTimeout());
-        } catch (NumberFormatException ex) {
-            log.warn("Request timeout is not a number; using the default request timeout of " + DEFAULT_RESPONSE_TIMEOUT + "ms");
-            responseTimeout = DEFAULT_RESPONSE_TIMEOUT;
-        }
+        int responseTimeout = getResponseTimeoutValue();
 
         sampleResult.setSamplerData(connectPayloadMessage + "\n" + subscribePayloadMessage);
 
@@ -172,26 +356,45 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
                 sampleResult.setResponseCode("500");
                 sampleResult.setSuccessful(false);
                 sampleResult.sampleEnd();
-                sampleResult.setResponseMessage(errorList.toString());
+                ResponseCapture capture = getResponseCaptureValue();
+                if (capture.isCaptured(false)) {
+                    sampleResult.setResponseMessage(capture.join(errorList));
+                }
                 errorList.append(" - Connection couldn't be opened").append("\n");
                 return sampleResult;
             }
 
+            reportReconnect(socket);
+            socket.setReplayPayloads(connectPayloadMessage, subscribePayloadMessage);
+            socket.getMessageRecorder().begin(getMessageResults(), getMessageResultsRateValue(), getMessageResultsLimitValue());
+
             //Wait for any of the following:
             // - Response matching response pattern is received
             // - Response matching connection closing pattern is received
             // - Timeout is reached
-            if (StringUtils.isNotBlank(connectPayloadMessage)) {
+            if (socket.isSessionEstablished()) {
+                //Pre-warmed session was connected before the test; later samples send the connect payload again
+                socket.setSessionEstablished(false);
+                socket.log(" - Session connected before the test\n");
+            } else if (StringUtils.isNotBlank(connectPayloadMessage)) {
                 sendMessage(socket, connectPayloadMessage);
                 socket.awaitConnected(responseTimeout, TimeUnit.MILLISECONDS);
             }
 
             sendMessage(socket, subscribePayloadMessage);
+            boolean subscriptionsMet = sendSubscriptions(socket, variables, responseTimeout);
 
             if (socket.subscribeExpression != null) {
                 socket.awaitSubscribe(responseTimeout, TimeUnit.MILLISECONDS);
             }
 
+            reportSequence(socket, sampleResult);
+            long sendFailures = reportSendWindow(socket);
+            reportPing(socket);
+            reportAutoReplies(socket);
+            reportReadThrottle(socket);
+            reportHeapGuard(socket);
+
             sampleResult.setResponseCode(getCodeRetour(socket));
 
             //Set sampler response code
@@ -202,9 +405,15 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
                 sampleResult.setResponseCodeOK();
                 isOK = true;
             }
-
-            //set sampler response
-            sampleResult.setResponseData(socket.getResponseMessage(), getContentEncoding());
+            if (!subscriptionsMet) {
+                isOK = false;
+                errorList.append(" - Subscriptions didn't receive the expected messages in time").append("\n");
+            }
+            if (sendFailures > 0) {
+                isOK = false;
+                errorList.append(" - ").append(sendFailures).append(" asynchronous sends failed: ")
+                        .append(socket.getSendWindow().getLastFailure()).append("\n");
+            }
 
         } catch (URISyntaxException e) {
             errorList.append(" - Invalid URI syntax: ").append(e.getMessage()).append("\n").append(StringUtils.join(e.getStackTrace(), "\n")).append("\n");
@@ -218,43 +427,660 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
             errorList.append(" - Unexpected error: ").append(e.getMessage()).append("\n").append(StringUtils.join(e.getStackTrace(), "\n")).append("\n");
         }
 
+        sampleResult.sampleEnd();
+        sampleResult.setSuccessful(isOK);
+        if (socket != null) {
+            addMessageResults(sampleResult, socket.getMessageRecorder());
+        }
+
+        //Response texts are built only if the capture policy keeps them
+        ResponseCapture capture = getResponseCaptureValue();
+        if (capture.isCaptured(isOK)) {
+            if (socket != null) {
+                sampleResult.setResponseData(socket.getResponseMessage(capture), getContentEncoding());
+            }
+            String logMessage = (socket != null) ? socket.getLogMessage() : "";
+            sampleResult.setResponseMessage(capture.join(messages, logMessage, errorList));
+        }
+        return sampleResult;
+    }
+
+    /**
+     * Sends SUBSCRIBE frames of the subscriptions not yet active on the connection and waits until every
+     * subscription received its expected number of messages
+     *
+     * @return false if some subscription didn't receive its expected messages in time
+     */
+    private boolean sendSubscriptions(ServiceSocket socket, JMeterVariables variables, int responseTimeout)
+            throws IOException, InterruptedException {
+        return sendSubscriptions(socket, null, variables, responseTimeout);
+    }
+
+    /**
+     * @param exchange state of this thread on a shared session, or null if the connection isn't shared
+     */
+    private boolean sendSubscriptions(ServiceSocket socket, SessionExchange exchange, JMeterVariables variables,
+                                      int responseTimeout) throws IOException, InterruptedException {
+        Arguments definitions = getSubscriptions();
+        if (definitions == null || definitions.getArgumentCount() == 0) {
+            return true;
+        }
+
+        SubscriptionTable table = exchange != null ? exchange.getSubscriptionTable() : socket.getSubscriptionTable();
+        List<String> payloads = new ArrayList<>(definitions.getArgumentCount());
+        List<String> ids = new ArrayList<>(definitions.getArgumentCount());
+        List<Integer> expectations = new ArrayList<>(definitions.getArgumentCount());
+        for (int i = 0; i < definitions.getArgumentCount(); i++) {
+            Argument definition = definitions.getArgument(i);
+            if (subscriptionTemplates.size() <= i) {
+                subscriptionTemplates.add(null);
+            }
+            PayloadTemplate template = getPayloadTemplate(subscriptionTemplates.get(i), definition.getProperty(Argument.NAME));
+            subscriptionTemplates.set(i, template);
+
+            String payload = template.renderStompFrame(payloadBuffer, variables);
+            if (payload.isEmpty()) {
+                continue;
+            }
+            String id = SubscriptionTable.getId(payload);
+            if (id == null) {
+                messages.append("\nsubscription without id header ignored: ").append(payload);
+                continue;
+            }
+            int expected = StringUtils.isBlank(definition.getValue()) ? 0 : parseInt(definition.getValue(), 0, "Expected messages");
+            if (table.isSubscribed(id)) {
+                table.setExpected(id, expected);
+            } else if (exchange != null && !socket.registerSubscription(id, exchange)) {
+                messages.append("\nsubscription id ").append(id).append(" is used by another thread of the shared session");
+            } else {
+                payloads.add(payload);
+                ids.add(id);
+                expectations.add(expected);
+            }
+        }
+
+        table.beginSample();
+        for (int i = 0; i < payloads.size(); i++) {
+            table.add(ids.get(i), payloads.get(i), expectations.get(i));
+            sendMessage(socket, payloads.get(i));
+        }
+
+        boolean met = table.await(responseTimeout, TimeUnit.MILLISECONDS);
+        if (socket.isExecutionLogging()) {
+            socket.log(table.report());
+        }
+        return met;
+    }
+
+    /**
+     * Sends the subscribe payload over one of the sessions shared by all threads. Responses are correlated to
+     * this thread by the ids of its subscriptions and by a receipt header added to the payload.
+     */
+    private SampleResult sampleShared(SampleResult sampleResult, int sharedSessions) {
+        ServiceSocket socket = null;
+        SessionExchange exchange = null;
+        StringBuilder errorList = new StringBuilder();
+        errorList.append("\n\n[Problems]\n");
+        boolean isOK = false;
+
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        connectTemplate = getPayloadTemplate(connectTemplate, getProperty("connectPayload"));
+        subscribeTemplate = getPayloadTemplate(subscribeTemplate, getProperty("subscribePayload"));
+        String connectPayloadMessage = connectTemplate.renderStompFrame(payloadBuffer, variables);
+        String subscribePayloadMessage = subscribeTemplate.renderStompFrame(payloadBuffer, variables);
+        int responseTimeout = getResponseTimeoutValue();
+
+        sampleResult.setSamplerData(connectPayloadMessage + "\n" + subscribePayloadMessage);
+        sampleResult.sampleStart();
+
+        try {
+            if (!isStreamingConnection()) {
+                throw new IllegalStateException("Shared sessions require a streaming connection");
+            }
+
+            int index = JMeterContextService.getContext().getThreadNum() % sharedSessions;
+            socket = getSharedSession(getConnectionId() + "#shared-" + index, connectPayloadMessage, responseTimeout);
+            if (socket == null || !socket.isConnected()) {
+                sampleResult.setResponseCode("500");
+                errorList.append(" - Shared session couldn't be opened").append("\n");
+            } else {
+                exchange = socket.getExchange(JMeterContextService.getContext().getThread().getThreadName(),
+                        getResponseBacklogValue());
+                exchange.beginSample(getResponseBacklogValue(), getResponseCaptureValue());
+
+                String receipt = null;
+                if (StringUtils.isNotBlank(subscribePayloadMessage)) {
+                    String payload = subscribePayloadMessage;
+                    if (StompFrame.parse(payload) != null && !StompFrame.isCommand(payload, "CONNECT")
+                            && StompFrame.getHeader(payload, SessionExchange.RECEIPT_HEADER) == null) {
+                        receipt = exchange.nextReceipt();
+                        socket.registerReceipt(receipt, exchange);
+                        payload = StompFrame.addHeader(payload, SessionExchange.RECEIPT_HEADER, receipt);
+                    }
+                    sendMessage(socket, payload);
+                }
+
+                boolean subscriptionsMet = sendSubscriptions(socket, exchange, variables, responseTimeout);
+                boolean receiptReceived = receipt == null || exchange.awaitReceipt(responseTimeout, TimeUnit.MILLISECONDS);
+                //Send window, ping, auto reply and read throttle counters belong to the connection; only the first
+                //thread of the session reports them, other threads would start their next sample in between
+                long sendFailures = 0;
+                if (JMeterContextService.getContext().getThreadNum() == index) {
+                    sendFailures = reportSendWindow(socket);
+                    reportPing(socket);
+                    reportAutoReplies(socket);
+                    reportReadThrottle(socket);
+                }
+                reportHeapGuard(socket);
+
+                if (!receiptReceived) {
+                    errorList.append(" - Receipt ").append(receipt).append(" wasn't received in time").append("\n");
+                }
+                if (!subscriptionsMet) {
+                    errorList.append(" - Subscriptions didn't receive the expected messages in time").append("\n");
+                }
+                if (sendFailures > 0) {
+                    errorList.append(" - ").append(sendFailures).append(" asynchronous sends failed: ")
+                            .append(socket.getSendWindow().getLastFailure()).append("\n");
+                }
+                if (exchange.getError() != null) {
+                    sampleResult.setResponseCode("500");
+                } else if (receiptReceived && subscriptionsMet && sendFailures == 0) {
+                    sampleResult.setResponseCodeOK();
+                    isOK = true;
+                }
+            }
+        } catch (IOException e) {
+            errorList.append(" - IO Exception: ").append(e.getMessage()).append("\n").append(StringUtils.join(e.getStackTrace(), "\n")).append("\n");
+        } catch (InterruptedException e) {
+            errorList.append(" - Execution interrupted: ").append(e.getMessage()).append("\n").append(StringUtils.join(e.getStackTrace(), "\n")).append("\n");
+        } catch (Exception e) {
+            errorList.append(" - Unexpected error: ").append(e.getMessage()).append("\n").append(StringUtils.join(e.getStackTrace(), "\n")).append("\n");
+        }
+
+        sampleResult.sampleEnd();
+        sampleResult.setSuccessful(isOK);
+
+        ResponseCapture capture = getResponseCaptureValue();
+        if (capture.isCaptured(isOK)) {
+            if (exchange != null) {
+                sampleResult.setResponseData(exchange.getResponseMessage(capture), getContentEncoding());
+            }
+            String logMessage = (socket != null) ? socket.drainLogMessage() : "";
+            String exchangeLog = (exchange != null) ? "\n[Thread Exchange]\n" + exchange.getLog() : "";
+            sampleResult.setResponseMessage(capture.join(messages, logMessage, exchangeLog, errorList));
+        } else if (socket != null) {
+            socket.discardLogMessage();
+        }
+        return sampleResult;
+    }
+
+    /**
+     * Opens the shared session once and sends its connect payload; later callers reuse it
+     */
+    private ServiceSocket getSharedSession(String key, String connectPayloadMessage, int responseTimeout) throws Exception {
+        Object lock = sessionLocks.get(key);
+        if (lock == null) {
+            Object created = new Object();
+            lock = sessionLocks.putIfAbsent(key, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+
+        synchronized (lock) {
+            ServiceSocket socket = getConnectionSocket(key, true);
+            if (socket.isConnected() && !socket.isSessionEstablished()) {
+                socket.setReplayPayloads(connectPayloadMessage, null);
+                if (StringUtils.isNotBlank(connectPayloadMessage)) {
+                    sendMessage(socket, connectPayloadMessage);
+                    socket.awaitConnected(responseTimeout, TimeUnit.MILLISECONDS);
+                }
+                socket.setSessionEstablished(true);
+            }
+            return socket;
+        }
+    }
+
+    /**
+     * Opens and connects the sessions in parallel before the threads start, so that handshakes are not part of the
+     * timed samples. Threads claim per-thread sessions on their first sample; shared sessions are opened under the
+     * keys the threads use.
+     */
+    private void prewarm(int sessions) {
+        if (!isStreamingConnection()) {
+            log.warn("Pre-warming is ignored; it applies to streaming connections only");
+            return;
+        }
+        int sharedSessions = getSharedSessionsValue();
+        if (sharedSessions > 0) {
+            sessions = Math.min(sessions, sharedSessions);
+        }
+
+        //Variables of the test plan and User Defined Variables; the threads and their variables don't exist yet
+        final JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        String undefined = getPayloadTemplate(null, getProperty("connectPayload")).getUndefinedVariable(variables);
+        if (undefined != null) {
+            log.warn("Pre-warming is skipped; the connect payload references ${" + undefined + "}, which isn't defined"
+                    + " before the threads start");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(sessions, PREWARM_PARALLELISM));
+        List<Future<String>> results = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            final String key = sharedSessions > 0 ? getConnectionId() + "#shared-" + i : PREWARM_PREFIX + getName() + "-" + i;
+            final boolean shared = sharedSessions > 0;
+            results.add(pool.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return prewarmSession(key, shared, variables);
+                }
+            }));
+        }
+        pool.shutdown();
+
+        int ready = 0;
+        String firstFailure = null;
+        for (Future<String> result : results) {
+            String failure;
+            try {
+                failure = result.get();
+            } catch (Exception e) {
+                failure = e.getMessage();
+            }
+            if (failure == null) {
+                ready++;
+            } else if (firstFailure == null) {
+                firstFailure = failure;
+            }
+        }
+        log.info("Pre-warmed " + ready + " of " + sessions + " sessions in " + (System.currentTimeMillis() - start) + " ms"
+                + (firstFailure != null ? "; first failure: " + firstFailure : ""));
+    }
+
+    /**
+     * @return null if the session is open and connected, the reason otherwise
+     */
+    private String prewarmSession(String key, boolean shared, JMeterVariables variables) {
+        //A clone per session keeps the per-thread state of the sampler out of the parallel handshakes
+        WebSocketSampler sampler = (WebSocketSampler) clone();
+        PayloadTemplate template = sampler.getPayloadTemplate(null, sampler.getProperty("connectPayload"));
+        String connectPayloadMessage = template.renderStompFrame(sampler.payloadBuffer, variables);
+        int responseTimeout = getResponseTimeoutValue();
+        try {
+            if (shared) {
+                ServiceSocket socket = sampler.getSharedSession(key, connectPayloadMessage, responseTimeout);
+                return socket.isConnected() ? null : "connection closed by the server";
+            }
+
+            ServiceSocket socket = sampler.getConnectionSocket(key, false);
+            if (socket.isConnected() && StringUtils.isNotBlank(connectPayloadMessage)) {
+                sampler.sendMessage(socket, connectPayloadMessage);
+                if (!socket.awaitConnected(responseTimeout, TimeUnit.MILLISECONDS)) {
+                    socket.close();
+                    connectionList.remove(key);
+                    return "no connect response in " + responseTimeout + " ms";
+                }
+            }
+            if (!socket.isConnected()) {
+                socket.close();
+                connectionList.remove(key);
+                return "connection couldn't be opened";
+            }
+            socket.setSessionEstablished(true);
+            prewarmedSessions.add(key);
+            return null;
+        } catch (Exception e) {
+            ServiceSocket socket = connectionList.remove(key);
+            if (socket != null) {
+                socket.close();
+            }
+            return e.toString();
+        }
+    }
+
+    /**
+     * Moves a pre-warmed session to the connection id of this thread
+     */
+    private void claimPrewarmedSession(String connectionId) {
+        String key;
+        while ((key = prewarmedSessions.poll()) != null) {
+            ServiceSocket socket = connectionList.remove(key);
+            if (socket == null) {
+                continue;
+            }
+            if (!socket.isConnected()) {
+                socket.close();
+                continue;
+            }
+            if (connectionList.putIfAbsent(connectionId, socket) != null) {
+                //Another thread with the same connection id was faster
+                connectionList.put(key, socket);
+                prewarmedSessions.add(key);
+                return;
+            }
+            socket.setSessionId(connectionId);
+            messages.append("\nclaimed pre-warmed session ").append(key);
+            return;
+        }
+    }
+
+    /**
+     * Sends the next captured frame of this thread's replay connection once it is due; the thread stops after the
+     * last frame
+     */
+    private SampleResult sampleReplay(SampleResult sampleResult) {
+        ServiceSocket socket = null;
+        StringBuilder errorList = new StringBuilder();
+        errorList.append("\n\n[Problems]\n");
+        boolean isOK = false;
+        boolean started = false;
+
+        try {
+            if (replay == null) {
+                replay = openReplay();
+            }
+
+            TrafficCaptureReader.Record record = replay.next();
+            if (record == null) {
+                sampleResult.setStopThread(true);
+                sampleResult.setSuccessful(true);
+                sampleResult.setResponseMessage("Replay finished, no frames left for this thread");
+                return sampleResult;
+            }
+
+            long lag = replay.awaitDue(record);
+            JMeterContextService.getContext().getVariables().put(VAR_REPLAY_LAG, String.valueOf(TimeUnit.NANOSECONDS.toMillis(lag)));
+            messages.append("\nreplaying frame of {").append(record.getConnectionId()).append("}, lag ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(lag)).append(" ms");
+            sampleResult.setSamplerData(record.getPayload());
+
+            sampleResult.sampleStart();
+            started = true;
+            socket = getConnectionSocket();
+            if (socket == null) {
+                sampleResult.setResponseCode("500");
+                errorList.append(" - Connection couldn't be opened").append("\n");
+            } else {
+                sendMessage(socket, record.getPayload());
+                long sendFailures = reportSendWindow(socket);
+                reportPing(socket);
+                reportAutoReplies(socket);
+                reportReadThrottle(socket);
+                reportHeapGuard(socket);
+                if (socket.getError() != 0) {
+                    sampleResult.setResponseCode(socket.getError().toString());
+                } else if (sendFailures > 0) {
+                    errorList.append(" - ").append(sendFailures).append(" asynchronous sends failed: ")
+                            .append(socket.getSendWindow().getLastFailure()).append("\n");
+                } else {
+                    sampleResult.setResponseCodeOK();
+                    isOK = true;
+                }
+            }
+
+            if (!replay.hasNext()) {
+                replay.close();
+                sampleResult.setStopThread(true);
+            }
+        } catch (IOException e) {
+            errorList.append(" - IO Exception: ").append(e.getMessage()).append("\n").append(StringUtils.join(e.getStackTrace(), "\n")).append("\n");
+        } catch (InterruptedException e) {
+            errorList.append(" - Execution interrupted: ").append(e.getMessage()).append("\n").append(StringUtils.join(e.getStackTrace(), "\n")).append("\n");
+        } catch (Exception e) {
+            errorList.append(" - Unexpected error: ").append(e.getMessage()).append("\n").append(StringUtils.join(e.getStackTrace(), "\n")).append("\n");
+        }
+
+        if (!started) {
+            sampleResult.sampleStart();
+        }
         sampleResult.sampleEnd();
         sampleResult.setSuccessful(isOK);
 
-        String logMessage = (socket != null) ? socket.getLogMessage() : "";
-        sampleResult.setResponseMessage(messages.toString() + logMessage + errorList);
+        ResponseCapture capture = getResponseCaptureValue();
+        if (capture.isCaptured(isOK)) {
+            if (socket != null) {
+                sampleResult.setResponseData(socket.getResponseMessage(capture), getContentEncoding());
+            }
+            String logMessage = (socket != null) ? socket.getLogMessage() : "";
+            sampleResult.setResponseMessage(capture.join(messages, logMessage, errorList));
+        }
         return sampleResult;
     }
 
+    /**
+     * Replay connection of this thread is its thread number; threads above the number of replay connections get
+     * no frames
+     */
+    private TrafficReplay openReplay() throws IOException {
+        int threadNum = JMeterContextService.getContext().getThreadNum();
+        int connections = StringUtils.isBlank(getReplayConnections())
+                ? JMeterContextService.getContext().getThreadGroup().getNumThreads()
+                : parseInt(getReplayConnections(), 1, "Replay connections");
+        double speed = 1;
+        if (StringUtils.isNotBlank(getReplaySpeed())) {
+            try {
+                speed = Double.parseDouble(getReplaySpeed().trim());
+            } catch (NumberFormatException ex) {
+                log.warn("Replay speed is not a number; using the default value of 1");
+            }
+        }
+
+        File file = new File(getReplayFile().trim());
+        if (threadNum >= connections) {
+            return TrafficReplay.open(file, -1, connections, speed);
+        }
+        return TrafficReplay.open(file, threadNum, connections, speed);
+    }
+
     private void sendMessage(ServiceSocket socket, String payloadMessage) throws IOException, InterruptedException {
         //Send message only if it is not empty
+        socket.setSendWindow(getSendWindowValue(), getResponseTimeoutValue());
         socket.sendMessage(payloadMessage);
     }
 
+    /**
+     * Attaches the messages kept during the sample as sub-results timed from the start of the sample to their
+     * arrival. Sub-results are stored without adding their time and bytes to the sample.
+     */
+    private void addMessageResults(SampleResult sampleResult, MessageRecorder recorder) {
+        if (!recorder.isRecording()) {
+            return;
+        }
+        List<MessageRecorder.Message> kept = recorder.finish();
+        for (MessageRecorder.Message message : kept) {
+            SampleResult child = new SampleResult();
+            child.setSampleLabel(sampleResult.getSampleLabel() + " - message " + message.getNumber());
+            long latency = Math.max(0, message.getArrival() - sampleResult.getStartTime());
+            child.setStampAndTime(sampleResult.getStartTime(), latency);
+            child.setLatency(latency);
+            child.setResponseData(message.getText(), getContentEncoding());
+            child.setDataType(SampleResult.TEXT);
+            child.setBytes((int) Math.min(Integer.MAX_VALUE, message.getBytes()));
+            child.setResponseCodeOK();
+            child.setResponseMessage("Message #" + message.getNumber());
+            child.setSuccessful(true);
+            sampleResult.storeSubResult(child);
+        }
+        messages.append("\nmessage results: kept ").append(kept.size()).append(" of ").append(recorder.getSeen())
+                .append(" messages");
+    }
+
+    /**
+     * Publish the write queue of the asynchronous sends since the previous sample of the connection. Sends are
+     * counted in the sample in which they complete.
+     *
+     * @return number of failed sends
+     */
+    private long reportSendWindow(ServiceSocket socket) {
+        SendWindow window = socket.getSendWindow();
+        if (window == null) {
+            return 0;
+        }
+
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        long failed = window.getSampleFailed();
+        variables.put(VAR_SEND_QUEUE, String.valueOf(window.getDepth()));
+        variables.put(VAR_SEND_MAX_QUEUE, String.valueOf(window.getSampleMaxDepth()));
+        variables.put(VAR_SEND_BLOCKED, String.valueOf(window.getSampleBlockedMillis()));
+        variables.put(VAR_SEND_FAILURES, String.valueOf(failed));
+
+        if (socket.isExecutionLogging()) {
+            socket.log(" - Send window: " + window.getSampleSent() + " sent, " + failed + " failed, " + window.getDepth()
+                    + "/" + window.getSize() + " in flight (max " + window.getSampleMaxDepth() + "), blocked "
+                    + window.getSampleBlockedMillis() + " ms\n");
+        }
+        window.resetSample();
+        return failed;
+    }
+
+    /**
+     * Publish the ping round trips of the connection since its previous sample, in microseconds
+     */
+    private void reportPing(ServiceSocket socket) {
+        PingProbe probe = socket.getPingProbe();
+        if (probe == null) {
+            return;
+        }
+
+        LatencyHistogram rtt = probe.getRtt();
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        variables.put(VAR_PING_COUNT, String.valueOf(rtt.getCount()));
+        variables.put(VAR_PING_RTT_P50, String.valueOf(rtt.getPercentile(50) / 1000));
+        variables.put(VAR_PING_RTT_P99, String.valueOf(rtt.getPercentile(99) / 1000));
+        variables.put(VAR_PING_RTT_MAX, String.valueOf(rtt.getMax() / 1000));
+
+        if (socket.isExecutionLogging()) {
+            socket.log(" - Ping round trip: " + rtt.summary() + "\n");
+        }
+        rtt.reset();
+    }
+
+    /**
+     * Publish the auto replies sent since the previous sample of the connection, latency in microseconds
+     */
+    private void reportAutoReplies(ServiceSocket socket) {
+        AutoResponder responder = socket.getAutoResponder();
+        if (responder == null) {
+            return;
+        }
+
+        LatencyHistogram latency = responder.getSampleLatency();
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        variables.put(VAR_AUTO_REPLIES, String.valueOf(responder.getSampleReplies()));
+        variables.put(VAR_AUTO_REPLY_FAILURES, String.valueOf(responder.getSampleFailures()));
+        variables.put(VAR_AUTO_REPLY_LATENCY_P99, String.valueOf(latency.getPercentile(99) / 1000));
+
+        if (socket.isExecutionLogging()) {
+            socket.log(" - Auto replies: " + responder.getSampleReplies() + " sent, " + responder.getSampleFailures()
+                    + " failed, latency " + latency.summary() + "\n");
+        }
+        responder.resetSample();
+    }
+
+    /**
+     * Publish the buffered bytes and read suspensions of a throttled connection since its previous sample
+     */
+    private void reportReadThrottle(ServiceSocket socket) {
+        ReadThrottle throttle = socket.getReadThrottle();
+        if (throttle == null) {
+            return;
+        }
+
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        variables.put(VAR_READ_BUFFERED, String.valueOf(throttle.getBuffered()));
+        variables.put(VAR_READ_MAX_BUFFERED, String.valueOf(throttle.getSampleMaxBuffered()));
+        variables.put(VAR_READ_SUSPENDED, String.valueOf(throttle.getSampleSuspendedMillis()));
+        variables.put(VAR_READ_EVICTIONS, String.valueOf(throttle.getSampleEvictions()));
+
+        if (socket.isExecutionLogging()) {
+            socket.log(" - Read throttle: " + throttle.getBuffered() + " bytes buffered (max "
+                    + throttle.getSampleMaxBuffered() + "), reads suspended " + throttle.getSampleSuspensions()
+                    + " times for " + throttle.getSampleSuspendedMillis() + " ms" + (throttle.getSampleEvictions() > 0
+                    ? ", closed by the server while lagging" : "") + "\n");
+        }
+        throttle.resetSample();
+    }
+
+    /**
+     * Publish the heap guard level, so samples taken while responses were shed can be told apart
+     */
+    private void reportHeapGuard(ServiceSocket socket) {
+        if (getHeapGuardValue() <= 0) {
+            return;
+        }
+
+        int level = HeapGuard.getLevel();
+        JMeterContextService.getContext().getVariables().put(VAR_HEAP_LEVEL, String.valueOf(level));
+        if (level > 0 && socket.isExecutionLogging()) {
+            socket.log(" - Heap guard level " + level + ": backlog limited to "
+                    + HeapGuard.getBacklogLimit(getResponseBacklogValue()) + " messages"
+                    + (HeapGuard.isMessageLogging() ? "" : ", message texts not logged") + "\n");
+        }
+    }
+
+    /**
+     * Publish the duration of a reconnect completed since the previous sample of the connection
+     */
+    private void reportReconnect(ServiceSocket socket) {
+        long reconnectTime = socket.takeReconnectTime();
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        if (reconnectTime < 0) {
+            variables.remove(VAR_RECONNECT_TIME);
+            return;
+        }
+
+        variables.put(VAR_RECONNECT_TIME, String.valueOf(reconnectTime));
+        messages.append("\nreconnected in ").append(reconnectTime).append(" ms");
+    }
+
+    /**
+     * Publish lost, duplicated and reordered message counts of the current sample as JMeter variables and as
+     * response headers of the sample, which are kept whatever the response capture policy
+     */
+    private void reportSequence(ServiceSocket socket, SampleResult sampleResult) {
+        SequenceTracker tracker = socket.getSequenceTracker();
+        if (tracker == null) {
+            return;
+        }
+
+        String lost = String.valueOf(tracker.getSampleLost());
+        String duplicates = String.valueOf(tracker.getSampleDuplicates());
+        String outOfOrder = String.valueOf(tracker.getSampleOutOfOrder());
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        variables.put(VAR_SEQUENCE_LOST, lost);
+        variables.put(VAR_SEQUENCE_DUPLICATES, duplicates);
+        variables.put(VAR_SEQUENCE_OUT_OF_ORDER, outOfOrder);
+        sampleResult.setResponseHeaders(VAR_SEQUENCE_LOST + ": " + lost + "\n" + VAR_SEQUENCE_DUPLICATES + ": "
+                + duplicates + "\n" + VAR_SEQUENCE_OUT_OF_ORDER + ": " + outOfOrder + "\n");
+
+        if (socket.isExecutionLogging()) {
+            socket.log(" - Sequence tracking: " + tracker.getSampleTracked() + " tracked, " + lost + " lost, "
+                    + duplicates + " duplicates, " + outOfOrder + " out of order\n");
+        }
+    }
+
     private String getCodeRetour(ServiceSocket socket) {
         String codeRetour = null;
 
         //If no response is received set code 204; actually not used...needs to do something else
-        if (socket.getResponseMessage() == null || socket.getResponseMessage().isEmpty()) {
+        if (!socket.hasResponseMessages()) {
             codeRetour = "204";
         }
         return codeRetour;
     }
 
     /**
-     * Build Payload message like [" ....\\n\\n\\u0000"]
-     *
-     * @param payloadMessage message
-     * @return payload
+     * @return template of the payload property, compiled again only if the raw property text changed
      */
-    private String getStompPayload(String payloadMessage) {
-        if (StringUtils.isBlank(payloadMessage)) {
-            return "";
-        }
-        if (!payloadMessage.endsWith("\\u0000\"]")) {
-            return String.format("[\"%s%s\"]", payloadMessage, "\\n\\n\\u0000");
+    private PayloadTemplate getPayloadTemplate(PayloadTemplate template, JMeterProperty property) {
+        String source = PayloadTemplate.getSource(property);
+        if (template == null || !template.isCompiledFrom(source)) {
+            template = PayloadTemplate.compile(source);
         }
-        return payloadMessage;
+        return template;
     }
 
     @Override
@@ -294,10 +1120,11 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
         }
 
         String queryString = getQueryString(getContentEncoding());
-        if (isProtocolDefaultPort()) {
+        int port = Integer.parseInt(getServerPort());
+        if (isProtocolDefaultPort(protocol, port)) {
             return new URI(protocol, null, domain, -1, path, queryString, null);
         }
-        return new URI(protocol, null, domain, Integer.parseInt(getServerPort()), path, queryString, null);
+        return new URI(protocol, null, domain, port, path, queryString, null);
     }
 
     /**
@@ -307,8 +1134,10 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
      * otherwise
      */
     public boolean isProtocolDefaultPort() {
-        final int port = Integer.parseInt(getServerPort());
-        final String protocol = getProtocol();
+        return isProtocolDefaultPort(getProtocol(), Integer.parseInt(getServerPort()));
+    }
+
+    private static boolean isProtocolDefaultPort(String protocol, int port) {
         return ("ws".equalsIgnoreCase(protocol) && port == HTTPConstants.DEFAULT_HTTP_PORT)
                 || ("wss".equalsIgnoreCase(protocol) && port == HTTPConstants.DEFAULT_HTTPS_PORT);
     }
@@ -334,25 +1163,97 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
         return port.toString();
     }
 
-    public void setServerPort(String port) {
-        setProperty("serverPort", port);
+    public void setServerPort(String port) {
+        setProperty("serverPort", port);
+    }
+
+    public String getResponseTimeout() {
+        return getPropertyAsString("responseTimeout", "20000");
+    }
+
+    public void setResponseTimeout(String responseTimeout) {
+        setProperty("responseTimeout", responseTimeout);
+    }
+
+
+    public String getConnectionTimeout() {
+        return getPropertyAsString("connectionTimeout", "5000");
+    }
+
+    public void setConnectionTimeout(String connectionTimeout) {
+        setProperty("connectionTimeout", connectionTimeout);
+    }
+
+    /**
+     * @return connection timeout or the default value if it is not a number
+     */
+    public int getConnectionTimeoutValue() {
+        try {
+            return Integer.parseInt(getConnectionTimeout());
+        } catch (NumberFormatException ex) {
+            log.warn("Connection timeout is not a number; using the default connection timeout of " + DEFAULT_CONNECTION_TIMEOUT + "ms");
+            return DEFAULT_CONNECTION_TIMEOUT;
+        }
+    }
+
+    /**
+     * @return response timeout or the default value if it is not a number
+     */
+    public int getResponseTimeoutValue() {
+        try {
+            return Integer.parseInt(getResponseTimeout());
+        } catch (NumberFormatException ex) {
+            log.warn("Request timeout is not a number; using the default request timeout of " + DEFAULT_RESPONSE_TIMEOUT + "ms");
+            return DEFAULT_RESPONSE_TIMEOUT;
+        }
+    }
+
+    public void setReconnect(Boolean reconnect) {
+        setProperty("reconnect", reconnect);
+    }
+
+    public Boolean isReconnect() {
+        return getPropertyAsBoolean("reconnect");
+    }
+
+    public String getReconnectMaxAttempts() {
+        return getPropertyAsString("reconnectMaxAttempts", String.valueOf(ReconnectPolicy.DEFAULT_MAX_ATTEMPTS));
+    }
+
+    public void setReconnectMaxAttempts(String reconnectMaxAttempts) {
+        setProperty("reconnectMaxAttempts", reconnectMaxAttempts);
     }
 
-    public String getResponseTimeout() {
-        return getPropertyAsString("responseTimeout", "20000");
+    public String getReconnectInitialDelay() {
+        return getPropertyAsString("reconnectInitialDelay", String.valueOf(ReconnectPolicy.DEFAULT_INITIAL_DELAY));
     }
 
-    public void setResponseTimeout(String responseTimeout) {
-        setProperty("responseTimeout", responseTimeout);
+    public void setReconnectInitialDelay(String reconnectInitialDelay) {
+        setProperty("reconnectInitialDelay", reconnectInitialDelay);
     }
 
+    public String getReconnectMaxDelay() {
+        return getPropertyAsString("reconnectMaxDelay", String.valueOf(ReconnectPolicy.DEFAULT_MAX_DELAY));
+    }
 
-    public String getConnectionTimeout() {
-        return getPropertyAsString("connectionTimeout", "5000");
+    public void setReconnectMaxDelay(String reconnectMaxDelay) {
+        setProperty("reconnectMaxDelay", reconnectMaxDelay);
     }
 
-    public void setConnectionTimeout(String connectionTimeout) {
-        setProperty("connectionTimeout", connectionTimeout);
+    public ReconnectPolicy getReconnectPolicy() {
+        return new ReconnectPolicy(
+                parseInt(getReconnectMaxAttempts(), ReconnectPolicy.DEFAULT_MAX_ATTEMPTS, "Reconnect attempts"),
+                parseInt(getReconnectInitialDelay(), ReconnectPolicy.DEFAULT_INITIAL_DELAY, "Reconnect initial delay"),
+                parseInt(getReconnectMaxDelay(), ReconnectPolicy.DEFAULT_MAX_DELAY, "Reconnect max delay"));
+    }
+
+    private static int parseInt(String value, int defaultValue, String name) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            log.warn(name + " is not a number; using the default value of " + defaultValue);
+            return defaultValue;
+        }
     }
 
     public void setProtocol(String protocol) {
@@ -513,6 +1414,429 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
         setProperty("responsesCount", responsesCount);
     }
 
+    public String getMaxMessageSize() {
+        return getPropertyAsString("maxMessageSize", String.valueOf(DEFAULT_MAX_MESSAGE_SIZE));
+    }
+
+    public void setMaxMessageSize(String maxMessageSize) {
+        setProperty("maxMessageSize", maxMessageSize);
+    }
+
+    public String getInputBufferSize() {
+        return getPropertyAsString("inputBufferSize");
+    }
+
+    public void setInputBufferSize(String inputBufferSize) {
+        setProperty("inputBufferSize", inputBufferSize);
+    }
+
+    public String getIdleTimeout() {
+        return getPropertyAsString("idleTimeout");
+    }
+
+    public void setIdleTimeout(String idleTimeout) {
+        setProperty("idleTimeout", idleTimeout);
+    }
+
+    public String getResponseBacklog() {
+        return getPropertyAsString("responseBacklog");
+    }
+
+    public void setResponseBacklog(String responseBacklog) {
+        setProperty("responseBacklog", responseBacklog);
+    }
+
+    public String getMetricsPort() {
+        return getPropertyAsString("metricsPort");
+    }
+
+    public void setMetricsPort(String metricsPort) {
+        setProperty("metricsPort", metricsPort);
+    }
+
+    public String getCaptureFile() {
+        return getPropertyAsString("captureFile");
+    }
+
+    public void setCaptureFile(String captureFile) {
+        setProperty("captureFile", captureFile);
+    }
+
+    public String getPrewarmSessions() {
+        return getPropertyAsString("prewarmSessions");
+    }
+
+    public void setPrewarmSessions(String prewarmSessions) {
+        setProperty("prewarmSessions", prewarmSessions);
+    }
+
+    /**
+     * @return number of sessions opened and connected when the test starts, 0 to open them on the first sample
+     */
+    public int getPrewarmSessionsValue() {
+        if (StringUtils.isBlank(getPrewarmSessions())) {
+            return 0;
+        }
+        return parseInt(getPrewarmSessions(), 0, "Pre-warmed sessions");
+    }
+
+    public String getPingInterval() {
+        return getPropertyAsString("pingInterval");
+    }
+
+    public void setPingInterval(String pingInterval) {
+        setProperty("pingInterval", pingInterval);
+    }
+
+    /**
+     * @return milliseconds between pings of a streaming connection, 0 if connections aren't pinged
+     */
+    public int getPingIntervalValue() {
+        if (StringUtils.isBlank(getPingInterval())) {
+            return 0;
+        }
+        return parseInt(getPingInterval(), 0, "Ping interval");
+    }
+
+    public String getReadRate() {
+        return getPropertyAsString("readRate");
+    }
+
+    public void setReadRate(String readRate) {
+        setProperty("readRate", readRate);
+    }
+
+    /**
+     * @return messages or bytes consumed per second, 0 to consume messages as they arrive
+     */
+    public int getReadRateValue() {
+        if (StringUtils.isBlank(getReadRate())) {
+            return 0;
+        }
+        return parseInt(getReadRate(), 0, "Read rate");
+    }
+
+    public String getReadRateUnit() {
+        return getPropertyAsString("readRateUnit", ReadThrottle.MESSAGES);
+    }
+
+    public void setReadRateUnit(String readRateUnit) {
+        setProperty("readRateUnit", readRateUnit);
+    }
+
+    public String getReadBuffer() {
+        return getPropertyAsString("readBuffer");
+    }
+
+    public void setReadBuffer(String readBuffer) {
+        setProperty("readBuffer", readBuffer);
+    }
+
+    /**
+     * @return buffered bytes above which reads of a throttled connection are suspended
+     */
+    public int getReadBufferValue() {
+        if (StringUtils.isBlank(getReadBuffer())) {
+            return ReadThrottle.DEFAULT_BUFFER;
+        }
+        return parseInt(getReadBuffer(), ReadThrottle.DEFAULT_BUFFER, "Read buffer");
+    }
+
+    public String getResponseCapture() {
+        return getPropertyAsString("responseCapture", ResponseCapture.FULL);
+    }
+
+    public void setResponseCapture(String responseCapture) {
+        setProperty("responseCapture", responseCapture);
+    }
+
+    public String getResponseCaptureLimit() {
+        return getPropertyAsString("responseCaptureLimit");
+    }
+
+    public void setResponseCaptureLimit(String responseCaptureLimit) {
+        setProperty("responseCaptureLimit", responseCaptureLimit);
+    }
+
+    /**
+     * @return characters of the response data and message kept by samples in capped mode
+     */
+    public int getResponseCaptureLimitValue() {
+        if (StringUtils.isBlank(getResponseCaptureLimit())) {
+            return ResponseCapture.DEFAULT_LIMIT;
+        }
+        return parseInt(getResponseCaptureLimit(), ResponseCapture.DEFAULT_LIMIT, "Response capture limit");
+    }
+
+    /**
+     * @return capture policy of the sample, none while the heap guard drops response capture
+     */
+    public ResponseCapture getResponseCaptureValue() {
+        if (HeapGuard.isCaptureDropped() && !ResponseCapture.NONE.equals(getResponseCapture())) {
+            HeapGuard.onCaptureDropped();
+            return new ResponseCapture(ResponseCapture.NONE, 0);
+        }
+        return new ResponseCapture(getResponseCapture(), getResponseCaptureLimitValue());
+    }
+
+    public String getHeapGuard() {
+        return getPropertyAsString("heapGuard");
+    }
+
+    public void setHeapGuard(String heapGuard) {
+        setProperty("heapGuard", heapGuard);
+    }
+
+    /**
+     * @return heap usage after GC in percent at which responses are shed, 0 if the heap isn't guarded
+     */
+    public int getHeapGuardValue() {
+        if (StringUtils.isBlank(getHeapGuard())) {
+            return 0;
+        }
+        return parseInt(getHeapGuard(), 0, "Heap guard");
+    }
+
+    public String getLocalAddresses() {
+        return getPropertyAsString("localAddresses");
+    }
+
+    public void setLocalAddresses(String localAddresses) {
+        setProperty("localAddresses", localAddresses);
+    }
+
+    public String getTargetAddresses() {
+        return getPropertyAsString("targetAddresses");
+    }
+
+    public void setTargetAddresses(String targetAddresses) {
+        setProperty("targetAddresses", targetAddresses);
+    }
+
+    public String getAddressSelection() {
+        return getPropertyAsString("addressSelection", AddressPool.ROUND_ROBIN);
+    }
+
+    public void setAddressSelection(String addressSelection) {
+        setProperty("addressSelection", addressSelection);
+    }
+
+    public String getMessageResults() {
+        return getPropertyAsString("messageResults", MessageRecorder.MODE_OFF);
+    }
+
+    public void setMessageResults(String messageResults) {
+        setProperty("messageResults", messageResults);
+    }
+
+    public String getMessageResultsRate() {
+        return getPropertyAsString("messageResultsRate");
+    }
+
+    public void setMessageResultsRate(String messageResultsRate) {
+        setProperty("messageResultsRate", messageResultsRate);
+    }
+
+    public String getMessageResultsLimit() {
+        return getPropertyAsString("messageResultsLimit");
+    }
+
+    public void setMessageResultsLimit(String messageResultsLimit) {
+        setProperty("messageResultsLimit", messageResultsLimit);
+    }
+
+    /**
+     * @return N of the 1 in N mode
+     */
+    public int getMessageResultsRateValue() {
+        if (StringUtils.isBlank(getMessageResultsRate())) {
+            return 1;
+        }
+        return parseInt(getMessageResultsRate(), 1, "Message results rate");
+    }
+
+    /**
+     * @return maximum number of message sub-results per sample
+     */
+    public int getMessageResultsLimitValue() {
+        if (StringUtils.isBlank(getMessageResultsLimit())) {
+            return MessageRecorder.DEFAULT_LIMIT;
+        }
+        return parseInt(getMessageResultsLimit(), MessageRecorder.DEFAULT_LIMIT, "Message results limit");
+    }
+
+    public String getSendWindow() {
+        return getPropertyAsString("sendWindow");
+    }
+
+    public void setSendWindow(String sendWindow) {
+        setProperty("sendWindow", sendWindow);
+    }
+
+    /**
+     * @return maximum number of asynchronous sends in flight, 0 if messages are sent blocking
+     */
+    public int getSendWindowValue() {
+        if (StringUtils.isBlank(getSendWindow())) {
+            return 0;
+        }
+        return parseInt(getSendWindow(), 0, "Send window");
+    }
+
+    public String getSharedSessions() {
+        return getPropertyAsString("sharedSessions");
+    }
+
+    public void setSharedSessions(String sharedSessions) {
+        setProperty("sharedSessions", sharedSessions);
+    }
+
+    public String getReplayFile() {
+        return getPropertyAsString("replayFile");
+    }
+
+    public void setReplayFile(String replayFile) {
+        setProperty("replayFile", replayFile);
+    }
+
+    public String getReplayConnections() {
+        return getPropertyAsString("replayConnections");
+    }
+
+    public void setReplayConnections(String replayConnections) {
+        setProperty("replayConnections", replayConnections);
+    }
+
+    public String getReplaySpeed() {
+        return getPropertyAsString("replaySpeed");
+    }
+
+    public void setReplaySpeed(String replaySpeed) {
+        setProperty("replaySpeed", replaySpeed);
+    }
+
+    public void setLeanConnection(Boolean leanConnection) {
+        setProperty("leanConnection", leanConnection);
+    }
+
+    public Boolean isLeanConnection() {
+        return getPropertyAsBoolean("leanConnection");
+    }
+
+    /**
+     * @return input buffer size, the lean profile default when not set, or 0 to keep the client default
+     */
+    public int getInputBufferSizeValue() {
+        if (StringUtils.isBlank(getInputBufferSize())) {
+            return isLeanConnection() ? LEAN_INPUT_BUFFER_SIZE : 0;
+        }
+        return parseInt(getInputBufferSize(), 0, "Input buffer size");
+    }
+
+    /**
+     * @return number of messages kept for the sample response, the lean profile default when not set
+     */
+    public int getResponseBacklogValue() {
+        if (StringUtils.isBlank(getResponseBacklog())) {
+            return isLeanConnection() ? LEAN_RESPONSE_BACKLOG : DEFAULT_RESPONSE_BACKLOG;
+        }
+        return parseInt(getResponseBacklog(), DEFAULT_RESPONSE_BACKLOG, "Response backlog");
+    }
+
+    public String getStreamingThreshold() {
+        return getPropertyAsString("streamingThreshold");
+    }
+
+    public void setStreamingThreshold(String streamingThreshold) {
+        setProperty("streamingThreshold", streamingThreshold);
+    }
+
+    public String getStreamingPrefix() {
+        return getPropertyAsString("streamingPrefix");
+    }
+
+    public void setStreamingPrefix(String streamingPrefix) {
+        setProperty("streamingPrefix", streamingPrefix);
+    }
+
+    /**
+     * @return size in characters above which received messages are streamed instead of assembled
+     */
+    public int getStreamingThresholdValue() {
+        if (StringUtils.isBlank(getStreamingThreshold())) {
+            return MessageAssembler.DEFAULT_STREAMING_THRESHOLD;
+        }
+        return parseInt(getStreamingThreshold(), MessageAssembler.DEFAULT_STREAMING_THRESHOLD, "Streaming threshold");
+    }
+
+    /**
+     * @return number of characters kept of a streamed message
+     */
+    public int getStreamingPrefixValue() {
+        if (StringUtils.isBlank(getStreamingPrefix())) {
+            return MessageAssembler.DEFAULT_STREAMING_PREFIX;
+        }
+        return parseInt(getStreamingPrefix(), MessageAssembler.DEFAULT_STREAMING_PREFIX, "Streaming prefix");
+    }
+
+    /**
+     * @return number of sessions shared by the threads of the connection, 0 if every thread has its own
+     */
+    public int getSharedSessionsValue() {
+        if (StringUtils.isBlank(getSharedSessions())) {
+            return 0;
+        }
+        return parseInt(getSharedSessions(), 0, "Shared sessions");
+    }
+
+    public String getConnectCondition() {
+        return getPropertyAsString("connectCondition");
+    }
+
+    public void setConnectCondition(String connectCondition) {
+        setProperty("connectCondition", connectCondition);
+    }
+
+    public String getSubscribeCondition() {
+        return getPropertyAsString("subscribeCondition");
+    }
+
+    public void setSubscribeCondition(String subscribeCondition) {
+        setProperty("subscribeCondition", subscribeCondition);
+    }
+
+    public String getCloseConnectionCondition() {
+        return getPropertyAsString("closeConnectionCondition");
+    }
+
+    public void setCloseConnectionCondition(String closeConnectionCondition) {
+        setProperty("closeConnectionCondition", closeConnectionCondition);
+    }
+
+    public String getSequencePattern() {
+        return getPropertyAsString("sequencePattern");
+    }
+
+    public void setSequencePattern(String sequencePattern) {
+        setProperty("sequencePattern", sequencePattern);
+    }
+
+    public String getSequenceDestinationPattern() {
+        return getPropertyAsString("sequenceDestinationPattern");
+    }
+
+    public void setSequenceDestinationPattern(String sequenceDestinationPattern) {
+        setProperty("sequenceDestinationPattern", sequenceDestinationPattern);
+    }
+
+    public String getSequenceWindow() {
+        return getPropertyAsString("sequenceWindow", String.valueOf(SequenceTracker.DEFAULT_WINDOW));
+    }
+
+    public void setSequenceWindow(String sequenceWindow) {
+        setProperty("sequenceWindow", sequenceWindow);
+    }
+
     public String getQueryString(String contentEncoding) {
         // Check if the sampler has a specified content encoding
         if (JOrphanUtils.isBlank(contentEncoding)) {
@@ -560,6 +1884,30 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
         setProperty(new TestElementProperty("queryStringParameters", queryStringParameters));
     }
 
+    public void setSubscriptions(Arguments subscriptions) {
+        setProperty(new TestElementProperty("subscriptions", subscriptions));
+    }
+
+    /**
+     * @return SUBSCRIBE payloads as argument names and expected messages per sample as values
+     */
+    public Arguments getSubscriptions() {
+        JMeterProperty property = getProperty("subscriptions");
+        return property.getObjectValue() instanceof Arguments ? (Arguments) property.getObjectValue() : null;
+    }
+
+    public void setAutoReplies(Arguments autoReplies) {
+        setProperty(new TestElementProperty("autoReplies", autoReplies));
+    }
+
+    /**
+     * @return conditions on received messages as argument names and replies as values
+     */
+    public Arguments getAutoReplies() {
+        JMeterProperty property = getProperty("autoReplies");
+        return property.getObjectValue() instanceof Arguments ? (Arguments) property.getObjectValue() : null;
+    }
+
     public Arguments getQueryStringParameters() {
         Arguments args = (Arguments) getProperty("queryStringParameters").getObjectValue();
         return args;
@@ -573,7 +1921,44 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
 
     @Override
     public void testStarted(String host) {
-        connectionList = new ConcurrentHashMap<>();
+        //Every sampler element of the test is started; only the first resets the shared state, so the sessions
+        //pre-warmed by the elements before it are kept
+        synchronized (testLock) {
+            if (startedElements++ == 0) {
+                connectionList = new ConcurrentHashMap<>();
+                SequenceTracker.resetTotals();
+                ReconnectPolicy.resetTotals();
+                PingProbe.resetTotals();
+                AutoResponder.resetTotals();
+                ReadThrottle.resetTotals();
+                HeapGuard.resetTotals();
+                TrafficReplay.reset();
+                PayloadTemplate.resetSequence();
+                AddressPool.reset();
+                prewarmedSessions.clear();
+            }
+            WebSocketMetrics.getInstance().start(StringUtils.isBlank(getMetricsPort()) ? 0 : parseInt(getMetricsPort(), 0, "Metrics port"));
+            //The first element with a capture file or heap guard starts it for the whole test
+            if (!StringUtils.isBlank(getCaptureFile())) {
+                TrafficCapture.start(getCaptureFile().trim());
+            }
+            int heapGuard = getHeapGuardValue();
+            if (heapGuard > 0 && !HeapGuard.isStarted()) {
+                HeapGuard.start(heapGuard, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (ServiceSocket socket : connectionList.values()) {
+                            socket.shed();
+                        }
+                    }
+                });
+            }
+        }
+
+        int prewarmSessions = getPrewarmSessionsValue();
+        if (prewarmSessions > 0) {
+            prewarm(prewarmSessions);
+        }
     }
 
     @Override
@@ -583,9 +1968,53 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
 
     @Override
     public void testEnded(String host) {
+        synchronized (testLock) {
+            WebSocketMetrics.getInstance().stop();
+            if (startedElements == 0 || --startedElements > 0) {
+                return;
+            }
+        }
+
+        //Heap released by closing the connections approximates the memory they retained
+        int connections = JMeterUtils.getPropDefault(MEASURE_FOOTPRINT_PROPERTY, false) ? connectionList.size() : 0;
+        long usedHeap = connections > 0 ? getUsedHeapAfterGc() : 0;
+
         for (ServiceSocket socket : connectionList.values()) {
             socket.close();
         }
+        connectionList.clear();
+        sessionLocks.clear();
+        prewarmedSessions.clear();
+        stopSharedClients();
+        TrafficCapture.stop();
+        TrafficReplay.closeAll();
+
+        if (connections > 0) {
+            long retained = Math.max(0, usedHeap - getUsedHeapAfterGc());
+            log.info("Connection footprint: " + connections + " connections retained " + retained + " bytes, about "
+                    + (retained / connections) + " bytes per connection");
+        }
+        SequenceTracker.logSummary();
+        ReconnectPolicy.logSummary();
+        PingProbe.logSummary();
+        AutoResponder.logSummary();
+        ReadThrottle.logSummary();
+        HeapGuard.stop();
+        HeapGuard.logSummary();
+        AddressPool.logSummary();
+    }
+
+    static int getStreamingConnectionCount() {
+        Map<String, ServiceSocket> connections = connectionList;
+        return connections != null ? connections.size() : 0;
+    }
+
+    static ExecutorService getExecutor() {
+        return executor;
+    }
+
+    static ScheduledExecutorService getScheduler() {
+        return scheduler;
     }
 
 
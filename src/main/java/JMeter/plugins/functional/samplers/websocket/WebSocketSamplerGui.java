@@ -71,6 +71,58 @@ public class WebSocketSamplerGui extends AbstractSamplerGui {
             webSocketSamplerPanel.setProxyPort(webSocketSamplerTestElement.getProxyPort());
             webSocketSamplerPanel.setProxyUsername(webSocketSamplerTestElement.getProxyUsername());
             webSocketSamplerPanel.setResponsesCount(webSocketSamplerTestElement.getResponsesCount());
+            webSocketSamplerPanel.setSequencePattern(webSocketSamplerTestElement.getSequencePattern());
+            webSocketSamplerPanel.setSequenceDestinationPattern(webSocketSamplerTestElement.getSequenceDestinationPattern());
+            webSocketSamplerPanel.setSequenceWindow(webSocketSamplerTestElement.getSequenceWindow());
+            webSocketSamplerPanel.setReconnect(webSocketSamplerTestElement.isReconnect());
+            webSocketSamplerPanel.setReconnectMaxAttempts(webSocketSamplerTestElement.getReconnectMaxAttempts());
+            webSocketSamplerPanel.setReconnectInitialDelay(webSocketSamplerTestElement.getReconnectInitialDelay());
+            webSocketSamplerPanel.setReconnectMaxDelay(webSocketSamplerTestElement.getReconnectMaxDelay());
+            webSocketSamplerPanel.setLeanConnection(webSocketSamplerTestElement.isLeanConnection());
+            webSocketSamplerPanel.setMaxMessageSize(webSocketSamplerTestElement.getMaxMessageSize());
+            webSocketSamplerPanel.setInputBufferSize(webSocketSamplerTestElement.getInputBufferSize());
+            webSocketSamplerPanel.setIdleTimeout(webSocketSamplerTestElement.getIdleTimeout());
+            webSocketSamplerPanel.setResponseBacklog(webSocketSamplerTestElement.getResponseBacklog());
+            webSocketSamplerPanel.setMetricsPort(webSocketSamplerTestElement.getMetricsPort());
+            webSocketSamplerPanel.setCaptureFile(webSocketSamplerTestElement.getCaptureFile());
+            webSocketSamplerPanel.setReplayFile(webSocketSamplerTestElement.getReplayFile());
+            webSocketSamplerPanel.setReplayConnections(webSocketSamplerTestElement.getReplayConnections());
+            webSocketSamplerPanel.setReplaySpeed(webSocketSamplerTestElement.getReplaySpeed());
+            webSocketSamplerPanel.setStreamingThreshold(webSocketSamplerTestElement.getStreamingThreshold());
+            webSocketSamplerPanel.setStreamingPrefix(webSocketSamplerTestElement.getStreamingPrefix());
+            webSocketSamplerPanel.setSharedSessions(webSocketSamplerTestElement.getSharedSessions());
+            webSocketSamplerPanel.setSendWindow(webSocketSamplerTestElement.getSendWindow());
+            webSocketSamplerPanel.setConnectCondition(webSocketSamplerTestElement.getConnectCondition());
+            webSocketSamplerPanel.setSubscribeCondition(webSocketSamplerTestElement.getSubscribeCondition());
+            webSocketSamplerPanel.setCloseConnectionCondition(webSocketSamplerTestElement.getCloseConnectionCondition());
+            webSocketSamplerPanel.setMessageResults(webSocketSamplerTestElement.getMessageResults());
+            webSocketSamplerPanel.setMessageResultsRate(webSocketSamplerTestElement.getMessageResultsRate());
+            webSocketSamplerPanel.setMessageResultsLimit(webSocketSamplerTestElement.getMessageResultsLimit());
+            webSocketSamplerPanel.setLocalAddresses(webSocketSamplerTestElement.getLocalAddresses());
+            webSocketSamplerPanel.setTargetAddresses(webSocketSamplerTestElement.getTargetAddresses());
+            webSocketSamplerPanel.setAddressSelection(webSocketSamplerTestElement.getAddressSelection());
+            webSocketSamplerPanel.setPrewarmSessions(webSocketSamplerTestElement.getPrewarmSessions());
+            webSocketSamplerPanel.setPingInterval(webSocketSamplerTestElement.getPingInterval());
+            webSocketSamplerPanel.setReadRate(webSocketSamplerTestElement.getReadRate());
+            webSocketSamplerPanel.setReadRateUnit(webSocketSamplerTestElement.getReadRateUnit());
+            webSocketSamplerPanel.setReadBuffer(webSocketSamplerTestElement.getReadBuffer());
+            webSocketSamplerPanel.setResponseCapture(webSocketSamplerTestElement.getResponseCapture());
+            webSocketSamplerPanel.setResponseCaptureLimit(webSocketSamplerTestElement.getResponseCaptureLimit());
+            webSocketSamplerPanel.setHeapGuard(webSocketSamplerTestElement.getHeapGuard());
+
+            Arguments subscriptions = webSocketSamplerTestElement.getSubscriptions();
+            if (subscriptions != null) {
+                webSocketSamplerPanel.getSubscriptionsPanel().configure(subscriptions);
+            } else {
+                webSocketSamplerPanel.getSubscriptionsPanel().clear();
+            }
+
+            Arguments autoReplies = webSocketSamplerTestElement.getAutoReplies();
+            if (autoReplies != null) {
+                webSocketSamplerPanel.getAutoRepliesPanel().configure(autoReplies);
+            } else {
+                webSocketSamplerPanel.getAutoRepliesPanel().clear();
+            }
 
             Arguments queryStringParameters = webSocketSamplerTestElement.getQueryStringParameters();
             if (queryStringParameters != null) {
@@ -113,6 +165,47 @@ public class WebSocketSamplerGui extends AbstractSamplerGui {
             webSocketSamplerTestElement.setProxyPort(webSocketSamplerPanel.getProxyPort());
             webSocketSamplerTestElement.setProxyUsername(webSocketSamplerPanel.getProxyUsername());
             webSocketSamplerTestElement.setResponsesCount(webSocketSamplerPanel.getResponsesCount());
+            webSocketSamplerTestElement.setSequencePattern(webSocketSamplerPanel.getSequencePattern());
+            webSocketSamplerTestElement.setSequenceDestinationPattern(webSocketSamplerPanel.getSequenceDestinationPattern());
+            webSocketSamplerTestElement.setSequenceWindow(webSocketSamplerPanel.getSequenceWindow());
+            webSocketSamplerTestElement.setReconnect(webSocketSamplerPanel.isReconnect());
+            webSocketSamplerTestElement.setReconnectMaxAttempts(webSocketSamplerPanel.getReconnectMaxAttempts());
+            webSocketSamplerTestElement.setReconnectInitialDelay(webSocketSamplerPanel.getReconnectInitialDelay());
+            webSocketSamplerTestElement.setReconnectMaxDelay(webSocketSamplerPanel.getReconnectMaxDelay());
+            webSocketSamplerTestElement.setLeanConnection(webSocketSamplerPanel.isLeanConnection());
+            webSocketSamplerTestElement.setMaxMessageSize(webSocketSamplerPanel.getMaxMessageSize());
+            webSocketSamplerTestElement.setInputBufferSize(webSocketSamplerPanel.getInputBufferSize());
+            webSocketSamplerTestElement.setIdleTimeout(webSocketSamplerPanel.getIdleTimeout());
+            webSocketSamplerTestElement.setResponseBacklog(webSocketSamplerPanel.getResponseBacklog());
+            webSocketSamplerTestElement.setMetricsPort(webSocketSamplerPanel.getMetricsPort());
+            webSocketSamplerTestElement.setCaptureFile(webSocketSamplerPanel.getCaptureFile());
+            webSocketSamplerTestElement.setReplayFile(webSocketSamplerPanel.getReplayFile());
+            webSocketSamplerTestElement.setReplayConnections(webSocketSamplerPanel.getReplayConnections());
+            webSocketSamplerTestElement.setReplaySpeed(webSocketSamplerPanel.getReplaySpeed());
+            webSocketSamplerTestElement.setStreamingThreshold(webSocketSamplerPanel.getStreamingThreshold());
+            webSocketSamplerTestElement.setStreamingPrefix(webSocketSamplerPanel.getStreamingPrefix());
+            webSocketSamplerTestElement.setSharedSessions(webSocketSamplerPanel.getSharedSessions());
+            webSocketSamplerTestElement.setSendWindow(webSocketSamplerPanel.getSendWindow());
+            webSocketSamplerTestElement.setConnectCondition(webSocketSamplerPanel.getConnectCondition());
+            webSocketSamplerTestElement.setSubscribeCondition(webSocketSamplerPanel.getSubscribeCondition());
+            webSocketSamplerTestElement.setCloseConnectionCondition(webSocketSamplerPanel.getCloseConnectionCondition());
+            webSocketSamplerTestElement.setMessageResults(webSocketSamplerPanel.getMessageResults());
+            webSocketSamplerTestElement.setMessageResultsRate(webSocketSamplerPanel.getMessageResultsRate());
+            webSocketSamplerTestElement.setMessageResultsLimit(webSocketSamplerPanel.getMessageResultsLimit());
+            webSocketSamplerTestElement.setLocalAddresses(webSocketSamplerPanel.getLocalAddresses());
+            webSocketSamplerTestElement.setTargetAddresses(webSocketSamplerPanel.getTargetAddresses());
+            webSocketSamplerTestElement.setAddressSelection(webSocketSamplerPanel.getAddressSelection());
+            webSocketSamplerTestElement.setPrewarmSessions(webSocketSamplerPanel.getPrewarmSessions());
+            webSocketSamplerTestElement.setPingInterval(webSocketSamplerPanel.getPingInterval());
+            webSocketSamplerTestElement.setReadRate(webSocketSamplerPanel.getReadRate());
+            webSocketSamplerTestElement.setReadRateUnit(webSocketSamplerPanel.getReadRateUnit());
+            webSocketSamplerTestElement.setReadBuffer(webSocketSamplerPanel.getReadBuffer());
+            webSocketSamplerTestElement.setResponseCapture(webSocketSamplerPanel.getResponseCapture());
+            webSocketSamplerTestElement.setResponseCaptureLimit(webSocketSamplerPanel.getResponseCaptureLimit());
+            webSocketSamplerTestElement.setHeapGuard(webSocketSamplerPanel.getHeapGuard());
+
+            webSocketSamplerTestElement.setSubscriptions((Arguments) webSocketSamplerPanel.getSubscriptionsPanel().createTestElement());
+            webSocketSamplerTestElement.setAutoReplies((Arguments) webSocketSamplerPanel.getAutoRepliesPanel().createTestElement());
 
             ArgumentsPanel queryStringParameters = webSocketSamplerPanel.getAttributePanel();
             if (queryStringParameters != null) {
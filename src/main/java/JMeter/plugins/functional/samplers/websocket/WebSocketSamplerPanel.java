@@ -15,6 +15,8 @@ import org.apache.log.Logger;
 public class WebSocketSamplerPanel extends javax.swing.JPanel {
 	private static final Logger log = LoggingManager.getLoggerForClass();
 	private HTTPArgumentsPanel attributePanel;
+	private ArgumentsPanel subscriptionsPanel;
+	private ArgumentsPanel autoRepliesPanel;
 
 	/**
 	 * Creates new form WebSocketSamplerPanel
@@ -24,12 +26,55 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 
 		attributePanel = new HTTPArgumentsPanel();
 		querystringAttributesPanel.add(attributePanel);
+
+		initOptions();
 	}
 
+	private static final int OPTIONS_PER_ROW = 3;
+
 	private javax.swing.JTextField responsesCountTextField;
+	private javax.swing.JTextField sequencePatternTextField;
+	private javax.swing.JTextField sequenceDestinationPatternTextField;
+	private javax.swing.JTextField sequenceWindowTextField;
+	private javax.swing.JCheckBox reconnectCheckBox;
+	private javax.swing.JTextField reconnectMaxAttemptsTextField;
+	private javax.swing.JTextField reconnectInitialDelayTextField;
+	private javax.swing.JTextField reconnectMaxDelayTextField;
+	private javax.swing.JCheckBox leanConnectionCheckBox;
+	private javax.swing.JTextField maxMessageSizeTextField;
+	private javax.swing.JTextField inputBufferSizeTextField;
+	private javax.swing.JTextField idleTimeoutTextField;
+	private javax.swing.JTextField responseBacklogTextField;
+	private javax.swing.JTextField metricsPortTextField;
+	private javax.swing.JTextField captureFileTextField;
+	private javax.swing.JTextField replayFileTextField;
+	private javax.swing.JTextField replayConnectionsTextField;
+	private javax.swing.JTextField replaySpeedTextField;
+	private javax.swing.JTextField streamingThresholdTextField;
+	private javax.swing.JTextField streamingPrefixTextField;
+	private javax.swing.JTextField sharedSessionsTextField;
+	private javax.swing.JTextField sendWindowTextField;
+	private javax.swing.JComboBox messageResultsComboBox;
+	private javax.swing.JTextField messageResultsRateTextField;
+	private javax.swing.JTextField messageResultsLimitTextField;
+	private javax.swing.JTextField localAddressesTextField;
+	private javax.swing.JTextField targetAddressesTextField;
+	private javax.swing.JComboBox addressSelectionComboBox;
+	private javax.swing.JTextField prewarmSessionsTextField;
+	private javax.swing.JTextField pingIntervalTextField;
+	private javax.swing.JTextField readRateTextField;
+	private javax.swing.JComboBox readRateUnitComboBox;
+	private javax.swing.JTextField readBufferTextField;
+	private javax.swing.JComboBox responseCaptureComboBox;
+	private javax.swing.JTextField responseCaptureLimitTextField;
+	private javax.swing.JTextField heapGuardTextField;
 
 	// Variables declaration - do not modify//GEN-BEGIN:variables
 	private javax.swing.JTextField closeConncectionPatternTextField;
+	private javax.swing.JLabel closeConnectionConditionLabel;
+	private javax.swing.JTextField closeConnectionConditionTextField;
+	private javax.swing.JLabel connectConditionLabel;
+	private javax.swing.JTextField connectConditionTextField;
 	private javax.swing.JTextField connectionIdTextField;
 	private javax.swing.JTextField connectionTimeoutTextField;
 	private javax.swing.JTextField contentEncodingTextField;
@@ -110,6 +155,12 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 		subscribePatternTextField = new javax.swing.JTextField();
 		jLabel9 = new javax.swing.JLabel();
 		closeConncectionPatternTextField = new javax.swing.JTextField();
+		connectConditionLabel = new javax.swing.JLabel();
+		subscribeConditionLabel = new javax.swing.JLabel();
+		closeConnectionConditionLabel = new javax.swing.JLabel();
+		connectConditionTextField = new javax.swing.JTextField();
+		subscribeConditionTextField = new javax.swing.JTextField();
+		closeConnectionConditionTextField = new javax.swing.JTextField();
 		jLabel16 = new javax.swing.JLabel();
 		responsesCountTextField = new javax.swing.JTextField();
 		jPanel6 = new javax.swing.JPanel();
@@ -121,6 +172,7 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 		proxyUsernameTextField = new javax.swing.JTextField();
 		jLabel13 = new javax.swing.JLabel();
 		proxyPasswordTextField = new javax.swing.JTextField();
+		optionsPanel = new javax.swing.JPanel();
 
 		jPanel1.setBorder(javax.swing.BorderFactory.createTitledBorder("Web Server"));
 
@@ -212,7 +264,7 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 
 		jLabel15.setText("Implementation:");
 
-		implementationComboBox.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "RFC6455 (v13)" }));
+		implementationComboBox.setModel(new javax.swing.DefaultComboBoxModel(WebSocketImplementation.getDisplayNames()));
 
 		streamingConnectionCheckBox.setText("Streaming connection");
 		stompCheckBox.setText("Stomp Protocol");
@@ -302,6 +354,10 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 
 		jLabel9.setText("Close connection pattern:");
 
+		connectConditionLabel.setText("Condition:");
+		subscribeConditionLabel.setText("Condition:");
+		closeConnectionConditionLabel.setText("Condition:");
+
 		jLabel16.setText("Expected responses count:");
 
 		javax.swing.GroupLayout jPanel5Layout = new javax.swing.GroupLayout(jPanel5);
@@ -316,17 +372,29 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 												.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
 												.addComponent(connectPatternTextField)
 												.addGap(18, 18, 18)
+												.addComponent(connectConditionLabel)
+												.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+												.addComponent(connectConditionTextField)
+												.addGap(18, 18, 18)
 												.addComponent(jLabel16)
 												.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
 												.addComponent(responsesCountTextField, javax.swing.GroupLayout.PREFERRED_SIZE, 40, javax.swing.GroupLayout.PREFERRED_SIZE))
 										.addGroup(javax.swing.GroupLayout.Alignment.TRAILING, jPanel5Layout.createSequentialGroup()
 												.addComponent(jLabel19)
 												.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-												.addComponent(subscribePatternTextField))
+												.addComponent(subscribePatternTextField)
+												.addGap(18, 18, 18)
+												.addComponent(subscribeConditionLabel)
+												.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+												.addComponent(subscribeConditionTextField))
 										.addGroup(javax.swing.GroupLayout.Alignment.TRAILING, jPanel5Layout.createSequentialGroup()
 												.addComponent(jLabel9)
 												.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-												.addComponent(closeConncectionPatternTextField)))
+												.addComponent(closeConncectionPatternTextField)
+												.addGap(18, 18, 18)
+												.addComponent(closeConnectionConditionLabel)
+												.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+												.addComponent(closeConnectionConditionTextField)))
 								.addContainerGap())
 		);
 		jPanel5Layout.setVerticalGroup(
@@ -339,15 +407,21 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 												.addComponent(responsesCountTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
 										.addGroup(jPanel5Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
 												.addComponent(jLabel7)
-												.addComponent(connectPatternTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
+												.addComponent(connectPatternTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+												.addComponent(connectConditionLabel)
+												.addComponent(connectConditionTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
 								.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
 								.addGroup(jPanel5Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
 										.addComponent(jLabel19)
-										.addComponent(subscribePatternTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+										.addComponent(subscribePatternTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+										.addComponent(subscribeConditionLabel)
+										.addComponent(subscribeConditionTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
 								.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
 								.addGroup(jPanel5Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
 										.addComponent(jLabel9)
-										.addComponent(closeConncectionPatternTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+										.addComponent(closeConncectionPatternTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+										.addComponent(closeConnectionConditionLabel)
+										.addComponent(closeConnectionConditionTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
 								.addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
 		);
 
@@ -411,6 +485,8 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 								.addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
 		);
 
+		optionsPanel.setLayout(new javax.swing.BoxLayout(optionsPanel, javax.swing.BoxLayout.PAGE_AXIS));
+
 		javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
 		this.setLayout(layout);
 		layout.setHorizontalGroup(
@@ -424,7 +500,8 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 												.addComponent(jPanel1, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
 												.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
 												.addComponent(jPanel2, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
-										.addComponent(jPanel6, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+										.addComponent(jPanel6, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+										.addComponent(optionsPanel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
 								.addContainerGap())
 		);
 		layout.setVerticalGroup(
@@ -440,9 +517,12 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 								.addComponent(jPanel5, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
 								.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
 								.addComponent(jPanel6, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+								.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+								.addComponent(optionsPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
 								.addContainerGap())
 		);
 	}// </editor-fold>//GEN-END:initComponents
+	private javax.swing.JPanel optionsPanel;
 	private javax.swing.JTextField protocolTextField;
 	private javax.swing.JTextField proxyAddressTextField;
 	private javax.swing.JTextField proxyPasswordTextField;
@@ -453,6 +533,8 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 	private javax.swing.JEditorPane subscribePayloadEditorPane;
 	private javax.swing.JTextField connectPatternTextField;
 	private javax.swing.JTextField subscribePatternTextField;
+	private javax.swing.JLabel subscribeConditionLabel;
+	private javax.swing.JTextField subscribeConditionTextField;
 	private javax.swing.JTextField responseTimeoutTextField;
 	private javax.swing.JTextField serverAddressTextField;
 	private javax.swing.JTextField serverPortTextField;
@@ -460,6 +542,189 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 	private javax.swing.JCheckBox stompCheckBox;
 	// End of variables declaration//GEN-END:variables
 
+	/**
+	 * Builds the option groups shown below the generated form. Components of the generated code are kept in
+	 * WebSocketSamplerPanel.form, everything built here stays outside of it so regenerating the form keeps it.
+	 */
+	private void initOptions() {
+		String conditionToolTip = "Clauses joined by &&: command=MESSAGE, header.destination=/topic/a, $.type=trade, $.price~^1, $.id";
+		connectConditionTextField.setToolTipText(conditionToolTip);
+		subscribeConditionTextField.setToolTipText(conditionToolTip);
+		closeConnectionConditionTextField.setToolTipText(conditionToolTip);
+
+		sequencePatternTextField = new javax.swing.JTextField();
+		sequencePatternTextField.setToolTipText("Regular expression; the first group is the message sequence number");
+		sequenceDestinationPatternTextField = new javax.swing.JTextField();
+		sequenceDestinationPatternTextField.setToolTipText("Regular expression; the first group is the destination (STOMP destination header if empty)");
+		sequenceWindowTextField = new javax.swing.JTextField();
+		sequenceWindowTextField.setToolTipText("Number of sequences below the highest one remembered for reordering detection");
+		addOptionsGroup("Message Sequence Tracking",
+				new javax.swing.JLabel("Sequence pattern:"), sequencePatternTextField,
+				new javax.swing.JLabel("Destination pattern:"), sequenceDestinationPatternTextField,
+				new javax.swing.JLabel("Reordering window:"), sequenceWindowTextField);
+
+		reconnectCheckBox = new javax.swing.JCheckBox("Reconnect streaming connection closed by the server");
+		reconnectMaxAttemptsTextField = new javax.swing.JTextField();
+		reconnectInitialDelayTextField = new javax.swing.JTextField();
+		reconnectInitialDelayTextField.setToolTipText("Backoff doubles with every attempt; each delay is randomized between zero and the backoff");
+		reconnectMaxDelayTextField = new javax.swing.JTextField();
+		addOptionsGroup("Reconnect",
+				reconnectCheckBox, new javax.swing.JLabel(),
+				new javax.swing.JLabel("Max attempts:"), reconnectMaxAttemptsTextField,
+				new javax.swing.JLabel("Initial delay (ms):"), reconnectInitialDelayTextField,
+				new javax.swing.JLabel("Max delay (ms):"), reconnectMaxDelayTextField);
+
+		leanConnectionCheckBox = new javax.swing.JCheckBox("Lean idle connection");
+		leanConnectionCheckBox.setToolTipText("Share one WebSocket client, use small buffers, keep one response message and skip message logging");
+		maxMessageSizeTextField = new javax.swing.JTextField();
+		inputBufferSizeTextField = new javax.swing.JTextField();
+		idleTimeoutTextField = new javax.swing.JTextField();
+		responseBacklogTextField = new javax.swing.JTextField();
+		responseBacklogTextField.setToolTipText("Number of last received messages kept for the sample response");
+		addOptionsGroup("Connection Footprint",
+				leanConnectionCheckBox, new javax.swing.JLabel(),
+				new javax.swing.JLabel("Max message size (bytes):"), maxMessageSizeTextField,
+				new javax.swing.JLabel("Input buffer (bytes):"), inputBufferSizeTextField,
+				new javax.swing.JLabel("Idle timeout (ms):"), idleTimeoutTextField,
+				new javax.swing.JLabel("Response backlog:"), responseBacklogTextField);
+
+		streamingThresholdTextField = new javax.swing.JTextField();
+		streamingThresholdTextField.setToolTipText("Larger messages are matched chunk by chunk instead of being assembled; patterns must not span more than 1024 characters across chunks");
+		streamingPrefixTextField = new javax.swing.JTextField();
+		streamingPrefixTextField.setToolTipText("Characters of a streamed message kept for the response, log and sequence tracking");
+		sharedSessionsTextField = new javax.swing.JTextField();
+		sharedSessionsTextField.setToolTipText("Threads with the same connection id share this many streaming sessions; subscription ids must be unique per thread, e.g. sub-${__threadNum}");
+		addOptionsGroup("Shared Sessions",
+				new javax.swing.JLabel("Sessions:"), sharedSessionsTextField);
+
+		sendWindowTextField = new javax.swing.JTextField();
+		sendWindowTextField.setToolTipText("Messages sent without waiting for the write to complete; the sender blocks while this many are in flight. Empty sends blocking");
+		addOptionsGroup("Asynchronous Send",
+				new javax.swing.JLabel("In-flight window:"), sendWindowTextField);
+
+		messageResultsComboBox = new javax.swing.JComboBox();
+		messageResultsComboBox.setModel(new javax.swing.DefaultComboBoxModel(new String[] {
+				MessageRecorder.MODE_OFF, MessageRecorder.MODE_ALL, MessageRecorder.MODE_EVERY_N, MessageRecorder.MODE_RESERVOIR }));
+		messageResultsComboBox.setToolTipText("Attach received messages as sub-results timed from the start of the sample");
+		messageResultsRateTextField = new javax.swing.JTextField();
+		messageResultsRateTextField.setToolTipText("N of the 1 in N mode");
+		messageResultsLimitTextField = new javax.swing.JTextField();
+		messageResultsLimitTextField.setToolTipText("Maximum sub-results per sample, also the reservoir size (default 100)");
+		addOptionsGroup("Message Sub-results",
+				new javax.swing.JLabel("Keep:"), messageResultsComboBox,
+				new javax.swing.JLabel("N:"), messageResultsRateTextField,
+				new javax.swing.JLabel("Limit:"), messageResultsLimitTextField);
+
+		localAddressesTextField = new javax.swing.JTextField();
+		localAddressesTextField.setToolTipText("Local addresses connections are bound to, e.g. 127.0.0.2,127.0.0.3; each one allows about 64k connections per target");
+		targetAddressesTextField = new javax.swing.JTextField();
+		targetAddressesTextField.setToolTipText("host or host:port targets replacing the server name and port, e.g. 10.0.0.1:61613,10.0.0.2:61613");
+		addressSelectionComboBox = new javax.swing.JComboBox();
+		addressSelectionComboBox.setModel(new javax.swing.DefaultComboBoxModel(new String[] {
+				AddressPool.ROUND_ROBIN, AddressPool.HASH }));
+		addressSelectionComboBox.setToolTipText("Hashing keeps a connection id on the same addresses; use unique ids such as conn-${__threadNum}");
+		addOptionsGroup("Address Spreading",
+				new javax.swing.JLabel("Local addresses:"), localAddressesTextField,
+				new javax.swing.JLabel("Targets:"), targetAddressesTextField,
+				new javax.swing.JLabel("Selection:"), addressSelectionComboBox);
+
+		prewarmSessionsTextField = new javax.swing.JTextField();
+		prewarmSessionsTextField.setToolTipText("Streaming sessions opened and connected in parallel when the test starts; threads claim them on their first sample");
+		addOptionsGroup("Pre-warmed Sessions",
+				new javax.swing.JLabel("Sessions:"), prewarmSessionsTextField);
+
+		pingIntervalTextField = new javax.swing.JTextField();
+		pingIntervalTextField.setToolTipText("Milliseconds between WebSocket pings of a streaming connection measuring the pong round trip; empty to disable");
+		addOptionsGroup("Ping Probe",
+				new javax.swing.JLabel("Interval (ms):"), pingIntervalTextField);
+
+		readRateTextField = new javax.swing.JTextField();
+		readRateTextField.setToolTipText("Received messages are consumed at this rate to simulate a slow consumer; empty to consume them as they arrive");
+		readRateUnitComboBox = new javax.swing.JComboBox();
+		readRateUnitComboBox.setModel(new javax.swing.DefaultComboBoxModel(new String[] {
+				ReadThrottle.MESSAGES, ReadThrottle.BYTES }));
+		readBufferTextField = new javax.swing.JTextField();
+		readBufferTextField.setToolTipText("Bytes buffered before reads are suspended and the backlog stays at the broker; default " + ReadThrottle.DEFAULT_BUFFER);
+		addOptionsGroup("Slow Consumer",
+				new javax.swing.JLabel("Rate:"), readRateTextField,
+				new javax.swing.JLabel("Unit:"), readRateUnitComboBox,
+				new javax.swing.JLabel("Buffer (bytes):"), readBufferTextField);
+
+		responseCaptureComboBox = new javax.swing.JComboBox();
+		responseCaptureComboBox.setModel(new javax.swing.DefaultComboBoxModel(new String[] {
+				ResponseCapture.FULL, ResponseCapture.ERRORS_ONLY, ResponseCapture.CAPPED, ResponseCapture.NONE }));
+		responseCaptureComboBox.setToolTipText("Response data and message kept by samples; errors only and none skip building them for successful samples");
+		responseCaptureLimitTextField = new javax.swing.JTextField();
+		responseCaptureLimitTextField.setToolTipText("Characters kept of the response data and of the response message in capped mode; default " + ResponseCapture.DEFAULT_LIMIT);
+		addOptionsGroup("Response Capture",
+				new javax.swing.JLabel("Keep:"), responseCaptureComboBox,
+				new javax.swing.JLabel("Limit (chars):"), responseCaptureLimitTextField);
+
+		heapGuardTextField = new javax.swing.JTextField();
+		heapGuardTextField.setToolTipText("Heap usage after GC in percent from which response backlogs, message logging and response capture are progressively shed; empty to disable");
+		addOptionsGroup("Heap Guard",
+				new javax.swing.JLabel("Threshold (%):"), heapGuardTextField);
+
+		subscriptionsPanel = new ArgumentsPanel("Subscriptions: SUBSCRIBE payload with an id header as name, expected messages per sample as value");
+		optionsPanel.add(subscriptionsPanel);
+
+		autoRepliesPanel = new ArgumentsPanel("Auto replies: condition on received messages as name, reply sent right away as value; #{in:header.name} and #{in:$.path} copy values of the message");
+		optionsPanel.add(autoRepliesPanel);
+
+		addOptionsGroup("Large Messages",
+				new javax.swing.JLabel("Streaming threshold (chars):"), streamingThresholdTextField,
+				new javax.swing.JLabel("Kept prefix (chars):"), streamingPrefixTextField);
+
+		metricsPortTextField = new javax.swing.JTextField();
+		metricsPortTextField.setToolTipText("Serves Prometheus metrics at http://localhost:<port>/metrics during the test; JMX MBean is always registered");
+		addOptionsGroup("Live Metrics",
+				new javax.swing.JLabel("Prometheus port:"), metricsPortTextField);
+
+		captureFileTextField = new javax.swing.JTextField();
+		captureFileTextField.setToolTipText("Records all sent and received frames of the test; read it with TrafficCaptureReader");
+		addOptionsGroup("Traffic Capture",
+				new javax.swing.JLabel("Capture file:"), captureFileTextField);
+
+		replayFileTextField = new javax.swing.JTextField();
+		replayFileTextField.setToolTipText("Sends the frames of a capture file instead of the payloads, one frame per sample, over a streaming connection; convert HAR recordings with HarImporter");
+		replayConnectionsTextField = new javax.swing.JTextField();
+		replayConnectionsTextField.setToolTipText("Captured connections are spread over this many threads; defaults to the number of threads");
+		replaySpeedTextField = new javax.swing.JTextField();
+		replaySpeedTextField.setToolTipText("Timing scale of the capture, 2 replays twice as fast, 0 sends without waiting");
+		addOptionsGroup("Traffic Replay",
+				new javax.swing.JLabel("Replay file:"), replayFileTextField,
+				new javax.swing.JLabel("Connections:"), replayConnectionsTextField,
+				new javax.swing.JLabel("Speed factor:"), replaySpeedTextField);
+	}
+
+	/**
+	 * Adds a titled group of options to the options panel
+	 *
+	 * @param title      group title
+	 * @param components label and field pairs
+	 */
+	private void addOptionsGroup(String title, javax.swing.JComponent... components) {
+		javax.swing.JPanel group = new javax.swing.JPanel(new java.awt.GridBagLayout());
+		group.setBorder(javax.swing.BorderFactory.createTitledBorder(title));
+
+		java.awt.GridBagConstraints constraints = new java.awt.GridBagConstraints();
+		constraints.insets = new java.awt.Insets(2, 4, 2, 4);
+		for (int i = 0; i + 1 < components.length; i += 2) {
+			constraints.gridy = (i / 2) / OPTIONS_PER_ROW;
+			constraints.gridx = ((i / 2) % OPTIONS_PER_ROW) * 2;
+			constraints.weightx = 0;
+			constraints.fill = java.awt.GridBagConstraints.NONE;
+			constraints.anchor = java.awt.GridBagConstraints.LINE_START;
+			group.add(components[i], constraints);
+
+			constraints.gridx++;
+			constraints.weightx = 1;
+			constraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
+			group.add(components[i + 1], constraints);
+		}
+		optionsPanel.add(group);
+	}
+
 	public void initFields() {
 	}
 
@@ -639,6 +904,318 @@ public class WebSocketSamplerPanel extends javax.swing.JPanel {
 		responsesCountTextField.setText(responsesCount);
 	}
 
+	public String getSequencePattern() {
+		return sequencePatternTextField.getText();
+	}
+
+	public void setSequencePattern(String sequencePattern) {
+		sequencePatternTextField.setText(sequencePattern);
+	}
+
+	public String getSequenceDestinationPattern() {
+		return sequenceDestinationPatternTextField.getText();
+	}
+
+	public void setSequenceDestinationPattern(String sequenceDestinationPattern) {
+		sequenceDestinationPatternTextField.setText(sequenceDestinationPattern);
+	}
+
+	public String getSequenceWindow() {
+		return sequenceWindowTextField.getText();
+	}
+
+	public void setSequenceWindow(String sequenceWindow) {
+		sequenceWindowTextField.setText(sequenceWindow);
+	}
+
+	public Boolean isReconnect() {
+		return reconnectCheckBox.isSelected();
+	}
+
+	public void setReconnect(Boolean reconnect) {
+		reconnectCheckBox.setSelected(reconnect);
+	}
+
+	public String getReconnectMaxAttempts() {
+		return reconnectMaxAttemptsTextField.getText();
+	}
+
+	public void setReconnectMaxAttempts(String reconnectMaxAttempts) {
+		reconnectMaxAttemptsTextField.setText(reconnectMaxAttempts);
+	}
+
+	public String getReconnectInitialDelay() {
+		return reconnectInitialDelayTextField.getText();
+	}
+
+	public void setReconnectInitialDelay(String reconnectInitialDelay) {
+		reconnectInitialDelayTextField.setText(reconnectInitialDelay);
+	}
+
+	public String getReconnectMaxDelay() {
+		return reconnectMaxDelayTextField.getText();
+	}
+
+	public void setReconnectMaxDelay(String reconnectMaxDelay) {
+		reconnectMaxDelayTextField.setText(reconnectMaxDelay);
+	}
+
+	public Boolean isLeanConnection() {
+		return leanConnectionCheckBox.isSelected();
+	}
+
+	public void setLeanConnection(Boolean leanConnection) {
+		leanConnectionCheckBox.setSelected(leanConnection);
+	}
+
+	public String getMaxMessageSize() {
+		return maxMessageSizeTextField.getText();
+	}
+
+	public void setMaxMessageSize(String maxMessageSize) {
+		maxMessageSizeTextField.setText(maxMessageSize);
+	}
+
+	public String getInputBufferSize() {
+		return inputBufferSizeTextField.getText();
+	}
+
+	public void setInputBufferSize(String inputBufferSize) {
+		inputBufferSizeTextField.setText(inputBufferSize);
+	}
+
+	public String getIdleTimeout() {
+		return idleTimeoutTextField.getText();
+	}
+
+	public void setIdleTimeout(String idleTimeout) {
+		idleTimeoutTextField.setText(idleTimeout);
+	}
+
+	public String getResponseBacklog() {
+		return responseBacklogTextField.getText();
+	}
+
+	public void setResponseBacklog(String responseBacklog) {
+		responseBacklogTextField.setText(responseBacklog);
+	}
+
+	public String getMetricsPort() {
+		return metricsPortTextField.getText();
+	}
+
+	public void setMetricsPort(String metricsPort) {
+		metricsPortTextField.setText(metricsPort);
+	}
+
+	public String getCaptureFile() {
+		return captureFileTextField.getText();
+	}
+
+	public void setCaptureFile(String captureFile) {
+		captureFileTextField.setText(captureFile);
+	}
+
+	public String getReplayFile() {
+		return replayFileTextField.getText();
+	}
+
+	public void setReplayFile(String replayFile) {
+		replayFileTextField.setText(replayFile);
+	}
+
+	public String getReplayConnections() {
+		return replayConnectionsTextField.getText();
+	}
+
+	public void setReplayConnections(String replayConnections) {
+		replayConnectionsTextField.setText(replayConnections);
+	}
+
+	public String getReplaySpeed() {
+		return replaySpeedTextField.getText();
+	}
+
+	public void setReplaySpeed(String replaySpeed) {
+		replaySpeedTextField.setText(replaySpeed);
+	}
+
+	public String getStreamingThreshold() {
+		return streamingThresholdTextField.getText();
+	}
+
+	public void setStreamingThreshold(String streamingThreshold) {
+		streamingThresholdTextField.setText(streamingThreshold);
+	}
+
+	public String getStreamingPrefix() {
+		return streamingPrefixTextField.getText();
+	}
+
+	public void setStreamingPrefix(String streamingPrefix) {
+		streamingPrefixTextField.setText(streamingPrefix);
+	}
+
+	public String getSharedSessions() {
+		return sharedSessionsTextField.getText();
+	}
+
+	public void setSharedSessions(String sharedSessions) {
+		sharedSessionsTextField.setText(sharedSessions);
+	}
+
+	public String getSendWindow() {
+		return sendWindowTextField.getText();
+	}
+
+	public void setSendWindow(String sendWindow) {
+		sendWindowTextField.setText(sendWindow);
+	}
+
+	public String getConnectCondition() {
+		return connectConditionTextField.getText();
+	}
+
+	public void setConnectCondition(String connectCondition) {
+		connectConditionTextField.setText(connectCondition);
+	}
+
+	public String getSubscribeCondition() {
+		return subscribeConditionTextField.getText();
+	}
+
+	public void setSubscribeCondition(String subscribeCondition) {
+		subscribeConditionTextField.setText(subscribeCondition);
+	}
+
+	public String getCloseConnectionCondition() {
+		return closeConnectionConditionTextField.getText();
+	}
+
+	public void setCloseConnectionCondition(String closeConnectionCondition) {
+		closeConnectionConditionTextField.setText(closeConnectionCondition);
+	}
+
+	public String getMessageResults() {
+		return (String) messageResultsComboBox.getSelectedItem();
+	}
+
+	public void setMessageResults(String messageResults) {
+		messageResultsComboBox.setSelectedItem(messageResults);
+	}
+
+	public String getMessageResultsRate() {
+		return messageResultsRateTextField.getText();
+	}
+
+	public void setMessageResultsRate(String messageResultsRate) {
+		messageResultsRateTextField.setText(messageResultsRate);
+	}
+
+	public String getMessageResultsLimit() {
+		return messageResultsLimitTextField.getText();
+	}
+
+	public void setMessageResultsLimit(String messageResultsLimit) {
+		messageResultsLimitTextField.setText(messageResultsLimit);
+	}
+
+	public String getLocalAddresses() {
+		return localAddressesTextField.getText();
+	}
+
+	public void setLocalAddresses(String localAddresses) {
+		localAddressesTextField.setText(localAddresses);
+	}
+
+	public String getTargetAddresses() {
+		return targetAddressesTextField.getText();
+	}
+
+	public void setTargetAddresses(String targetAddresses) {
+		targetAddressesTextField.setText(targetAddresses);
+	}
+
+	public String getAddressSelection() {
+		return (String) addressSelectionComboBox.getSelectedItem();
+	}
+
+	public void setAddressSelection(String addressSelection) {
+		addressSelectionComboBox.setSelectedItem(addressSelection);
+	}
+
+	public String getPrewarmSessions() {
+		return prewarmSessionsTextField.getText();
+	}
+
+	public void setPrewarmSessions(String prewarmSessions) {
+		prewarmSessionsTextField.setText(prewarmSessions);
+	}
+
+	public String getPingInterval() {
+		return pingIntervalTextField.getText();
+	}
+
+	public void setPingInterval(String pingInterval) {
+		pingIntervalTextField.setText(pingInterval);
+	}
+
+	public String getReadRate() {
+		return readRateTextField.getText();
+	}
+
+	public void setReadRate(String readRate) {
+		readRateTextField.setText(readRate);
+	}
+
+	public String getReadRateUnit() {
+		return (String) readRateUnitComboBox.getSelectedItem();
+	}
+
+	public void setReadRateUnit(String readRateUnit) {
+		readRateUnitComboBox.setSelectedItem(readRateUnit);
+	}
+
+	public String getReadBuffer() {
+		return readBufferTextField.getText();
+	}
+
+	public void setReadBuffer(String readBuffer) {
+		readBufferTextField.setText(readBuffer);
+	}
+
+	public String getResponseCapture() {
+		return (String) responseCaptureComboBox.getSelectedItem();
+	}
+
+	public void setResponseCapture(String responseCapture) {
+		responseCaptureComboBox.setSelectedItem(responseCapture);
+	}
+
+	public String getResponseCaptureLimit() {
+		return responseCaptureLimitTextField.getText();
+	}
+
+	public void setResponseCaptureLimit(String responseCaptureLimit) {
+		responseCaptureLimitTextField.setText(responseCaptureLimit);
+	}
+
+	public String getHeapGuard() {
+		return heapGuardTextField.getText();
+	}
+
+	public void setHeapGuard(String heapGuard) {
+		heapGuardTextField.setText(heapGuard);
+	}
+
+	public ArgumentsPanel getSubscriptionsPanel() {
+		return subscriptionsPanel;
+	}
+
+	public ArgumentsPanel getAutoRepliesPanel() {
+		return autoRepliesPanel;
+	}
+
 	/**
 	 * @return the attributePanel
 	 */
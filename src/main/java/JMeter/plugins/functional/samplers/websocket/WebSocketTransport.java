@@ -0,0 +1,99 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Client stack opening WebSocket connections for the sampler.
+ * <p>
+ * A transport is started once and opens any number of connections. Events of a connection are delivered to its
+ * listener on the I/O threads of the transport, one at a time. Implementations are selected through
+ * {@link WebSocketImplementation}.
+ */
+public interface WebSocketTransport {
+
+    int NORMAL_CLOSURE = 1000;
+
+    /**
+     * Receiver of the events of one connection
+     */
+    interface Listener {
+        void onOpen(Connection connection);
+
+        /**
+         * @param payload payload of a text or continuation frame of a text message, may be null for an empty frame
+         * @param fin     true for the last frame of the message
+         */
+        void onTextFrame(ByteBuffer payload, boolean fin);
+
+        /**
+         * Alternative to {@link #onTextFrame} for client stacks that decode the text themselves
+         *
+         * @param text part of a text message, may be empty
+         * @param last true for the last part of the message
+         */
+        void onText(CharSequence text, boolean last);
+
+        /**
+         * @param payload application data of the pong, may be null for an empty pong
+         */
+        void onPong(ByteBuffer payload);
+
+        void onClose(int statusCode, String reason);
+    }
+
+    /**
+     * Completion of an asynchronous send
+     */
+    interface SendCallback {
+        void onSuccess();
+
+        void onFailure(Throwable cause);
+    }
+
+    /**
+     * Open connection
+     */
+    interface Connection {
+        boolean isOpen();
+
+        /**
+         * Sends the message and waits until it is written
+         */
+        void sendText(String message) throws IOException;
+
+        /**
+         * Queues the message and returns without waiting for the write
+         */
+        void sendText(String message, SendCallback callback);
+
+        /**
+         * Sends a ping control frame, the payload must not exceed 125 bytes
+         */
+        void sendPing(ByteBuffer payload) throws IOException;
+
+        /**
+         * Stops reading from the connection, received data stays in the socket buffers until reads are resumed
+         */
+        void suspendReads();
+
+        void resumeReads();
+
+        void close(int statusCode, String reason);
+    }
+
+    void start() throws Exception;
+
+    /**
+     * Starts the opening handshake; the listener is notified when the connection is open or failed to open
+     *
+     * @param cookies cookies sent with the upgrade request, may be null
+     */
+    Future<?> connect(URI uri, List<HttpCookie> cookies, Listener listener) throws IOException;
+
+    void stop() throws Exception;
+}
@@ -0,0 +1,81 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AddressPoolTest extends TestCase {
+
+    private static final String[] ADDRESSES = {"127.0.0.2", "127.0.0.3", "127.0.0.4", "127.0.0.5"};
+
+    @Override
+    protected void tearDown() {
+        AddressPool.reset();
+    }
+
+    public void testGetParsesAndSharesPools() {
+        assertNull(AddressPool.get("Local address", " ", AddressPool.ROUND_ROBIN));
+        AddressPool pool = AddressPool.get("Local address", "127.0.0.2, 127.0.0.3\n127.0.0.4", AddressPool.ROUND_ROBIN);
+        assertSame(pool, AddressPool.get("Local address", "127.0.0.2, 127.0.0.3\n127.0.0.4", AddressPool.ROUND_ROBIN));
+        assertNotSame(pool, AddressPool.get("Local address", "127.0.0.2, 127.0.0.3\n127.0.0.4", AddressPool.HASH));
+        assertEquals("127.0.0.2", pool.select("a"));
+        assertEquals("127.0.0.3", pool.select("a"));
+        assertEquals("127.0.0.4", pool.select("a"));
+        assertEquals("127.0.0.2", pool.select("a"));
+    }
+
+    public void testHashKeepsAddressOfConnection() {
+        AddressPool pool = new AddressPool("Target", ADDRESSES, true);
+        AddressPool again = new AddressPool("Target", ADDRESSES, true);
+        for (int i = 0; i < 1000; i++) {
+            String id = "connection-" + i;
+            assertEquals(pool.select(id), pool.select(id));
+            assertEquals(pool.select(id), again.select(id));
+        }
+    }
+
+    public void testHashSpreadsConnectionsEvenly() {
+        AddressPool pool = new AddressPool("Target", ADDRESSES, true);
+        Map<String, Integer> counts = new HashMap<>();
+        int connections = 40000;
+        for (int i = 0; i < connections; i++) {
+            String address = pool.select("thread-" + i);
+            counts.put(address, counts.containsKey(address) ? counts.get(address) + 1 : 1);
+        }
+        assertEquals(ADDRESSES.length, counts.size());
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            int share = connections / ADDRESSES.length;
+            assertTrue(count.toString(), Math.abs(count.getValue() - share) < share / 4);
+        }
+    }
+
+    /**
+     * Adding an address moves only the connections that now hash to it
+     */
+    public void testAddingAddressMovesFewConnections() {
+        AddressPool pool = new AddressPool("Target", ADDRESSES, true);
+        String[] more = {"127.0.0.2", "127.0.0.3", "127.0.0.4", "127.0.0.5", "127.0.0.6"};
+        AddressPool larger = new AddressPool("Target", more, true);
+        int connections = 10000;
+        int moved = 0;
+        for (int i = 0; i < connections; i++) {
+            String before = pool.select("thread-" + i);
+            String after = larger.select("thread-" + i);
+            if (!before.equals(after)) {
+                assertEquals("127.0.0.6", after);
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved < connections * 3 / 10);
+    }
+
+    public void testWithTarget() throws Exception {
+        URI uri = new URI("ws://example.com:8080/ws/websocket?x=1%202");
+        assertEquals("ws://10.0.0.1:8080/ws/websocket?x=1%202", AddressPool.withTarget(uri, "10.0.0.1").toString());
+        assertEquals("ws://10.0.0.1:9090/ws/websocket?x=1%202", AddressPool.withTarget(uri, "10.0.0.1:9090").toString());
+        assertEquals("ws://[::1]:8080/ws/websocket?x=1%202", AddressPool.withTarget(uri, "[::1]").toString());
+        assertEquals("wss://[::1]:9443/", AddressPool.withTarget(new URI("wss://example.com/"), "[::1]:9443").toString());
+    }
+}
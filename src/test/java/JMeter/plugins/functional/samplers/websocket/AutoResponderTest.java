@@ -0,0 +1,43 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.threads.JMeterVariables;
+
+public class AutoResponderTest extends TestCase {
+
+    private static final String MESSAGE = "a[\"MESSAGE\\nmessage-id:say \\\"hi\\\"\\n\\n{\\\"text\\\":\\\"a\\\\\\\\b\\\\nc\\\"}"
+            + "\\u0000\"]";
+
+    public void testEscape() {
+        assertEquals("plain", AutoResponder.escape("plain"));
+        assertEquals("say \\\"hi\\\"", AutoResponder.escape("say \"hi\""));
+        assertEquals("a\\\\b\\nc\\r\\t\\u0001", AutoResponder.escape("a\\b\nc\r\t\u0001"));
+    }
+
+    public void testReplyEscapesCopiedValues() {
+        Arguments definitions = new Arguments();
+        definitions.addArgument("command=MESSAGE", "SEND\\nid:#{in:header.message-id}\\n\\n#{in:$.text} ${user}");
+        AutoResponder responder = AutoResponder.compile(definitions);
+        JMeterVariables variables = new JMeterVariables();
+        variables.put("user", "bob");
+        responder.resolveReplies(variables);
+        //Later changes of the variables don't reach the I/O threads
+        variables.put("user", "alice");
+
+        String reply = responder.reply(MESSAGE);
+        assertEquals("[\"SEND\\nid:say \\\"hi\\\"\\n\\na\\\\b\\nc bob\\n\\n\\u0000\"]", reply);
+
+        StompFrame frame = StompFrame.parse(reply);
+        assertEquals("say \"hi\"", frame.getHeader("id"));
+        assertEquals("a\\b\nc bob\n\n", frame.getBody());
+    }
+
+    public void testNoReplyWithoutMatch() {
+        Arguments definitions = new Arguments();
+        definitions.addArgument("command=ERROR", "SEND\\n\\n#{in:command}");
+        AutoResponder responder = AutoResponder.compile(definitions);
+        responder.resolveReplies(new JMeterVariables());
+        assertNull(responder.reply(MESSAGE));
+    }
+}
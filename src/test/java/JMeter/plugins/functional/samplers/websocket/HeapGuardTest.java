@@ -0,0 +1,107 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+public class HeapGuardTest extends TestCase {
+
+    private static final String MESSAGE = "MESSAGE\n\n0123456789\u0000";
+
+    @Override
+    protected void setUp() {
+        HeapGuard.stop();
+        HeapGuard.resetTotals();
+    }
+
+    @Override
+    protected void tearDown() {
+        HeapGuard.stop();
+        HeapGuard.resetTotals();
+    }
+
+    public void testLevelsShedBacklogsAndLogging() {
+        HeapGuard.setLevel(0, 0);
+        assertEquals(100, HeapGuard.getBacklogLimit(100));
+        assertTrue(HeapGuard.isMessageLogging());
+        assertFalse(HeapGuard.isCaptureDropped());
+
+        HeapGuard.setLevel(1, 0.8);
+        assertEquals(25, HeapGuard.getBacklogLimit(100));
+        assertEquals(1, HeapGuard.getBacklogLimit(2));
+        assertTrue(HeapGuard.isMessageLogging());
+
+        HeapGuard.setLevel(2, 0.9);
+        assertEquals(1, HeapGuard.getBacklogLimit(100));
+        assertEquals(0, HeapGuard.getBacklogLimit(0));
+        assertFalse(HeapGuard.isMessageLogging());
+        assertFalse(HeapGuard.isCaptureDropped());
+
+        HeapGuard.setLevel(HeapGuard.MAX_LEVEL, 0.95);
+        assertEquals(0, HeapGuard.getBacklogLimit(100));
+        assertTrue(HeapGuard.isCaptureDropped());
+    }
+
+    public void testStartAndStop() {
+        Runnable shed = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        HeapGuard.start(80, shed);
+        assertTrue(HeapGuard.isStarted());
+        assertEquals(0, HeapGuard.getLevel());
+
+        //A start of a later test replaces the guard
+        HeapGuard.start(90, shed);
+        assertTrue(HeapGuard.isStarted());
+
+        HeapGuard.setLevel(2, 0.95);
+        HeapGuard.stop();
+        assertFalse(HeapGuard.isStarted());
+        assertEquals(0, HeapGuard.getLevel());
+        HeapGuard.stop();
+    }
+
+    public void testShedCounters() {
+        HeapGuard.onShed(2, 100);
+        HeapGuard.onShed(0, 50);
+        HeapGuard.onCaptureDropped();
+        assertEquals(2, HeapGuard.getShedMessages());
+        assertEquals(150, HeapGuard.getShedChars());
+        assertEquals(1, HeapGuard.getDroppedCaptures());
+
+        HeapGuard.resetTotals();
+        assertEquals(0, HeapGuard.getShedMessages());
+        assertEquals(0, HeapGuard.getShedChars());
+        assertEquals(0, HeapGuard.getDroppedCaptures());
+    }
+
+    /**
+     * Backlogs of a connection keep fewer messages while the level is raised and count what they drop
+     */
+    public void testSocketBacklogFollowsLevel() {
+        WebSocketSampler sampler = new WebSocketSampler();
+        sampler.setResponseBacklog("8");
+        ServiceSocket socket = new ServiceSocket(sampler, null);
+
+        HeapGuard.setLevel(1, 0.8);
+        for (int i = 0; i < 10; i++) {
+            socket.consumeMessage(MESSAGE, MESSAGE.length());
+        }
+        assertEquals(2, socket.responeBacklog.size());
+        assertEquals(8, HeapGuard.getShedMessages());
+        assertEquals(8 * MESSAGE.length(), HeapGuard.getShedChars());
+
+        //Raising the level sheds what the connection already holds
+        HeapGuard.setLevel(2, 0.9);
+        socket.shed();
+        assertEquals(1, socket.responeBacklog.size());
+        assertEquals(9, HeapGuard.getShedMessages());
+
+        HeapGuard.setLevel(0, 0.5);
+        for (int i = 0; i < 10; i++) {
+            socket.consumeMessage(MESSAGE, MESSAGE.length());
+        }
+        assertEquals(8, socket.responeBacklog.size());
+        assertEquals(9, HeapGuard.getShedMessages());
+    }
+}
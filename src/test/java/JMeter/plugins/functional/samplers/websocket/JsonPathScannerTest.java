@@ -0,0 +1,78 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+public class JsonPathScannerTest extends TestCase {
+
+    private static final String ORDER = "{\"id\": 7, \"note\": \"say \\\"hi\\\"\\n\", \"skip\": {\"a\": [1, \"]}\", {}]},"
+            + " \"order\": {\"items\": [{\"price\": 1.5, \"tags\": [\"x\", \"y\"]}, {\"price\": 2}], \"paid\": true,"
+            + " \"coupon\": null}, \"odd key.\": \"\\u00e9\"}";
+
+    private static String find(String path, String json) {
+        return JsonPathScanner.compile(path).find(json);
+    }
+
+    public void testMembersAndElements() {
+        assertEquals("7", find("$.id", ORDER));
+        assertEquals("1.5", find("$.order.items[0].price", ORDER));
+        assertEquals("2", find("order.items[1].price", ORDER));
+        assertEquals("y", find("$.order.items[0].tags[1]", ORDER));
+        assertEquals("true", find("$.order.paid", ORDER));
+        assertEquals("null", find("$.order.coupon", ORDER));
+    }
+
+    public void testStringsAreUnescaped() {
+        assertEquals("say \"hi\"\n", find("$.note", ORDER));
+        assertEquals("\u00e9", find("$['odd key.']", ORDER));
+    }
+
+    public void testContainersAreRawJson() {
+        assertEquals("[\"x\", \"y\"]", find("$.order.items[0].tags", ORDER));
+        assertEquals("{\"price\": 2}", find("$.order.items[1]", ORDER));
+    }
+
+    public void testMissingValues() {
+        assertNull(find("$.missing", ORDER));
+        assertNull(find("$.order.items[2]", ORDER));
+        assertNull(find("$.id.value", ORDER));
+        assertNull(find("$.order.items.price", ORDER));
+        assertNull(find("$[0]", ORDER));
+        assertNull(find("$.a", "not json"));
+        assertNull(find("$.a", "{\"a\":"));
+        assertNull(find("$.a", ""));
+    }
+
+    public void testSkippedValuesDoNotConfuseTheScanner() {
+        //Brackets and quotes inside skipped strings and nested containers
+        assertEquals("2", find("$.b", "{\"a\": {\"x\": \"}{][\\\"\", \"y\": [[], {}]}, \"b\": 2}"));
+        assertEquals("c", find("$[2]", "[\"]\", [1, [2]], \"c\"]"));
+    }
+
+    public void testInvalidPath() {
+        try {
+            JsonPathScanner.compile("$.items[0");
+            fail("Unclosed index");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            JsonPathScanner.compile("$.items[x]");
+            fail("Invalid index");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * A document embedded in a JSON string is scanned in place with the same result as the unescaped document
+     */
+    public void testEscapedRange() {
+        String embedded = "x\"" + ORDER.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"x";
+        int start = 2;
+        int end = embedded.length() - 2;
+        String[] paths = {"$.id", "$.note", "$['odd key.']", "$.order.items[0].tags", "$.order.items[1].price",
+                "$.order.coupon", "$.missing"};
+        for (String path : paths) {
+            JsonPathScanner scanner = JsonPathScanner.compile(path);
+            assertEquals(path, scanner.find(ORDER), scanner.find(embedded, start, end, true));
+        }
+    }
+}
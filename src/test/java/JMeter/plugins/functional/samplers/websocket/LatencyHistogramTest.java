@@ -0,0 +1,79 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class LatencyHistogramTest extends TestCase {
+
+    private static final int BUCKETS = 960;
+
+    public void testSmallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.lowerBound(value));
+        }
+    }
+
+    public void testLowerBoundIsInverseOfIndex() {
+        for (int index = 0; index < BUCKETS; index++) {
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.lowerBound(index)));
+        }
+    }
+
+    public void testBoundsAreIncreasing() {
+        for (int index = 1; index < BUCKETS; index++) {
+            assertTrue("bucket " + index, LatencyHistogram.lowerBound(index) > LatencyHistogram.lowerBound(index - 1));
+        }
+        assertEquals(BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+    }
+
+    /**
+     * Every value falls into the bucket whose bounds hold it, and the bucket is narrower than 1/16 of the value
+     */
+    public void testValueFallsIntoItsBucket() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            assertBucketHolds(value);
+        }
+        for (int bit = 0; bit < 63; bit++) {
+            assertBucketHolds((1L << bit) - 1);
+            assertBucketHolds(1L << bit);
+            assertBucketHolds((1L << bit) + 1);
+        }
+        assertBucketHolds(Long.MAX_VALUE);
+    }
+
+    private static void assertBucketHolds(long value) {
+        int index = LatencyHistogram.index(value);
+        long low = LatencyHistogram.lowerBound(index);
+        assertTrue(value + " below bucket " + index, low <= value);
+        if (index + 1 < BUCKETS) {
+            long high = LatencyHistogram.lowerBound(index + 1);
+            assertTrue(value + " above bucket " + index, value < high);
+            assertTrue("bucket " + index + " too wide", value < 16 || (high - low) * 16 <= low);
+        }
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-1);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getMean());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500000, histogram.getPercentile(50), 500000 / 16);
+        assertEquals(990000, histogram.getPercentile(99), 990000 / 16);
+        assertEquals(1000000, histogram.getPercentile(100), 1000000 / 16);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
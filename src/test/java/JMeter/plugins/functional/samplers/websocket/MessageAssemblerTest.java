@@ -0,0 +1,230 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class MessageAssemblerTest extends TestCase {
+
+    private final List<String> messages = new ArrayList<String>();
+    private final List<Long> sizes = new ArrayList<Long>();
+    private final List<MessageAssembler.StreamedMessage> streamed = new ArrayList<MessageAssembler.StreamedMessage>();
+    private Pattern[] patterns = new Pattern[0];
+
+    private final MessageAssembler.Listener listener = new MessageAssembler.Listener() {
+        @Override
+        public void onMessage(String message, long bytes) {
+            messages.add(message);
+            sizes.add(bytes);
+        }
+
+        @Override
+        public Pattern[] getStreamingPatterns() {
+            return patterns;
+        }
+
+        @Override
+        public void onStreamedMessage(MessageAssembler.StreamedMessage message) {
+            streamed.add(message);
+        }
+    };
+
+    private final MessageAssembler assembler = new MessageAssembler(listener);
+
+    public void testFramesAreAssembledIntoOneMessage() {
+        assembler.onTextFrame(utf8("Hello, "), false);
+        assertTrue(assembler.isReceiving());
+        assembler.onTextFrame(null, false);
+        assembler.onTextFrame(utf8("World"), true);
+
+        assertFalse(assembler.isReceiving());
+        assertEquals(Arrays.asList("Hello, World"), messages);
+        assertEquals(Long.valueOf(12), sizes.get(0));
+    }
+
+    public void testEmptyMessage() {
+        assembler.onTextFrame(null, true);
+        assembler.onText("", true);
+
+        assertEquals(Arrays.asList("", ""), messages);
+    }
+
+    public void testCharacterSplitBetweenFrames() {
+        byte[] bytes = "a\u00e9\u20ac\ud83d\ude00b".getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= bytes.length; split++) {
+            assembler.onTextFrame(ByteBuffer.wrap(bytes, 0, split), false);
+            assembler.onTextFrame(ByteBuffer.wrap(bytes, split, bytes.length - split), true);
+        }
+        for (String message : messages) {
+            assertEquals("a\u00e9\u20ac\ud83d\ude00b", message);
+        }
+        assertEquals(bytes.length + 1, messages.size());
+        assertEquals(Long.valueOf(bytes.length), sizes.get(0));
+    }
+
+    public void testCharacterSplitIntoSingleBytes() {
+        byte[] bytes = "\ud83d\ude00".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            assembler.onTextFrame(ByteBuffer.wrap(bytes, i, 1), i == bytes.length - 1);
+        }
+        assertEquals(Arrays.asList("\ud83d\ude00"), messages);
+    }
+
+    public void testIncompleteCharacterAtEndIsReplaced() {
+        byte[] bytes = "\u20ac".getBytes(StandardCharsets.UTF_8);
+        assembler.onTextFrame(ByteBuffer.wrap(bytes, 0, 2), true);
+
+        assertEquals(Arrays.asList("\ufffd"), messages);
+        assertFalse(assembler.hasBuffers());
+    }
+
+    /**
+     * Connections served by the same thread share the decoder, the frames of one must not leak into the other
+     */
+    public void testInterleavedConnections() {
+        List<String> other = new ArrayList<String>();
+        MessageAssembler second = new MessageAssembler(collector(other));
+        byte[] first = "\u00e9t\u00e9".getBytes(StandardCharsets.UTF_8);
+        byte[] next = "\u20ac\u20ac".getBytes(StandardCharsets.UTF_8);
+
+        assembler.onTextFrame(ByteBuffer.wrap(first, 0, 1), false);
+        second.onTextFrame(ByteBuffer.wrap(next, 0, 4), false);
+        assembler.onTextFrame(ByteBuffer.wrap(first, 1, first.length - 1), true);
+        second.onTextFrame(ByteBuffer.wrap(next, 4, next.length - 4), true);
+
+        assertEquals(Arrays.asList("\u00e9t\u00e9"), messages);
+        assertEquals(Arrays.asList("\u20ac\u20ac"), other);
+    }
+
+    public void testIdleConnectionHoldsNoBuffers() {
+        assertFalse(assembler.hasBuffers());
+        assembler.onTextFrame(utf8("part"), false);
+        assertTrue(assembler.hasBuffers());
+        assembler.onTextFrame(utf8(repeat('x', 100000)), true);
+        assertFalse(assembler.hasBuffers());
+
+        assembler.setLimits(10, 4);
+        assembler.onText(repeat('y', 100), true);
+        assertEquals(1, streamed.size());
+        assertFalse(assembler.hasBuffers());
+    }
+
+    public void testMessageUpToThresholdIsAssembled() {
+        assembler.setLimits(100, 10);
+        assembler.onTextFrame(utf8(repeat('a', 60)), false);
+        assembler.onTextFrame(utf8(repeat('b', 40)), true);
+        assembler.onText(repeat('c', 100), true);
+
+        assertEquals(2, messages.size());
+        assertEquals(100, messages.get(0).length());
+        assertTrue(streamed.isEmpty());
+    }
+
+    public void testMessageAboveThresholdIsStreamed() {
+        assembler.setLimits(100, 10);
+        assembler.onTextFrame(utf8(repeat('a', 60)), false);
+        assembler.onTextFrame(utf8(repeat('b', 41)), true);
+
+        assertTrue(messages.isEmpty());
+        assertEquals(1, streamed.size());
+        assertEquals(101, streamed.get(0).length);
+        assertEquals(101, streamed.get(0).bytes);
+    }
+
+    public void testStreamedMessageKeepsPrefix() {
+        assembler.setLimits(100, 10);
+        assembler.onTextFrame(utf8("0123456789abcdef"), false);
+        assembler.onTextFrame(utf8(repeat('x', 200)), true);
+        assembler.onText("\u00e9" + repeat('y', 200), true);
+
+        assertEquals("0123456789", streamed.get(0).prefix);
+        assertEquals(216, streamed.get(0).length);
+        assertEquals("\u00e9yyyyyyyyy", streamed.get(1).prefix);
+        assertEquals(201, streamed.get(1).length);
+        assertEquals(202, streamed.get(1).bytes);
+    }
+
+    public void testStreamedMessageMatchesPatterns() {
+        assembler.setLimits(100, 10);
+        patterns = new Pattern[]{Pattern.compile("needle"), Pattern.compile("missing"), null};
+        assembler.onText(repeat('x', 50000) + "needle" + repeat('x', 50000), true);
+
+        boolean[] matched = streamed.get(0).matched;
+        assertTrue(matched[0]);
+        assertFalse(matched[1]);
+        assertTrue(matched[2]);
+    }
+
+    /**
+     * A match across a chunk boundary is found if it spans at most the overlap
+     */
+    public void testMatchAcrossChunksWithinOverlap() {
+        assembler.setLimits(100, 10);
+        String inner = repeat('-', MessageAssembler.MATCH_OVERLAP - 10);
+        patterns = new Pattern[]{Pattern.compile("<" + inner + ">")};
+
+        //Chunks of onText are 8192 characters long, place the match on the boundary of the first two
+        int start = 8192 - inner.length() / 2;
+        assembler.onText(repeat('x', start) + "<" + inner + ">" + repeat('x', 20000), true);
+        assertTrue(streamed.get(0).matched[0]);
+
+        //The same holds when the boundary is between frames
+        assembler.onTextFrame(utf8(repeat('x', 300) + "<" + inner.substring(0, 100)), false);
+        assembler.onTextFrame(utf8(inner.substring(100) + ">" + repeat('x', 300)), true);
+        assertTrue(streamed.get(1).matched[0]);
+    }
+
+    public void testMatchLongerThanOverlapIsNotFound() {
+        assembler.setLimits(100, 10);
+        String inner = repeat('-', MessageAssembler.MATCH_OVERLAP * 2);
+        patterns = new Pattern[]{Pattern.compile("<-+>")};
+
+        assembler.onTextFrame(utf8("<" + inner), false);
+        assembler.onTextFrame(utf8(inner + ">"), true);
+        assertFalse(streamed.get(0).matched[0]);
+    }
+
+    public void testUtf8Length() {
+        assertEquals(0, MessageAssembler.utf8Length(""));
+        assertEquals(1, MessageAssembler.utf8Length("a"));
+        assertEquals(2, MessageAssembler.utf8Length("\u00e9"));
+        assertEquals(3, MessageAssembler.utf8Length("\u20ac"));
+        assertEquals(4, MessageAssembler.utf8Length("\ud83d\ude00"));
+        assertEquals(3, MessageAssembler.utf8Length("\ud83d"));
+        String text = "a\u00e9\u20ac\ud83d\ude00";
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, MessageAssembler.utf8Length(text));
+    }
+
+    private static MessageAssembler.Listener collector(final List<String> messages) {
+        return new MessageAssembler.Listener() {
+            @Override
+            public void onMessage(String message, long bytes) {
+                messages.add(message);
+            }
+
+            @Override
+            public Pattern[] getStreamingPatterns() {
+                return new Pattern[0];
+            }
+
+            @Override
+            public void onStreamedMessage(MessageAssembler.StreamedMessage message) {
+            }
+        };
+    }
+
+    private static ByteBuffer utf8(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,109 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.util.regex.Pattern;
+
+/**
+ * Compares classifying messages with {@link MultiPatternMatcher} to finding each pattern in turn, over payloads from
+ * 100 bytes to 10 MB. Not a unit test; run it after mvn test-compile:
+ * <pre>
+ * java -cp target/test-classes:target/classes JMeter.plugins.functional.samplers.websocket.MultiPatternMatcherBenchmark
+ * </pre>
+ */
+public class MultiPatternMatcherBenchmark {
+
+    private static final int[] SIZES = {100, 10 * 1024, 1024 * 1024, 10 * 1024 * 1024};
+    //Bytes classified per size and method, enough for stable timings without running for minutes
+    private static final long BYTES_PER_RUN = 512L * 1024 * 1024;
+
+    public static void main(String[] args) {
+        Pattern[] patterns = {
+                Pattern.compile("CONNECTED"),
+                Pattern.compile("destination:/topic/prices/[A-Z]+"),
+                Pattern.compile("ERROR\\\\nmessage:")
+        };
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+
+        System.out.printf("%10s %12s %14s %14s %14s %14s%n", "payload", "messages", "find ns/msg", "find MB/s",
+                "matcher ns/msg", "matcher MB/s");
+        for (int size : SIZES) {
+            //A message no pattern matches is the worst case: every pattern scans the whole payload
+            String message = createMessage(size);
+            int iterations = (int) Math.max(10, BYTES_PER_RUN / size);
+
+            //Warm up both paths before measuring
+            runFind(patterns, message, iterations / 4 + 1);
+            runMatcher(matcher, message, iterations / 4 + 1);
+
+            long findNanos = runFind(patterns, message, iterations);
+            long matcherNanos = runMatcher(matcher, message, iterations);
+            System.out.printf("%10s %12d %14d %14.1f %14d %14.1f%n", formatSize(size), iterations,
+                    findNanos / iterations, throughput(size, iterations, findNanos),
+                    matcherNanos / iterations, throughput(size, iterations, matcherNanos));
+        }
+    }
+
+    private static long runFind(Pattern[] patterns, String message, int iterations) {
+        int matched = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (int p = 0; p < patterns.length; p++) {
+                if (patterns[p].matcher(message).find()) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        check(matched);
+        return nanos;
+    }
+
+    private static long runMatcher(MultiPatternMatcher matcher, String message, int iterations) {
+        int matched = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (matcher.firstMatch(message) >= 0) {
+                matched++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        check(matched);
+        return nanos;
+    }
+
+    /**
+     * Keeps the JIT from removing the loops, no message is expected to match
+     */
+    private static void check(int matched) {
+        if (matched != 0) {
+            throw new IllegalStateException(matched + " messages matched");
+        }
+    }
+
+    /**
+     * @return SockJS MESSAGE frame of about the size with a JSON body of quotes
+     */
+    private static String createMessage(int size) {
+        StringBuilder message = new StringBuilder(size + 64);
+        message.append("a[\"MESSAGE\\ndestination:/topic/quotes\\nsubscription:sub-0\\nmessage-id:1\\n\\n[");
+        int quote = 0;
+        while (message.length() < size - 8) {
+            message.append(quote > 0 ? "," : "").append("{\\\"symbol\\\":\\\"S").append(quote)
+                    .append("\\\",\\\"bid\\\":").append(100 + quote % 50).append(".25}");
+            quote++;
+        }
+        message.append("]\\u0000\"]");
+        return message.toString();
+    }
+
+    private static double throughput(int size, int iterations, long nanos) {
+        return (double) size * iterations / (1024 * 1024) / (nanos / 1e9);
+    }
+
+    private static String formatSize(int size) {
+        if (size >= 1024 * 1024) {
+            return size / (1024 * 1024) + " MB";
+        }
+        return size >= 1024 ? size / 1024 + " KB" : size + " B";
+    }
+}
@@ -0,0 +1,124 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+public class MultiPatternMatcherTest extends TestCase {
+
+    //Pieces random patterns and texts are made of
+    private static final String[] PIECES = {"a", "b", "c", "ab", "x", "\\.", ".", "\\d", "[ab]", "[^a]", "(a|b)", "(?:ab)",
+            "a?", "b*", "c+", "a{2}", "b{1,3}", "|", "^", "$", "\\x41", "\\u0042", "\\p{L}", "\\Q|a\\E", "(?i)a",
+            "[]a]", "\\1", "(c)", "\\s", " ", "\"", ":", "CONNECTED", "MESSAGE", "\\n", "\\\\n", "*?"};
+    private static final String[] TEXT_PIECES = {"a", "b", "c", "ab", "x", ".", "1", "A", "B", " ", "\"", ":", "\n",
+            "\\n", "aa", "CONNECTED", "MESSAGE", "|", "bbb", "cc"};
+
+    public void testRequiredLiteralOfPlainPattern() {
+        assertEquals("CONNECTED", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("CONNECTED")));
+        assertEquals("[\"MESSAGE\\n", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("^\\[\"MESSAGE\\\\n")));
+        assertEquals("destination:/topic/", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("destination:/topic/.*")));
+    }
+
+    public void testRequiredLiteralSkipsOptionalParts() {
+        assertEquals("abc", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("x?abcd*")));
+        assertEquals("bc", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("a+bc")));
+        assertEquals("cd", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("(ab)+cd")));
+    }
+
+    public void testRequiredLiteralIgnoresQuantifierAndEscapeArguments() {
+        assertEquals("b", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("a{12}b")));
+        assertEquals("z", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("\\x41z")));
+        assertEquals("z", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("\\u0042z")));
+        assertEquals("z", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("\\p{Lu}z")));
+        assertEquals("z", MultiPatternMatcher.getRequiredLiteral(Pattern.compile("(?<id>a)\\k<id>z")));
+    }
+
+    public void testNoRequiredLiteral() {
+        assertNull(MultiPatternMatcher.getRequiredLiteral(Pattern.compile("CONNECTED|ERROR")));
+        assertNull(MultiPatternMatcher.getRequiredLiteral(Pattern.compile("(?i)connected")));
+        assertNull(MultiPatternMatcher.getRequiredLiteral(Pattern.compile("connected", Pattern.CASE_INSENSITIVE)));
+        assertNull(MultiPatternMatcher.getRequiredLiteral(Pattern.compile("\\d+")));
+        assertNull(MultiPatternMatcher.getRequiredLiteral(Pattern.compile("\\Qa|b\\E")));
+    }
+
+    public void testTopLevelAlternation() {
+        assertTrue(MultiPatternMatcher.hasTopLevelAlternation("a|b"));
+        assertTrue(MultiPatternMatcher.hasTopLevelAlternation("(a)|b"));
+        assertFalse(MultiPatternMatcher.hasTopLevelAlternation("(a|b)c"));
+        assertFalse(MultiPatternMatcher.hasTopLevelAlternation("[|]"));
+        assertFalse(MultiPatternMatcher.hasTopLevelAlternation("a\\|b"));
+        assertFalse(MultiPatternMatcher.hasTopLevelAlternation("[]|]"));
+    }
+
+    /**
+     * Every text a random pattern finds a match in contains its literal, and the matcher agrees with Pattern.find
+     */
+    public void testRandomPatternsAgreeWithFind() {
+        Random random = new Random(42);
+        int checked = 0;
+        while (checked < 3000) {
+            Pattern[] patterns = new Pattern[3];
+            for (int p = 0; p < patterns.length; p++) {
+                patterns[p] = randomPattern(random);
+            }
+            if (patterns[0] == null || patterns[1] == null || patterns[2] == null) {
+                continue;
+            }
+            MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+            for (int t = 0; t < 20; t++) {
+                String text = randomText(random);
+                int expected = -1;
+                for (int p = 0; p < patterns.length && expected < 0; p++) {
+                    if (patterns[p].matcher(text).find()) {
+                        expected = p;
+                    }
+                }
+                for (Pattern pattern : patterns) {
+                    String literal = MultiPatternMatcher.getRequiredLiteral(pattern);
+                    if (literal != null && pattern.matcher(text).find()) {
+                        assertTrue("/" + pattern + "/ matched \"" + text + "\" without the literal \"" + literal + "\"",
+                                text.contains(literal));
+                    }
+                    if (MultiPatternMatcher.hasTopLevelAlternation(pattern.pattern())) {
+                        assertNull(literal);
+                    }
+                }
+                assertEquals("first match of " + patterns[0] + ", " + patterns[1] + ", " + patterns[2] + " in \"" + text + "\"",
+                        expected, matcher.firstMatch(text));
+            }
+            checked++;
+        }
+    }
+
+    public void testFirstMatchFromIndex() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Pattern.compile("CONNECTED"), null, Pattern.compile("MESSAGE"));
+        String text = "[\"CONNECTED\\nversion:1.2\\n\\nMESSAGE\"]";
+        assertEquals(0, matcher.firstMatch(text));
+        assertEquals(2, matcher.firstMatch(text, 1));
+        assertEquals(-1, matcher.firstMatch("[\"RECEIPT\"]"));
+    }
+
+    private static Pattern randomPattern(Random random) {
+        StringBuilder regex = new StringBuilder();
+        int pieces = 1 + random.nextInt(5);
+        for (int i = 0; i < pieces; i++) {
+            regex.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        try {
+            return Pattern.compile(regex.toString());
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int pieces = random.nextInt(12);
+        for (int i = 0; i < pieces; i++) {
+            text.append(TEXT_PIECES[random.nextInt(TEXT_PIECES.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+import org.apache.jmeter.threads.JMeterVariables;
+
+public class PayloadTemplateTest extends TestCase {
+
+    private final JMeterVariables variables = new JMeterVariables();
+
+    @Override
+    protected void setUp() {
+        PayloadTemplate.resetSequence();
+        variables.put("user", "bob");
+        variables.put("room", "42");
+    }
+
+    public void testLiteral() {
+        assertEquals("SEND\\ndestination:/a\\n\\nhello", render("SEND\\ndestination:/a\\n\\nhello"));
+        assertEquals("", render(""));
+    }
+
+    public void testVariables() {
+        assertEquals("bob joins 42", render("${user} joins ${room}"));
+        assertEquals("{\"user\":\"bob\"}", render("{\"user\":\"${user}\"}"));
+    }
+
+    public void testUndefinedVariableIsKept() {
+        assertEquals("bob ${missing}", render("${user} ${missing}"));
+        assertEquals("${user}", render("${user}", null));
+    }
+
+    public void testUndefinedVariable() {
+        assertNull(PayloadTemplate.compile("${user} ${room} #{seq}").getUndefinedVariable(variables));
+        assertEquals("missing", PayloadTemplate.compile("${user} ${missing}").getUndefinedVariable(variables));
+        assertEquals("user", PayloadTemplate.compile("${user}").getUndefinedVariable(null));
+        assertNull(PayloadTemplate.compile("no variables").getUndefinedVariable(null));
+    }
+
+    /**
+     * Like JMeter, escapes are only unescaped in a payload with a reference
+     */
+    public void testEscapes() {
+        assertEquals("${user} is bob", render("\\${user} is ${user}"));
+        assertEquals("a,b\\c bob", render("a\\,b\\\\c ${user}"));
+        assertEquals("a\\,b\\\\c", render("a\\,b\\\\c"));
+        assertEquals("\\n stays bob", render("\\n stays ${user}"));
+    }
+
+    public void testUnknownGeneratorAndUnclosedReferenceStayLiteral() {
+        assertEquals("#{unknown} bob", render("#{unknown} ${user}"));
+        assertEquals("${user", render("${user"));
+        assertEquals("#{seq", render("#{seq"));
+        assertEquals("$ # {}", render("$ # {}"));
+    }
+
+    public void testSequenceIsSharedByTemplates() {
+        assertEquals("1 2", render("#{seq} #{seq}"));
+        assertEquals("id-3", render("id-#{seq}"));
+        PayloadTemplate.resetSequence();
+        assertEquals("1", render("#{seq}"));
+    }
+
+    public void testTimeGenerators() {
+        long before = System.currentTimeMillis();
+        long timestamp = Long.parseLong(render("#{timestamp}"));
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis());
+
+        long nanos = System.nanoTime();
+        assertTrue(Long.parseLong(render("#{nanotime}")) >= nanos);
+    }
+
+    public void testRandomId() {
+        String first = render("#{randomId}");
+        String second = render("#{randomId}");
+        assertTrue(first, first.matches("[0-9a-f]{16}"));
+        assertFalse(first.equals(second));
+    }
+
+    public void testRenderAppendsToBuffer() {
+        StringBuilder buffer = new StringBuilder("prefix ");
+        PayloadTemplate.compile("${user}").render(buffer, variables);
+        assertEquals("prefix bob", buffer.toString());
+    }
+
+    public void testResolveKeepsOnlyGenerators() {
+        PayloadTemplate resolved = PayloadTemplate.compile("${user}-#{seq}-${room}").resolve(variables);
+        variables.put("user", "alice");
+
+        assertEquals("bob-1-42", render(resolved, null));
+        assertEquals("bob-2-42", render(resolved, variables));
+        assertNull(resolved.getUndefinedVariable(null));
+    }
+
+    public void testStompFrame() {
+        StringBuilder buffer = new StringBuilder();
+        PayloadTemplate template = PayloadTemplate.compile("SEND\\ndestination:/${room}");
+        assertEquals("[\"SEND\\ndestination:/42\\n\\n\\u0000\"]", template.renderStompFrame(buffer, variables));
+
+        //A complete frame is sent as it is
+        template = PayloadTemplate.compile("[\"SEND\\n\\nbody\\u0000\"]");
+        assertEquals("[\"SEND\\n\\nbody\\u0000\"]", template.renderStompFrame(buffer, variables));
+
+        template = PayloadTemplate.compile(" \n ");
+        assertEquals("", template.renderStompFrame(buffer, variables));
+        template = PayloadTemplate.compile("${empty}");
+        variables.put("empty", "");
+        assertEquals("", template.renderStompFrame(buffer, variables));
+    }
+
+    public void testIsCompiledFrom() {
+        PayloadTemplate template = PayloadTemplate.compile("${user}");
+        assertTrue(template.isCompiledFrom("${user}"));
+        assertFalse(template.isCompiledFrom("${room}"));
+        assertTrue(template.resolve(variables).isCompiledFrom("${user}"));
+    }
+
+    private String render(String source) {
+        return render(source, variables);
+    }
+
+    private static String render(String source, JMeterVariables variables) {
+        return render(PayloadTemplate.compile(source), variables);
+    }
+
+    private static String render(PayloadTemplate template, JMeterVariables variables) {
+        StringBuilder buffer = new StringBuilder();
+        template.render(buffer, variables);
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+public class PingProbeTest extends TestCase {
+
+    private final PingProbe probe = new PingProbe();
+
+    @Override
+    protected void setUp() {
+        PingProbe.resetTotals();
+    }
+
+    @Override
+    protected void tearDown() {
+        probe.stop();
+        PingProbe.resetTotals();
+    }
+
+    public void testPongRecordsRoundTripOfItsTimestamp() {
+        long sentAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+        probe.onPong(timestamp(sentAt));
+
+        assertEquals(1, probe.getRtt().getCount());
+        assertTrue(probe.getRtt().getMax() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(1, PingProbe.getTotalRtt().getCount());
+    }
+
+    public void testPongReadsFromItsPosition() {
+        ByteBuffer payload = ByteBuffer.allocate(12);
+        payload.putInt(0, -1);
+        payload.putLong(4, System.nanoTime());
+        payload.position(4);
+        probe.onPong(payload);
+
+        assertEquals(1, probe.getRtt().getCount());
+        assertTrue(probe.getRtt().getMax() < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    public void testPongsOfOtherPingsAreIgnored() {
+        probe.onPong(null);
+        probe.onPong(ByteBuffer.allocate(0));
+        probe.onPong(ByteBuffer.wrap("ping".getBytes()));
+        probe.onPong(ByteBuffer.allocate(16));
+
+        assertEquals(0, probe.getRtt().getCount());
+        assertEquals(0, PingProbe.getTotalRtt().getCount());
+    }
+
+    public void testPingsAreSentEveryIntervalUntilStopped() throws Exception {
+        RecordingConnection connection = new RecordingConnection();
+        probe.start(connection, 10);
+        assertTrue(probe.isRunning());
+        awaitPings(connection, 3);
+
+        probe.stop();
+        assertFalse(probe.isRunning());
+        Thread.sleep(50);
+        int sent = connection.pings.size();
+        Thread.sleep(50);
+        assertEquals(sent, connection.pings.size());
+        assertEquals(sent, probe.getSent());
+
+        for (ByteBuffer ping : connection.pings) {
+            assertEquals(8, ping.remaining());
+            probe.onPong(ping);
+        }
+        assertEquals(sent, probe.getRtt().getCount());
+    }
+
+    public void testRestartReplacesThePingsOfThePreviousConnection() throws Exception {
+        RecordingConnection previous = new RecordingConnection();
+        RecordingConnection next = new RecordingConnection();
+        probe.start(previous, 10);
+        probe.start(next, 10);
+        awaitPings(next, 3);
+        probe.stop();
+        Thread.sleep(50);
+
+        assertTrue(previous.pings.size() <= 1);
+    }
+
+    public void testClosedConnectionIsNotPinged() throws Exception {
+        RecordingConnection connection = new RecordingConnection();
+        connection.open = false;
+        probe.start(connection, 10);
+        Thread.sleep(100);
+
+        assertTrue(connection.pings.isEmpty());
+        assertEquals(0, probe.getSent());
+    }
+
+    public void testResetTotalsKeepsTheRoundTripsOfTheConnection() {
+        probe.onPong(timestamp(System.nanoTime()));
+        PingProbe.resetTotals();
+
+        assertEquals(0, PingProbe.getTotalRtt().getCount());
+        assertEquals(1, probe.getRtt().getCount());
+    }
+
+    private static ByteBuffer timestamp(long nanos) {
+        ByteBuffer payload = ByteBuffer.allocate(8);
+        payload.putLong(0, nanos);
+        return payload;
+    }
+
+    private static void awaitPings(RecordingConnection connection, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connection.pings.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("pings sent: " + connection.pings.size(), connection.pings.size() >= count);
+    }
+}
@@ -0,0 +1,188 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ReadThrottleTest extends TestCase {
+
+    private final List<String> consumed = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    private final ReadThrottle.Consumer consumer = new ReadThrottle.Consumer() {
+        @Override
+        public void consumeMessage(String msg, long bytes) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            consumed.add(msg);
+        }
+
+        @Override
+        public void consumeStreamedMessage(MessageAssembler.StreamedMessage msg) {
+            consumed.add("streamed " + msg.prefix);
+        }
+    };
+
+    private final ReadThrottle throttle = new ReadThrottle(consumer);
+    private final RecordingConnection connection = new RecordingConnection();
+
+    @Override
+    protected void setUp() {
+        ReadThrottle.resetTotals();
+    }
+
+    @Override
+    protected void tearDown() {
+        ReadThrottle.resetTotals();
+    }
+
+    public void testUnlimitedRateConsumesInOrder() throws InterruptedException {
+        throttle.configure(0, ReadThrottle.MESSAGES, 1000);
+        for (int i = 0; i < 100; i++) {
+            throttle.offer(String.valueOf(i), 1);
+        }
+        throttle.offer(new MessageAssembler.StreamedMessage("prefix", 10, 10, new boolean[0]));
+        awaitConsumed(101, 5000);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(String.valueOf(i), consumed.get(i));
+        }
+        assertEquals("streamed prefix", consumed.get(100));
+        assertEquals(0, throttle.getBuffered());
+    }
+
+    /**
+     * The bucket holds a tenth of a second of the rate, a message taken with the last fraction of a token leaves a
+     * debt, and later messages wait for their tokens
+     */
+    public void testMessageRate() throws InterruptedException {
+        throttle.configure(20, ReadThrottle.MESSAGES, 1000);
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            throttle.offer(String.valueOf(i), 1);
+        }
+        awaitConsumed(8, 5000);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //3 at once, 5 more at 50 ms each
+        assertTrue("elapsed " + elapsed, elapsed >= 240);
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7"), consumed);
+    }
+
+    public void testByteRate() throws InterruptedException {
+        throttle.configure(1000, ReadThrottle.BYTES, 10000);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            throttle.offer(String.valueOf(i), 100);
+        }
+        awaitConsumed(5, 5000);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //The first 100 bytes empty the bucket, the second leaves a debt and the others wait 100 ms each
+        assertTrue("elapsed " + elapsed, elapsed >= 290);
+    }
+
+    public void testReadsAreSuspendedWhileBufferIsFull() throws InterruptedException {
+        throttle.configure(0, ReadThrottle.MESSAGES, 100);
+        throttle.setConnection(connection);
+        gate = new CountDownLatch(1);
+
+        //The consumer holds the first message, the others stay buffered
+        throttle.offer("first", 10);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        throttle.offer("a", 40);
+        throttle.offer("b", 40);
+        assertFalse(connection.suspended);
+        throttle.offer("c", 40);
+
+        assertTrue(connection.suspended);
+        assertEquals(120, throttle.getBuffered());
+        assertEquals(120, throttle.getSampleMaxBuffered());
+        assertEquals(1, throttle.getSampleSuspensions());
+        assertEquals(1, ReadThrottle.getTotalSuspensions());
+        assertEquals(120, ReadThrottle.getTotalBuffered());
+
+        Thread.sleep(20);
+        gate.countDown();
+        awaitConsumed(4, 5000);
+        assertFalse(connection.suspended);
+        assertEquals(1, connection.resumes.get());
+        assertEquals(0, throttle.getBuffered());
+        assertTrue(throttle.getSampleSuspendedMillis() >= 10);
+        assertEquals(0, ReadThrottle.getTotalBuffered());
+    }
+
+    public void testReconnectedConnectionIsSuspended() throws InterruptedException {
+        throttle.configure(0, ReadThrottle.MESSAGES, 10);
+        throttle.setConnection(connection);
+        gate = new CountDownLatch(1);
+        throttle.offer("first", 1);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        throttle.offer("second", 20);
+        assertTrue(connection.suspended);
+
+        RecordingConnection reconnected = new RecordingConnection();
+        throttle.setConnection(reconnected);
+        assertTrue(reconnected.suspended);
+
+        gate.countDown();
+        awaitConsumed(2, 5000);
+        assertFalse(reconnected.suspended);
+    }
+
+    public void testCloseByServerWhileLaggingIsAnEviction() throws InterruptedException {
+        throttle.configure(0, ReadThrottle.MESSAGES, 1000);
+        throttle.onClosedByServer();
+        assertEquals(0, throttle.getSampleEvictions());
+
+        gate = new CountDownLatch(1);
+        throttle.offer("first", 1);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        throttle.offer("second", 1);
+        throttle.onClosedByServer();
+        gate.countDown();
+
+        assertEquals(1, throttle.getSampleEvictions());
+        assertEquals(1, ReadThrottle.getTotalEvictions());
+    }
+
+    public void testResetSample() throws InterruptedException {
+        throttle.configure(0, ReadThrottle.MESSAGES, 10);
+        throttle.setConnection(connection);
+        gate = new CountDownLatch(1);
+        throttle.offer("first", 1);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        throttle.offer("second", 20);
+        throttle.offer("third", 20);
+        throttle.onClosedByServer();
+        Thread.sleep(20);
+
+        throttle.resetSample();
+        assertEquals(40, throttle.getSampleMaxBuffered());
+        assertEquals(0, throttle.getSampleSuspensions());
+        assertEquals(0, throttle.getSampleEvictions());
+        assertTrue(throttle.getSampleSuspendedMillis() < 20);
+        assertTrue(ReadThrottle.getTotalSuspendedMillis() >= 20);
+
+        gate.countDown();
+        awaitConsumed(3, 5000);
+    }
+
+    private void awaitConsumed(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (consumed.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, consumed.size());
+    }
+}
@@ -0,0 +1,97 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+public class ReconnectPolicyTest extends TestCase {
+
+    private static final int DRAWS = 2000;
+
+    @Override
+    protected void tearDown() {
+        ReconnectPolicy.resetTotals();
+    }
+
+    public void testAttemptsAreLimited() {
+        ReconnectPolicy policy = new ReconnectPolicy(3, 100, 1000);
+        assertTrue(policy.canRetry(0));
+        assertTrue(policy.canRetry(2));
+        assertFalse(policy.canRetry(3));
+        assertFalse(new ReconnectPolicy(0, 100, 1000).canRetry(0));
+    }
+
+    public void testDelayIsBoundedByDoublingCap() {
+        ReconnectPolicy policy = new ReconnectPolicy(10, 100, 1000);
+        long[] caps = {100, 200, 400, 800, 1000, 1000, 1000};
+        for (int attempt = 0; attempt < caps.length; attempt++) {
+            for (int i = 0; i < DRAWS; i++) {
+                long delay = policy.getDelay(attempt);
+                assertTrue("attempt " + attempt + ": " + delay, delay >= 0 && delay <= caps[attempt]);
+            }
+        }
+    }
+
+    public void testDelayIsCappedForLateAttempts() {
+        ReconnectPolicy policy = new ReconnectPolicy(Integer.MAX_VALUE, 500, 30000);
+        for (int i = 0; i < DRAWS; i++) {
+            assertTrue(policy.getDelay(1000) <= 30000);
+        }
+    }
+
+    /**
+     * Full jitter spreads the delays over the whole range up to the cap
+     */
+    public void testJitterCoversTheRange() {
+        ReconnectPolicy policy = new ReconnectPolicy(10, 1000, 1000);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long sum = 0;
+        for (int i = 0; i < DRAWS; i++) {
+            long delay = policy.getDelay(0);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+            sum += delay;
+        }
+        assertTrue("min " + min, min < 100);
+        assertTrue("max " + max, max > 900);
+        long mean = sum / DRAWS;
+        assertTrue("mean " + mean, mean > 400 && mean < 600);
+    }
+
+    public void testDelaysAreNotSynchronized() {
+        ReconnectPolicy policy = new ReconnectPolicy(10, 1000, 1000);
+        long first = policy.getDelay(0);
+        for (int i = 0; i < 100; i++) {
+            if (policy.getDelay(0) != first) {
+                return;
+            }
+        }
+        fail("every delay was " + first);
+    }
+
+    public void testDelaysAreNormalized() {
+        ReconnectPolicy policy = new ReconnectPolicy(10, 0, -1);
+        for (int i = 0; i < DRAWS; i++) {
+            assertTrue(policy.getDelay(5) <= 1);
+        }
+        policy = new ReconnectPolicy(10, 200, 50);
+        for (int i = 0; i < DRAWS; i++) {
+            assertTrue(policy.getDelay(5) <= 200);
+        }
+    }
+
+    public void testTotals() {
+        ReconnectPolicy.resetTotals();
+        ReconnectPolicy.recordReconnect(300);
+        ReconnectPolicy.recordReconnect(100);
+        ReconnectPolicy.recordFailure();
+
+        assertEquals(2, ReconnectPolicy.getTotalReconnects());
+        assertEquals(1, ReconnectPolicy.getTotalFailures());
+        assertEquals(400, ReconnectPolicy.getTotalReconnectTime());
+        assertEquals(300, ReconnectPolicy.getMaxReconnectTime());
+
+        ReconnectPolicy.resetTotals();
+        assertEquals(0, ReconnectPolicy.getTotalReconnects());
+        assertEquals(0, ReconnectPolicy.getMaxReconnectTime());
+    }
+}
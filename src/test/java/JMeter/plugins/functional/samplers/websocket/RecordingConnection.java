@@ -0,0 +1,68 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection of the tests, records what is sent and keeps the callbacks of asynchronous sends for the test to complete
+ */
+class RecordingConnection implements WebSocketTransport.Connection {
+
+    final List<String> texts = new CopyOnWriteArrayList<String>();
+    final List<ByteBuffer> pings = new CopyOnWriteArrayList<ByteBuffer>();
+    final List<WebSocketTransport.SendCallback> callbacks = new CopyOnWriteArrayList<WebSocketTransport.SendCallback>();
+    final AtomicInteger suspends = new AtomicInteger();
+    final AtomicInteger resumes = new AtomicInteger();
+    volatile boolean open = true;
+    volatile boolean suspended;
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void sendText(String message) throws IOException {
+        if (!open) {
+            throw new IOException("Connection closed");
+        }
+        texts.add(message);
+    }
+
+    @Override
+    public void sendText(String message, WebSocketTransport.SendCallback callback) {
+        texts.add(message);
+        callbacks.add(callback);
+    }
+
+    @Override
+    public void sendPing(ByteBuffer payload) throws IOException {
+        if (!open) {
+            throw new IOException("Connection closed");
+        }
+        ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload.duplicate());
+        copy.flip();
+        pings.add(copy);
+    }
+
+    @Override
+    public void suspendReads() {
+        suspended = true;
+        suspends.incrementAndGet();
+    }
+
+    @Override
+    public void resumeReads() {
+        suspended = false;
+        resumes.incrementAndGet();
+    }
+
+    @Override
+    public void close(int statusCode, String reason) {
+        open = false;
+    }
+}
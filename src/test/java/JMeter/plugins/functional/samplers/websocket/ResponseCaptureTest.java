@@ -0,0 +1,59 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ResponseCaptureTest extends TestCase {
+
+    public void testModesFilterByOutcome() {
+        assertCaptured(ResponseCapture.FULL, true, true);
+        assertCaptured(ResponseCapture.CAPPED, true, true);
+        assertCaptured(ResponseCapture.ERRORS_ONLY, false, true);
+        assertCaptured(ResponseCapture.NONE, false, false);
+    }
+
+    public void testFullJoinsEverything() {
+        ResponseCapture capture = new ResponseCapture(ResponseCapture.FULL, 4);
+        assertEquals("abcdefgh", capture.join("abc", "", "defgh"));
+        assertEquals("", capture.join());
+    }
+
+    public void testCappedCutsAtLimit() {
+        ResponseCapture capture = new ResponseCapture(ResponseCapture.CAPPED, 5);
+        assertEquals("abc", capture.join("abc"));
+        assertEquals("abcde", capture.join("abc", "de"));
+        assertEquals("abcde\n[... 4 more characters]\n", capture.join("abc", "defg", "hi"));
+        assertEquals("\n[... 3 more characters]\n", new ResponseCapture(ResponseCapture.CAPPED, 0).join("abc"));
+        assertEquals("\n[... 3 more characters]\n", new ResponseCapture(ResponseCapture.CAPPED, -1).join("abc"));
+    }
+
+    public void testMessagesAreFormatted() {
+        ResponseCapture.Message message = new ResponseCapture.Message(3, "hello", 0);
+        assertEquals("[Message 3]\nhello\n\n", message.format());
+        assertEquals(5, message.length());
+
+        assertEquals("[Error]\nbroken\n\n", new ResponseCapture.Message(0, "broken", 0).format());
+        assertEquals("[Message 1]\nhead\n[... 1000 more characters]\n\n",
+                new ResponseCapture.Message(1, "head", 1000).format());
+    }
+
+    public void testJoinMessages() {
+        ResponseCapture.Message first = new ResponseCapture.Message(1, "one", 0);
+        ResponseCapture.Message second = new ResponseCapture.Message(2, "two", 0);
+
+        assertEquals("[Message 1]\none\n\n[Message 2]\ntwo\n\n",
+                new ResponseCapture(ResponseCapture.FULL, 0).joinMessages(Arrays.asList(first, second)));
+        assertEquals("[Message 1]\none\n\n[Me\n[... 14 more characters]\n",
+                new ResponseCapture(ResponseCapture.CAPPED, 20).joinMessages(Arrays.asList(first, second)));
+        assertEquals("", new ResponseCapture(ResponseCapture.FULL, 0)
+                .joinMessages(Collections.<ResponseCapture.Message>emptyList()));
+    }
+
+    private static void assertCaptured(String mode, boolean successful, boolean failed) {
+        ResponseCapture capture = new ResponseCapture(mode, ResponseCapture.DEFAULT_LIMIT);
+        assertEquals(mode + " successful", successful, capture.isCaptured(true));
+        assertEquals(mode + " failed", failed, capture.isCaptured(false));
+    }
+}
@@ -0,0 +1,133 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SendWindowTest extends TestCase {
+
+    public void testSlotsUpToSizeDontBlock() throws InterruptedException {
+        SendWindow window = new SendWindow(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(3, window.getDepth());
+        assertEquals(3, window.getSampleMaxDepth());
+        assertEquals(0, window.getSampleBlockedMillis());
+    }
+
+    public void testFullWindowTimesOut() throws InterruptedException {
+        SendWindow window = new SendWindow(1);
+        assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+
+        long start = System.nanoTime();
+        assertFalse(window.acquire(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, window.getDepth());
+        assertTrue(window.getSampleBlockedMillis() >= 50);
+    }
+
+    public void testReleaseUnblocksWaitingSender() throws InterruptedException {
+        final SendWindow window = new SendWindow(1);
+        assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final AtomicBoolean acquired = new AtomicBoolean();
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                waiting.countDown();
+                try {
+                    acquired.set(window.acquire(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        sender.start();
+        waiting.await();
+        Thread.sleep(50);
+        assertFalse(acquired.get());
+
+        window.release(null);
+        sender.join(5000);
+        assertTrue(acquired.get());
+        assertEquals(1, window.getDepth());
+        assertEquals(1, window.getSampleSent());
+        assertTrue(window.getSampleBlockedMillis() >= 40);
+    }
+
+    public void testFailuresAreCounted() throws InterruptedException {
+        SendWindow window = new SendWindow(2);
+        window.acquire(0, TimeUnit.MILLISECONDS);
+        window.acquire(0, TimeUnit.MILLISECONDS);
+        window.release(null);
+        window.release(new IOException("broken pipe"));
+
+        assertEquals(0, window.getDepth());
+        assertEquals(1, window.getSampleSent());
+        assertEquals(1, window.getSampleFailed());
+        assertEquals("broken pipe", window.getLastFailure());
+    }
+
+    public void testResetSampleKeepsSendsInFlight() throws InterruptedException {
+        SendWindow window = new SendWindow(4);
+        for (int i = 0; i < 3; i++) {
+            window.acquire(0, TimeUnit.MILLISECONDS);
+        }
+        window.release(null);
+        window.release(new IOException("reset"));
+        window.resetSample();
+
+        assertEquals(1, window.getDepth());
+        assertEquals(1, window.getSampleMaxDepth());
+        assertEquals(0, window.getSampleSent());
+        assertEquals(0, window.getSampleFailed());
+        assertEquals(0, window.getSampleBlockedMillis());
+        assertNull(window.getLastFailure());
+
+        //The send in flight completes in the next sample
+        window.release(null);
+        assertEquals(1, window.getSampleSent());
+    }
+
+    /**
+     * Asynchronous sends of a connection wait for the window and fail when it stays full
+     */
+    public void testSocketSendsThroughWindow() throws IOException {
+        RecordingConnection connection = new RecordingConnection();
+        ServiceSocket socket = new ServiceSocket(new WebSocketSampler(), null);
+        socket.connection = connection;
+        socket.setSendWindow(2, 50);
+        SendWindow window = socket.getSendWindow();
+
+        socket.sendMessage("one");
+        socket.sendMessage("two");
+        assertEquals(2, window.getDepth());
+        try {
+            socket.sendMessage("three");
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("stayed full"));
+        }
+
+        connection.callbacks.get(0).onSuccess();
+        socket.sendMessage("three");
+        connection.callbacks.get(1).onFailure(new IOException("closed"));
+        assertEquals(1, window.getDepth());
+        assertEquals(1, window.getSampleSent());
+        assertEquals(1, window.getSampleFailed());
+        assertEquals(3, connection.texts.size());
+
+        //The window of an unchanged size is kept, a size of 0 sends blocking
+        socket.setSendWindow(2, 50);
+        assertSame(window, socket.getSendWindow());
+        socket.setSendWindow(0, 50);
+        assertNull(socket.getSendWindow());
+        socket.sendMessage("four");
+        assertEquals(3, connection.callbacks.size());
+    }
+}
@@ -0,0 +1,91 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.util.regex.Pattern;
+
+public class SequenceTrackerTest extends TestCase {
+
+    private static final Pattern SEQUENCE = Pattern.compile("seq:(\\d+)");
+    private static final Pattern DESTINATION = Pattern.compile(SequenceTracker.DEFAULT_DESTINATION_PATTERN);
+
+    @Override
+    protected void setUp() {
+        SequenceTracker.resetTotals();
+    }
+
+    private static String message(String destination, long sequence) {
+        return "a[\"MESSAGE\\ndestination:" + destination + "\\nseq:" + sequence + "\\n\\n\\u0000\"]";
+    }
+
+    private static void track(SequenceTracker tracker, String destination, long... sequences) {
+        for (long sequence : sequences) {
+            assertTrue(tracker.track(message(destination, sequence)));
+        }
+    }
+
+    public void testInOrder() {
+        SequenceTracker tracker = new SequenceTracker(SEQUENCE, DESTINATION, 64);
+        track(tracker, "/a", 5, 6, 7, 8);
+        assertEquals(4, tracker.getSampleTracked());
+        assertEquals(0, tracker.getSampleLost());
+        assertEquals(0, tracker.getSampleDuplicates());
+        assertEquals(0, tracker.getSampleOutOfOrder());
+    }
+
+    public void testGapsDuplicatesAndLateMessages() {
+        SequenceTracker tracker = new SequenceTracker(SEQUENCE, DESTINATION, 64);
+        track(tracker, "/a", 1, 2, 5);
+        assertEquals(2, tracker.getSampleLost());
+
+        track(tracker, "/a", 2, 3);
+        assertEquals(1, tracker.getSampleDuplicates());
+        assertEquals(1, tracker.getSampleOutOfOrder());
+        assertEquals("late message fills the gap", 1, tracker.getSampleLost());
+        assertEquals(1, SequenceTracker.getTotalLost());
+
+        //Below the first sequence nothing was counted as lost
+        track(tracker, "/a", 0);
+        assertEquals(2, tracker.getSampleOutOfOrder());
+        assertEquals(1, tracker.getSampleLost());
+    }
+
+    public void testDestinationsAreTrackedApart() {
+        SequenceTracker tracker = new SequenceTracker(SEQUENCE, DESTINATION, 64);
+        track(tracker, "/a", 1, 2);
+        track(tracker, "/b", 100, 101);
+        track(tracker, "/a", 3);
+        assertEquals(2, tracker.getDestinationCount());
+        assertEquals(0, tracker.getSampleLost());
+        assertEquals(5, SequenceTracker.getTotalTracked());
+    }
+
+    public void testMessagesOlderThanWindow() {
+        SequenceTracker tracker = new SequenceTracker(SEQUENCE, DESTINATION, 64);
+        track(tracker, "/a", 0, 200, 10);
+        assertEquals(199, tracker.getSampleLost());
+        assertEquals("too old to tell", 1, tracker.getSampleOutOfOrder());
+        assertEquals(0, tracker.getSampleDuplicates());
+        assertEquals(199, SequenceTracker.getTotalLost());
+    }
+
+    public void testGapFilledInLaterSample() {
+        SequenceTracker tracker = new SequenceTracker(SEQUENCE, DESTINATION, 64);
+        track(tracker, "/a", 1, 3);
+        assertEquals(1, tracker.getSampleLost());
+
+        tracker.beginSample();
+        track(tracker, "/a", 2);
+        assertEquals("the earlier sample keeps its report", 0, tracker.getSampleLost());
+        assertEquals(1, tracker.getSampleOutOfOrder());
+        assertEquals(0, SequenceTracker.getTotalLost());
+    }
+
+    public void testMessagesWithoutSequence() {
+        SequenceTracker tracker = new SequenceTracker(SEQUENCE, DESTINATION, 64);
+        assertFalse(tracker.track("a[\"MESSAGE\\ndestination:/a\\n\\n\\u0000\"]"));
+        assertFalse(tracker.track("seq:99999999999999999999"));
+        assertEquals(0, tracker.getSampleTracked());
+        assertEquals(0, SequenceTracker.getTotalTracked());
+    }
+}
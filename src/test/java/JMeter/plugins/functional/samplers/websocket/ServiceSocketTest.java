@@ -0,0 +1,68 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+public class ServiceSocketTest extends TestCase {
+
+    private static final String MESSAGE = "MESSAGE\ndestination:/topic/a\n\nhello\u0000";
+
+    private final RecordingConnection connection = new RecordingConnection();
+
+    public void testSuccessfulErrorsOnlySampleBuildsNoLog() throws Exception {
+        ServiceSocket socket = open(ResponseCapture.ERRORS_ONLY);
+        socket.sendMessage("SEND\ndestination:/topic/a\n\nhello\u0000");
+        socket.consumeMessage(MESSAGE, MESSAGE.length());
+        socket.consumeStreamedMessage(new MessageAssembler.StreamedMessage("MESSAGE", 100000, 100000, new boolean[3]));
+
+        assertFalse(socket.isExecutionLogging());
+        assertEquals(0, socket.logMessage.length());
+        assertEquals(1, connection.texts.size());
+        assertTrue(socket.hasResponseMessages());
+
+        //A failed sample captures the summary built when it is asked for
+        assertTrue(socket.getLogMessage().contains(" - Message count: 2"));
+    }
+
+    public void testNoCaptureBuildsNoLog() throws Exception {
+        ServiceSocket socket = open(ResponseCapture.NONE);
+        socket.sendMessage("SEND\n\nhello\u0000");
+        socket.consumeMessage(MESSAGE, MESSAGE.length());
+
+        assertEquals(0, socket.logMessage.length());
+        assertEquals("", socket.getResponseMessage());
+    }
+
+    public void testFullCaptureLogsExecutionFlow() throws Exception {
+        ServiceSocket socket = open(ResponseCapture.FULL);
+        socket.sendMessage("SEND\n\nhello\u0000");
+        socket.consumeMessage(MESSAGE, MESSAGE.length());
+
+        assertTrue(socket.isExecutionLogging());
+        String log = socket.getLogMessage();
+        assertTrue(log, log.contains("[Execution Flow]"));
+        assertTrue(log, log.contains("** send message ** session id {session} : SEND"));
+        assertTrue(log, log.contains(" - Received message #1 (" + MESSAGE.length() + " bytes)"));
+        assertTrue(log, log.contains("; matched connected pattern"));
+    }
+
+    public void testSessionExchangeFollowsCapture() {
+        SessionExchange exchange = new SessionExchange("thread", 10);
+        exchange.beginSample(10, new ResponseCapture(ResponseCapture.ERRORS_ONLY, 0));
+        exchange.onMessage(MESSAGE, 1);
+        exchange.onReceipt("thread-1");
+        assertEquals("", exchange.getLog());
+
+        exchange.beginSample(10, new ResponseCapture(ResponseCapture.FULL, 0));
+        exchange.onMessage(MESSAGE, 2);
+        assertTrue(exchange.getLog().contains(" - Received message #2"));
+    }
+
+    private ServiceSocket open(String capture) {
+        WebSocketSampler sampler = new WebSocketSampler();
+        sampler.setResponseCapture(capture);
+        ServiceSocket socket = new ServiceSocket(sampler, null);
+        socket.setSessionId("session");
+        socket.connection = connection;
+        return socket;
+    }
+}
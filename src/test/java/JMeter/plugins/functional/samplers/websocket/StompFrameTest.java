@@ -0,0 +1,102 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+public class StompFrameTest extends TestCase {
+
+    private static final String RAW = "MESSAGE\ndestination:/topic/a\nsubscription:sub-0\nsubscription:sub-1\n\n"
+            + "{\"price\":1.5}\0";
+    //The same frame as a SockJS message, new lines and quotes are JSON escapes
+    private static final String SOCKJS = "a[\"MESSAGE\\ndestination:/topic/a\\nsubscription:sub-0\\nsubscription:sub-1"
+            + "\\n\\n{\\\"price\\\":1.5}\\u0000\"]";
+
+    public void testParseRawFrame() {
+        StompFrame frame = StompFrame.parse(RAW);
+        assertEquals("MESSAGE", frame.getCommand());
+        assertEquals("/topic/a", frame.getHeader("destination"));
+        assertEquals("first value of a repeated header", "sub-0", frame.getHeader("subscription"));
+        assertEquals(2, frame.getHeaders().size());
+        assertEquals("{\"price\":1.5}", frame.getBody());
+    }
+
+    public void testParseSockJsFrame() {
+        StompFrame frame = StompFrame.parse(SOCKJS);
+        assertEquals("MESSAGE", frame.getCommand());
+        assertEquals("/topic/a", frame.getHeader("destination"));
+        assertEquals("sub-0", frame.getHeader("subscription"));
+        assertEquals("{\"price\":1.5}", frame.getBody());
+    }
+
+    public void testParseSkipsHeartBeatsAndCarriageReturns() {
+        StompFrame frame = StompFrame.parse("\n\r\nCONNECTED\r\nversion:1.2\r\n\r\n\0");
+        assertEquals("CONNECTED", frame.getCommand());
+        assertEquals("1.2", frame.getHeader("version"));
+        assertEquals("", frame.getBody());
+
+        frame = StompFrame.parse("a[\"\\nCONNECTED\\r\\nversion:1.2\\n\\n\\u0000\"]");
+        assertEquals("CONNECTED", frame.getCommand());
+        assertEquals("1.2", frame.getHeader("version"));
+    }
+
+    public void testHeaderEscapes() {
+        assertEquals("a:b", StompFrame.parse("SEND\nselector:a\\cb\n\n\0").getHeader("selector"));
+        assertEquals("a\"b\u00e9", StompFrame.parse("a[\"SEND\\nselector:a\\\"b\\u00e9\\n\\n\\u0000\"]").getHeader("selector"));
+
+        //An escaped backslash before n doesn't end the header line
+        StompFrame frame = StompFrame.parse("a[\"SEND\\npath:c:\\\\new\\nid:1\\n\\n\\u0000\"]");
+        assertEquals("c:\\new", frame.getHeader("path"));
+        assertEquals("1", frame.getHeader("id"));
+    }
+
+    public void testNotAFrame() {
+        assertNull(StompFrame.parse("o"));
+        assertNull(StompFrame.parse("h"));
+        assertNull(StompFrame.parse("hello"));
+        assertNull(StompFrame.parse("message\n\n"));
+        assertNull(StompFrame.parse("a[1]"));
+        assertNull(StompFrame.parse(""));
+    }
+
+    public void testGetHeader() {
+        assertEquals("/topic/a", StompFrame.getHeader(RAW, "destination"));
+        assertEquals("sub-0", StompFrame.getHeader(SOCKJS, "subscription"));
+        assertNull(StompFrame.getHeader(RAW, "receipt"));
+        assertNull(StompFrame.getHeader("hello", "destination"));
+    }
+
+    public void testIsCommand() {
+        assertTrue(StompFrame.isCommand(RAW, "MESSAGE"));
+        assertTrue(StompFrame.isCommand(SOCKJS, "MESSAGE"));
+        assertTrue(StompFrame.isCommand("[\"CONNECT\\naccept-version:1.2\\n\\n\\u0000\"]", "CONNECT"));
+        assertFalse(StompFrame.isCommand("CONNECTED\n\n\0", "CONNECT"));
+        assertFalse(StompFrame.isCommand(RAW, "ERROR"));
+        assertFalse(StompFrame.isCommand("MESS", "MESSAGE"));
+    }
+
+    public void testAddHeader() {
+        assertEquals("SEND\nreceipt:r-1\ndestination:/x\n\nbody\0",
+                StompFrame.addHeader("SEND\ndestination:/x\n\nbody\0", "receipt", "r-1"));
+        assertEquals("[\"SEND\\nreceipt:r-1\\ndestination:/x\\n\\n\\u0000\"]",
+                StompFrame.addHeader("[\"SEND\\ndestination:/x\\n\\n\\u0000\"]", "receipt", "r-1"));
+        assertEquals("hello", StompFrame.addHeader("hello", "receipt", "r-1"));
+    }
+
+    public void testFindInBodyMatchesBody() {
+        JsonPathScanner price = JsonPathScanner.compile("$.price");
+        assertEquals("1.5", StompFrame.parse(RAW).findInBody(price));
+        assertEquals("1.5", StompFrame.parse(SOCKJS).findInBody(price));
+
+        String[] frames = {
+                "a[\"MESSAGE\\n\\n{\\\"name\\\":\\\"a\\\\\\\"b\\\\nc\\\",\\\"list\\\":[1,{\\\"id\\\":\\\"x\\\"}]}\\u0000\"]",
+                "MESSAGE\n\n{\"name\":\"a\\\"b\\nc\",\"list\":[1,{\"id\":\"x\"}]}\0",
+                "a[\"MESSAGE\\n\\n{\\\"name\\\":\\\"\\u00e9\\\"}\"]"};
+        String[] paths = {"$.name", "$.list[1].id", "$.list[0]", "$.list", "$.missing"};
+        for (String text : frames) {
+            StompFrame frame = StompFrame.parse(text);
+            for (String path : paths) {
+                JsonPathScanner scanner = JsonPathScanner.compile(path);
+                assertEquals(text + " " + path, scanner.find(frame.getBody()), frame.findInBody(scanner));
+            }
+        }
+    }
+}
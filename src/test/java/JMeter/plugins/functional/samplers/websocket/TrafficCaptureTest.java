@@ -0,0 +1,214 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+public class TrafficCaptureTest extends TestCase {
+
+    private static final byte[] FIRST = "first".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SECOND = "second".getBytes(StandardCharsets.UTF_8);
+
+    private File file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("capture", ".bin");
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testRecordsAreReadBackInOrder() throws IOException {
+        TrafficCapture capture = TrafficCapture.open(file);
+        capture.write(TrafficCapture.SENT, FIRST, "CONNECT\n\n\u0000", 1000L, false);
+        capture.write(TrafficCapture.RECEIVED, SECOND, "caf\u00e9 \u20ac", 2000L, false);
+        capture.write(TrafficCapture.RECEIVED, FIRST, "", 3000L, true);
+        capture.close();
+
+        TrafficCaptureReader reader = new TrafficCaptureReader(file);
+        try {
+            TrafficCaptureReader.Record record = reader.next();
+            assertEquals(1000L, record.getTimestamp());
+            assertTrue(record.isSent());
+            assertFalse(record.isTruncated());
+            assertEquals("first", record.getConnectionId());
+            assertEquals("CONNECT\n\n\u0000", record.getPayload());
+
+            record = reader.next();
+            assertEquals(2000L, record.getTimestamp());
+            assertEquals(TrafficCapture.RECEIVED, record.getDirection());
+            assertEquals("second", record.getConnectionId());
+            assertEquals("caf\u00e9 \u20ac", record.getPayload());
+
+            record = reader.next();
+            assertTrue(record.isTruncated());
+            assertEquals("", record.getPayload());
+
+            assertNull(reader.next());
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testTimestampsAreEpochNanoseconds() throws IOException {
+        long before = System.currentTimeMillis();
+        TrafficCapture capture = TrafficCapture.open(file);
+        capture.write(TrafficCapture.SENT, FIRST, "now");
+        capture.close();
+
+        TrafficCaptureReader reader = new TrafficCaptureReader(file);
+        try {
+            long millis = reader.next().getTimestamp() / 1000000L;
+            assertTrue(millis >= before - 1000 && millis <= System.currentTimeMillis() + 1000);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testScannedRecordsAreReadByPosition() throws IOException {
+        TrafficCapture capture = TrafficCapture.open(file);
+        for (int i = 0; i < 10; i++) {
+            capture.write(i % 2 == 0 ? TrafficCapture.SENT : TrafficCapture.RECEIVED, i % 3 == 0 ? FIRST : SECOND,
+                    "payload " + i, i, false);
+        }
+        capture.close();
+
+        final List<Long> positions = new ArrayList<Long>();
+        final List<String> connections = new ArrayList<String>();
+        TrafficCaptureReader reader = new TrafficCaptureReader(file);
+        try {
+            reader.scan(new TrafficCaptureReader.RecordVisitor() {
+                @Override
+                public void visit(long position, long timestamp, byte direction, String connectionId) {
+                    assertEquals(positions.size(), timestamp);
+                    assertEquals(timestamp % 2 == 0 ? TrafficCapture.SENT : TrafficCapture.RECEIVED, direction);
+                    positions.add(position);
+                    connections.add(connectionId);
+                }
+            });
+            assertEquals(10, positions.size());
+            assertEquals("first", connections.get(3));
+            assertEquals("second", connections.get(4));
+            assertEquals(TrafficCapture.FILE_HEADER_SIZE, positions.get(0).longValue());
+
+            for (int i = positions.size() - 1; i >= 0; i--) {
+                assertEquals("payload " + i, reader.read(positions.get(i)).getPayload());
+                assertEquals(0, positions.get(i) % 8);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Every frame written concurrently is captured exactly once
+     */
+    public void testConcurrentWriters() throws Exception {
+        final TrafficCapture capture = TrafficCapture.open(file);
+        final int threads = 8;
+        final int frames = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final byte[] id = ("connection-" + t).getBytes(StandardCharsets.UTF_8);
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < frames; i++) {
+                        capture.write(TrafficCapture.RECEIVED, id, String.valueOf(i));
+                    }
+                }
+            };
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        capture.close();
+
+        Set<String> seen = new HashSet<String>();
+        TrafficCaptureReader reader = new TrafficCaptureReader(file);
+        try {
+            TrafficCaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                assertTrue(seen.add(record.getConnectionId() + "/" + record.getPayload()));
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(threads * frames, seen.size());
+    }
+
+    public void testWritesAfterCloseAreIgnored() throws IOException {
+        TrafficCapture capture = TrafficCapture.open(file);
+        capture.write(TrafficCapture.SENT, FIRST, "kept", 1L, false);
+        capture.close();
+        capture.write(TrafficCapture.SENT, FIRST, "late", 2L, false);
+        capture.close();
+
+        TrafficCaptureReader reader = new TrafficCaptureReader(file);
+        try {
+            assertEquals("kept", reader.next().getPayload());
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * A capture which wasn't closed has no end position and is read until the first empty record
+     */
+    public void testUnclosedCaptureIsReadable() throws IOException {
+        TrafficCapture capture = TrafficCapture.open(file);
+        try {
+            capture.write(TrafficCapture.SENT, FIRST, "one", 1L, false);
+            capture.write(TrafficCapture.RECEIVED, FIRST, "two", 2L, false);
+
+            TrafficCaptureReader reader = new TrafficCaptureReader(file);
+            try {
+                assertEquals("one", reader.next().getPayload());
+                assertEquals("two", reader.next().getPayload());
+                assertNull(reader.next());
+            } finally {
+                reader.close();
+            }
+        } finally {
+            capture.close();
+        }
+    }
+
+    public void testOtherFilesAreRejected() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("not a capture at all".getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+
+        try {
+            new TrafficCaptureReader(file);
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("not a WebSocket traffic capture"));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package JMeter.plugins.functional.samplers.websocket;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the heap and threads a connection costs and the echo throughput of the transports, against an echo server
+ * on Netty in the same JVM. Not a unit test; run it after mvn test-compile with the test classpath, the number of
+ * connections and the transports to measure:
+ * <pre>
+ * java -Xmx4g -cp target/test-classes:target/classes:&lt;dependencies&gt;
+ *      JMeter.plugins.functional.samplers.websocket.TransportFootprintBenchmark 10000 RFC6455 NETTY
+ * </pre>
+ * Connections beyond about 28000 need more local addresses or ports than one client address offers, and the open
+ * file limit raised for the JVM.
+ */
+public class TransportFootprintBenchmark {
+
+    private static final int MESSAGES_PER_CONNECTION = 20;
+    private static final String MESSAGE = "[\"SEND\\ndestination:/echo\\n\\n{\\\"price\\\":101.25}\\u0000\"]";
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        List<WebSocketImplementation> implementations = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            implementations.add(WebSocketImplementation.fromName(args[i]));
+        }
+        if (implementations.isEmpty()) {
+            implementations.add(WebSocketImplementation.RFC6455);
+            implementations.add(WebSocketImplementation.NETTY);
+        }
+
+        EventLoopGroup serverGroup = new NioEventLoopGroup();
+        try {
+            Channel server = startServer(serverGroup);
+            URI uri = URI.create("ws://127.0.0.1:" + ((InetSocketAddress) server.localAddress()).getPort() + "/echo");
+            System.out.printf("%-16s %12s %14s %14s %16s %14s%n", "transport", "connections", "connects/s",
+                    "heap/conn (B)", "threads/1k conn", "echoes/s");
+            for (WebSocketImplementation implementation : implementations) {
+                measure(implementation, uri, connections);
+            }
+            server.close().sync();
+        } finally {
+            serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void measure(WebSocketImplementation implementation, URI uri, int connections) throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        TransportOptions options = new TransportOptions();
+        options.setExecutor(executor);
+        options.setConnectTimeout(30000);
+        WebSocketTransport transport = implementation.createTransport(options);
+        transport.start();
+
+        long heapBefore = usedHeapAfterGc();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        CountDownLatch opened = new CountDownLatch(connections);
+        AtomicLong received = new AtomicLong();
+        List<Client> clients = new ArrayList<>(connections);
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            Client client = new Client(opened, received);
+            clients.add(client);
+            transport.connect(uri, null, client);
+        }
+        if (!opened.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException((connections - opened.getCount()) + " of " + connections + " connections opened");
+        }
+        double connectSeconds = (System.nanoTime() - start) / 1e9;
+
+        long heap = usedHeapAfterGc() - heapBefore;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+
+        long expected = (long) connections * MESSAGES_PER_CONNECTION;
+        start = System.nanoTime();
+        for (int m = 0; m < MESSAGES_PER_CONNECTION; m++) {
+            for (Client client : clients) {
+                client.connection.sendText(MESSAGE, client);
+            }
+        }
+        while (received.get() < expected && System.nanoTime() - start < TimeUnit.MINUTES.toNanos(5)) {
+            Thread.sleep(10);
+        }
+        double echoSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-16s %12d %14.0f %14d %16.1f %14.0f%n", implementation.getDisplayName(), connections,
+                connections / connectSeconds, heap / connections, threads * 1000.0 / connections,
+                received.get() / echoSeconds);
+
+        for (Client client : clients) {
+            client.connection.close(WebSocketTransport.NORMAL_CLOSURE, "Benchmark finished");
+        }
+        transport.stop();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Used heap after repeated full GCs, so only what connections retain is counted
+     */
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Channel startServer(EventLoopGroup group) throws InterruptedException {
+        return new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 4096)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        channel.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(65536),
+                                new WebSocketServerProtocolHandler("/echo"),
+                                new SimpleChannelInboundHandler<TextWebSocketFrame>() {
+                                    @Override
+                                    protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) {
+                                        ctx.writeAndFlush(frame.retainedDuplicate());
+                                    }
+                                });
+                    }
+                })
+                .bind("127.0.0.1", 0).sync().channel();
+    }
+
+    /**
+     * Counts the opening and the echoes of one connection
+     */
+    private static class Client implements WebSocketTransport.Listener, WebSocketTransport.SendCallback {
+        private final CountDownLatch opened;
+        private final AtomicLong received;
+        volatile WebSocketTransport.Connection connection;
+
+        Client(CountDownLatch opened, AtomicLong received) {
+            this.opened = opened;
+            this.received = received;
+        }
+
+        @Override
+        public void onOpen(WebSocketTransport.Connection connection) {
+            this.connection = connection;
+            opened.countDown();
+        }
+
+        @Override
+        public void onTextFrame(ByteBuffer payload, boolean fin) {
+            if (fin) {
+                received.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onText(CharSequence text, boolean last) {
+            if (last) {
+                received.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onPong(ByteBuffer payload) {
+        }
+
+        @Override
+        public void onClose(int statusCode, String reason) {
+        }
+
+        @Override
+        public void onSuccess() {
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+            System.err.println("Send failed: " + cause);
+        }
+    }
+}